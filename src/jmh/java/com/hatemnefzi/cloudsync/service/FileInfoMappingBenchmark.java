@@ -0,0 +1,56 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.dto.FileInfoResponse;
+import com.hatemnefzi.cloudsync.entity.File;
+import com.hatemnefzi.cloudsync.entity.Folder;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Entity to DTO mapping for file listings, at the size of a typical page and a large drive.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileInfoMappingBenchmark {
+
+    @Param({"50", "5000"})
+    public int fileCount;
+
+    private List<File> files;
+
+    @Setup
+    public void setup() {
+        LocalDateTime now = LocalDateTime.now();
+        Folder folder = Folder.builder().id(7L).name("docs").path("/docs").build();
+        files = new ArrayList<>(fileCount);
+        for (long id = 1; id <= fileCount; id++) {
+            files.add(File.builder()
+                    .id(id)
+                    .name("report-" + id + ".pdf")
+                    .size(1024L * id)
+                    .mimeType("application/pdf")
+                    .version(1)
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .folder(id % 2 == 0 ? folder : null)
+                    .checksum("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855")
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<FileInfoResponse> mapToFileInfoResponse() {
+        return files.stream()
+                .map(FileService::mapToFileInfoResponse)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,58 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.dto.FolderResponse;
+import com.hatemnefzi.cloudsync.entity.Folder;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory assembly of the folder tree returned by GET /api/folders/tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FolderTreeBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int folderCount;
+
+    private List<Folder> folders;
+    private Map<Long, Long> fileCounts;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        folders = new ArrayList<>(folderCount);
+        fileCounts = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (long id = 1; id <= folderCount; id++) {
+            // Roughly 10% of folders at the root, the rest under an earlier folder
+            Folder parent = id == 1 || random.nextInt(10) == 0 ? null : folders.get(random.nextInt(folders.size()));
+            String path = (parent != null ? parent.getPath() : "") + "/folder" + id;
+            folders.add(Folder.builder()
+                    .id(id)
+                    .name("folder" + id)
+                    .parent(parent)
+                    .path(path)
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .build());
+            fileCounts.put(id, (long) random.nextInt(50));
+        }
+    }
+
+    @Benchmark
+    public List<FolderResponse> buildFolderTree() {
+        return FolderService.buildFolderTree(folders, fileCounts);
+    }
+}
@@ -0,0 +1,126 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost against bytes saved for each storage codec.
+ *
+ * compress reports two extra rates next to ops/s: inputBytes (bytes consumed per second)
+ * and savedBytes (bytes not written to storage per second). savedBytes / inputBytes is
+ * the fraction of storage saved.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionCodecBenchmark {
+
+    private static final int PAYLOAD_SIZE = 1024 * 1024;
+    private static final int ZSTD_LEVEL = 3;
+
+    @Param({"LZ4", "ZSTD"})
+    public CompressionCodec codec;
+
+    @Param({"text", "json", "binary", "random"})
+    public String corpus;
+
+    private byte[] input;
+    private byte[] compressed;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Savings {
+        public long inputBytes;
+        public long savedBytes;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        input = generate(corpus, PAYLOAD_SIZE);
+        compressed = compress(input);
+    }
+
+    @Benchmark
+    public byte[] compress(Savings savings) throws IOException {
+        byte[] out = compress(input);
+        savings.inputBytes += input.length;
+        savings.savedBytes += input.length - out.length;
+        return out;
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        try (InputStream in = codec.unwrap(new ByteArrayInputStream(compressed))) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length);
+        try (OutputStream out = codec.wrap(buffer, ZSTD_LEVEL)) {
+            out.write(data);
+        }
+        return buffer.toByteArray();
+    }
+
+    static byte[] generate(String corpus, int size) {
+        Random random = new Random(42);
+        return switch (corpus) {
+            case "text" -> text(random, size);
+            case "json" -> json(random, size);
+            case "binary" -> binary(random, size);
+            default -> {
+                byte[] bytes = new byte[size];
+                random.nextBytes(bytes);
+                yield bytes;
+            }
+        };
+    }
+
+    private static final String[] WORDS = {
+            "storage", "folder", "version", "share", "upload", "the", "of", "and", "checksum",
+            "quota", "user", "file", "a", "to", "in", "sync", "download", "link", "public", "is"};
+
+    private static byte[] text(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] json(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size).append('[');
+        for (long id = 1; sb.length() < size; id++) {
+            sb.append("{\"id\":").append(id)
+              .append(",\"name\":\"").append(WORDS[random.nextInt(WORDS.length)]).append(id).append(".txt\"")
+              .append(",\"size\":").append(random.nextInt(1 << 24))
+              .append(",\"mimeType\":\"text/plain\",\"version\":").append(1 + random.nextInt(5))
+              .append("},");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Fixed-width records with small integers: typical of databases and application data
+    private static byte[] binary(Random random, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        long timestamp = 1_700_000_000_000L;
+        while (buffer.remaining() >= 24) {
+            timestamp += random.nextInt(1000);
+            buffer.putLong(timestamp).putInt(random.nextInt(100)).putInt(random.nextInt(4)).putLong(random.nextInt(1 << 16));
+        }
+        return buffer.array();
+    }
+}
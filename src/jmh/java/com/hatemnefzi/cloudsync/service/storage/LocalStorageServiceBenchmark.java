@@ -0,0 +1,63 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and read paths of the local filesystem backend, without the compression layer.
+ *
+ * store deletes the object again so disk usage stays flat; the delete is part of the score.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalStorageServiceBenchmark {
+
+    @Param({"4096", "1048576", "8388608"})
+    public int size;
+
+    private Path uploadDir;
+    private LocalStorageService storageService;
+    private byte[] payload;
+    private String storedKey;
+
+    @Setup
+    public void setup() throws IOException {
+        uploadDir = Files.createTempDirectory("cloudsync-bench-");
+        storageService = new LocalStorageService(uploadDir.toString());
+        payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        storedKey = storageService.store(new ByteArrayInputStream(payload), size, "application/octet-stream", 1L, "read.bin");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(uploadDir);
+    }
+
+    @Benchmark
+    public String store() throws IOException {
+        String key = storageService.store(new ByteArrayInputStream(payload), size, "application/octet-stream", 1L, "write.bin");
+        storageService.delete(key);
+        return key;
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        try (InputStream in = storageService.getFileStream(storedKey)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.hatemnefzi.cloudsync.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 upload checksum against the read buffer size. inputBytes is the hashing
+ * throughput in bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChecksumsBenchmark {
+
+    private static final int PAYLOAD_SIZE = 4 * 1024 * 1024;
+
+    @Param({"4096", "8192", "65536", "262144"})
+    public int bufferSize;
+
+    private byte[] payload;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long inputBytes;
+    }
+
+    @Setup
+    public void setup() {
+        payload = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(payload);
+    }
+
+    @Benchmark
+    public String sha256(Bytes bytes) throws IOException {
+        String checksum = Checksums.sha256(new ByteArrayInputStream(payload), bufferSize);
+        bytes.inputBytes += payload.length;
+        return checksum;
+    }
+}
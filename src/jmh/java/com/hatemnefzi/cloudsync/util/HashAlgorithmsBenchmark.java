@@ -0,0 +1,107 @@
+package com.hatemnefzi.cloudsync.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Upload hashing candidates across content sizes. inputBytes is the hashing throughput in
+ * bytes per second.
+ *
+ * sha256TreeParallel hashes 1MB leaves on the common pool and then the leaf digests: it
+ * scales with cores but is not SHA-256 of the content, so it can't stand in for the stored
+ * checksum. sha256Direct feeds MessageDigest from a direct buffer, which it copies back to
+ * the heap in small chunks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashAlgorithmsBenchmark {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LEAF_SIZE = 1024 * 1024;
+
+    @Param({"4096", "65536", "1048576", "16777216"})
+    public int size;
+
+    private byte[] payload;
+    private ByteBuffer directPayload;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long inputBytes;
+    }
+
+    @Setup
+    public void setup() {
+        payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        directPayload = ByteBuffer.allocateDirect(size);
+        directPayload.put(payload).flip();
+    }
+
+    @Benchmark
+    public String sha256(Bytes bytes) throws IOException {
+        String checksum = Checksums.sha256(new ByteArrayInputStream(payload), BUFFER_SIZE);
+        bytes.inputBytes += size;
+        return checksum;
+    }
+
+    @Benchmark
+    public byte[] sha256Direct(Bytes bytes) {
+        MessageDigest digest = sha256Digest();
+        ByteBuffer buffer = directPayload.duplicate();
+        while (buffer.hasRemaining()) {
+            ByteBuffer chunk = buffer.slice(buffer.position(), Math.min(BUFFER_SIZE, buffer.remaining()));
+            digest.update(chunk);
+            buffer.position(buffer.position() + chunk.capacity());
+        }
+        bytes.inputBytes += size;
+        return digest.digest();
+    }
+
+    @Benchmark
+    public String sha256TreeParallel(Bytes bytes) {
+        int leaves = Math.max(1, (size + LEAF_SIZE - 1) / LEAF_SIZE);
+        byte[][] digests = new byte[leaves][];
+        IntStream.range(0, leaves).parallel().forEach(leaf -> {
+            MessageDigest digest = sha256Digest();
+            int offset = leaf * LEAF_SIZE;
+            digest.update(payload, offset, Math.min(LEAF_SIZE, size - offset));
+            digests[leaf] = digest.digest();
+        });
+        MessageDigest root = sha256Digest();
+        for (byte[] leafDigest : digests) {
+            root.update(leafDigest);
+        }
+        bytes.inputBytes += size;
+        return HexFormat.of().formatHex(root.digest());
+    }
+
+    @Benchmark
+    public long xxh64(Bytes bytes) throws IOException {
+        long hash = Checksums.xxh64(new ByteArrayInputStream(payload), BUFFER_SIZE);
+        bytes.inputBytes += size;
+        return hash;
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
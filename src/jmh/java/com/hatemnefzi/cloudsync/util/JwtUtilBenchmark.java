@@ -0,0 +1,49 @@
+package com.hatemnefzi.cloudsync.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issue and the per-request checks done by JwtAuthenticationFilter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtUtilBenchmark {
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", "benchmark-secret-benchmark-secret-0123456789");
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 86_400_000L);
+        token = jwtUtil.generateToken("user@example.com", 42L);
+    }
+
+    @Benchmark
+    public String generate() {
+        return jwtUtil.generateToken("user@example.com", 42L);
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return jwtUtil.validateToken(token);
+    }
+
+    // What the filter does for every authenticated request
+    @Benchmark
+    public void authenticate(Blackhole blackhole) {
+        if (jwtUtil.validateToken(token)) {
+            blackhole.consume(jwtUtil.getEmailFromToken(token));
+            blackhole.consume(jwtUtil.getUserIdFromToken(token));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.hatemnefzi.cloudsync.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Thin HTTP client for the CloudSync API, as used by the load test.
+ */
+class LoadTestClient {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient http;
+    private final String baseUrl;
+
+    LoadTestClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    record Result(JsonNode body, long bytes) {}
+
+    String register(String email, String password) throws IOException {
+        JsonNode body = sendJson("POST", "/api/auth/register", null,
+                Map.of("email", email, "password", password, "fullName", "Load Test")).body();
+        return body.path("token").asText();
+    }
+
+    Result createFolder(String token, String name, Long parentId) throws IOException {
+        return sendJson("POST", "/api/folders", token,
+                parentId != null ? Map.of("name", name, "parentId", parentId) : Map.of("name", name));
+    }
+
+    Result upload(String token, String fileName, byte[] content, Long folderId) throws IOException {
+        String path = "/api/files/upload" + (folderId != null ? "?folderId=" + folderId : "");
+        return sendMultipart("POST", path, token, fileName, content);
+    }
+
+    Result update(String token, long fileId, String fileName, byte[] content) throws IOException {
+        return sendMultipart("PUT", "/api/files/" + fileId, token, fileName, content);
+    }
+
+    Result createPublicShare(String token, long fileId) throws IOException {
+        // Lombok exposes the boolean isPublic field as "public"
+        return sendJson("POST", "/api/shares", token,
+                Map.of("fileId", fileId, "permission", "VIEW", "public", true, "isPublic", true));
+    }
+
+    Result post(String token, String path, Object body) throws IOException {
+        return sendJson("POST", path, token, body);
+    }
+
+    Result get(String token, String path) throws IOException {
+        return send(request(path, token).GET().build(), true);
+    }
+
+    /**
+     * Download a body without buffering it, returning the number of bytes read
+     */
+    Result download(String token, String path) throws IOException {
+        return send(request(path, token).header("Accept-Encoding", "gzip, zstd").GET().build(), false);
+    }
+
+    static String query(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private Result sendJson(String method, String path, String token, Object body) throws IOException {
+        HttpRequest request = request(path, token)
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(body)))
+                .build();
+        return send(request, true);
+    }
+
+    private Result sendMultipart(String method, String path, String token, String fileName, byte[] content) throws IOException {
+        String boundary = "----cloudsync" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 256);
+        body.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpRequest request = request(path, token)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        return send(request, true);
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofMinutes(2));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    private Result send(HttpRequest request, boolean parseJson) throws IOException {
+        try {
+            HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream in = response.body()) {
+                if (response.statusCode() >= 400) {
+                    throw new IOException(request.method() + " " + request.uri().getPath() + " -> " + response.statusCode());
+                }
+                if (!parseJson) {
+                    return new Result(null, in.transferTo(OutputStream.nullOutputStream()));
+                }
+                byte[] bytes = in.readAllBytes();
+                return new Result(bytes.length > 0 ? MAPPER.readTree(bytes) : null, bytes.length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.hatemnefzi.cloudsync.loadtest;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hatemnefzi.cloudsync.CloudsyncApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test: starts Postgres, Redis and MinIO in containers, boots the application
+ * against them in this JVM and drives a weighted mix of API scenarios over HTTP.
+ *
+ * Reports throughput, p50/p99 latency per scenario and heap use, and writes the numbers to
+ * target/loadtest-result.json so releases can be compared. Heap figures include the driver,
+ * which runs in the same JVM. Tuned with -Dloadtest.* system properties (see the loadtest profile).
+ */
+public class LoadTestRunner {
+
+    private static final String BUCKET = "cloudsync-loadtest";
+    private static final String PASSWORD = "loadtest-password";
+    private static final String[] WORDS = {
+            "report", "invoice", "notes", "draft", "budget", "photo", "backup", "design", "meeting", "plan"};
+
+    private final int durationSeconds = Integer.getInteger("loadtest.duration", 60);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup", 15);
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 32);
+    private final int userCount = Integer.getInteger("loadtest.users", 20);
+    private final int fileSize = Integer.getInteger("loadtest.file-size", 256 * 1024);
+
+    private final List<ScenarioStats> scenarios = List.of(
+            new ScenarioStats("bulk-upload", 20),
+            new ScenarioStats("versioned-update", 10),
+            new ScenarioStats("folder-browse", 25),
+            new ScenarioStats("public-share-storm", 30),
+            new ScenarioStats("search", 15));
+
+    private final List<UserSession> users = new ArrayList<>();
+    private final List<String> hotShares = new ArrayList<>();
+    private final AtomicLong fileCounter = new AtomicLong();
+
+    private LoadTestClient client;
+
+    private record UserSession(String token, List<Long> folderIds, List<Long> fileIds) {}
+
+    public static void main(String[] args) throws Exception {
+        new LoadTestRunner().run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        try (PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+             GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+             MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2024-01-16T16-07-38Z")) {
+
+            postgres.start();
+            redis.start();
+            minio.start();
+            createBucket(minio);
+
+            try (ConfigurableApplicationContext context = SpringApplication.run(CloudsyncApplication.class,
+                    "--server.port=0",
+                    "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                    "--spring.datasource.username=" + postgres.getUsername(),
+                    "--spring.datasource.password=" + postgres.getPassword(),
+                    "--spring.data.redis.host=" + redis.getHost(),
+                    "--spring.data.redis.port=" + redis.getMappedPort(6379),
+                    "--storage.type=s3",
+                    "--storage.s3.bucket-name=" + BUCKET,
+                    "--storage.s3.endpoint=" + minio.getS3URL(),
+                    "--AWS_ACCESS_KEY_ID=" + minio.getUserName(),
+                    "--AWS_SECRET_ACCESS_KEY=" + minio.getPassword(),
+                    "--app.rate-limit.enabled=false",
+                    "--jwt.secret=loadtest-secret-loadtest-secret-loadtest-secret",
+                    "--logging.level.com.hatemnefzi=WARN")) {
+
+                String port = context.getEnvironment().getProperty("local.server.port");
+                client = new LoadTestClient("http://localhost:" + port);
+
+                seed();
+                Map<String, Object> result = drive();
+                print(result);
+                write(result);
+            }
+        }
+    }
+
+    private static void createBucket(MinIOContainer minio) {
+        AmazonS3 s3 = AmazonS3ClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(minio.getS3URL(), "us-east-1"))
+                .withPathStyleAccessEnabled(true)
+                .withCredentials(new AWSStaticCredentialsProvider(
+                        new BasicAWSCredentials(minio.getUserName(), minio.getPassword())))
+                .build();
+        s3.createBucket(BUCKET);
+    }
+
+    /**
+     * Users with a few levels of folders, some files each, and a handful of popular public shares
+     */
+    private void seed() throws IOException {
+        System.out.printf("Seeding %d users...%n", userCount);
+        for (int u = 0; u < userCount; u++) {
+            String token = client.register("load" + u + "@example.com", PASSWORD);
+            UserSession user = new UserSession(token, new CopyOnWriteArrayList<>(), new CopyOnWriteArrayList<>());
+
+            for (int r = 0; r < 4; r++) {
+                long root = client.createFolder(token, "root" + r, null).body().path("id").asLong();
+                user.folderIds().add(root);
+                for (int c = 0; c < 5; c++) {
+                    long child = client.createFolder(token, "child" + c, root).body().path("id").asLong();
+                    user.folderIds().add(child);
+                    user.folderIds().add(client.createFolder(token, "leaf", child).body().path("id").asLong());
+                }
+            }
+
+            for (int f = 0; f < 10; f++) {
+                user.fileIds().add(uploadNew(user).body().path("id").asLong());
+            }
+            users.add(user);
+        }
+
+        for (int s = 0; s < 5; s++) {
+            UserSession owner = users.get(s % users.size());
+            hotShares.add(client.createPublicShare(owner.token(), owner.fileIds().get(0)).body().path("shareToken").asText());
+        }
+    }
+
+    private Map<String, Object> drive() throws InterruptedException {
+        System.out.printf("Running %d workers: %ds warmup, %ds measured%n", concurrency, warmupSeconds, durationSeconds);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(() -> {
+                while (System.nanoTime() < end) {
+                    runOne(pickScenario());
+                }
+            });
+        }
+
+        // Warmup results are thrown away
+        TimeUnit.NANOSECONDS.sleep(warmupEnd - System.nanoTime());
+        scenarios.forEach(ScenarioStats::reset);
+        System.gc();
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long peakHeap = 0;
+        long heapSum = 0;
+        int samples = 0;
+        long measureStart = System.nanoTime();
+        while (System.nanoTime() < end) {
+            long used = memory.getHeapMemoryUsage().getUsed();
+            peakHeap = Math.max(peakHeap, used);
+            heapSum += used;
+            samples++;
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+        workers.shutdown();
+        workers.awaitTermination(2, TimeUnit.MINUTES);
+
+        List<ScenarioStats.Snapshot> snapshots = scenarios.stream().map(s -> s.snapshot(seconds)).toList();
+        Map<String, Object> heap = new LinkedHashMap<>();
+        heap.put("peakUsedMb", peakHeap / (1024.0 * 1024));
+        heap.put("avgUsedMb", samples > 0 ? heapSum / (double) samples / (1024 * 1024) : 0);
+        heap.put("maxMb", memory.getHeapMemoryUsage().getMax() / (1024.0 * 1024));
+        heap.put("gcCount", gcCount() - gcCountBefore);
+        heap.put("gcTimeMs", gcTime() - gcTimeBefore);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("timestamp", Instant.now().toString());
+        result.put("durationSeconds", seconds);
+        result.put("concurrency", concurrency);
+        result.put("users", userCount);
+        result.put("fileSize", fileSize);
+        result.put("totalThroughput", snapshots.stream().mapToDouble(ScenarioStats.Snapshot::throughput).sum());
+        result.put("scenarios", snapshots);
+        result.put("heap", heap);
+        return result;
+    }
+
+    private ScenarioStats pickScenario() {
+        int total = scenarios.stream().mapToInt(ScenarioStats::weight).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        for (ScenarioStats scenario : scenarios) {
+            roll -= scenario.weight();
+            if (roll < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(0);
+    }
+
+    private void runOne(ScenarioStats scenario) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UserSession user = users.get(random.nextInt(users.size()));
+        long start = System.nanoTime();
+        try {
+            long bytes = switch (scenario.name()) {
+                case "bulk-upload" -> {
+                    LoadTestClient.Result result = uploadNew(user);
+                    user.fileIds().add(result.body().path("id").asLong());
+                    yield fileSize;
+                }
+                case "versioned-update" -> {
+                    long fileId = user.fileIds().get(random.nextInt(user.fileIds().size()));
+                    client.update(user.token(), fileId, "updated.txt", content(false));
+                    yield fileSize;
+                }
+                case "folder-browse" -> {
+                    long folderId = user.folderIds().get(random.nextInt(user.folderIds().size()));
+                    yield client.get(user.token(), "/api/folders/tree").bytes()
+                            + client.get(user.token(), "/api/files/folder/" + folderId).bytes();
+                }
+                case "public-share-storm" -> {
+                    // Most traffic goes to the first link, like a link that went viral
+                    String token = hotShares.get(random.nextInt(10) < 7 ? 0 : random.nextInt(hotShares.size()));
+                    yield client.get(null, "/api/share/" + token).bytes()
+                            + client.download(null, "/api/share/" + token + "/download").bytes();
+                }
+                default -> client.get(user.token(),
+                        "/api/files/search?q=" + LoadTestClient.query(WORDS[random.nextInt(WORDS.length)])).bytes();
+            };
+            scenario.success(System.nanoTime() - start, bytes);
+        } catch (Exception e) {
+            scenario.failure();
+        }
+    }
+
+    private LoadTestClient.Result uploadNew(UserSession user) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String name = WORDS[random.nextInt(WORDS.length)] + "-" + fileCounter.incrementAndGet() + ".txt";
+        Long folderId = random.nextInt(4) == 0 ? null : user.folderIds().get(random.nextInt(user.folderIds().size()));
+        // One upload in five repeats existing content, to exercise deduplication
+        return client.upload(user.token(), name, content(random.nextInt(5) == 0), folderId);
+    }
+
+    private byte[] content(boolean duplicate) {
+        ThreadLocalRandom random = duplicate ? null : ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder(fileSize);
+        int i = 0;
+        while (sb.length() < fileSize) {
+            sb.append(WORDS[random != null ? random.nextInt(WORDS.length) : i++ % WORDS.length]).append(' ');
+        }
+        return sb.substring(0, fileSize).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> result) {
+        System.out.printf("%n%-20s %9s %7s %10s %10s %10s %10s%n", "Scenario", "Requests", "Errors", "Req/s", "p50 ms", "p99 ms", "max ms");
+        for (ScenarioStats.Snapshot s : (List<ScenarioStats.Snapshot>) result.get("scenarios")) {
+            System.out.printf("%-20s %9d %7d %10.1f %10.1f %10.1f %10.1f%n",
+                    s.scenario(), s.requests(), s.errors(), s.throughput(), s.p50Millis(), s.p99Millis(), s.maxMillis());
+        }
+        System.out.printf("Total throughput: %.1f req/s%n", (double) result.get("totalThroughput"));
+        System.out.println("Heap: " + result.get("heap"));
+    }
+
+    private static void write(Map<String, Object> result) throws IOException {
+        Path out = Path.of("target", "loadtest-result.json");
+        Files.createDirectories(out.getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out.toFile(), result);
+        System.out.println("Results written to " + out);
+    }
+}
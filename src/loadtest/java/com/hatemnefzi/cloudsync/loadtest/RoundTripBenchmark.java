@@ -0,0 +1,220 @@
+package com.hatemnefzi.cloudsync.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hatemnefzi.cloudsync.CloudsyncApplication;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Database round trips per API operation: counts every statement execution, batch and commit
+ * the application sends to Postgres while a single client repeats uploads and bulk operations.
+ *
+ * Run with -Dloadtest.batching=false to measure the same build with JDBC batching switched
+ * off, which issues one statement per row the way identity keys used to. Results go to
+ * target/roundtrip-result.json.
+ */
+public class RoundTripBenchmark {
+
+    private static final String PASSWORD = "benchmark-password";
+    private static final Set<String> EXECUTE_METHODS = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    private final int iterations = Integer.getInteger("loadtest.iterations", 50);
+    private final int bulkSize = Integer.getInteger("loadtest.bulk-size", 100);
+    private final boolean batching = Boolean.parseBoolean(System.getProperty("loadtest.batching", "true"));
+
+    private final AtomicLong roundTrips = new AtomicLong();
+    private LoadTestClient client;
+
+    public static void main(String[] args) throws Exception {
+        new RoundTripBenchmark().run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        Path uploadDir = Files.createTempDirectory("cloudsync-roundtrips");
+        try (PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")) {
+            postgres.start();
+
+            List<String> args = new ArrayList<>(List.of(
+                    "--server.port=0",
+                    "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                    "--spring.datasource.username=" + postgres.getUsername(),
+                    "--spring.datasource.password=" + postgres.getPassword(),
+                    "--storage.type=local",
+                    "--storage.local.upload-dir=" + uploadDir,
+                    "--app.push.redis.enabled=false",
+                    "--app.rate-limit.enabled=false",
+                    "--jwt.secret=benchmark-secret-benchmark-secret-benchmark-secret",
+                    "--logging.level.com.hatemnefzi=WARN"));
+            if (!batching) {
+                args.add("--spring.jpa.properties.hibernate.jdbc.batch_size=0");
+                args.add("--spring.jpa.properties.hibernate.order_inserts=false");
+                args.add("--spring.jpa.properties.hibernate.order_updates=false");
+                args.add("--spring.datasource.hikari.data-source-properties.reWriteBatchedInserts=false");
+            }
+
+            SpringApplication application = new SpringApplication(CloudsyncApplication.class);
+            application.addInitializers(context -> context.getBeanFactory().addBeanPostProcessor(countingDataSource()));
+            try (ConfigurableApplicationContext context = application.run(args.toArray(String[]::new))) {
+                client = new LoadTestClient("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+
+                Map<String, Object> result = measure();
+                print(result);
+                write(result);
+            }
+        }
+    }
+
+    private Map<String, Object> measure() throws IOException {
+        String token = client.register("roundtrips@example.com", PASSWORD);
+        long folderA = client.createFolder(token, "a", null).body().path("id").asLong();
+        long folderB = client.createFolder(token, "b", null).body().path("id").asLong();
+
+        List<Long> fileIds = new ArrayList<>();
+        for (int i = 0; i < bulkSize; i++) {
+            fileIds.add(client.upload(token, "seed-" + i + ".txt", content("seed-" + i), folderA).body().path("id").asLong());
+        }
+        Map<String, Object> selection = Map.of("fileIds", fileIds);
+
+        Map<String, Map<String, Object>> operations = new LinkedHashMap<>();
+        int[] counter = {0};
+        operations.put("upload", op(() -> client.upload(token, "file-" + counter[0]++ + ".txt",
+                content("file-" + counter[0]), folderA)));
+        operations.put("versioned-update", op(() -> client.update(token, fileIds.get(0), "seed-0.txt",
+                content("update-" + counter[0]++))));
+        operations.put("create-folder", op(() -> client.createFolder(token, "folder-" + counter[0]++, folderA)));
+        operations.put("bulk-share", op(() -> client.post(token, "/api/files/bulk/share", selection)));
+        operations.put("bulk-move", op(() -> client.post(token, "/api/files/bulk/move", Map.of(
+                "fileIds", fileIds, "targetFolderId", counter[0]++ % 2 == 0 ? folderB : folderA))));
+        operations.put("bulk-delete+restore", op(() -> {
+            client.post(token, "/api/files/bulk/delete", selection);
+            return client.post(token, "/api/files/bulk/restore", selection);
+        }));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("timestamp", Instant.now().toString());
+        result.put("batching", batching);
+        result.put("iterations", iterations);
+        result.put("bulkSize", bulkSize);
+        result.put("operations", operations);
+        return result;
+    }
+
+    private interface Operation {
+        LoadTestClient.Result call() throws IOException;
+    }
+
+    private Map<String, Object> op(Operation operation) throws IOException {
+        long before = roundTrips.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.call();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("roundTripsPerOp", (roundTrips.get() - before) / (double) iterations);
+        stats.put("millisPerOp", (System.nanoTime() - start) / 1e6 / iterations);
+        return stats;
+    }
+
+    private static byte[] content(String seed) {
+        return ("round trip benchmark " + seed + "\n").repeat(64).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Wraps the application's DataSource so every exchange with the database is counted
+    private BeanPostProcessor countingDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && beanName.equals("dataSource")) {
+                    return new DelegatingDataSource(dataSource) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            return countingConnection(super.getConnection());
+                        }
+                    };
+                }
+                return bean;
+            }
+        };
+    }
+
+    private Connection countingConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (method.getName().equals("commit") || method.getName().equals("rollback")) {
+                        roundTrips.incrementAndGet();
+                    }
+                    if (result instanceof CallableStatement statement) {
+                        return countingStatement(statement, CallableStatement.class);
+                    }
+                    if (result instanceof PreparedStatement statement) {
+                        return countingStatement(statement, PreparedStatement.class);
+                    }
+                    if (result instanceof Statement statement) {
+                        return countingStatement(statement, Statement.class);
+                    }
+                    return result;
+                });
+    }
+
+    private Object countingStatement(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (EXECUTE_METHODS.contains(method.getName())) {
+                        roundTrips.incrementAndGet();
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> result) {
+        System.out.printf("%nBatching %s, %d iterations, bulk size %d%n",
+                (boolean) result.get("batching") ? "on" : "off", result.get("iterations"), result.get("bulkSize"));
+        System.out.printf("%-22s %14s %10s%n", "Operation", "Round trips", "ms/op");
+        ((Map<String, Map<String, Object>>) result.get("operations")).forEach((name, stats) ->
+                System.out.printf("%-22s %14.1f %10.1f%n", name, stats.get("roundTripsPerOp"), stats.get("millisPerOp")));
+    }
+
+    private static void write(Map<String, Object> result) throws IOException {
+        Path out = Path.of("target", "roundtrip-result.json");
+        Files.createDirectories(out.getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out.toFile(), result);
+        System.out.println("Results written to " + out);
+    }
+}
@@ -0,0 +1,72 @@
+package com.hatemnefzi.cloudsync.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count of one scenario. Safe to record from many threads.
+ */
+class ScenarioStats {
+
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toNanos(5);
+
+    private final String name;
+    private final int weight;
+    private final Recorder recorder = new Recorder(MAX_LATENCY, 3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    ScenarioStats(String name, int weight) {
+        this.name = name;
+        this.weight = weight;
+    }
+
+    String name() {
+        return name;
+    }
+
+    int weight() {
+        return weight;
+    }
+
+    void success(long nanos, long transferredBytes) {
+        recorder.recordValue(Math.min(nanos, MAX_LATENCY));
+        bytes.add(transferredBytes);
+    }
+
+    void failure() {
+        errors.increment();
+    }
+
+    /**
+     * Discard everything recorded so far (end of warmup)
+     */
+    void reset() {
+        recorder.reset();
+        errors.reset();
+        bytes.reset();
+    }
+
+    Snapshot snapshot(double seconds) {
+        Histogram histogram = recorder.getIntervalHistogram();
+        return new Snapshot(
+                name,
+                histogram.getTotalCount(),
+                errors.sum(),
+                histogram.getTotalCount() / seconds,
+                bytes.sum() / seconds,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    record Snapshot(String scenario, long requests, long errors, double throughput, double bytesPerSecond,
+                    double p50Millis, double p99Millis, double maxMillis) {}
+}
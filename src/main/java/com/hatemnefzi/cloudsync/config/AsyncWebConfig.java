@@ -0,0 +1,41 @@
+package com.hatemnefzi.cloudsync.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AsyncWebConfig implements WebMvcConfigurer, DisposableBean {
+
+    private final ThreadPoolTaskExecutor streamExecutor = new ThreadPoolTaskExecutor();
+
+    /**
+     * Streamed downloads and exports hold a thread for as long as the client takes to read
+     * them, so they get their own pool instead of the shared application executor. When the
+     * pool and its queue are full, new streams are refused rather than queued without bound.
+     */
+    public AsyncWebConfig(@Value("${app.downloads.stream.threads:64}") int threads,
+                          @Value("${app.downloads.stream.queue-capacity:256}") int queueCapacity) {
+        streamExecutor.setCorePoolSize(threads);
+        streamExecutor.setMaxPoolSize(threads);
+        streamExecutor.setQueueCapacity(queueCapacity);
+        streamExecutor.setAllowCoreThreadTimeOut(true);
+        streamExecutor.setThreadNamePrefix("download-stream-");
+        streamExecutor.setDaemon(true);
+        streamExecutor.initialize();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // The timeout stays on spring.mvc.async.request-timeout; event streams set their own
+        configurer.setTaskExecutor(streamExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        streamExecutor.shutdown();
+    }
+}
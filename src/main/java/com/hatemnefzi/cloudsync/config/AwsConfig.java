@@ -2,6 +2,7 @@ package com.hatemnefzi.cloudsync.config;
 
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import org.springframework.beans.factory.annotation.Value;
@@ -20,19 +21,29 @@ public class AwsConfig {
     @Value("${AWS_REGION:eu-west-3}")
     private String region;
 
+    // S3-compatible endpoint (MinIO, LocalStack); empty means AWS
+    @Value("${storage.s3.endpoint:}")
+    private String endpoint;
+
     @Bean
     public AmazonS3 amazonS3() {
+        AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard();
+
+        if (endpoint.isEmpty()) {
+            builder.withRegion(region);
+        } else {
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                    .withPathStyleAccessEnabled(true);
+        }
+
         // If no credentials provided, try default credential chain
         if (accessKey.isEmpty() || secretKey.isEmpty()) {
-            return AmazonS3ClientBuilder.standard()
-                    .withRegion(region)
-                    .build();
+            return builder.build();
         }
 
         BasicAWSCredentials credentials = new BasicAWSCredentials(accessKey, secretKey);
-        return AmazonS3ClientBuilder.standard()
+        return builder
                 .withCredentials(new AWSStaticCredentialsProvider(credentials))
-                .withRegion(region)
                 .build();
     }
 }
\ No newline at end of file
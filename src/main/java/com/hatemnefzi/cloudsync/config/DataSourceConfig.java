@@ -0,0 +1,114 @@
+package com.hatemnefzi.cloudsync.config;
+
+import com.hatemnefzi.cloudsync.datasource.ReadYourWrites;
+import com.hatemnefzi.cloudsync.datasource.ReplicaRoutingDataSource;
+import com.hatemnefzi.cloudsync.datasource.ReplicaSet;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replicas.enabled", havingValue = "true")
+@Slf4j
+public class DataSourceConfig {
+
+    @Value("${app.datasource.replicas.urls:}")
+    private String replicaUrls;
+
+    @Value("${app.datasource.replicas.username:${spring.datasource.username}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replicas.password:${spring.datasource.password}}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.replicas.pool-size:20}")
+    private int replicaPoolSize;
+
+    @Value("${app.datasource.replicas.max-lag:5s}")
+    private Duration maxLag;
+
+    @Value("${app.datasource.replicas.lag-check-interval:1s}")
+    private Duration lagCheckInterval;
+
+    @Value("${app.datasource.read-your-writes.window:15s}")
+    private Duration readYourWritesWindow;
+
+    @Value("${app.datasource.read-your-writes.max-users:100000}")
+    private long readYourWritesMaxUsers;
+
+    /**
+     * The primary pool, configured from spring.datasource as usual
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ReplicaSet replicaSet(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        List<String> urls = Arrays.stream(replicaUrls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("app.datasource.replicas.enabled is set but no replica urls are configured");
+        }
+
+        Map<String, HikariDataSource> dataSources = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + (i + 1));
+            dataSource.setJdbcUrl(urls.get(i));
+            dataSource.setUsername(replicaUsername);
+            dataSource.setPassword(replicaPassword);
+            dataSource.setDriverClassName(properties.determineDriverClassName());
+            dataSource.setMaximumPoolSize(replicaPoolSize);
+            dataSource.setReadOnly(true);
+            // Fail over to the primary quickly instead of queueing behind a dead replica
+            dataSource.setConnectionTimeout(2000);
+            dataSource.setInitializationFailTimeout(-1);
+            dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            dataSources.put(dataSource.getPoolName(), dataSource);
+        }
+
+        log.info("📚 Routing read-only transactions to {} replica(s), max lag {}", urls.size(), maxLag);
+        return new ReplicaSet(dataSources, maxLag, lagCheckInterval, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaSet replicaSet, MeterRegistry meterRegistry) {
+        if (readYourWritesWindow.compareTo(maxLag) <= 0) {
+            log.warn("Read-your-writes window {} is not above the replica max lag {}: users may miss their own writes",
+                    readYourWritesWindow, maxLag);
+        }
+        ReadYourWrites readYourWrites = new ReadYourWrites(readYourWritesWindow, readYourWritesMaxUsers);
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primaryDataSource, replicaSet, readYourWrites,
+                meterRegistry);
+        routing.afterPropertiesSet();
+
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routing);
+        // Pool defaults, so the proxy doesn't borrow a connection just to find them out
+        proxy.setDefaultAutoCommit(primaryDataSource.isAutoCommit());
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return proxy;
+    }
+}
@@ -0,0 +1,25 @@
+package com.hatemnefzi.cloudsync.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+@ConditionalOnProperty(name = "app.push.redis.enabled", havingValue = "true", matchIfMissing = true)
+public class PushConfig {
+
+    /**
+     * Subscriptions for push fan-out between nodes. Delivery only queues the event on the
+     * local streams, so it runs on the Redis client thread instead of a thread per message.
+     */
+    @Bean
+    public RedisMessageListenerContainer pushListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(new SyncTaskExecutor());
+        return container;
+    }
+}
@@ -1,15 +1,27 @@
 package com.hatemnefzi.cloudsync.config;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.hatemnefzi.cloudsync.service.storage.CompressingStorageService;
+import com.hatemnefzi.cloudsync.service.storage.InstrumentedStorageService;
 import com.hatemnefzi.cloudsync.service.storage.LocalStorageService;
 import com.hatemnefzi.cloudsync.service.storage.S3StorageService;
 import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import com.hatemnefzi.cloudsync.service.storage.TieredStorageService;
+import com.hatemnefzi.cloudsync.service.storage.erasure.ErasureCodedStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 
 @Configuration
 @Slf4j
@@ -21,15 +33,95 @@ public class StorageConfig {
     @Value("${storage.s3.bucket-name}")
     private String bucketName;
 
+    @Value("${storage.local.upload-dir}")
+    private String uploadDir;
+
+    @Value("${storage.local.fsync:batch}")
+    private LocalStorageService.FsyncMode fsyncMode;
+
+    @Value("${storage.local.fsync-batch-window:0ms}")
+    private Duration fsyncBatchWindow;
+
+    @Value("${storage.erasure.dirs:}")
+    private List<String> erasureDirs;
+
+    @Value("${storage.erasure.data-shards:4}")
+    private int dataShards;
+
+    @Value("${storage.erasure.parity-shards:2}")
+    private int parityShards;
+
+    @Value("${storage.erasure.chunk-size:256KB}")
+    private DataSize erasureChunkSize;
+
+    @Value("${storage.erasure.scrub-interval:24h}")
+    private Duration scrubInterval;
+
+    @Value("${storage.erasure.scrub-rate:20MB}")
+    private DataSize scrubRate;
+
+    @Value("${storage.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    @Value("${storage.compression.min-size:4096}")
+    private long compressionMinSize;
+
+    @Value("${storage.compression.zstd-level:3}")
+    private int zstdLevel;
+
+    @Value("${storage.tiered.cache-dir:./cache}")
+    private String cacheDir;
+
+    @Value("${storage.tiered.max-size:10GB}")
+    private DataSize cacheMaxSize;
+
+    @Value("${storage.tiered.max-object-size:256MB}")
+    private DataSize cacheMaxObjectSize;
+
+    @Value("${storage.tiered.cache-uploads:true}")
+    private boolean cacheUploads;
+
+    // Kept to stop its scrubber on shutdown
+    private ErasureCodedStorageService erasure;
+
+    @PreDestroy
+    void stopErasure() {
+        if (erasure != null) {
+            erasure.close();
+        }
+    }
+
     @Bean
     @Primary
-    public StorageService storageService(AmazonS3 amazonS3) {
-        if ("s3".equalsIgnoreCase(storageType)) {
+    public StorageService storageService(AmazonS3 amazonS3, MeterRegistry meterRegistry) throws IOException {
+        StorageService backend;
+        if ("tiered".equalsIgnoreCase(storageType)) {
+            log.info("🟣 Using S3 Storage Service behind a {} local cache in {}", cacheMaxSize, cacheDir);
+            StorageService s3 = new InstrumentedStorageService(new S3StorageService(amazonS3, bucketName), "s3", meterRegistry);
+            backend = new InstrumentedStorageService(new TieredStorageService(s3, Path.of(cacheDir),
+                    cacheMaxSize.toBytes(), cacheMaxObjectSize.toBytes(), cacheUploads, meterRegistry), "tiered", meterRegistry);
+        } else if ("erasure".equalsIgnoreCase(storageType)) {
+            log.info("🟤 Using erasure-coded storage ({}+{}) over {}", dataShards, parityShards, erasureDirs);
+            erasure = new ErasureCodedStorageService(
+                    erasureDirs.stream().map(String::trim).filter(dir -> !dir.isEmpty()).map(Path::of).toList(),
+                    dataShards, parityShards, (int) erasureChunkSize.toBytes(), meterRegistry);
+            if (!scrubInterval.isZero()) {
+                erasure.startScrubber(scrubInterval, scrubRate.toBytes());
+            }
+            backend = new InstrumentedStorageService(erasure, "erasure", meterRegistry);
+        } else if ("s3".equalsIgnoreCase(storageType)) {
             log.info("🔵 Using S3 Storage Service");
-            return new S3StorageService(amazonS3, bucketName);
+            backend = new InstrumentedStorageService(new S3StorageService(amazonS3, bucketName), "s3", meterRegistry);
         } else {
-            log.info("🟡 Using Local Storage Service");
-            return new LocalStorageService();
+            log.info("🟡 Using Local Storage Service (fsync {})", fsyncMode);
+            backend = new InstrumentedStorageService(new LocalStorageService(uploadDir, fsyncMode, fsyncBatchWindow),
+                    "local", meterRegistry);
+        }
+
+        if (compressionEnabled) {
+            log.info("🗜️ Compression enabled (min size {} bytes, zstd level {})", compressionMinSize, zstdLevel);
+            return new CompressingStorageService(backend, compressionMinSize, zstdLevel);
         }
+        return backend;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package com.hatemnefzi.cloudsync.controller;
+
+import com.hatemnefzi.cloudsync.dto.ChangeFeedResponse;
+import com.hatemnefzi.cloudsync.service.ChangeJournalService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/changes")
+@RequiredArgsConstructor
+public class ChangeController {
+
+    private final ChangeJournalService changeJournalService;
+
+    // GET /api/changes?since=<cursor> - file and folder changes after the cursor, oldest first
+    @GetMapping
+    public ResponseEntity<ChangeFeedResponse> getChanges(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "500") int limit,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        ChangeFeedResponse changes = changeJournalService.getChanges(userId, since, limit);
+        return ResponseEntity.ok(changes);
+    }
+}
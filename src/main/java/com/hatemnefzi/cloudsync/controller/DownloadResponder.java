@@ -0,0 +1,291 @@
+package com.hatemnefzi.cloudsync.controller;
+
+import com.hatemnefzi.cloudsync.dto.FileDownload;
+import com.hatemnefzi.cloudsync.entity.FileDerivative;
+import com.hatemnefzi.cloudsync.security.RateLimitFilter;
+import com.hatemnefzi.cloudsync.service.export.ZipExport;
+import com.hatemnefzi.cloudsync.service.export.ZipExportService;
+import com.hatemnefzi.cloudsync.service.integrity.ContentIntegrityService;
+import com.hatemnefzi.cloudsync.service.ratelimit.BucketSubject;
+import com.hatemnefzi.cloudsync.service.ratelimit.RateLimitPolicy;
+import com.hatemnefzi.cloudsync.service.storage.CompressionCodec;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import com.hatemnefzi.cloudsync.service.storage.StoredObject;
+import com.hatemnefzi.cloudsync.util.ContentTypes;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams file content to the client, negotiating Content-Encoding and serving byte ranges.
+ *
+ * Objects already stored as zstd are sent as-is to clients that accept zstd. Other
+ * compressible content is encoded on the fly (zstd, then gzip). Range requests are always
+ * answered with identity-encoded bytes, read in place when the object is stored uncompressed.
+ *
+ * With app.integrity.verify-on-read, full downloads of decoded content are hashed as they
+ * stream and checked against the file's checksum at the end. Zstd passthrough and byte
+ * ranges never see the whole decoded content and are left to the scrubber.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DownloadResponder {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final StorageService storageService;
+    private final ZipExportService zipExportService;
+    private final RateLimitPolicy rateLimitPolicy;
+    private final ContentIntegrityService integrityService;
+
+    @Value("${app.downloads.min-compress-size:1024}")
+    private long minCompressSize;
+
+    @Value("${app.downloads.zstd-level:3}")
+    private int zstdLevel;
+
+    @Value("${app.previews.cache-max-age:10m}")
+    private Duration previewMaxAge;
+
+    public ResponseEntity<StreamingResponseBody> respond(FileDownload download, MediaType contentType,
+                                                         String contentDisposition, HttpServletRequest request) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(contentType);
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null) {
+            return respondPartial(download, range, headers);
+        }
+
+        StoredObject stored = storageService.openStored(download.getStorageKey());
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+
+        // Stored bytes are already a zstd frame: no need to decode and re-encode
+        if (stored.codec() == CompressionCodec.ZSTD && accepts(acceptEncoding, "zstd")) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "zstd");
+            return ResponseEntity.ok().headers(headers).body(shaped(out -> copy(stored.content(), out)));
+        }
+
+        boolean compressible = download.getSize() >= minCompressSize
+                && ContentTypes.isTextual(download.getMimeType());
+
+        if (compressible && accepts(acceptEncoding, "zstd") && CompressionCodec.isZstdAvailable()) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "zstd");
+            return ResponseEntity.ok().headers(headers).body(shaped(out -> {
+                try (OutputStream zstd = CompressionCodec.ZSTD.wrap(StreamUtils.nonClosing(out), zstdLevel)) {
+                    copy(verified(stored.decoded(), download), zstd);
+                }
+            }));
+        }
+
+        if (compressible && accepts(acceptEncoding, "gzip")) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return ResponseEntity.ok().headers(headers).body(shaped(out -> {
+                GZIPOutputStream gzip = new GZIPOutputStream(StreamUtils.nonClosing(out), BUFFER_SIZE);
+                copy(verified(stored.decoded(), download), gzip);
+                gzip.finish();
+            }));
+        }
+
+        // identity also stops the servlet container from compressing the body itself
+        headers.set(HttpHeaders.CONTENT_ENCODING, "identity");
+        headers.setContentLength(download.getSize());
+        return ResponseEntity.ok().headers(headers).body(shaped(out -> copy(verified(stored.decoded(), download), out)));
+    }
+
+    /**
+     * Stream a ZIP archive; its length isn't known up front, so the response is chunked
+     */
+    public ResponseEntity<StreamingResponseBody> respondZip(ZipExport export) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/zip"));
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(export.fileName(), StandardCharsets.UTF_8)
+                .build());
+        headers.set(HttpHeaders.CONTENT_ENCODING, "identity");
+        return ResponseEntity.ok().headers(headers).body(shaped(out -> zipExportService.write(export, out)));
+    }
+
+    /**
+     * Serve a preview image. Previews are keyed by content, so the ETag only changes with the file's content
+     */
+    public ResponseEntity<StreamingResponseBody> respondPreview(FileDerivative preview, HttpServletRequest request) {
+        String etag = "\"" + preview.getChecksum() + "-" + preview.getMaxEdge() + "\"";
+        CacheControl cacheControl = CacheControl.maxAge(previewMaxAge).cachePrivate();
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(preview.getMimeType()));
+        headers.setContentLength(preview.getSize());
+        headers.set(HttpHeaders.CONTENT_ENCODING, "identity");
+        return ResponseEntity.ok().headers(headers).eTag(etag).cacheControl(cacheControl)
+                .body(shaped(out -> copy(storageService.getFileStream(preview.getStorageKey()), out)));
+    }
+
+    private ResponseEntity<StreamingResponseBody> respondPartial(FileDownload download, String rangeHeader,
+                                                                 HttpHeaders headers) throws IOException {
+        long length = download.getSize();
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            ranges = List.of();
+        }
+
+        if (ranges.size() != 1) {
+            // Multipart ranges are not supported: ignore the header and send everything
+            headers.set(HttpHeaders.CONTENT_ENCODING, "identity");
+            headers.setContentLength(length);
+            InputStream content = verified(storageService.getFileStream(download.getStorageKey()), download);
+            return ResponseEntity.ok().headers(headers).body(shaped(out -> copy(content, out)));
+        }
+
+        long start;
+        long end;
+        try {
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length);
+        } catch (IllegalArgumentException e) {
+            return unsatisfiable(length);
+        }
+        // HttpRange clamps the end to the length but lets a start past it through
+        if (start > end) {
+            return unsatisfiable(length);
+        }
+
+        long count = end - start + 1;
+        headers.set(HttpHeaders.CONTENT_ENCODING, "identity");
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        headers.setContentLength(count);
+
+        // Uncompressed objects are read from the start of the range, not decoded up to it
+        InputStream content = storageService.getRangeStream(download.getStorageKey(), start, count);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(shaped(out -> {
+            try (InputStream in = content) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = count;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        break;
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> unsatisfiable(long length) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                .build();
+    }
+
+    /**
+     * Pace a body by the bandwidth limits of whoever the request was charged to. The subjects
+     * are read here, on the request thread; the body is written later on an async thread.
+     */
+    @SuppressWarnings("unchecked")
+    private StreamingResponseBody shaped(StreamingResponseBody body) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object subjects = attributes == null ? null
+                : attributes.getAttribute(RateLimitFilter.SUBJECTS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (!(subjects instanceof List<?> list) || list.isEmpty()) {
+            return body;
+        }
+        return out -> {
+            try (OutputStream throttled = rateLimitPolicy.throttle(StreamUtils.nonClosing(out), (List<BucketSubject>) list)) {
+                body.writeTo(throttled);
+            }
+        };
+    }
+
+    // Objects stored before content blobs were tracked have no checksum and are served unverified
+    private InputStream verified(InputStream content, FileDownload download) {
+        if (!integrityService.isVerifyOnRead() || download.getChecksum() == null) {
+            return content;
+        }
+        return integrityService.verifying(content, download.getStorageKey(), download.getChecksum());
+    }
+
+    private static void copy(InputStream content, OutputStream out) throws IOException {
+        try (InputStream in = content) {
+            in.transferTo(out);
+        }
+    }
+
+    // If-None-Match may list several tags, or weak ones
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the Accept-Encoding header allows a coding (q=0 means refused)
+     */
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            String name = params[0].trim();
+            boolean refused = false;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(coding)) {
+                return !refused;
+            }
+            if (name.equals("*")) {
+                wildcard = !refused;
+            }
+        }
+        return wildcard;
+    }
+}
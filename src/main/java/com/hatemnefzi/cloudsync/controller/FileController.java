@@ -3,44 +3,98 @@ package com.hatemnefzi.cloudsync.controller;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.hatemnefzi.cloudsync.dto.BulkFileRequest;
+import com.hatemnefzi.cloudsync.dto.BulkOperationResponse;
+import com.hatemnefzi.cloudsync.dto.FileDownload;
 import com.hatemnefzi.cloudsync.dto.FileInfoResponse;
 import com.hatemnefzi.cloudsync.dto.FileUploadResponse;
 import com.hatemnefzi.cloudsync.dto.FileVersionResponse;
+import com.hatemnefzi.cloudsync.dto.PossessionProofRequest;
+import com.hatemnefzi.cloudsync.dto.UploadPreflightRequest;
+import com.hatemnefzi.cloudsync.dto.UploadPreflightResponse;
+import com.hatemnefzi.cloudsync.entity.FileDerivative;
+import com.hatemnefzi.cloudsync.service.BulkFileService;
 import com.hatemnefzi.cloudsync.service.FileService;
+import com.hatemnefzi.cloudsync.service.export.ZipExport;
+import com.hatemnefzi.cloudsync.service.export.ZipExportService;
+import com.hatemnefzi.cloudsync.service.preview.PreviewService;
+import com.hatemnefzi.cloudsync.service.upload.IdempotencyKeyReusedException;
+import com.hatemnefzi.cloudsync.service.upload.IdempotencyService;
+import com.hatemnefzi.cloudsync.service.upload.PreflightRejectedException;
+import com.hatemnefzi.cloudsync.service.upload.UploadPreflightService;
+import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;  // ← CORRECT IMPORT!
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/files")
 @RequiredArgsConstructor
 public class FileController {
 
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
     private final FileService fileService;
+    private final BulkFileService bulkFileService;
+    private final ZipExportService zipExportService;
+    private final PreviewService previewService;
+    private final DownloadResponder downloadResponder;
+    private final UploadPreflightService uploadPreflightService;
+    private final IdempotencyService idempotencyService;
     private final AmazonS3 s3Client;
 
     @Value("${storage.s3.bucket-name}")  // ← NOW THIS WILL WORK!
     private String bucketName;
 
+    // Retries with the same Idempotency-Key get the first response instead of a second file
     @PostMapping("/upload")
-    public ResponseEntity<FileUploadResponse> uploadFile(
+    public ResponseEntity<?> uploadFile(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "folderId", required = false) Long folderId,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
             Authentication authentication) throws IOException {
         
         Long userId = (Long) authentication.getPrincipal();
-        FileUploadResponse response = fileService.uploadFile(file, userId, folderId);
-        return ResponseEntity.ok(response);
+        String fingerprint = "upload:" + folderId + ":" + file.getOriginalFilename() + ":" + file.getSize();
+        return idempotent(userId, idempotencyKey, fingerprint, () -> fileService.uploadFile(file, userId, folderId));
+    }
+
+    // Upload skipping: is this SHA-256 and size already stored? If so, answer the challenge
+    @PostMapping("/preflight")
+    public ResponseEntity<UploadPreflightResponse> preflight(
+            @Valid @RequestBody UploadPreflightRequest request,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(uploadPreflightService.preflight(userId, request));
+    }
+
+    // Proof for a preflight challenge; creates the file without its bytes. 409 = upload normally
+    @PostMapping("/preflight/{challengeId}")
+    public ResponseEntity<?> commitPreflight(
+            @PathVariable String challengeId,
+            @Valid @RequestBody PossessionProofRequest request,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            Authentication authentication) throws IOException {
+        Long userId = (Long) authentication.getPrincipal();
+        try {
+            return idempotent(userId, idempotencyKey, "preflight:" + challengeId,
+                    () -> uploadPreflightService.commit(userId, challengeId, request.getProof()));
+        } catch (PreflightRejectedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
+        }
     }
 
     @GetMapping
@@ -51,19 +105,15 @@ public class FileController {
     }
 
     @GetMapping("/{fileId}/download")
-    public ResponseEntity<Resource> downloadFile(
+    public ResponseEntity<StreamingResponseBody> downloadFile(
             @PathVariable Long fileId,
-            Authentication authentication) throws IOException {
+            Authentication authentication,
+            HttpServletRequest request) throws IOException {
         
         Long userId = (Long) authentication.getPrincipal();
-        byte[] fileData = fileService.downloadFile(fileId, userId);
+        FileDownload download = fileService.downloadFile(fileId, userId);
         
-        ByteArrayResource resource = new ByteArrayResource(fileData);
-        
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment")
-                .body(resource);
+        return downloadResponder.respond(download, MediaType.APPLICATION_OCTET_STREAM, "attachment", request);
     }
 
     @DeleteMapping("/{fileId}")
@@ -76,6 +126,66 @@ public class FileController {
         return ResponseEntity.noContent().build();
     }
 
+    // Bulk operations: select files by fileIds or by folderId (+ recursive)
+    @PostMapping("/bulk/delete")
+    public ResponseEntity<BulkOperationResponse> bulkDelete(
+            @Valid @RequestBody BulkFileRequest request,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(bulkFileService.deleteFiles(request, userId));
+    }
+
+    @PostMapping("/bulk/restore")
+    public ResponseEntity<BulkOperationResponse> bulkRestore(
+            @Valid @RequestBody BulkFileRequest request,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(bulkFileService.restoreFiles(request, userId));
+    }
+
+    @PostMapping("/bulk/move")
+    public ResponseEntity<BulkOperationResponse> bulkMove(
+            @Valid @RequestBody BulkFileRequest request,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(bulkFileService.moveFiles(request, userId));
+    }
+
+    @PostMapping("/bulk/share")
+    public ResponseEntity<BulkOperationResponse> bulkShare(
+            @Valid @RequestBody BulkFileRequest request,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(bulkFileService.shareFiles(request, userId));
+    }
+
+    // Download a selection as a ZIP: fileIds, or folderId (+ recursive)
+    @PostMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportFiles(
+            @Valid @RequestBody BulkFileRequest request,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        ZipExport export = request.getFolderId() != null
+                ? zipExportService.exportFolder(request.getFolderId(), request.isRecursive(), userId)
+                : zipExportService.exportFiles(request.getFileIds(), userId);
+        return downloadResponder.respondZip(export);
+    }
+
+    // Thumbnail of an image or PDF; 202 while it is still being generated
+    @GetMapping("/{fileId}/preview")
+    public ResponseEntity<StreamingResponseBody> getPreview(
+            @PathVariable Long fileId,
+            @RequestParam(defaultValue = "256") int size,
+            Authentication authentication,
+            HttpServletRequest request) {
+        Long userId = (Long) authentication.getPrincipal();
+        Optional<FileDerivative> preview = previewService.getPreview(fileId, size, userId);
+        if (preview.isEmpty()) {
+            return ResponseEntity.accepted().header(HttpHeaders.RETRY_AFTER, "2").build();
+        }
+        return downloadResponder.respondPreview(preview.get(), request);
+    }
+
     @GetMapping("/folder/{folderId}")
     public ResponseEntity<List<FileInfoResponse>> getFilesInFolder(
             @PathVariable Long folderId,
@@ -116,14 +226,15 @@ public class FileController {
         }
     }
     @PutMapping("/{fileId}")
-public ResponseEntity<FileUploadResponse> updateFile(
+public ResponseEntity<?> updateFile(
         @PathVariable Long fileId,
         @RequestParam("file") MultipartFile file,
+        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
         Authentication authentication) throws IOException {
     
     Long userId = (Long) authentication.getPrincipal();
-    FileUploadResponse response = fileService.updateFile(fileId, file, userId);
-    return ResponseEntity.ok(response);
+    String fingerprint = "update:" + fileId + ":" + file.getOriginalFilename() + ":" + file.getSize();
+    return idempotent(userId, idempotencyKey, fingerprint, () -> fileService.updateFile(fileId, file, userId));
 }
 
 // GET /api/files/{fileId}/versions - List all versions
@@ -139,20 +250,17 @@ public ResponseEntity<List<FileVersionResponse>> getFileVersions(
 
 // GET /api/files/{fileId}/versions/{versionNumber}/download - Download specific version
 @GetMapping("/{fileId}/versions/{versionNumber}/download")
-public ResponseEntity<Resource> downloadFileVersion(
+public ResponseEntity<StreamingResponseBody> downloadFileVersion(
         @PathVariable Long fileId,
         @PathVariable Integer versionNumber,
-        Authentication authentication) throws IOException {
+        Authentication authentication,
+        HttpServletRequest request) throws IOException {
     
     Long userId = (Long) authentication.getPrincipal();
-    byte[] fileData = fileService.downloadFileVersion(fileId, versionNumber, userId);
-    
-    ByteArrayResource resource = new ByteArrayResource(fileData);
+    FileDownload download = fileService.downloadFileVersion(fileId, versionNumber, userId);
     
-    return ResponseEntity.ok()
-            .contentType(MediaType.APPLICATION_OCTET_STREAM)
-            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"file-v" + versionNumber + "\"")
-            .body(resource);
+    return downloadResponder.respond(download, MediaType.APPLICATION_OCTET_STREAM,
+            "attachment; filename=\"file-v" + versionNumber + "\"", request);
 }
 
 // POST /api/files/{fileId}/versions/{versionNumber}/restore - Restore old version
@@ -196,4 +304,21 @@ public ResponseEntity<List<FileInfoResponse>> getRecentFiles(
     List<FileInfoResponse> files = fileService.getRecentFiles(userId, limit);
     return ResponseEntity.ok(files);
 }
-}
\ No newline at end of file
+
+    private ResponseEntity<?> idempotent(Long userId, String idempotencyKey, String fingerprint,
+                                         IdempotencyService.Call<FileUploadResponse> call) throws IOException {
+        try {
+            IdempotencyService.Outcome<FileUploadResponse> outcome =
+                    idempotencyService.execute(userId, idempotencyKey, fingerprint, FileUploadResponse.class, call);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (outcome.replayed()) {
+                response.header(IDEMPOTENT_REPLAYED, "true");
+            }
+            return response.body(outcome.value());
+        } catch (IdempotencyKeyReusedException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    private record ErrorResponse(String error) {}
+}
@@ -3,11 +3,14 @@ package com.hatemnefzi.cloudsync.controller;
 import com.hatemnefzi.cloudsync.dto.FolderCreateRequest;
 import com.hatemnefzi.cloudsync.dto.FolderResponse;
 import com.hatemnefzi.cloudsync.service.FolderService;
+import com.hatemnefzi.cloudsync.service.export.ZipExport;
+import com.hatemnefzi.cloudsync.service.export.ZipExportService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -17,6 +20,8 @@ import java.util.List;
 public class FolderController {
 
     private final FolderService folderService;
+    private final ZipExportService zipExportService;
+    private final DownloadResponder downloadResponder;
 
     @PostMapping
     public ResponseEntity<FolderResponse> createFolder(
@@ -50,6 +55,17 @@ public class FolderController {
         return ResponseEntity.ok(tree);
     }
 
+    // Download a folder (and by default its subfolders) as a ZIP
+    @GetMapping("/{folderId}/export")
+    public ResponseEntity<StreamingResponseBody> exportFolder(
+            @PathVariable Long folderId,
+            @RequestParam(defaultValue = "true") boolean recursive,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        ZipExport export = zipExportService.exportFolder(folderId, recursive, userId);
+        return downloadResponder.respondZip(export);
+    }
+
     @DeleteMapping("/{folderId}")
     public ResponseEntity<Void> deleteFolder(
             @PathVariable Long folderId,
@@ -0,0 +1,26 @@
+package com.hatemnefzi.cloudsync.controller;
+
+import com.hatemnefzi.cloudsync.service.push.SseConnectionRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/push")
+@RequiredArgsConstructor
+public class PushController {
+
+    private final SseConnectionRegistry connectionRegistry;
+
+    // GET /api/push/stream - server-sent events for the account: change, shared-change, share, resync...
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(Authentication authentication, HttpServletRequest request) {
+        Long userId = (Long) authentication.getPrincipal();
+        return connectionRegistry.open(userId, request);
+    }
+}
@@ -1,15 +1,17 @@
 package com.hatemnefzi.cloudsync.controller;
 
-import com.hatemnefzi.cloudsync.dto.PublicFileDownload;
+import com.hatemnefzi.cloudsync.dto.FileDownload;
 import com.hatemnefzi.cloudsync.dto.PublicFileResponse;
+import com.hatemnefzi.cloudsync.dto.PublicFolderListing;
 import com.hatemnefzi.cloudsync.dto.ShareCreateRequest;
+import com.hatemnefzi.cloudsync.dto.ShareListing;
 import com.hatemnefzi.cloudsync.dto.ShareResponse;
 import com.hatemnefzi.cloudsync.service.ShareService;
+import com.hatemnefzi.cloudsync.service.export.ZipExport;
+import com.hatemnefzi.cloudsync.util.InvalidCursorException;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -25,6 +27,7 @@ import java.util.List;
 public class ShareController {
 
     private final ShareService shareService;
+    private final DownloadResponder downloadResponder;
 
     // Create share (private or public)
     @PostMapping("/shares")
@@ -36,20 +39,32 @@ public class ShareController {
         return ResponseEntity.ok(response);
     }
 
-    // Get shares I created
+    // Get shares I created, newest first. Paged once a cursor or limit is sent; X-Next-Cursor points at the next page
     @GetMapping("/shares/my")
-    public ResponseEntity<List<ShareResponse>> getMyShares(Authentication authentication) {
+    public ResponseEntity<?> getMyShares(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
         Long userId = (Long) authentication.getPrincipal();
-        List<ShareResponse> shares = shareService.getMyShares(userId);
-        return ResponseEntity.ok(shares);
+        try {
+            return withNextCursor(shareService.getMyShares(userId, cursor, limit));
+        } catch (InvalidCursorException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
     }
 
-    // Get shares where I'm the recipient
+    // Get shares where I'm the recipient, paged the same way
     @GetMapping("/shares/with-me")
-    public ResponseEntity<List<ShareResponse>> getSharedWithMe(Authentication authentication) {
+    public ResponseEntity<?> getSharedWithMe(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
         Long userId = (Long) authentication.getPrincipal();
-        List<ShareResponse> shares = shareService.getSharedWithMe(userId);
-        return ResponseEntity.ok(shares);
+        try {
+            return withNextCursor(shareService.getSharedWithMe(userId, cursor, limit));
+        } catch (InvalidCursorException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
     }
 
     // Revoke share
@@ -90,17 +105,14 @@ public class ShareController {
 
     // Download public file
     @GetMapping("/share/{shareToken}/download")
-    public ResponseEntity<?> downloadPublicFile(@PathVariable String shareToken) {
+    public ResponseEntity<?> downloadPublicFile(@PathVariable String shareToken, HttpServletRequest request) {
         try {
-            PublicFileDownload download = shareService.downloadPublicFile(shareToken);
-            
-            ByteArrayResource resource = new ByteArrayResource(download.getFileData());
+            FileDownload download = shareService.downloadPublicFile(shareToken);
             
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(download.getMimeType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, 
-                           "attachment; filename=\"" + download.getFileName() + "\"")
-                    .body(resource);
+            return downloadResponder.respond(download,
+                    MediaType.parseMediaType(download.getMimeType()),
+                    "attachment; filename=\"" + download.getFileName() + "\"",
+                    request);
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(new ErrorResponse(e.getMessage()));
@@ -110,6 +122,65 @@ public class ShareController {
         }
     }
 
+    // Browse a public folder share: subfolders of path plus one page of files
+    @GetMapping("/share/{shareToken}/files")
+    public ResponseEntity<?> listPublicFolder(
+            @PathVariable String shareToken,
+            @RequestParam(required = false) String path,
+            @RequestParam(defaultValue = "false") boolean recursive,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size) {
+        try {
+            PublicFolderListing listing = shareService.listPublicFolder(shareToken, path, recursive, page, size);
+            return ResponseEntity.ok(listing);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Download one file from a public folder share
+    @GetMapping("/share/{shareToken}/files/{fileId}/download")
+    public ResponseEntity<?> downloadPublicFolderFile(
+            @PathVariable String shareToken,
+            @PathVariable Long fileId,
+            HttpServletRequest request) {
+        try {
+            FileDownload download = shareService.downloadPublicFolderFile(shareToken, fileId);
+
+            return downloadResponder.respond(download,
+                    MediaType.parseMediaType(download.getMimeType()),
+                    "attachment; filename=\"" + download.getFileName() + "\"",
+                    request);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponse("Failed to download file: " + e.getMessage()));
+        }
+    }
+
+    // Download a public folder share as a ZIP
+    @GetMapping("/share/{shareToken}/export")
+    public ResponseEntity<?> exportPublicFolder(@PathVariable String shareToken) {
+        try {
+            ZipExport export = shareService.exportPublicFolder(shareToken);
+            return downloadResponder.respondZip(export);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
     // Simple error response class
     private record ErrorResponse(String error) {}
-}
\ No newline at end of file
+
+    private static ResponseEntity<List<ShareResponse>> withNextCursor(ShareListing listing) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (listing.getNextCursor() != null) {
+            response.header("X-Next-Cursor", listing.getNextCursor());
+        }
+        return response.body(listing.getShares());
+    }
+}
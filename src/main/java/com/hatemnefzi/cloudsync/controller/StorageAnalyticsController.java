@@ -0,0 +1,56 @@
+package com.hatemnefzi.cloudsync.controller;
+
+import com.hatemnefzi.cloudsync.dto.StorageGrowthPoint;
+import com.hatemnefzi.cloudsync.dto.StorageTypeUsage;
+import com.hatemnefzi.cloudsync.dto.StorageUsageResponse;
+import com.hatemnefzi.cloudsync.service.analytics.StorageAnalyticsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/analytics/storage")
+@RequiredArgsConstructor
+public class StorageAnalyticsController {
+
+    private final StorageAnalyticsService storageAnalyticsService;
+
+    // GET /api/analytics/storage - totals for the caller, with the largest MIME types
+    @GetMapping
+    public ResponseEntity<StorageUsageResponse> getUsage(
+            @RequestParam(defaultValue = "10") int types,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(storageAnalyticsService.getUserUsage(userId, types));
+    }
+
+    // GET /api/analytics/storage/folders/{folderId} - a folder and everything below it
+    @GetMapping("/folders/{folderId}")
+    public ResponseEntity<StorageUsageResponse> getFolderUsage(
+            @PathVariable Long folderId,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(storageAnalyticsService.getFolderUsage(folderId, userId));
+    }
+
+    // GET /api/analytics/storage/types - usage per MIME type, largest first
+    @GetMapping("/types")
+    public ResponseEntity<List<StorageTypeUsage>> getTypeUsage(
+            @RequestParam(defaultValue = "50") int limit,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(storageAnalyticsService.getTypeUsage(userId, limit));
+    }
+
+    // GET /api/analytics/storage/growth?days=30 - net change per day
+    @GetMapping("/growth")
+    public ResponseEntity<List<StorageGrowthPoint>> getGrowth(
+            @RequestParam(defaultValue = "30") int days,
+            Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        return ResponseEntity.ok(storageAnalyticsService.getGrowth(userId, days));
+    }
+}
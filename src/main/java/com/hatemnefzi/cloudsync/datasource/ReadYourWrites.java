@@ -0,0 +1,34 @@
+package com.hatemnefzi.cloudsync.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+
+/**
+ * Users who committed a write recently, whose reads stay on the primary for a while so
+ * they never see a replica that hasn't caught up with their own change.
+ *
+ * Kept per node only. A request that lands on another node within the window may read from
+ * a replica up to max-lag behind and miss the write, so deployments that need the guarantee
+ * across nodes should route each user to one node (sticky sessions).
+ */
+public class ReadYourWrites {
+
+    private final Cache<Long, Boolean> recentWriters;
+
+    public ReadYourWrites(Duration window, long maxUsers) {
+        this.recentWriters = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(window)
+                .build();
+    }
+
+    public void wrote(Long userId) {
+        recentWriters.put(userId, Boolean.TRUE);
+    }
+
+    public boolean isPinned(Long userId) {
+        return recentWriters.getIfPresent(userId) != null;
+    }
+}
@@ -0,0 +1,148 @@
+package com.hatemnefzi.cloudsync.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read replicas and how far each is behind the primary.
+ *
+ * Lag is polled in the background, so picking a replica on the query path is a few volatile
+ * reads. A replica that is too far behind, or that can't be reached, is skipped until it
+ * catches up.
+ */
+@Slf4j
+public class ReplicaSet {
+
+    // Replay delay in ms; 0 when every received WAL record is applied. NULL when nothing has been
+    // replayed yet or the replica isn't streaming from the primary: a disconnected replica has
+    // applied all it received but may be far behind. Without pg_read_all_stats the receiver's
+    // status reads as NULL, and a running receiver is taken as streaming.
+    private static final String LAG_QUERY = """
+            SELECT CASE
+                     WHEN NOT pg_is_in_recovery() THEN 0
+                     WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver
+                                      WHERE coalesce(status, 'streaming') = 'streaming') THEN NULL
+                     WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                     ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000
+                   END""";
+
+    private static final long UNAVAILABLE = -1;
+
+    private final List<Replica> replicas;
+    private final Duration maxLag;
+    private final Duration checkInterval;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private ScheduledExecutorService scheduler;
+
+    public ReplicaSet(Map<String, HikariDataSource> dataSources, Duration maxLag, Duration checkInterval,
+                      MeterRegistry meterRegistry) {
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+        this.replicas = new ArrayList<>(dataSources.size());
+        dataSources.forEach((name, dataSource) -> {
+            Replica replica = new Replica(name, dataSource);
+            replicas.add(replica);
+            Gauge.builder("cloudsync.db.replica.lag", replica, r -> r.lagMillis)
+                    .description("Replay lag of a read replica, -1 while unreachable")
+                    .baseUnit("milliseconds")
+                    .tag("replica", name)
+                    .register(meterRegistry);
+        });
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkLag, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    Map<Object, Object> targetDataSources() {
+        Map<Object, Object> targets = new HashMap<>();
+        replicas.forEach(replica -> targets.put(replica.name, replica.dataSource));
+        return targets;
+    }
+
+    /**
+     * Next replica within the lag bound, round-robin, or null when none is usable
+     */
+    String pick() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        long maxLagMillis = maxLag.toMillis();
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            long lag = replica.lagMillis;
+            if (lag != UNAVAILABLE && lag <= maxLagMillis) {
+                return replica.name;
+            }
+        }
+        return null;
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            long previous = replica.lagMillis;
+            replica.lagMillis = measureLag(replica.dataSource);
+            boolean usable = replica.lagMillis != UNAVAILABLE && replica.lagMillis <= maxLag.toMillis();
+            boolean wasUsable = previous != UNAVAILABLE && previous <= maxLag.toMillis();
+            if (usable && !wasUsable) {
+                log.info("Replica {} in rotation: lag={} ms", replica.name, replica.lagMillis);
+            } else if (!usable && wasUsable) {
+                log.warn("Replica {} out of rotation: lag={} ms", replica.name, replica.lagMillis);
+            }
+        }
+    }
+
+    private long measureLag(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout((int) Math.max(1, checkInterval.toSeconds()));
+            try (ResultSet result = statement.executeQuery(LAG_QUERY)) {
+                result.next();
+                double lag = result.getDouble(1);
+                return result.wasNull() ? UNAVAILABLE : Math.max(0, Math.round(lag));
+            }
+        } catch (SQLException e) {
+            log.debug("Replica lag check failed: {}", e.getMessage());
+            return UNAVAILABLE;
+        }
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final HikariDataSource dataSource;
+        // Unavailable until the first check succeeds
+        private volatile long lagMillis = UNAVAILABLE;
+
+        private Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import jakarta.validation.constraints.Email;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.hatemnefzi.cloudsync.entity.SharePermission;
+
+@Data
+public class BulkFileRequest {
+
+    // Selection: explicit IDs, or every file in a folder (not both)
+    private List<Long> fileIds;
+    private Long folderId;
+    private boolean recursive; // include files in subfolders of folderId
+
+    // Move
+    private Long targetFolderId; // null = root
+
+    // Share
+    @Email
+    private String sharedWithEmail; // null for public links
+    private SharePermission permission; // VIEW or EDIT
+    private LocalDateTime expiresAt; // null = never expires
+}
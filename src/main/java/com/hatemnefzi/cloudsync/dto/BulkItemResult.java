@@ -0,0 +1,24 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkItemResult {
+
+    public enum Status {
+        OK,
+        NOT_FOUND,      // missing or not owned by the caller
+        SKIPPED,        // already in the requested state
+        QUOTA_EXCEEDED
+    }
+
+    private Long fileId;
+    private Status status;
+    private String shareToken; // public shares only
+}
@@ -0,0 +1,20 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkOperationResponse {
+    private String operation;
+    private int requested;
+    private int succeeded;
+    private int failed;
+    private List<BulkItemResult> results;
+}
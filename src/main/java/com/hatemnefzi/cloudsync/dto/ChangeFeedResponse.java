@@ -0,0 +1,18 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeFeedResponse {
+    private List<ChangeResponse> changes;
+    private Long cursor;      // Pass as ?since= on the next poll
+    private boolean hasMore;  // More changes are waiting past the cursor
+}
@@ -0,0 +1,23 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import com.hatemnefzi.cloudsync.entity.ChangeType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeResponse {
+    private Long seq;
+    private String entityType; // FILE, FOLDER
+    private Long entityId;
+    private ChangeType changeType;
+    private LocalDateTime changedAt;
+    private FileInfoResponse file;     // Current state, null once deleted
+    private FolderResponse folder;     // Current state, null once deleted
+}
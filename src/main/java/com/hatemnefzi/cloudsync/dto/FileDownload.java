@@ -9,8 +9,11 @@ import lombok.NoArgsConstructor;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class PublicFileDownload {
-    private byte[] fileData;
+public class FileDownload {
+    private Long fileId;
     private String fileName;
     private String mimeType;
-}
\ No newline at end of file
+    private Long size;
+    private String storageKey;
+    private String checksum;
+}
@@ -0,0 +1,12 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class PossessionProofRequest {
+
+    // Hex SHA-256 over the nonce bytes followed by the bytes of each challenged range, in order
+    @NotBlank
+    private String proof;
+}
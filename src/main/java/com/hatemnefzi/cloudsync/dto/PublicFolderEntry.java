@@ -0,0 +1,21 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PublicFolderEntry {
+    private Long id; // file id, used for downloads; null for folders
+    private String name;
+    private String path; // relative to the shared folder
+    private Long size;
+    private String mimeType;
+    private LocalDateTime updatedAt;
+}
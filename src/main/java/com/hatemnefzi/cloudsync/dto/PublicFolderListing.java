@@ -0,0 +1,26 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PublicFolderListing {
+    private String folderName;
+    private String path; // listed folder, relative to the shared folder ("" = shared folder itself)
+    private String sharedByName;
+    private LocalDateTime expiresAt;
+    private List<PublicFolderEntry> subfolders; // direct children of path
+    private List<PublicFolderEntry> files; // one page
+    private int page;
+    private int size;
+    private long totalFiles;
+    private boolean hasNext;
+}
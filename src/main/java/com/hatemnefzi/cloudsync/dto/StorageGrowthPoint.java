@@ -0,0 +1,21 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageGrowthPoint {
+    private LocalDate day;
+    private long filesAdded; // net: negative when more were deleted
+    private long fileBytesAdded;
+    private long versionBytesAdded;
+    private long fileBytes; // at the end of the day
+    private long totalBytes; // files, trash and versions at the end of the day
+}
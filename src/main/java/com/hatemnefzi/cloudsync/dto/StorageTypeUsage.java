@@ -0,0 +1,18 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageTypeUsage {
+    private String mimeType;
+    private long fileCount;
+    private long fileBytes;
+    private long trashCount;
+    private long trashBytes;
+}
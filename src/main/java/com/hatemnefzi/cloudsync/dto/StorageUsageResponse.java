@@ -0,0 +1,27 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageUsageResponse {
+    private Long folderId; // null = all of the user's files
+    private String path;
+    private long fileCount;
+    private long fileBytes;
+    private long trashCount;
+    private long trashBytes;
+    private long versionCount; // old versions kept in history, user totals only
+    private long versionBytes;
+    private double versionOverhead; // versionBytes / fileBytes
+    private Long storageUsed;
+    private Long storageLimit;
+    private List<StorageTypeUsage> types; // largest first
+}
@@ -0,0 +1,26 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+
+@Data
+public class UploadPreflightRequest {
+
+    @NotBlank
+    @Pattern(regexp = "[0-9a-fA-F]{64}")
+    private String checksum; // SHA-256 of the content, hex
+
+    @NotNull
+    @PositiveOrZero
+    private Long size;
+
+    @NotBlank
+    private String fileName;
+
+    private String mimeType;
+
+    private Long folderId; // null = root
+}
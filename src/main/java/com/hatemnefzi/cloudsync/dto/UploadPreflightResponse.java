@@ -0,0 +1,23 @@
+package com.hatemnefzi.cloudsync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadPreflightResponse {
+    private boolean exists; // false = upload the bytes as usual
+    private String challengeId;
+    private String nonce; // hex
+    private List<ByteRange> ranges;
+    private LocalDateTime expiresAt;
+
+    public record ByteRange(long offset, int length) {}
+}
@@ -8,7 +8,8 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "activities")
+@Table(name = "activities",
+       indexes = @Index(name = "idx_activities_user_created", columnList = "user_id, created_at DESC"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -16,7 +17,8 @@ import java.time.LocalDateTime;
 public class Activity {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "activities_seq")
+    @SequenceGenerator(name = "activities_seq", sequenceName = "activities_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -8,5 +8,6 @@ public enum ActivityType {
     RENAME,
     MOVE,
     CREATE_FOLDER,
-    RESTORE_VERSION
+    RESTORE_VERSION,
+    RESTORE
 }
\ No newline at end of file
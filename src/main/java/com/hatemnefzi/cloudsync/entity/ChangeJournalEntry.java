@@ -0,0 +1,45 @@
+package com.hatemnefzi.cloudsync.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * One mutation of a user's files or folders, numbered by a per-user sequence.
+ * Sync clients read the journal from their last seen sequence number.
+ */
+@Entity
+@Table(name = "change_journal",
+       uniqueConstraints = @UniqueConstraint(name = "uk_change_journal_user_seq", columnNames = {"user_id", "seq"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChangeJournalEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long seq;
+
+    @Column(nullable = false)
+    private String entityType; // FILE, FOLDER
+
+    @Column(nullable = false)
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ChangeType changeType;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,9 @@
+package com.hatemnefzi.cloudsync.entity;
+
+public enum ChangeType {
+    CREATED,
+    UPDATED,   // new content or new name
+    MOVED,
+    DELETED,
+    RESTORED
+}
@@ -0,0 +1,52 @@
+package com.hatemnefzi.cloudsync.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * One stored object per distinct content checksum, shared by every file
+ * and version that references it.
+ */
+@Entity
+@Table(name = "content_blobs",
+       uniqueConstraints = @UniqueConstraint(name = "uk_content_blobs_checksum", columnNames = "checksum"),
+       indexes = {
+           @Index(name = "idx_content_blobs_storage_key", columnList = "storage_key"),
+           @Index(name = "idx_content_blobs_verified_at", columnList = "verified_at, id"),
+           @Index(name = "idx_content_blobs_size_fast_hash", columnList = "size, fast_hash")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ContentBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String checksum; // SHA-256 of the content
+
+    @Column(nullable = false)
+    private String storageKey; // Canonical S3 key or local path
+
+    @Column(nullable = false)
+    private Long size; // in bytes
+
+    private Long fastHash; // xxHash64 of the content, null for blobs stored before it was tracked
+
+    @Column(nullable = false)
+    private Long refCount; // Files + versions pointing at this object
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime verifiedAt; // Last read back by the scrubber
+
+    private LocalDateTime corruptedAt; // Set while the stored bytes don't match the checksum
+}
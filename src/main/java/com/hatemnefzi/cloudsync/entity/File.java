@@ -8,7 +8,14 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "files")
+// Partial indexes (deleted_at IS NULL) and the name trigram index are built by db/migration/V2
+@Table(name = "files", indexes = {
+        @Index(name = "idx_files_owner_folder_active", columnList = "owner_id, folder_id"),
+        @Index(name = "idx_files_owner_created_active", columnList = "owner_id, created_at DESC"),
+        @Index(name = "idx_files_folder", columnList = "folder_id"),
+        @Index(name = "idx_files_checksum", columnList = "checksum"),
+        @Index(name = "idx_files_storage_key", columnList = "storage_key")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -16,7 +23,8 @@ import java.time.LocalDateTime;
 public class File {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "files_seq")
+    @SequenceGenerator(name = "files_seq", sequenceName = "files_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false)
@@ -0,0 +1,51 @@
+package com.hatemnefzi.cloudsync.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A generated preview of some content, keyed by content checksum so that
+ * deduplicated files share their thumbnails.
+ */
+@Entity
+@Table(name = "file_derivatives",
+       uniqueConstraints = @UniqueConstraint(name = "uk_file_derivatives_checksum_edge", columnNames = {"checksum", "max_edge"}),
+       indexes = @Index(name = "idx_file_derivatives_storage_key", columnList = "storage_key"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FileDerivative {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String checksum; // SHA-256 of the original content
+
+    @Column(name = "max_edge", nullable = false)
+    private Integer maxEdge; // Requested bounding box in pixels (64, 256, ...)
+
+    @Column(nullable = false)
+    private String storageKey;
+
+    @Column(nullable = false)
+    private String mimeType;
+
+    @Column(nullable = false)
+    private Integer width;
+
+    @Column(nullable = false)
+    private Integer height;
+
+    @Column(nullable = false)
+    private Long size; // in bytes
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -7,7 +7,11 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "file_versions")
+@Table(name = "file_versions",
+       indexes = {
+               @Index(name = "idx_file_versions_file_version", columnList = "file_id, version_number DESC"),
+               @Index(name = "idx_file_versions_storage_key", columnList = "storage_key")
+       })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -15,7 +19,8 @@ import java.time.LocalDateTime;
 public class FileVersion {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_versions_seq")
+    @SequenceGenerator(name = "file_versions_seq", sequenceName = "file_versions_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -31,6 +36,9 @@ public class FileVersion {
     @Column(nullable = false)
     private Long size;
     
+    @Column
+    private String mimeType;
+    
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -7,7 +7,12 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "folders")
+// idx_folders_owner_path uses varchar_pattern_ops for prefix LIKE, see db/migration/V2
+@Table(name = "folders", indexes = {
+        @Index(name = "idx_folders_owner_parent", columnList = "owner_id, parent_id"),
+        @Index(name = "idx_folders_parent_name", columnList = "parent_id, name"),
+        @Index(name = "idx_folders_owner_path", columnList = "owner_id, path")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -15,7 +20,8 @@ import java.time.LocalDateTime;
 public class Folder {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "folders_seq")
+    @SequenceGenerator(name = "folders_seq", sequenceName = "folders_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false)
@@ -0,0 +1,64 @@
+package com.hatemnefzi.cloudsync.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A unit of background work, run by the job workers after the transaction that queued it
+ * has committed. Rows are written and claimed through JobRepository's native queries.
+ */
+@Entity
+@Table(name = "jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Job {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String type; // Selects the JobHandler
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload; // JSON
+
+    private String dedupKey;
+
+    @Column(nullable = false)
+    private Integer priority; // Higher runs first
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private JobStatus status;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    @Column(nullable = false)
+    private Integer maxAttempts;
+
+    @Column(nullable = false)
+    private LocalDateTime runAt; // Not before; pushed back after each failed attempt
+
+    private String lockedBy; // Worker running it
+
+    private LocalDateTime lockedAt;
+
+    @Column(columnDefinition = "text")
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,7 @@
+package com.hatemnefzi.cloudsync.entity;
+
+public enum JobStatus {
+    PENDING,   // waiting for run_at
+    RUNNING,
+    FAILED     // out of attempts; finished jobs are deleted
+}
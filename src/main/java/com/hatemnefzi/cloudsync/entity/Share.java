@@ -8,7 +8,12 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "shares")
+@Table(name = "shares", indexes = {
+        @Index(name = "idx_shares_shared_by_keyset", columnList = "shared_by_id, created_at DESC, id DESC"),
+        @Index(name = "idx_shares_shared_with_keyset", columnList = "shared_with_id, created_at DESC, id DESC"),
+        @Index(name = "idx_shares_file", columnList = "file_id"),
+        @Index(name = "idx_shares_folder", columnList = "folder_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -16,7 +21,8 @@ import java.time.LocalDateTime;
 public class Share {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "shares_seq")
+    @SequenceGenerator(name = "shares_seq", sequenceName = "shares_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
 public class User {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false, unique = true)
@@ -39,4 +40,8 @@ public class User {
     
     @Column
     private LocalDateTime lastLoginAt;
+
+    // Last change journal sequence number; only ever advanced by UserRepository.nextChangeSeq
+    @Column(nullable = false, insertable = false, updatable = false, columnDefinition = "bigint not null default 0")
+    private Long changeSeq;
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.hatemnefzi.cloudsync.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application meters for the upload/download hot paths.
+ *
+ * Histograms for everything under "cloudsync." are switched on in application.yml
+ * (management.metrics.distribution.percentiles-histogram).
+ */
+@Component
+public class CloudsyncMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer checksumTimer;
+    private final DistributionSummary checksumBytes;
+    private final Counter dedupHits;
+    private final Counter dedupMisses;
+    private final Timer activityWrite;
+
+    public CloudsyncMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.checksumTimer = Timer.builder("cloudsync.checksum")
+                .description("Time spent hashing uploaded content")
+                .register(registry);
+        this.checksumBytes = DistributionSummary.builder("cloudsync.checksum.bytes")
+                .description("Bytes hashed per upload")
+                .baseUnit("bytes")
+                .register(registry);
+        this.dedupHits = Counter.builder("cloudsync.upload.dedup")
+                .description("Uploads resolved against already stored content")
+                .tag("result", "hit")
+                .register(registry);
+        this.dedupMisses = Counter.builder("cloudsync.upload.dedup")
+                .description("Uploads resolved against already stored content")
+                .tag("result", "miss")
+                .register(registry);
+        this.activityWrite = Timer.builder("cloudsync.activity.write")
+                .description("Time to persist an activity log entry on the request path")
+                .register(registry);
+    }
+
+    public void recordChecksum(long bytes, long nanos) {
+        checksumTimer.record(nanos, TimeUnit.NANOSECONDS);
+        checksumBytes.record(bytes);
+    }
+
+    /**
+     * Time of one phase of an upload: checksum, storage or metadata
+     */
+    public void recordUploadPhase(String phase, long nanos) {
+        Timer.builder("cloudsync.upload.phase")
+                .description("Time spent in each phase of an upload")
+                .tag("phase", phase)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDedup(boolean hit) {
+        (hit ? dedupHits : dedupMisses).increment();
+    }
+
+    public void recordQuotaRejection(String operation) {
+        Counter.builder("cloudsync.quota.rejected")
+                .description("Uploads refused because the storage quota would be exceeded")
+                .tag("operation", operation)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Upload pre-flights by result: absent, challenged, verified or rejected
+     */
+    public void recordPreflight(String result) {
+        Counter.builder("cloudsync.upload.preflight")
+                .description("Uploads checked against stored content before sending any bytes")
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordActivityWrite(long nanos) {
+        activityWrite.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time to render and store the previews of one file, by source (image, pdf) and outcome
+     */
+    public void recordPreviewGeneration(String source, String outcome, long nanos) {
+        Timer.builder("cloudsync.preview.generation")
+                .description("Time to generate all preview sizes of one file")
+                .tag("source", source)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A request refused by a rate limit, by bucket scope (user, share, ip) and kind (requests, upload)
+     */
+    public void recordRateLimited(String scope, String kind) {
+        Counter.builder("cloudsync.ratelimit.rejected")
+                .description("Requests refused with 429 by a rate limit")
+                .tag("scope", scope)
+                .tag("kind", kind)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Time a download spent waiting on its bandwidth buckets
+     */
+    public void recordThrottleWait(long nanos) {
+        Timer.builder("cloudsync.ratelimit.throttled")
+                .description("Time downloads were held back by bandwidth limits")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * One run of a background job, by type and outcome (success, retry, failed)
+     */
+    public void recordJob(String type, String outcome, long nanos) {
+        Timer.builder("cloudsync.jobs.execution")
+                .description("Time to run one attempt of a background job")
+                .tag("type", type)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * One object checked against its checksum, by source (read, scrub) and result
+     * (ok, mismatch, unreadable, repaired)
+     */
+    public void recordIntegrityCheck(String source, String result) {
+        Counter.builder("cloudsync.integrity.checks")
+                .description("Stored objects checked against their SHA-256 checksum")
+                .tag("source", source)
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordScrubbedBytes(long bytes) {
+        Counter.builder("cloudsync.integrity.scrubbed.bytes")
+                .description("Bytes read back by the integrity scrubber")
+                .baseUnit("bytes")
+                .register(registry)
+                .increment(bytes);
+    }
+
+    public void recordPayload(String uri, String method, String direction, long bytes) {
+        DistributionSummary.builder("cloudsync.http.payload")
+                .description("Request and response body sizes per endpoint")
+                .baseUnit("bytes")
+                .tag("uri", uri)
+                .tag("method", method)
+                .tag("direction", direction)
+                .register(registry)
+                .record(bytes);
+    }
+}
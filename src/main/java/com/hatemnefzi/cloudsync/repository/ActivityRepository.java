@@ -5,7 +5,20 @@ import com.hatemnefzi.cloudsync.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
 
 public interface ActivityRepository extends JpaRepository<Activity, Long> {
     Page<Activity> findByUserOrderByCreatedAtDesc(User user, Pageable pageable);
+
+    // One statement for the activity rows of a whole bulk operation
+    @Modifying
+    @Query(value = "INSERT INTO activities (user_id, action, entity_type, entity_id, created_at) " +
+                   "SELECT :userId, :action, :entityType, e.id, now() FROM files e WHERE e.id IN (:ids)",
+           nativeQuery = true)
+    int insertForFiles(@Param("userId") Long userId, @Param("action") String action,
+                       @Param("entityType") String entityType, @Param("ids") Collection<Long> ids);
 }
\ No newline at end of file
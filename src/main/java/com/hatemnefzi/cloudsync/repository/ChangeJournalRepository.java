@@ -0,0 +1,26 @@
+package com.hatemnefzi.cloudsync.repository;
+
+import com.hatemnefzi.cloudsync.entity.ChangeJournalEntry;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ChangeJournalRepository extends JpaRepository<ChangeJournalEntry, Long> {
+
+    // Range scan on (user_id, seq)
+    List<ChangeJournalEntry> findByUserIdAndSeqGreaterThanOrderBySeqAsc(Long userId, Long seq, Limit limit);
+
+    // Journal rows for a whole chunk of a bulk operation; seqs firstSeq, firstSeq + 1, ... in file id order
+    @Modifying
+    @Query(value = "INSERT INTO change_journal (user_id, seq, entity_type, entity_id, change_type, created_at) " +
+                   "SELECT :userId, :firstSeq - 1 + row_number() OVER (ORDER BY f.id), 'FILE', f.id, :changeType, now() " +
+                   "FROM files f WHERE f.id IN (:ids)",
+           nativeQuery = true)
+    int insertForFiles(@Param("userId") Long userId, @Param("firstSeq") long firstSeq,
+                       @Param("changeType") String changeType, @Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,75 @@
+package com.hatemnefzi.cloudsync.repository;
+import com.hatemnefzi.cloudsync.entity.ContentBlob;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, Long> {
+    Optional<ContentBlob> findByChecksum(String checksum);
+
+    @Query("select b.storageKey from ContentBlob b where b.checksum = :checksum")
+    Optional<String> findStorageKeyByChecksum(@Param("checksum") String checksum);
+
+    @Query("select b.checksum from ContentBlob b where b.storageKey = :storageKey")
+    Optional<String> findChecksumByStorageKey(@Param("storageKey") String storageKey);
+
+    @Query("select b.size from ContentBlob b where b.storageKey = :storageKey")
+    Optional<Long> findSizeByStorageKey(@Param("storageKey") String storageKey);
+
+    boolean existsByStorageKey(String storageKey);
+
+    // Blobs without a fast hash can't be ruled out
+    @Query("select count(b) > 0 from ContentBlob b where b.size = :size and (b.fastHash = :fastHash or b.fastHash is null)")
+    boolean existsCandidate(@Param("size") Long size, @Param("fastHash") Long fastHash);
+
+    @Modifying
+    @Query("update ContentBlob b set b.fastHash = :fastHash where b.checksum = :checksum and b.fastHash is null")
+    int setFastHashIfMissing(@Param("checksum") String checksum, @Param("fastHash") Long fastHash);
+
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount + 1 where b.checksum = :checksum")
+    int incrementRefCount(@Param("checksum") String checksum);
+
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount + 1 where b.storageKey = :storageKey")
+    int incrementRefCountByStorageKey(@Param("storageKey") String storageKey);
+
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount - 1 where b.storageKey = :storageKey and b.refCount > 0")
+    int decrementRefCountByStorageKey(@Param("storageKey") String storageKey);
+
+    @Modifying
+    @Query("delete from ContentBlob b where b.storageKey = :storageKey and b.refCount <= 0")
+    int deleteUnreferenced(@Param("storageKey") String storageKey);
+
+    // Called from integrity checks, outside any service transaction
+    @Transactional
+    @Modifying
+    @Query("update ContentBlob b set b.corruptedAt = :at where b.storageKey = :storageKey")
+    int markCorrupted(@Param("storageKey") String storageKey, @Param("at") LocalDateTime at);
+
+    @Transactional
+    @Modifying
+    @Query("update ContentBlob b set b.verifiedAt = :at, b.corruptedAt = null where b.storageKey = :storageKey")
+    int markVerified(@Param("storageKey") String storageKey, @Param("at") LocalDateTime at);
+
+    // Insert-or-increment: concurrent registrations of the same checksum serialize on the unique index.
+    // True when the row was inserted (xmax is only set on the updated row version).
+    @Query(value = """
+            INSERT INTO content_blobs (checksum, storage_key, size, fast_hash, ref_count, created_at)
+            VALUES (:checksum, :storageKey, :size, :fastHash, 1, now())
+            ON CONFLICT (checksum) DO UPDATE SET ref_count = content_blobs.ref_count + 1,
+                fast_hash = COALESCE(content_blobs.fast_hash, EXCLUDED.fast_hash)
+            RETURNING (xmax = 0)
+            """, nativeQuery = true)
+    boolean insertOrIncrement(@Param("checksum") String checksum,
+                          @Param("storageKey") String storageKey,
+                          @Param("size") Long size,
+                          @Param("fastHash") Long fastHash);
+}
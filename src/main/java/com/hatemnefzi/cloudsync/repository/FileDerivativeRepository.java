@@ -0,0 +1,39 @@
+package com.hatemnefzi.cloudsync.repository;
+
+import com.hatemnefzi.cloudsync.entity.FileDerivative;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface FileDerivativeRepository extends JpaRepository<FileDerivative, Long> {
+
+    List<FileDerivative> findByChecksumOrderByMaxEdgeAsc(String checksum);
+
+    boolean existsByChecksum(String checksum);
+
+    boolean existsByStorageKey(String storageKey);
+
+    // Called from the preview workers, outside any service transaction
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO file_derivatives (checksum, max_edge, storage_key, mime_type, width, height, size, created_at)
+            VALUES (:checksum, :maxEdge, :storageKey, :mimeType, :width, :height, :size, now())
+            ON CONFLICT (checksum, max_edge) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("checksum") String checksum,
+                       @Param("maxEdge") Integer maxEdge,
+                       @Param("storageKey") String storageKey,
+                       @Param("mimeType") String mimeType,
+                       @Param("width") Integer width,
+                       @Param("height") Integer height,
+                       @Param("size") Long size);
+
+    @Modifying
+    @Query("delete from FileDerivative d where d.checksum = :checksum")
+    int deleteByChecksum(@Param("checksum") String checksum);
+}
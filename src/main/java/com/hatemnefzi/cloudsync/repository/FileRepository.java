@@ -3,7 +3,16 @@ import com.hatemnefzi.cloudsync.entity.File;
 import com.hatemnefzi.cloudsync.entity.Folder;
 import com.hatemnefzi.cloudsync.entity.User;
 
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,7 +23,60 @@ public interface FileRepository extends JpaRepository<File, Long> {
     List<File> findByChecksum(String checksum);
     List<File> findByNameContainingIgnoreCaseAndOwnerAndDeletedAtIsNull(String name, User owner);
     Optional<File> findFirstByChecksumAndDeletedAtIsNull(String checksum);
+    boolean existsByOwnerIdAndChecksum(Long ownerId, String checksum);
+    boolean existsByStorageKey(String storageKey);
     // Search methods
     List<File> findByMimeTypeContainingAndOwnerAndDeletedAtIsNull(String mimeType, User owner);
     List<File> findByOwnerAndDeletedAtIsNullOrderByCreatedAtDesc(User owner);
+
+    // Active file count per folder, as [folderId, count] rows
+    @Query("SELECT f.folder.id, COUNT(f) FROM File f WHERE f.owner = :owner AND f.deletedAt IS NULL AND f.folder IS NOT NULL GROUP BY f.folder.id")
+    List<Object[]> countActiveFilesByFolder(@Param("owner") User owner);
+
+    // Bulk operations
+    @Query("SELECT f.id FROM File f WHERE f.owner = :owner AND f.folder.id = :folderId")
+    List<Long> findIdsByOwnerAndFolderId(@Param("owner") User owner, @Param("folderId") Long folderId);
+
+    @Query("SELECT f.id FROM File f WHERE f.owner = :owner AND (f.folder.path = :path OR f.folder.path LIKE :pathPattern ESCAPE '\\')")
+    List<Long> findIdsByOwnerAndFolderPath(@Param("owner") User owner, @Param("path") String path, @Param("pathPattern") String pathPattern);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM File f WHERE f.id IN :ids AND f.owner = :owner")
+    List<File> lockByIdInAndOwner(@Param("ids") Collection<Long> ids, @Param("owner") User owner);
+
+    @Modifying
+    @Query("UPDATE File f SET f.deletedAt = :now WHERE f.id IN :ids AND f.deletedAt IS NULL")
+    int softDeleteByIdIn(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE File f SET f.deletedAt = NULL WHERE f.id IN :ids AND f.deletedAt IS NOT NULL")
+    int restoreByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE File f SET f.folder = :folder, f.updatedAt = :now WHERE f.id IN :ids")
+    int moveByIdIn(@Param("ids") Collection<Long> ids, @Param("folder") Folder folder, @Param("now") LocalDateTime now);
+
+    // ZIP export
+    @Query("SELECT f FROM File f JOIN FETCH f.folder d WHERE f.owner = :owner AND f.deletedAt IS NULL " +
+           "AND (d.path = :path OR d.path LIKE :pathPattern ESCAPE '\\') ORDER BY d.path, f.name")
+    List<File> findActiveInFolderTree(@Param("owner") User owner, @Param("path") String path, @Param("pathPattern") String pathPattern);
+
+    List<File> findByIdInAndOwnerAndDeletedAtIsNull(Collection<Long> ids, User owner);
+
+    // Public folder shares: files are in scope when their folder is at or under the shared path
+    @Query(value = "SELECT f FROM File f JOIN FETCH f.folder d WHERE f.owner.id = :ownerId AND f.deletedAt IS NULL AND d.path = :path",
+           countQuery = "SELECT COUNT(f) FROM File f JOIN f.folder d WHERE f.owner.id = :ownerId AND f.deletedAt IS NULL AND d.path = :path")
+    Page<File> findActiveInFolderPath(@Param("ownerId") Long ownerId, @Param("path") String path, Pageable pageable);
+
+    @Query(value = "SELECT f FROM File f JOIN FETCH f.folder d WHERE f.owner.id = :ownerId AND f.deletedAt IS NULL " +
+                   "AND (d.path = :path OR d.path LIKE :pathPattern ESCAPE '\\')",
+           countQuery = "SELECT COUNT(f) FROM File f JOIN f.folder d WHERE f.owner.id = :ownerId AND f.deletedAt IS NULL " +
+                        "AND (d.path = :path OR d.path LIKE :pathPattern ESCAPE '\\')")
+    Page<File> findActiveInFolderTree(@Param("ownerId") Long ownerId, @Param("path") String path,
+                                      @Param("pathPattern") String pathPattern, Pageable pageable);
+
+    @Query("SELECT f FROM File f JOIN FETCH f.folder d WHERE f.id = :id AND f.owner.id = :ownerId AND f.deletedAt IS NULL " +
+           "AND (d.path = :path OR d.path LIKE :pathPattern ESCAPE '\\')")
+    Optional<File> findActiveInFolderTreeById(@Param("id") Long id, @Param("ownerId") Long ownerId,
+                                              @Param("path") String path, @Param("pathPattern") String pathPattern);
 }
\ No newline at end of file
@@ -7,4 +7,5 @@ import java.util.List;
 
 public interface FileVersionRepository extends JpaRepository<FileVersion, Long> {
     List<FileVersion> findByFileOrderByVersionNumberDesc(File file);
+    boolean existsByStorageKey(String storageKey);
 }
\ No newline at end of file
@@ -3,11 +3,31 @@ import com.hatemnefzi.cloudsync.entity.Folder;
 import com.hatemnefzi.cloudsync.entity.User;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface FolderRepository extends JpaRepository<Folder, Long> {
+    List<Folder> findByOwner(User owner);
     List<Folder> findByOwnerAndParentIsNull(User owner);
     List<Folder> findByOwnerAndParent(User owner, Folder parent);
     Optional<Folder> findByIdAndOwner(Long id, User owner);
+    Optional<Folder> findFirstByOwnerIdAndPath(Long ownerId, String path);
+
+    @Query("SELECT f.id FROM Folder f WHERE f.owner.id = :ownerId AND f.path IN :paths")
+    List<Long> findIdsByOwnerIdAndPathIn(@Param("ownerId") Long ownerId, @Param("paths") Collection<String> paths);
+    List<Folder> findByParentIdOrderByNameAsc(Long parentId);
+
+    // Rewrite the materialized path of every descendant: from is the 1-based index after the old prefix
+    @Modifying
+    @Query("UPDATE Folder f SET f.path = CONCAT(:newPrefix, SUBSTRING(f.path, :from)) " +
+           "WHERE f.owner = :owner AND f.path LIKE :oldPattern ESCAPE '\\'")
+    int replacePathPrefix(@Param("owner") User owner, @Param("oldPattern") String oldPattern,
+                          @Param("newPrefix") String newPrefix, @Param("from") int from);
+
+    @Query("SELECT f FROM Folder f WHERE f.owner = :owner AND f.path LIKE :pathPattern ESCAPE '\\' ORDER BY f.path")
+    List<Folder> findByOwnerAndPathLike(@Param("owner") User owner, @Param("pathPattern") String pathPattern);
 }
\ No newline at end of file
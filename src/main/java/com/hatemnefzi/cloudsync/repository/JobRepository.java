@@ -0,0 +1,70 @@
+package com.hatemnefzi.cloudsync.repository;
+
+import com.hatemnefzi.cloudsync.entity.Job;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface JobRepository extends JpaRepository<Job, Long> {
+
+    // A pending job with the same dedup key makes this a no-op; a running one doesn't
+    @Modifying
+    @Query(value = """
+            INSERT INTO jobs (type, payload, dedup_key, priority, status, attempts, max_attempts, run_at, created_at, updated_at)
+            VALUES (:type, :payload, :dedupKey, :priority, 'PENDING', 0, :maxAttempts, now(), now(), now())
+            ON CONFLICT (type, dedup_key) WHERE dedup_key IS NOT NULL AND status = 'PENDING' DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("type") String type,
+                       @Param("payload") String payload,
+                       @Param("dedupKey") String dedupKey,
+                       @Param("priority") int priority,
+                       @Param("maxAttempts") int maxAttempts);
+
+    // The methods below are called from the job workers, outside any service transaction
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM jobs WHERE id = :id", nativeQuery = true)
+    int complete(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE jobs SET status = 'PENDING', run_at = now() + :delayMillis * INTERVAL '1 millisecond', last_error = :error,
+                locked_by = NULL, locked_at = NULL, updated_at = now()
+            WHERE id = :id
+            """, nativeQuery = true)
+    int retryAfter(@Param("id") Long id, @Param("delayMillis") long delayMillis, @Param("error") String error);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE jobs SET status = 'FAILED', last_error = :error, locked_by = NULL, locked_at = NULL, updated_at = now()
+            WHERE id = :id
+            """, nativeQuery = true)
+    int fail(@Param("id") Long id, @Param("error") String error);
+
+    // Jobs whose worker died that a pending job with the same dedup key will redo anyway
+    @Transactional
+    @Modifying
+    @Query(value = """
+            DELETE FROM jobs r
+            WHERE r.status = 'RUNNING' AND r.locked_at < now() - :leaseMillis * INTERVAL '1 millisecond'
+              AND r.dedup_key IS NOT NULL
+              AND EXISTS (SELECT 1 FROM jobs p WHERE p.status = 'PENDING' AND p.type = r.type AND p.dedup_key = r.dedup_key)
+            """, nativeQuery = true)
+    int deleteExpiredSuperseded(@Param("leaseMillis") long leaseMillis);
+
+    // Jobs whose worker died: run them again, or give up if that was the last attempt
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE jobs SET status = CASE WHEN attempts >= max_attempts THEN 'FAILED' ELSE 'PENDING' END,
+                last_error = 'Lease expired on ' || locked_by, run_at = now(),
+                locked_by = NULL, locked_at = NULL, updated_at = now()
+            WHERE status = 'RUNNING' AND locked_at < now() - :leaseMillis * INTERVAL '1 millisecond'
+            """, nativeQuery = true)
+    int releaseExpired(@Param("leaseMillis") long leaseMillis);
+}
@@ -1,14 +1,69 @@
 package com.hatemnefzi.cloudsync.repository;
 import com.hatemnefzi.cloudsync.entity.Share;
-import com.hatemnefzi.cloudsync.entity.User;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface ShareRepository extends JpaRepository<Share, Long> {
     Optional<Share> findByShareToken(String shareToken);
-    List<Share> findBySharedByOrderByCreatedAtDesc(User sharedBy);
-    List<Share> findBySharedWithOrderByCreatedAtDesc(User sharedWith);
+
+    // Share listings: one query per page, associations joined into a projection, keyset paging on (createdAt, id)
+    String SHARE_ROW = """
+            select new com.hatemnefzi.cloudsync.repository.ShareRow(s.id, f.id, f.name, d.id, d.name,
+                   sb.email, sw.email, s.permission, s.shareToken, s.expiresAt, s.createdAt)
+            from Share s join s.sharedBy sb left join s.sharedWith sw left join s.file f left join s.folder d
+            """;
+    String AFTER_CURSOR = " and (s.createdAt < :createdAt or (s.createdAt = :createdAt and s.id < :id))";
+    String NEWEST_FIRST = " order by s.createdAt desc, s.id desc";
+
+    @Query(SHARE_ROW + "where s.sharedBy.id = :userId" + NEWEST_FIRST)
+    List<ShareRow> findRowsSharedBy(@Param("userId") Long userId, Limit limit);
+
+    @Query(SHARE_ROW + "where s.sharedBy.id = :userId" + AFTER_CURSOR + NEWEST_FIRST)
+    List<ShareRow> findRowsSharedByAfter(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt,
+                                         @Param("id") Long id, Limit limit);
+
+    @Query(SHARE_ROW + "where s.sharedWith.id = :userId" + NEWEST_FIRST)
+    List<ShareRow> findRowsSharedWith(@Param("userId") Long userId, Limit limit);
+
+    @Query(SHARE_ROW + "where s.sharedWith.id = :userId" + AFTER_CURSOR + NEWEST_FIRST)
+    List<ShareRow> findRowsSharedWithAfter(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt,
+                                           @Param("id") Long id, Limit limit);
+
+    // Users a file is shared with, directly or through a folder above it (prefix match without LIKE escaping).
+    // Expired shares no longer grant access, so their recipients are left out here and below
+    @Query("""
+            select distinct s.sharedWith.id from Share s left join s.folder sf, File f left join f.folder ff
+            where f.id = :fileId and s.sharedWith is not null
+              and (s.expiresAt is null or s.expiresAt > current_timestamp)
+              and (s.file = f
+                   or (sf is not null and ff is not null and s.sharedBy = f.owner
+                       and (ff.path = sf.path or substring(ff.path, 1, length(sf.path) + 1) = concat(sf.path, '/'))))
+            """)
+    List<Long> findRecipientIdsForFile(@Param("fileId") Long fileId);
+
+    // Users a folder is shared with, directly or through a folder above it
+    @Query("""
+            select distinct s.sharedWith.id from Share s join s.folder sf, Folder d
+            where d.id = :folderId and s.sharedWith is not null and s.sharedBy = d.owner
+              and (s.expiresAt is null or s.expiresAt > current_timestamp)
+              and (d.path = sf.path or substring(d.path, 1, length(sf.path) + 1) = concat(sf.path, '/'))
+            """)
+    List<Long> findRecipientIdsForFolder(@Param("folderId") Long folderId);
+
+    // Anyone who may see one of these files: direct shares, or any folder share of the owner
+    @Query("""
+            select distinct s.sharedWith.id from Share s
+            where s.sharedWith is not null
+              and (s.expiresAt is null or s.expiresAt > current_timestamp)
+              and (s.file.id in :fileIds or (s.folder is not null and s.sharedBy.id = :ownerId))
+            """)
+    List<Long> findPossibleRecipientIds(@Param("ownerId") Long ownerId, @Param("fileIds") Collection<Long> fileIds);
 }
\ No newline at end of file
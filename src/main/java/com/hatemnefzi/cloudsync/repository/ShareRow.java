@@ -0,0 +1,13 @@
+package com.hatemnefzi.cloudsync.repository;
+
+import com.hatemnefzi.cloudsync.entity.SharePermission;
+
+import java.time.LocalDateTime;
+
+/**
+ * One line of a share listing, read together with its file, folder and users in a single query.
+ */
+public record ShareRow(Long id, Long fileId, String fileName, Long folderId, String folderName,
+                       String sharedByEmail, String sharedWithEmail, SharePermission permission,
+                       String shareToken, LocalDateTime expiresAt, LocalDateTime createdAt) {
+}
@@ -1,9 +1,23 @@
 package com.hatemnefzi.cloudsync.repository;
 import com.hatemnefzi.cloudsync.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     boolean existsByEmail(String email);
+
+    // Relative update, so concurrent requests don't overwrite each other's quota changes
+    @Modifying
+    @Query("UPDATE User u SET u.storageUsed = u.storageUsed + :delta WHERE u.id = :id")
+    int adjustStorageUsed(@Param("id") Long id, @Param("delta") long delta);
+
+    // Reserves count sequence numbers and returns the last one. The row lock it takes is held
+    // until commit, so a user's changes become visible in sequence order.
+    @Query(value = "UPDATE users SET change_seq = change_seq + :count WHERE id = :id RETURNING change_seq",
+           nativeQuery = true)
+    long nextChangeSeq(@Param("id") Long id, @Param("count") int count);
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.hatemnefzi.cloudsync.security;
+
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.service.ratelimit.BucketSubject;
+import com.hatemnefzi.cloudsync.service.ratelimit.RateLimitPolicy;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Answers 429 when a request is over its user, share or address rate, and admits uploads
+ * against the bandwidth buckets by their Content-Length.
+ *
+ * Runs inside the security chain after the JWT filter, so the user is known.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    /**
+     * Request attribute holding the request's List of BucketSubject, for shaping the response body
+     */
+    public static final String SUBJECTS_ATTRIBUTE = RateLimitFilter.class.getName() + ".subjects";
+
+    private final RateLimitPolicy policy;
+    private final CloudsyncMetrics metrics;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !policy.isEnabled() || request.getRequestURI().startsWith(request.getContextPath() + "/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        List<BucketSubject> subjects = policy.subjectsOf(request);
+        request.setAttribute(SUBJECTS_ATTRIBUTE, subjects);
+
+        RateLimitPolicy.Rejection rejection = policy.admitRequest(subjects);
+        if (rejection != null) {
+            reject(response, rejection, "requests");
+            return;
+        }
+
+        // Multipart bodies are read by the container before the controller runs, so uploads
+        // can't be paced while streaming; they're charged in full when they arrive instead
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > 0 && isMultipart(request)) {
+            rejection = policy.admitUpload(subjects, contentLength);
+            if (rejection != null) {
+                reject(response, rejection, "upload");
+                return;
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private void reject(HttpServletResponse response, RateLimitPolicy.Rejection rejection, String kind) throws IOException {
+        metrics.recordRateLimited(rejection.subject().scope().name().toLowerCase(), kind);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (rejection.waitMillis() + 999) / 1000)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Too many requests\"}");
+    }
+
+    private static boolean isMultipart(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase().startsWith("multipart/");
+    }
+}
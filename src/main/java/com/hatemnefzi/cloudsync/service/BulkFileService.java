@@ -0,0 +1,329 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.dto.BulkFileRequest;
+import com.hatemnefzi.cloudsync.dto.BulkItemResult;
+import com.hatemnefzi.cloudsync.dto.BulkOperationResponse;
+import com.hatemnefzi.cloudsync.entity.ActivityType;
+import com.hatemnefzi.cloudsync.entity.ChangeType;
+import com.hatemnefzi.cloudsync.entity.File;
+import com.hatemnefzi.cloudsync.entity.Folder;
+import com.hatemnefzi.cloudsync.entity.Share;
+import com.hatemnefzi.cloudsync.entity.SharePermission;
+import com.hatemnefzi.cloudsync.entity.User;
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.repository.ActivityRepository;
+import com.hatemnefzi.cloudsync.repository.FileRepository;
+import com.hatemnefzi.cloudsync.repository.FolderRepository;
+import com.hatemnefzi.cloudsync.repository.ShareRepository;
+import com.hatemnefzi.cloudsync.repository.UserRepository;
+import com.hatemnefzi.cloudsync.service.analytics.StorageAggregator;
+import com.hatemnefzi.cloudsync.service.analytics.StorageFootprint;
+import com.hatemnefzi.cloudsync.service.push.ChangeNotifier;
+import com.hatemnefzi.cloudsync.util.LikePatterns;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * File operations over many files at once. Each operation runs in one transaction with a
+ * handful of set-based statements, whatever the number of files.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkFileService {
+
+    // Keeps IN lists well below the Postgres bind parameter limit
+    private static final int CHUNK_SIZE = 1000;
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final UserRepository userRepository;
+    private final ShareRepository shareRepository;
+    private final ActivityRepository activityRepository;
+    private final CloudsyncMetrics metrics;
+    private final ChangeJournalService changeJournalService;
+    private final ChangeNotifier changeNotifier;
+    private final StorageAggregator storageAggregator;
+
+    @Value("${app.bulk.max-items:10000}")
+    private int maxItems;
+
+    @Transactional
+    public BulkOperationResponse deleteFiles(BulkFileRequest request, Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        List<Long> ids = resolveFileIds(request, user);
+        Map<Long, File> files = lockFiles(ids, user);
+
+        Map<Long, BulkItemResult.Status> statuses = new HashMap<>();
+        List<Long> deleted = new ArrayList<>();
+        long freed = 0;
+        for (File file : files.values()) {
+            if (file.getDeletedAt() == null) {
+                statuses.put(file.getId(), BulkItemResult.Status.OK);
+                deleted.add(file.getId());
+                freed += file.getSize();
+                storageAggregator.fileTrashed(StorageFootprint.of(file));
+            } else {
+                statuses.put(file.getId(), BulkItemResult.Status.SKIPPED);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (List<Long> chunk : chunks(deleted)) {
+            fileRepository.softDeleteByIdIn(chunk, now);
+        }
+        if (freed > 0) {
+            userRepository.adjustStorageUsed(userId, -freed);
+        }
+        logActivities(user, ActivityType.DELETE, deleted);
+        journalChanges(userId, ChangeType.DELETED, deleted);
+
+        log.info("Bulk delete: userId={}, requested={}, deleted={}, freed={} bytes", userId, ids.size(), deleted.size(), freed);
+
+        return buildResponse("delete", ids, statuses, Map.of());
+    }
+
+    @Transactional
+    public BulkOperationResponse restoreFiles(BulkFileRequest request, Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        List<Long> ids = resolveFileIds(request, user);
+        Map<Long, File> files = lockFiles(ids, user);
+
+        // Restore in request order until the quota is used up
+        Map<Long, BulkItemResult.Status> statuses = new HashMap<>();
+        List<Long> restored = new ArrayList<>();
+        long available = user.getStorageLimit() - user.getStorageUsed();
+        long added = 0;
+        for (Long id : ids) {
+            File file = files.get(id);
+            if (file == null) {
+                continue;
+            }
+            if (file.getDeletedAt() == null) {
+                statuses.put(id, BulkItemResult.Status.SKIPPED);
+            } else if (added + file.getSize() > available) {
+                statuses.put(id, BulkItemResult.Status.QUOTA_EXCEEDED);
+                metrics.recordQuotaRejection("bulk-restore");
+            } else {
+                statuses.put(id, BulkItemResult.Status.OK);
+                restored.add(id);
+                added += file.getSize();
+                storageAggregator.fileRestored(StorageFootprint.of(file));
+            }
+        }
+
+        for (List<Long> chunk : chunks(restored)) {
+            fileRepository.restoreByIdIn(chunk);
+        }
+        if (added > 0) {
+            userRepository.adjustStorageUsed(userId, added);
+        }
+        logActivities(user, ActivityType.RESTORE, restored);
+        journalChanges(userId, ChangeType.RESTORED, restored);
+
+        log.info("Bulk restore: userId={}, requested={}, restored={}", userId, ids.size(), restored.size());
+
+        return buildResponse("restore", ids, statuses, Map.of());
+    }
+
+    @Transactional
+    public BulkOperationResponse moveFiles(BulkFileRequest request, Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        Folder target = null;
+        if (request.getTargetFolderId() != null) {
+            target = folderRepository.findByIdAndOwner(request.getTargetFolderId(), user)
+                    .orElseThrow(() -> new RuntimeException("Target folder not found"));
+        }
+        Long targetId = target != null ? target.getId() : null;
+
+        List<Long> ids = resolveFileIds(request, user);
+        Map<Long, File> files = lockFiles(ids, user);
+
+        Map<Long, BulkItemResult.Status> statuses = new HashMap<>();
+        List<Long> moved = new ArrayList<>();
+        for (File file : files.values()) {
+            Long currentId = file.getFolder() != null ? file.getFolder().getId() : null;
+            if (file.getDeletedAt() != null) {
+                statuses.put(file.getId(), BulkItemResult.Status.NOT_FOUND);
+            } else if (Objects.equals(currentId, targetId)) {
+                statuses.put(file.getId(), BulkItemResult.Status.SKIPPED);
+            } else {
+                statuses.put(file.getId(), BulkItemResult.Status.OK);
+                moved.add(file.getId());
+                StorageFootprint before = StorageFootprint.of(file);
+                storageAggregator.fileReplaced(before, before.inFolder(target));
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (List<Long> chunk : chunks(moved)) {
+            fileRepository.moveByIdIn(chunk, target, now);
+        }
+        logActivities(user, ActivityType.MOVE, moved);
+        journalChanges(userId, ChangeType.MOVED, moved);
+
+        log.info("Bulk move: userId={}, requested={}, moved={}, targetFolderId={}", userId, ids.size(), moved.size(), targetId);
+
+        return buildResponse("move", ids, statuses, Map.of());
+    }
+
+    @Transactional
+    public BulkOperationResponse shareFiles(BulkFileRequest request, Long userId) {
+        User sharedBy = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        // Public link per file when no recipient is given, like single shares
+        User sharedWith = null;
+        if (request.getSharedWithEmail() != null && !request.getSharedWithEmail().isEmpty()) {
+            sharedWith = userRepository.findByEmail(request.getSharedWithEmail())
+                    .orElseThrow(() -> new RuntimeException("User with email " + request.getSharedWithEmail() + " not found"));
+        }
+        SharePermission permission = request.getPermission() != null ? request.getPermission() : SharePermission.VIEW;
+
+        List<Long> ids = resolveFileIds(request, sharedBy);
+        Map<Long, File> files = lockFiles(ids, sharedBy);
+
+        Map<Long, BulkItemResult.Status> statuses = new HashMap<>();
+        List<Share> shares = new ArrayList<>();
+        for (File file : files.values()) {
+            if (file.getDeletedAt() != null) {
+                statuses.put(file.getId(), BulkItemResult.Status.NOT_FOUND);
+                continue;
+            }
+            statuses.put(file.getId(), BulkItemResult.Status.OK);
+            shares.add(Share.builder()
+                    .file(file)
+                    .sharedBy(sharedBy)
+                    .sharedWith(sharedWith)
+                    .permission(permission)
+                    .shareToken(sharedWith == null ? UUID.randomUUID().toString() : null)
+                    .expiresAt(request.getExpiresAt())
+                    .build());
+        }
+        shareRepository.saveAll(shares);
+        if (!shares.isEmpty()) {
+            changeNotifier.sharesCreated(userId, sharedWith != null ? sharedWith.getId() : null, shares.size());
+        }
+
+        Map<Long, String> tokens = new HashMap<>();
+        for (Share share : shares) {
+            if (share.getShareToken() != null) {
+                tokens.put(share.getFile().getId(), share.getShareToken());
+            }
+        }
+        List<Long> shared = shares.stream().map(share -> share.getFile().getId()).collect(Collectors.toList());
+        logActivities(sharedBy, ActivityType.SHARE, shared);
+
+        log.info("Bulk share: userId={}, requested={}, shared={}, public={}", userId, ids.size(), shared.size(), sharedWith == null);
+
+        return buildResponse("share", ids, statuses, tokens);
+    }
+
+    /**
+     * File IDs selected by the request, de-duplicated and in request order
+     */
+    private List<Long> resolveFileIds(BulkFileRequest request, User user) {
+        boolean byIds = request.getFileIds() != null && !request.getFileIds().isEmpty();
+        if (byIds == (request.getFolderId() != null)) {
+            throw new RuntimeException("Must specify either fileIds or folderId, not both");
+        }
+
+        List<Long> ids;
+        if (byIds) {
+            ids = new ArrayList<>(new LinkedHashSet<>(request.getFileIds()));
+        } else {
+            Folder folder = folderRepository.findByIdAndOwner(request.getFolderId(), user)
+                    .orElseThrow(() -> new RuntimeException("Folder not found"));
+            ids = request.isRecursive()
+                    ? fileRepository.findIdsByOwnerAndFolderPath(user, folder.getPath(), LikePatterns.startsWith(folder.getPath() + "/"))
+                    : fileRepository.findIdsByOwnerAndFolderId(user, folder.getId());
+        }
+
+        if (ids.size() > maxItems) {
+            throw new RuntimeException("Too many files in one request (max " + maxItems + ")");
+        }
+        return ids;
+    }
+
+    /**
+     * Lock the caller's files among the given IDs so concurrent requests can't double-count quota
+     */
+    private Map<Long, File> lockFiles(List<Long> ids, User owner) {
+        Map<Long, File> files = new HashMap<>();
+        for (List<Long> chunk : chunks(ids)) {
+            for (File file : fileRepository.lockByIdInAndOwner(chunk, owner)) {
+                files.put(file.getId(), file);
+            }
+        }
+        return files;
+    }
+
+    private void logActivities(User user, ActivityType action, List<Long> fileIds) {
+        long start = System.nanoTime();
+        for (List<Long> chunk : chunks(fileIds)) {
+            activityRepository.insertForFiles(user.getId(), action.name(), "FILE", chunk);
+        }
+        metrics.recordActivityWrite(System.nanoTime() - start);
+    }
+
+    private void journalChanges(Long userId, ChangeType changeType, List<Long> fileIds) {
+        for (List<Long> chunk : chunks(fileIds)) {
+            changeJournalService.recordFiles(userId, chunk, changeType);
+        }
+    }
+
+    /**
+     * One result per requested ID; IDs with no status were missing or not owned by the caller
+     */
+    private BulkOperationResponse buildResponse(String operation, List<Long> ids,
+                                                Map<Long, BulkItemResult.Status> statuses, Map<Long, String> tokens) {
+        List<BulkItemResult> results = new ArrayList<>(ids.size());
+        int succeeded = 0;
+        for (Long id : ids) {
+            BulkItemResult.Status itemStatus = statuses.getOrDefault(id, BulkItemResult.Status.NOT_FOUND);
+            if (itemStatus == BulkItemResult.Status.OK || itemStatus == BulkItemResult.Status.SKIPPED) {
+                succeeded++;
+            }
+            results.add(BulkItemResult.builder()
+                    .fileId(id)
+                    .status(itemStatus)
+                    .shareToken(tokens.get(id))
+                    .build());
+        }
+
+        return BulkOperationResponse.builder()
+                .operation(operation)
+                .requested(ids.size())
+                .succeeded(succeeded)
+                .failed(ids.size() - succeeded)
+                .results(results)
+                .build();
+    }
+
+    private static List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+            chunks.add(ids.subList(i, Math.min(i + CHUNK_SIZE, ids.size())));
+        }
+        return chunks;
+    }
+}
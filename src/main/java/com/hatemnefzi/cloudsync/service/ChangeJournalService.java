@@ -0,0 +1,153 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.dto.ChangeFeedResponse;
+import com.hatemnefzi.cloudsync.dto.ChangeResponse;
+import com.hatemnefzi.cloudsync.dto.FolderResponse;
+import com.hatemnefzi.cloudsync.entity.ChangeJournalEntry;
+import com.hatemnefzi.cloudsync.entity.ChangeType;
+import com.hatemnefzi.cloudsync.entity.File;
+import com.hatemnefzi.cloudsync.entity.Folder;
+import com.hatemnefzi.cloudsync.repository.ChangeJournalRepository;
+import com.hatemnefzi.cloudsync.repository.FileRepository;
+import com.hatemnefzi.cloudsync.repository.FolderRepository;
+import com.hatemnefzi.cloudsync.repository.UserRepository;
+import com.hatemnefzi.cloudsync.service.push.ChangeNotifier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user change journal for sync clients.
+ *
+ * Every file and folder mutation takes the next number of the user's sequence in the same
+ * transaction, so a client that remembers the last number it saw only ever reads the deltas.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChangeJournalService {
+
+    private final ChangeJournalRepository changeJournalRepository;
+    private final UserRepository userRepository;
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final ChangeNotifier changeNotifier;
+
+    @Value("${app.changes.max-limit:1000}")
+    private int maxLimit;
+
+    /**
+     * Journal one change; must run inside the transaction that makes it
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long record(Long userId, String entityType, Long entityId, ChangeType changeType) {
+        long seq = userRepository.nextChangeSeq(userId, 1);
+        changeJournalRepository.save(ChangeJournalEntry.builder()
+                .userId(userId)
+                .seq(seq)
+                .entityType(entityType)
+                .entityId(entityId)
+                .changeType(changeType)
+                .build());
+        changeNotifier.entityChanged(userId, seq, entityType, entityId, changeType);
+        return seq;
+    }
+
+    /**
+     * Journal the same change for many files with one sequence reservation and one insert
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordFiles(Long userId, List<Long> fileIds, ChangeType changeType) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        long lastSeq = userRepository.nextChangeSeq(userId, fileIds.size());
+        changeJournalRepository.insertForFiles(userId, lastSeq - fileIds.size() + 1, changeType.name(), fileIds);
+        changeNotifier.filesChanged(userId, lastSeq, fileIds);
+    }
+
+    @Transactional(readOnly = true)
+    public ChangeFeedResponse getChanges(Long userId, long since, int limit) {
+        int pageSize = Math.min(Math.max(limit, 1), maxLimit);
+
+        // One extra row tells whether another page follows
+        List<ChangeJournalEntry> entries = changeJournalRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(
+                userId, since, Limit.of(pageSize + 1));
+        boolean hasMore = entries.size() > pageSize;
+        if (hasMore) {
+            entries = entries.subList(0, pageSize);
+        }
+        long cursor = entries.isEmpty() ? since : entries.get(entries.size() - 1).getSeq();
+
+        // A client catching up only needs the latest change of each entity in the page
+        Map<String, ChangeJournalEntry> latest = new LinkedHashMap<>();
+        for (ChangeJournalEntry entry : entries) {
+            String key = entry.getEntityType() + ":" + entry.getEntityId();
+            latest.remove(key);
+            latest.put(key, entry);
+        }
+
+        List<Long> fileIds = new ArrayList<>();
+        List<Long> folderIds = new ArrayList<>();
+        for (ChangeJournalEntry entry : latest.values()) {
+            (entry.getEntityType().equals("FOLDER") ? folderIds : fileIds).add(entry.getEntityId());
+        }
+        Map<Long, File> files = fileRepository.findAllById(fileIds).stream()
+                .collect(Collectors.toMap(File::getId, Function.identity()));
+        Map<Long, Folder> folders = folderRepository.findAllById(folderIds).stream()
+                .collect(Collectors.toMap(Folder::getId, Function.identity()));
+
+        List<ChangeResponse> changes = new ArrayList<>(latest.size());
+        for (ChangeJournalEntry entry : latest.values()) {
+            ChangeResponse.ChangeResponseBuilder change = ChangeResponse.builder()
+                    .seq(entry.getSeq())
+                    .entityType(entry.getEntityType())
+                    .entityId(entry.getEntityId())
+                    .changeType(entry.getChangeType())
+                    .changedAt(entry.getCreatedAt());
+
+            if (entry.getEntityType().equals("FOLDER")) {
+                Folder folder = folders.get(entry.getEntityId());
+                if (folder != null) {
+                    change.folder(mapToFolderResponse(folder));
+                }
+            } else {
+                File file = files.get(entry.getEntityId());
+                if (file != null && file.getDeletedAt() == null) {
+                    change.file(FileService.mapToFileInfoResponse(file));
+                }
+            }
+            changes.add(change.build());
+        }
+
+        log.debug("Change feed: userId={}, since={}, entries={}, changes={}", userId, since, entries.size(), changes.size());
+
+        return ChangeFeedResponse.builder()
+                .changes(changes)
+                .cursor(cursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private static FolderResponse mapToFolderResponse(Folder folder) {
+        return FolderResponse.builder()
+                .id(folder.getId())
+                .name(folder.getName())
+                .path(folder.getPath())
+                .parentId(folder.getParent() != null ? folder.getParent().getId() : null)
+                .createdAt(folder.getCreatedAt())
+                .updatedAt(folder.getUpdatedAt())
+                .build();
+    }
+}
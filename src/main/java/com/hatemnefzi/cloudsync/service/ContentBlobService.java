@@ -0,0 +1,150 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.entity.ContentBlob;
+import com.hatemnefzi.cloudsync.repository.ContentBlobRepository;
+import com.hatemnefzi.cloudsync.service.analytics.StorageAggregator;
+import com.hatemnefzi.cloudsync.service.jobs.JobQueue;
+import com.hatemnefzi.cloudsync.service.preview.PreviewService;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Registry of stored objects keyed by content checksum (deduplication).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentBlobService {
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final StorageService storageService;
+    private final PreviewService previewService;
+    private final HashingEngine hashingEngine;
+    private final JobQueue jobQueue;
+    private final StorageAggregator storageAggregator;
+    private final StorageKeyLock storageKeyLock;
+
+    public record AcquiredBlob(String storageKey, String checksum, boolean duplicate) {}
+
+    /**
+     * Take a reference on the stored object for this content, storing the bytes
+     * only when no object with the same checksum is registered yet.
+     *
+     * Only blobs of the same size and fast hash can hold the same content. When there are
+     * none, SHA-256 is computed while the upload is stored rather than before it.
+     */
+    @Transactional
+    public AcquiredBlob acquire(MultipartFile multipartFile, long fastHash, Long userId) throws IOException {
+        if (!contentBlobRepository.existsCandidate(multipartFile.getSize(), fastHash)) {
+            CompletableFuture<String> checksum = hashingEngine.sha256Async(multipartFile);
+            String storedKey = storageService.store(multipartFile, userId, multipartFile.getOriginalFilename());
+            return register(multipartFile, userId, HashingEngine.await(checksum), fastHash, storedKey);
+        }
+
+        String checksum = hashingEngine.sha256(multipartFile);
+
+        // Single index probe on the unique checksum
+        Optional<ContentBlob> existing = contentBlobRepository.findByChecksum(checksum);
+        if (existing.isPresent() && contentBlobRepository.incrementRefCount(checksum) > 0) {
+            if (existing.get().getFastHash() == null) {
+                contentBlobRepository.setFastHashIfMissing(checksum, fastHash);
+            }
+            return new AcquiredBlob(existing.get().getStorageKey(), checksum, true);
+        }
+
+        String storedKey = storageService.store(multipartFile, userId, multipartFile.getOriginalFilename());
+        return register(multipartFile, userId, checksum, fastHash, storedKey);
+    }
+
+    private AcquiredBlob register(MultipartFile multipartFile, Long userId, String checksum, long fastHash, String storedKey) throws IOException {
+        // Held until commit, so the deletion job can't remove the object under the new reference;
+        // if it ran after the store found the object already there, write the bytes again
+        storageKeyLock.lock(storedKey);
+        if (!storageService.exists(storedKey)) {
+            log.info("Object was deleted while registering, storing it again: key={}", storedKey);
+            storedKey = storageService.store(multipartFile, userId, multipartFile.getOriginalFilename());
+            storageKeyLock.lock(storedKey);
+        }
+
+        // A concurrent upload of the same content may have registered first
+        if (contentBlobRepository.insertOrIncrement(checksum, storedKey, multipartFile.getSize(), fastHash)) {
+            storageAggregator.blobStored(multipartFile.getSize());
+        }
+        String canonicalKey = contentBlobRepository.findStorageKeyByChecksum(checksum)
+                .orElseThrow(() -> new IllegalStateException("Content blob vanished: " + checksum));
+
+        if (!canonicalKey.equals(storedKey)) {
+            log.info("Lost dedup race, dropping duplicate object: checksum={}, key={}", checksum, storedKey);
+            deleteObject(storedKey);
+            return new AcquiredBlob(canonicalKey, checksum, true);
+        }
+
+        return new AcquiredBlob(storedKey, checksum, false);
+    }
+
+    /**
+     * Take a reference on already stored content by checksum, without receiving its bytes
+     *
+     * @return the storage key of the content
+     */
+    @Transactional
+    public String retainByChecksum(String checksum) {
+        if (contentBlobRepository.incrementRefCount(checksum) == 0) {
+            throw new RuntimeException("Content not found");
+        }
+        return contentBlobRepository.findStorageKeyByChecksum(checksum)
+                .orElseThrow(() -> new IllegalStateException("Content blob vanished: " + checksum));
+    }
+
+    /**
+     * Take an extra reference on an already stored object (e.g. a restored version)
+     */
+    @Transactional
+    public void retain(String storageKey) {
+        contentBlobRepository.incrementRefCountByStorageKey(storageKey);
+    }
+
+    /**
+     * SHA-256 of a stored object, if it was registered as a content blob
+     */
+    public Optional<String> checksumOf(String storageKey) {
+        return contentBlobRepository.findChecksumByStorageKey(storageKey);
+    }
+
+    /**
+     * Drop a reference and delete the stored object once nothing points at it
+     */
+    @Transactional
+    public void release(String storageKey) {
+        if (contentBlobRepository.decrementRefCountByStorageKey(storageKey) == 0) {
+            // Object stored before the registry existed; other files and versions with the
+            // same checksum may share it, which the deletion job checks once this commits
+            deleteObject(storageKey);
+            return;
+        }
+
+        Optional<String> checksum = contentBlobRepository.findChecksumByStorageKey(storageKey);
+        Optional<Long> size = contentBlobRepository.findSizeByStorageKey(storageKey);
+        if (contentBlobRepository.deleteUnreferenced(storageKey) > 0) {
+            size.ifPresent(storageAggregator::blobDeleted);
+            deleteObject(storageKey);
+            log.info("Deleted unreferenced object: key={}", storageKey);
+            if (checksum.isPresent()) {
+                previewService.deleteDerivatives(checksum.get());
+            }
+        }
+    }
+
+    // Runs after commit, and only if the key isn't in use again by then
+    private void deleteObject(String storageKey) {
+        ObjectDeletionJobHandler.enqueue(jobQueue, storageKey);
+    }
+}
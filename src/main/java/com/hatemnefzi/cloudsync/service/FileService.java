@@ -1,26 +1,29 @@
 package com.hatemnefzi.cloudsync.service;
 
+import com.hatemnefzi.cloudsync.dto.FileDownload;
 import com.hatemnefzi.cloudsync.dto.FileInfoResponse;
 import com.hatemnefzi.cloudsync.dto.FileUploadResponse;
 import com.hatemnefzi.cloudsync.entity.Activity;
 import com.hatemnefzi.cloudsync.entity.ActivityType;
+import com.hatemnefzi.cloudsync.entity.ChangeType;
 import com.hatemnefzi.cloudsync.entity.File;
 import com.hatemnefzi.cloudsync.entity.User;
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
 import com.hatemnefzi.cloudsync.repository.ActivityRepository;
 import com.hatemnefzi.cloudsync.repository.FileRepository;
 import com.hatemnefzi.cloudsync.repository.UserRepository;
+import com.hatemnefzi.cloudsync.service.analytics.StorageAggregator;
+import com.hatemnefzi.cloudsync.service.analytics.StorageFootprint;
+import com.hatemnefzi.cloudsync.service.preview.ContentStoredEvent;
 import com.hatemnefzi.cloudsync.service.storage.StorageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.HexFormat;
 import java.util.List;
 import java.util.stream.Collectors;
 //adding imports for file service that rsupport folders
@@ -45,6 +48,12 @@ public class FileService {
     private final FolderRepository folderRepository;
     //adding imports for file service that support file versionning
     private final FileVersionRepository fileVersionRepository;
+    private final ContentBlobService contentBlobService;
+    private final HashingEngine hashingEngine;
+    private final CloudsyncMetrics metrics;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChangeJournalService changeJournalService;
+    private final StorageAggregator storageAggregator;
 
     @Transactional
     public FileUploadResponse uploadFile(MultipartFile multipartFile, Long userId, Long folderId) throws IOException {
@@ -61,48 +70,85 @@ public class FileService {
         }
         // Check storage quota
         if (user.getStorageUsed() + multipartFile.getSize() > user.getStorageLimit()) {
+            metrics.recordQuotaRejection("upload");
             throw new RuntimeException("Storage quota exceeded");
         }
 
-        // Calculate file checksum (for deduplication)
-        String checksum = calculateChecksum(multipartFile.getInputStream());
+        // Fast hash first: most uploads are new content and can skip the SHA-256 pre-pass
+        long phaseStart = System.nanoTime();
+        long fastHash = hashingEngine.fastHash(multipartFile);
+        metrics.recordChecksum(multipartFile.getSize(), System.nanoTime() - phaseStart);
+
+        // Reference existing content or store it (deduplication)
+        phaseStart = System.nanoTime();
+        ContentBlobService.AcquiredBlob blob = contentBlobService.acquire(multipartFile, fastHash, userId);
+        String storageKey = blob.storageKey();
+        String checksum = blob.checksum();
+        boolean isDuplicate = blob.duplicate();
+        metrics.recordUploadPhase("storage", System.nanoTime() - phaseStart);
+        metrics.recordDedup(isDuplicate);
+
+        phaseStart = System.nanoTime();
+        FileUploadResponse response = createFile(user, folder, multipartFile.getOriginalFilename(),
+                multipartFile.getContentType(), multipartFile.getSize(), storageKey, checksum, isDuplicate);
+        metrics.recordUploadPhase("metadata", System.nanoTime() - phaseStart);
+        return response;
+    }
 
-        // Check if file with same checksum exists (deduplication)
-        String storageKey;
-        
-        
-        var existingFile = fileRepository.findFirstByChecksumAndDeletedAtIsNull(checksum);
-        boolean isDuplicate = existingFile.isPresent();
-
-        if (isDuplicate) {
-            storageKey = existingFile.get().getStorageKey();
-        } else {
-        // Store new file
-        storageKey = storageService.store(multipartFile, userId, multipartFile.getOriginalFilename());
+    /**
+     * Create a file from content the server already stores, after the client has proved it
+     * has the same bytes. Counted like any other duplicate upload.
+     */
+    @Transactional
+    public FileUploadResponse createFromStoredContent(Long userId, Long folderId, String name, String mimeType,
+                                                      long size, String checksum) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        Folder folder = null;
+        if (folderId != null) {
+            folder = folderRepository.findByIdAndOwner(folderId, user)
+                .orElseThrow(() -> new RuntimeException("Folder not found"));
+        }
+        if (user.getStorageUsed() + size > user.getStorageLimit()) {
+            metrics.recordQuotaRejection("upload");
+            throw new RuntimeException("Storage quota exceeded");
+        }
+
+        String storageKey = contentBlobService.retainByChecksum(checksum);
+        metrics.recordDedup(true);
+        return createFile(user, folder, name, mimeType, size, storageKey, checksum, true);
     }
 
+    private FileUploadResponse createFile(User user, Folder folder, String name, String mimeType, long size,
+                                          String storageKey, String checksum, boolean isDuplicate) {
         // Create file metadata
         File file = File.builder()
-                .name(multipartFile.getOriginalFilename())
+                .name(name)
                 .owner(user)
                 .folder(folder)
-                .size(multipartFile.getSize())
-                .mimeType(multipartFile.getContentType())
+                .size(size)
+                .mimeType(mimeType)
                 .storageKey(storageKey)
                 .checksum(checksum)
                 .version(1)
                 .build();
 
         file = fileRepository.save(file);
+        storageAggregator.fileAdded(StorageFootprint.of(file));
 
         // Update user storage (only if not duplicate)
         if (!isDuplicate) {
-            user.setStorageUsed(user.getStorageUsed() + multipartFile.getSize());
+            user.setStorageUsed(user.getStorageUsed() + size);
             userRepository.save(user);
         }
 
         // Log activity
         logActivity(user, ActivityType.UPLOAD, "FILE", file.getId());
+        changeJournalService.record(user.getId(), "FILE", file.getId(), ChangeType.CREATED);
+
+        // Thumbnails are rendered in the background once this commits
+        eventPublisher.publishEvent(new ContentStoredEvent(checksum, storageKey, file.getMimeType(), file.getSize(), user.getId()));
 
         log.info("File uploaded: id={}, name={}, size={}", file.getId(), file.getName(), file.getSize());
 
@@ -113,7 +159,7 @@ public class FileService {
                 .mimeType(file.getMimeType())
                 .version(file.getVersion())
                 .createdAt(file.getCreatedAt())
-                .folderId(folderId)
+                .folderId(folder != null ? folder.getId() : null)
                 .build();
     }
 
@@ -125,12 +171,12 @@ public class FileService {
         List<File> files = fileRepository.findByOwnerAndDeletedAtIsNull(user);
 
         return files.stream()
-                .map(this::mapToFileInfoResponse)
+                .map(FileService::mapToFileInfoResponse)
                 .collect(Collectors.toList());
     }
 
     @Transactional
-    public byte[] downloadFile(Long fileId, Long userId) throws IOException {
+    public FileDownload downloadFile(Long fileId, Long userId) {
         File file = fileRepository.findByIdAndDeletedAtIsNull(fileId)
                 .orElseThrow(() -> new RuntimeException("File not found"));
 
@@ -142,7 +188,8 @@ public class FileService {
         // Log activity
         logActivity(file.getOwner(), ActivityType.DOWNLOAD, "FILE", fileId);
 
-        return storageService.getFile(file.getStorageKey());
+        // Content is streamed from storage by the controller
+        return mapToFileDownload(file, file.getStorageKey(), file.getSize());
     }
 
     @Transactional
@@ -158,6 +205,7 @@ public class FileService {
         // Soft delete
         file.setDeletedAt(java.time.LocalDateTime.now());
         fileRepository.save(file);
+        storageAggregator.fileTrashed(StorageFootprint.of(file));
 
         // Update user storage
         User user = file.getOwner();
@@ -166,28 +214,13 @@ public class FileService {
 
         // Log activity
         logActivity(user, ActivityType.DELETE, "FILE", fileId);
+        changeJournalService.record(userId, "FILE", fileId, ChangeType.DELETED);
 
         log.info("File deleted (soft): id={}", fileId);
     }
 
-    private String calculateChecksum(InputStream inputStream) throws IOException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                digest.update(buffer, 0, bytesRead);
-            }
-            
-            byte[] hashBytes = digest.digest();
-            return HexFormat.of().formatHex(hashBytes);
-        } catch (NoSuchAlgorithmException e) {
-            throw new IOException("SHA-256 algorithm not available", e);
-        }
-    }
-
     private void logActivity(User user, ActivityType action, String entityType, Long entityId) {
+        long start = System.nanoTime();
         Activity activity = Activity.builder()
                 .user(user)
                 .action(action)
@@ -195,9 +228,10 @@ public class FileService {
                 .entityId(entityId)
                 .build();
         activityRepository.save(activity);
+        metrics.recordActivityWrite(System.nanoTime() - start);
     }
 
-    private FileInfoResponse mapToFileInfoResponse(File file) {
+    static FileInfoResponse mapToFileInfoResponse(File file) {
         return FileInfoResponse.builder()
                 .id(file.getId())
                 .name(file.getName())
@@ -211,6 +245,17 @@ public class FileService {
                 .build();
     }
 
+    private FileDownload mapToFileDownload(File file, String storageKey, Long size) {
+        return FileDownload.builder()
+                .fileId(file.getId())
+                .fileName(file.getName())
+                .mimeType(file.getMimeType())
+                .size(size)
+                .storageKey(storageKey)
+                .checksum(file.getChecksum())
+                .build();
+    }
+
     // Add method to get files in folder
     @Transactional(readOnly = true)
     public List<FileInfoResponse> getFilesInFolder(Long folderId, Long userId) {
@@ -223,7 +268,7 @@ public class FileService {
         List<File> files = fileRepository.findByOwnerAndFolderAndDeletedAtIsNull(user, folder);
 
         return files.stream()
-                .map(this::mapToFileInfoResponse)
+                .map(FileService::mapToFileInfoResponse)
                 .collect(Collectors.toList());
     }
     // ========== FILE VERSIONING METHODS ==========
@@ -243,6 +288,7 @@ public FileUploadResponse updateFile(Long fileId, MultipartFile multipartFile, L
 
     // Check storage quota for new version
     if (user.getStorageUsed() + multipartFile.getSize() > user.getStorageLimit()) {
+        metrics.recordQuotaRejection("update");
         throw new RuntimeException("Storage quota exceeded");
     }
 
@@ -252,19 +298,29 @@ public FileUploadResponse updateFile(Long fileId, MultipartFile multipartFile, L
             .versionNumber(existingFile.getVersion())
             .storageKey(existingFile.getStorageKey())
             .size(existingFile.getSize())
+            .mimeType(existingFile.getMimeType())
             .build();
     fileVersionRepository.save(oldVersion);
+    storageAggregator.versionsAdded(userId, 1, oldVersion.getSize());
 
     log.info("Saved version to history: fileId={}, version={}", fileId, existingFile.getVersion());
 
-    // Calculate new checksum
-    String checksum = calculateChecksum(multipartFile.getInputStream());
+    // Fast hash first: most uploads are new content and can skip the SHA-256 pre-pass
+    long phaseStart = System.nanoTime();
+    long fastHash = hashingEngine.fastHash(multipartFile);
+    metrics.recordChecksum(multipartFile.getSize(), System.nanoTime() - phaseStart);
 
-    // Store new file version
-    String newStorageKey = storageService.store(multipartFile, userId, multipartFile.getOriginalFilename());
+    // Store new file version (or reference identical content)
+    phaseStart = System.nanoTime();
+    ContentBlobService.AcquiredBlob blob = contentBlobService.acquire(multipartFile, fastHash, userId);
+    String newStorageKey = blob.storageKey();
+    String checksum = blob.checksum();
+    metrics.recordUploadPhase("storage", System.nanoTime() - phaseStart);
+    metrics.recordDedup(blob.duplicate());
 
     // Update file metadata with new version
     long oldSize = existingFile.getSize();
+    StorageFootprint before = StorageFootprint.of(existingFile);
     existingFile.setStorageKey(newStorageKey);
     existingFile.setSize(multipartFile.getSize());
     existingFile.setMimeType(multipartFile.getContentType());
@@ -273,6 +329,7 @@ public FileUploadResponse updateFile(Long fileId, MultipartFile multipartFile, L
     existingFile.setUpdatedAt(java.time.LocalDateTime.now());
 
     existingFile = fileRepository.save(existingFile);
+    storageAggregator.fileReplaced(before, StorageFootprint.of(existingFile));
 
     // Update user storage (remove old size, add new size)
     user.setStorageUsed(user.getStorageUsed() - oldSize + multipartFile.getSize());
@@ -283,6 +340,9 @@ public FileUploadResponse updateFile(Long fileId, MultipartFile multipartFile, L
 
     // Log activity
     logActivity(user, ActivityType.UPLOAD, "FILE", fileId);
+    changeJournalService.record(userId, "FILE", fileId, ChangeType.UPDATED);
+
+    eventPublisher.publishEvent(new ContentStoredEvent(checksum, newStorageKey, existingFile.getMimeType(), existingFile.getSize(), userId));
 
     log.info("File updated: id={}, newVersion={}, oldSize={}, newSize={}", 
              fileId, existingFile.getVersion(), oldSize, multipartFile.getSize());
@@ -322,7 +382,7 @@ public List<FileVersionResponse> getFileVersions(Long fileId, Long userId) {
 }
 
 @Transactional()
-public byte[] downloadFileVersion(Long fileId, Integer versionNumber, Long userId) throws IOException {
+public FileDownload downloadFileVersion(Long fileId, Integer versionNumber, Long userId) {
     File file = fileRepository.findByIdAndDeletedAtIsNull(fileId)
             .orElseThrow(() -> new RuntimeException("File not found"));
 
@@ -334,7 +394,7 @@ public byte[] downloadFileVersion(Long fileId, Integer versionNumber, Long userI
     // If requesting current version, use current storageKey
     if (versionNumber.equals(file.getVersion())) {
         log.info("Downloading current version: fileId={}, version={}", fileId, versionNumber);
-        return storageService.getFile(file.getStorageKey());
+        return mapToFileDownload(file, file.getStorageKey(), file.getSize());
     }
 
     // Find historical version
@@ -348,7 +408,13 @@ public byte[] downloadFileVersion(Long fileId, Integer versionNumber, Long userI
     logActivity(file.getOwner(), ActivityType.DOWNLOAD, "FILE", fileId);
 
     log.info("Downloading historical version: fileId={}, version={}", fileId, versionNumber);
-    return storageService.getFile(targetVersion.getStorageKey());
+    FileDownload download = mapToFileDownload(file, targetVersion.getStorageKey(), targetVersion.getSize());
+    // From the version's content blob, so reads can be verified; none for objects stored before blobs were tracked
+    download.setChecksum(contentBlobService.checksumOf(targetVersion.getStorageKey()).orElse(null));
+    if (targetVersion.getMimeType() != null) {
+        download.setMimeType(targetVersion.getMimeType());
+    }
+    return download;
 }
 
 @Transactional
@@ -379,21 +445,32 @@ public FileUploadResponse restoreFileVersion(Long fileId, Integer versionNumber,
             .versionNumber(file.getVersion())
             .storageKey(file.getStorageKey())
             .size(file.getSize())
+            .mimeType(file.getMimeType())
             .build();
     fileVersionRepository.save(currentAsVersion);
+    storageAggregator.versionsAdded(userId, 1, currentAsVersion.getSize());
 
     log.info("Saved current version before restore: fileId={}, version={}", fileId, file.getVersion());
 
     // Restore old version as current
     User user = file.getOwner();
     long oldSize = file.getSize();
+    StorageFootprint before = StorageFootprint.of(file);
 
+    // The file and the kept history entry now both reference the restored object
+    contentBlobService.retain(targetVersion.getStorageKey());
     file.setStorageKey(targetVersion.getStorageKey());
     file.setSize(targetVersion.getSize());
+    // Unknown for objects stored before content blobs were tracked; better none than the replaced one's
+    file.setChecksum(contentBlobService.checksumOf(targetVersion.getStorageKey()).orElse(null));
+    if (targetVersion.getMimeType() != null) {
+        file.setMimeType(targetVersion.getMimeType());
+    }
     file.setVersion(file.getVersion() + 1); // Increment version (restore = new version)
     file.setUpdatedAt(java.time.LocalDateTime.now());
 
     file = fileRepository.save(file);
+    storageAggregator.fileReplaced(before, StorageFootprint.of(file));
 
     // Update user storage
     user.setStorageUsed(user.getStorageUsed() - oldSize + file.getSize());
@@ -401,6 +478,7 @@ public FileUploadResponse restoreFileVersion(Long fileId, Integer versionNumber,
 
     // Log activity
     logActivity(user, ActivityType.RESTORE_VERSION, "FILE", fileId);
+    changeJournalService.record(userId, "FILE", fileId, ChangeType.UPDATED);
 
     log.info("Version restored: fileId={}, restoredVersion={}, newVersion={}", 
              fileId, versionNumber, file.getVersion());
@@ -425,19 +503,15 @@ private void cleanupOldVersions(File file) {
     // Keep only last 5 versions
     if (versions.size() > 5) {
         List<FileVersion> toDelete = versions.subList(5, versions.size());
+        storageAggregator.versionsRemoved(file.getOwner().getId(), toDelete.size(),
+                toDelete.stream().mapToLong(FileVersion::getSize).sum());
         
         for (FileVersion version : toDelete) {
-            try {
-                // Delete from storage (S3 or local)
-                storageService.delete(version.getStorageKey());
-                // Delete from database
-                fileVersionRepository.delete(version);
-                log.info("Cleaned up old version: fileId={}, version={}", file.getId(), version.getVersionNumber());
-            } catch (IOException e) {
-                log.error("Failed to delete old version: fileId={}, version={}, error={}", 
-                         file.getId(), version.getVersionNumber(), e.getMessage());
-                // Don't throw exception, just log and continue
-            }
+            // Storage (S3 or local) is cleaned up by a job once no file or version references it
+            contentBlobService.release(version.getStorageKey());
+            // Delete from database
+            fileVersionRepository.delete(version);
+            log.info("Cleaned up old version: fileId={}, version={}", file.getId(), version.getVersionNumber());
         }
     }
 }
@@ -452,7 +526,7 @@ public List<FileInfoResponse> searchFiles(String query, Long userId) {
     log.info("Search query='{}' returned {} results for user={}", query, files.size(), userId);
 
     return files.stream()
-            .map(this::mapToFileInfoResponse)
+            .map(FileService::mapToFileInfoResponse)
             .collect(Collectors.toList());
 }
 
@@ -467,7 +541,7 @@ public List<FileInfoResponse> searchFilesByType(String mimeType, Long userId) {
     log.info("Search by type='{}' returned {} results for user={}", mimeType, files.size(), userId);
 
     return files.stream()
-            .map(this::mapToFileInfoResponse)
+            .map(FileService::mapToFileInfoResponse)
             .collect(Collectors.toList());
 }
 
@@ -481,7 +555,7 @@ public List<FileInfoResponse> getRecentFiles(Long userId, int limit) {
 
     return files.stream()
             .limit(limit)
-            .map(this::mapToFileInfoResponse)
+            .map(FileService::mapToFileInfoResponse)
             .collect(Collectors.toList());
 }
 
@@ -4,12 +4,16 @@ import com.hatemnefzi.cloudsync.dto.FolderCreateRequest;
 import com.hatemnefzi.cloudsync.dto.FolderResponse;
 import com.hatemnefzi.cloudsync.entity.Activity;
 import com.hatemnefzi.cloudsync.entity.ActivityType;
+import com.hatemnefzi.cloudsync.entity.ChangeType;
 import com.hatemnefzi.cloudsync.entity.Folder;
 import com.hatemnefzi.cloudsync.entity.User;
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
 import com.hatemnefzi.cloudsync.repository.ActivityRepository;
 import com.hatemnefzi.cloudsync.repository.FileRepository;
 import com.hatemnefzi.cloudsync.repository.FolderRepository;
 import com.hatemnefzi.cloudsync.repository.UserRepository;
+import com.hatemnefzi.cloudsync.service.analytics.StorageAggregator;
+import com.hatemnefzi.cloudsync.util.LikePatterns;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -17,7 +21,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,6 +35,10 @@ public class FolderService {
     private final UserRepository userRepository;
     private final FileRepository fileRepository;
     private final ActivityRepository activityRepository;
+    private final CloudsyncMetrics metrics;
+    private final ShareScopeCache shareScopeCache;
+    private final ChangeJournalService changeJournalService;
+    private final StorageAggregator storageAggregator;
 
     @Transactional
     public FolderResponse createFolder(FolderCreateRequest request, Long userId) {
@@ -72,6 +82,7 @@ public class FolderService {
 
         // Log activity
         logActivity(user, ActivityType.CREATE_FOLDER, "FOLDER", folder.getId());
+        changeJournalService.record(userId, "FOLDER", folder.getId(), ChangeType.CREATED);
 
         log.info("Folder created: id={}, name={}, path={}", folder.getId(), folder.getName(), folder.getPath());
 
@@ -110,17 +121,19 @@ public class FolderService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        // Build complete folder tree
-        List<Folder> rootFolders = folderRepository.findByOwnerAndParentIsNull(user);
+        // Build complete folder tree from two queries instead of two per folder
+        List<Folder> folders = folderRepository.findByOwner(user);
+        Map<Long, Long> fileCounts = new HashMap<>();
+        for (Object[] row : fileRepository.countActiveFilesByFolder(user)) {
+            fileCounts.put((Long) row[0], (Long) row[1]);
+        }
 
         // Virtual root
         FolderResponse virtualRoot = FolderResponse.builder()
                 .id(null)
                 .name("My Drive")
                 .path("/")
-                .subfolders(rootFolders.stream()
-                        .map(folder -> buildFolderTree(folder, user))
-                        .collect(Collectors.toList()))
+                .subfolders(buildFolderTree(folders, fileCounts))
                 .build();
 
         return virtualRoot;
@@ -134,9 +147,14 @@ public class FolderService {
         Folder folder = folderRepository.findByIdAndOwner(folderId, user)
                 .orElseThrow(() -> new RuntimeException("Folder not found"));
 
+        // Journaled first: push recipients are resolved from the folder's path
+        changeJournalService.record(userId, "FOLDER", folderId, ChangeType.DELETED);
+
         // TODO: Also delete all files in folder and subfolders (cascade delete)
         // For now, simple delete
         folderRepository.delete(folder);
+        storageAggregator.folderDeleted(userId, folderId);
+        shareScopeCache.invalidateOwner(userId);
 
         // Log activity
         logActivity(user, ActivityType.DELETE, "FOLDER", folderId);
@@ -166,36 +184,53 @@ public class FolderService {
         folder.setPath(newPath);
         folder.setUpdatedAt(LocalDateTime.now());
 
-        // TODO: Update paths of all subfolders recursively
         folder = folderRepository.save(folder);
 
+        // Update paths of all subfolders in one statement
+        int moved = folderRepository.replacePathPrefix(user, LikePatterns.startsWith(oldPath + "/"),
+                newPath + "/", oldPath.length() + 2);
+        log.debug("Rewrote paths of {} subfolders under {}", moved, newPath);
+        shareScopeCache.invalidateOwner(userId);
+
         // Log activity
         logActivity(user, ActivityType.RENAME, "FOLDER", folderId);
+        // Subfolder paths changed too, but clients rebuild paths from parent ids
+        changeJournalService.record(userId, "FOLDER", folderId, ChangeType.UPDATED);
 
         log.info("Folder renamed: id={}, oldName={}, newName={}", folderId, oldPath, newPath);
 
         return mapToFolderResponse(folder, user);
     }
 
-    private FolderResponse buildFolderTree(Folder folder, User user) {
-        List<Folder> children = folderRepository.findByOwnerAndParent(user, folder);
-        
-        List<FolderResponse> childResponses = children.stream()
-                .map(child -> buildFolderTree(child, user))
-                .collect(Collectors.toList());
-
-        int fileCount = fileRepository.findByOwnerAndFolderAndDeletedAtIsNull(user, folder).size();
+    /**
+     * Assemble the folder hierarchy in memory and return the root-level folders
+     */
+    static List<FolderResponse> buildFolderTree(List<Folder> folders, Map<Long, Long> fileCounts) {
+        Map<Long, FolderResponse> byId = new HashMap<>();
+        for (Folder folder : folders) {
+            byId.put(folder.getId(), FolderResponse.builder()
+                    .id(folder.getId())
+                    .name(folder.getName())
+                    .path(folder.getPath())
+                    .parentId(folder.getParent() != null ? folder.getParent().getId() : null)
+                    .createdAt(folder.getCreatedAt())
+                    .updatedAt(folder.getUpdatedAt())
+                    .subfolders(new ArrayList<>())
+                    .fileCount(fileCounts.getOrDefault(folder.getId(), 0L).intValue())
+                    .build());
+        }
 
-        return FolderResponse.builder()
-                .id(folder.getId())
-                .name(folder.getName())
-                .path(folder.getPath())
-                .parentId(folder.getParent() != null ? folder.getParent().getId() : null)
-                .createdAt(folder.getCreatedAt())
-                .updatedAt(folder.getUpdatedAt())
-                .subfolders(childResponses)
-                .fileCount(fileCount)
-                .build();
+        List<FolderResponse> roots = new ArrayList<>();
+        for (Folder folder : folders) {
+            FolderResponse response = byId.get(folder.getId());
+            FolderResponse parent = response.getParentId() != null ? byId.get(response.getParentId()) : null;
+            if (parent != null) {
+                parent.getSubfolders().add(response);
+            } else {
+                roots.add(response);
+            }
+        }
+        return roots;
     }
 
     private FolderResponse mapToFolderResponse(Folder folder, User user) {
@@ -214,6 +249,7 @@ public class FolderService {
     }
 
     private void logActivity(User user, ActivityType action, String entityType, Long entityId) {
+        long start = System.nanoTime();
         Activity activity = Activity.builder()
                 .user(user)
                 .action(action)
@@ -221,5 +257,6 @@ public class FolderService {
                 .entityId(entityId)
                 .build();
         activityRepository.save(activity);
+        metrics.recordActivityWrite(System.nanoTime() - start);
     }
 }
\ No newline at end of file
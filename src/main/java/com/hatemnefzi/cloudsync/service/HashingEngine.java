@@ -0,0 +1,97 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.util.Checksums;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes uploaded content with a tunable read buffer: xxHash64 as a cheap dedup pre-filter,
+ * SHA-256 as the content identity. SHA-256 of a large upload can run on its own core while
+ * the upload is being stored, so the two overlap instead of adding up.
+ */
+@Component
+@Slf4j
+public class HashingEngine {
+
+    @Value("${app.hashing.buffer-size:64KB}")
+    private DataSize bufferSize;
+
+    @Value("${app.hashing.threads:0}")
+    private int threads;
+
+    @Value("${app.hashing.parallel-threshold:1MB}")
+    private DataSize parallelThreshold;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    void start() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "hashing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    public long fastHash(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return Checksums.xxh64(in, (int) bufferSize.toBytes());
+        }
+    }
+
+    public String sha256(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return Checksums.sha256(in, (int) bufferSize.toBytes());
+        }
+    }
+
+    /**
+     * Start hashing on the hashing pool when the file is large enough to be worth it,
+     * otherwise hash it right away. The file is read through its own stream, so the caller
+     * can read it at the same time.
+     */
+    public CompletableFuture<String> sha256Async(MultipartFile file) throws IOException {
+        if (file.getSize() < parallelThreshold.toBytes()) {
+            return CompletableFuture.completedFuture(sha256(file));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sha256(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    public static String await(CompletableFuture<String> checksum) throws IOException {
+        try {
+            return checksum.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Hashing failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.repository.ContentBlobRepository;
+import com.hatemnefzi.cloudsync.repository.FileDerivativeRepository;
+import com.hatemnefzi.cloudsync.repository.FileRepository;
+import com.hatemnefzi.cloudsync.repository.FileVersionRepository;
+import com.hatemnefzi.cloudsync.service.jobs.JobHandler;
+import com.hatemnefzi.cloudsync.service.jobs.JobQueue;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+
+/**
+ * Deletes stored objects nothing points at any more. Queued by the transaction that dropped
+ * the last reference, so the object is only removed once that has committed, and checked
+ * again here: content-addressed keys are shared by identical bytes, and the same content
+ * may have been uploaded again in the meantime. Objects stored before content blobs were
+ * tracked aren't registered but can be shared by several files and versions, so any file
+ * or version still pointing at the key keeps it too.
+ *
+ * The check and the delete run under the {@link StorageKeyLock} uploads take to register
+ * the key, so an upload that found the object already stored either commits its reference
+ * before the check or finds the object gone and stores it again.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ObjectDeletionJobHandler implements JobHandler<ObjectDeletionJobHandler.Payload> {
+
+    public static final String TYPE = "delete-object";
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final FileDerivativeRepository derivativeRepository;
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final StorageService storageService;
+    private final StorageKeyLock storageKeyLock;
+
+    public record Payload(String storageKey) {
+    }
+
+    /**
+     * Queue deletion of an object in the current transaction
+     */
+    public static void enqueue(JobQueue jobQueue, String storageKey) {
+        jobQueue.enqueue(TYPE, new Payload(storageKey), storageKey, JobQueue.PRIORITY_HIGH);
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public Class<Payload> payloadType() {
+        return Payload.class;
+    }
+
+    @Override
+    @Transactional
+    public void handle(Payload payload) throws IOException {
+        String storageKey = payload.storageKey();
+        storageKeyLock.lock(storageKey);
+        if (contentBlobRepository.existsByStorageKey(storageKey) || derivativeRepository.existsByStorageKey(storageKey)
+                || fileRepository.existsByStorageKey(storageKey) || fileVersionRepository.existsByStorageKey(storageKey)) {
+            log.info("Keeping object that is in use again: key={}", storageKey);
+            return;
+        }
+        storageService.delete(storageKey);
+    }
+}
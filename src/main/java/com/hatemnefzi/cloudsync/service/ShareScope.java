@@ -0,0 +1,23 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.entity.SharePermission;
+
+import java.time.LocalDateTime;
+
+/**
+ * What a public folder share grants access to, resolved once per token and cached.
+ */
+public record ShareScope(Long shareId, Long ownerId, Long folderId, String rootPath, String folderName,
+                         String sharedByName, SharePermission permission, LocalDateTime expiresAt) {
+
+    public boolean isExpired() {
+        return expiresAt != null && expiresAt.isBefore(LocalDateTime.now());
+    }
+
+    /**
+     * Whether a folder path is the shared folder or one of its descendants
+     */
+    public boolean contains(String folderPath) {
+        return folderPath != null && (folderPath.equals(rootPath) || folderPath.startsWith(rootPath + "/"));
+    }
+}
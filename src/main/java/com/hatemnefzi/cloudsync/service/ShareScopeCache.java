@@ -0,0 +1,127 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Public folder share scopes by token, so browsing a shared tree doesn't reload the share,
+ * folder and owner on every request.
+ *
+ * Entries are dropped when the share is revoked or changed and when the owner renames or
+ * deletes folders. With Redis, invalidations are broadcast on the push connection so other
+ * nodes drop theirs too; the TTL only covers messages lost while a node was disconnected.
+ */
+@Component
+@Slf4j
+public class ShareScopeCache implements MessageListener {
+
+    static final String CHANNEL = "cloudsync:share-scope";
+    private static final String TOKEN_PREFIX = "token:";
+    private static final String OWNER_PREFIX = "owner:";
+
+    private final Cache<String, ShareScope> cache;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public ShareScopeCache(@Value("${app.shares.scope-cache.max-size:10000}") long maxSize,
+                           @Value("${app.shares.scope-cache.ttl:1m}") Duration ttl,
+                           ObjectProvider<StringRedisTemplate> redisTemplate,
+                           ObjectProvider<RedisMessageListenerContainer> listenerContainer) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.listenerContainer = listenerContainer.getIfAvailable();
+        this.redisTemplate = this.listenerContainer != null ? redisTemplate.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    void subscribe() {
+        if (listenerContainer != null) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        }
+    }
+
+    public ShareScope get(String shareToken, Function<String, ShareScope> loader) {
+        return cache.get(shareToken, loader);
+    }
+
+    public void invalidate(String shareToken) {
+        if (shareToken != null) {
+            afterCommit(() -> {
+                cache.invalidate(shareToken);
+                broadcast(TOKEN_PREFIX + shareToken);
+            });
+        }
+    }
+
+    /**
+     * Drop every scope of one owner, e.g. after a folder rename changed their paths
+     */
+    public void invalidateOwner(Long ownerId) {
+        afterCommit(() -> {
+            dropOwner(ownerId);
+            broadcast(OWNER_PREFIX + ownerId);
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if (body.startsWith(TOKEN_PREFIX)) {
+                cache.invalidate(body.substring(TOKEN_PREFIX.length()));
+            } else if (body.startsWith(OWNER_PREFIX)) {
+                dropOwner(Long.valueOf(body.substring(OWNER_PREFIX.length())));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed share scope invalidation: {}", body);
+        }
+    }
+
+    private void dropOwner(Long ownerId) {
+        cache.asMap().values().removeIf(scope -> scope.ownerId().equals(ownerId));
+    }
+
+    // Nodes also receive their own messages; dropping an entry twice is harmless
+    private void broadcast(String invalidation) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(CHANNEL, invalidation);
+        } catch (RuntimeException e) {
+            log.warn("Failed to broadcast share scope invalidation {}: {}", invalidation, e.getMessage());
+        }
+    }
+
+    // Evicting before commit would let a concurrent request cache the old state again
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -1,15 +1,28 @@
 package com.hatemnefzi.cloudsync.service;
 
-import com.hatemnefzi.cloudsync.dto.PublicFileDownload;
+import com.hatemnefzi.cloudsync.dto.FileDownload;
 import com.hatemnefzi.cloudsync.dto.PublicFileResponse;
+import com.hatemnefzi.cloudsync.dto.PublicFolderEntry;
+import com.hatemnefzi.cloudsync.dto.PublicFolderListing;
 import com.hatemnefzi.cloudsync.dto.ShareCreateRequest;
+import com.hatemnefzi.cloudsync.dto.ShareListing;
 import com.hatemnefzi.cloudsync.dto.ShareResponse;
 import com.hatemnefzi.cloudsync.entity.*;
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
 import com.hatemnefzi.cloudsync.repository.*;
+import com.hatemnefzi.cloudsync.service.export.ZipExport;
+import com.hatemnefzi.cloudsync.service.export.ZipExportService;
+import com.hatemnefzi.cloudsync.service.push.ChangeNotifier;
 import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import com.hatemnefzi.cloudsync.util.KeysetCursor;
+import com.hatemnefzi.cloudsync.util.LikePatterns;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -30,6 +43,13 @@ public class ShareService {
     private final UserRepository userRepository;
     private final ActivityRepository activityRepository;
     private final StorageService storageService; // ← Add this
+    private final CloudsyncMetrics metrics;
+    private final ZipExportService zipExportService;
+    private final ShareScopeCache shareScopeCache;
+    private final ChangeNotifier changeNotifier;
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 500;
 
     @Value("${app.base-url:http://localhost:8082}")
     private String baseUrl;
@@ -95,6 +115,7 @@ public class ShareService {
                 .build();
 
         share = shareRepository.save(share);
+        changeNotifier.shareChanged(share, ChangeType.CREATED);
 
         // Log activity
         logActivity(sharedBy, ActivityType.SHARE, 
@@ -112,27 +133,52 @@ public class ShareService {
     }
 
     @Transactional(readOnly = true)
-    public List<ShareResponse> getMyShares(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public ShareListing getMyShares(Long userId, String cursor, Integer limit) {
+        KeysetCursor after = cursor != null && !cursor.isEmpty() ? KeysetCursor.decode(cursor) : null;
+        int pageSize = pageSize(after, limit);
+
+        // One extra row tells whether another page follows
+        List<ShareRow> rows = after == null
+                ? shareRepository.findRowsSharedBy(userId, rowLimit(pageSize))
+                : shareRepository.findRowsSharedByAfter(userId, after.createdAt(), after.id(), rowLimit(pageSize));
+        return toListing(rows, pageSize);
+    }
 
-        List<Share> shares = shareRepository.findBySharedByOrderByCreatedAtDesc(user);
+    @Transactional(readOnly = true)
+    public ShareListing getSharedWithMe(Long userId, String cursor, Integer limit) {
+        KeysetCursor after = cursor != null && !cursor.isEmpty() ? KeysetCursor.decode(cursor) : null;
+        int pageSize = pageSize(after, limit);
+
+        List<ShareRow> rows = after == null
+                ? shareRepository.findRowsSharedWith(userId, rowLimit(pageSize))
+                : shareRepository.findRowsSharedWithAfter(userId, after.createdAt(), after.id(), rowLimit(pageSize));
+        return toListing(rows, pageSize);
+    }
 
-        return shares.stream()
-                .map(this::mapToShareResponse)
-                .collect(Collectors.toList());
+    // Clients from before paging send neither cursor nor limit and still get the whole list
+    private static int pageSize(KeysetCursor after, Integer limit) {
+        if (after == null && limit == null) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.min(Math.max(limit != null ? limit : DEFAULT_PAGE_SIZE, 1), MAX_PAGE_SIZE);
     }
 
-    @Transactional(readOnly = true)
-    public List<ShareResponse> getSharedWithMe(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    private static Limit rowLimit(int pageSize) {
+        return pageSize == Integer.MAX_VALUE ? Limit.unlimited() : Limit.of(pageSize + 1);
+    }
 
-        List<Share> shares = shareRepository.findBySharedWithOrderByCreatedAtDesc(user);
+    private ShareListing toListing(List<ShareRow> rows, int pageSize) {
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            ShareRow last = rows.get(pageSize - 1);
+            nextCursor = new KeysetCursor(last.createdAt(), last.id()).encode();
+        }
 
-        return shares.stream()
-                .map(this::mapToShareResponse)
-                .collect(Collectors.toList());
+        return ShareListing.builder()
+                .shares(rows.stream().map(this::mapToShareResponse).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
     }
 
     @Transactional(readOnly = true)
@@ -145,9 +191,9 @@ public class ShareService {
             throw new RuntimeException("Share link has expired");
         }
 
-        // Only support file sharing for now (not folder)
+        // Folder shares are browsed with listPublicFolder
         if (share.getFile() == null) {
-            throw new RuntimeException("This share link is for a folder, not supported yet");
+            throw new RuntimeException("This share link is for a folder, browse it with /files");
         }
 
         File file = share.getFile();
@@ -165,7 +211,7 @@ public class ShareService {
     }
 
     @Transactional(readOnly = true)
-    public PublicFileDownload downloadPublicFile(String shareToken) throws IOException {
+    public FileDownload downloadPublicFile(String shareToken) {
         Share share = shareRepository.findByShareToken(shareToken)
                 .orElseThrow(() -> new RuntimeException("Share link not found or has been revoked"));
 
@@ -181,21 +227,122 @@ public class ShareService {
         }
 
         if (share.getFile() == null) {
-            throw new RuntimeException("Cannot download folder");
+            throw new RuntimeException("Folder shares are downloaded as a ZIP from /export");
         }
 
         File file = share.getFile();
 
-        // Get file data from storage
-        byte[] fileData = storageService.getFile(file.getStorageKey());
-
         log.info("Public file downloaded: shareToken={}, fileId={}, fileName={}", 
                  shareToken, file.getId(), file.getName());
 
-        return PublicFileDownload.builder()
-                .fileData(fileData)
+        // Content is streamed from storage by the controller
+        return FileDownload.builder()
+                .fileId(file.getId())
+                .fileName(file.getName())
+                .mimeType(file.getMimeType())
+                .size(file.getSize())
+                .storageKey(file.getStorageKey())
+                .checksum(file.getChecksum())
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public ZipExport exportPublicFolder(String shareToken) {
+        Share share = shareRepository.findByShareToken(shareToken)
+                .orElseThrow(() -> new RuntimeException("Share link not found or has been revoked"));
+
+        // Check if expired
+        if (share.getExpiresAt() != null && share.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new RuntimeException("Share link has expired");
+        }
+
+        if (share.getFolder() == null) {
+            throw new RuntimeException("This share link is for a file, use /download");
+        }
+
+        Folder folder = share.getFolder();
+
+        log.info("Public folder exported: shareToken={}, folderId={}", shareToken, folder.getId());
+
+        return zipExportService.exportFolderTree(folder, share.getSharedBy());
+    }
+
+    @Transactional(readOnly = true)
+    public PublicFolderListing listPublicFolder(String shareToken, String path, boolean recursive, int page, int size) {
+        ShareScope scope = resolveFolderScope(shareToken);
+
+        String relativePath = normalizeRelativePath(path);
+        String fullPath = scope.rootPath() + relativePath;
+
+        Long folderId = scope.folderId();
+        if (!relativePath.isEmpty()) {
+            folderId = folderRepository.findFirstByOwnerIdAndPath(scope.ownerId(), fullPath)
+                    .orElseThrow(() -> new RuntimeException("Folder not found"))
+                    .getId();
+        }
+
+        List<PublicFolderEntry> subfolders = folderRepository.findByParentIdOrderByNameAsc(folderId).stream()
+                .map(folder -> PublicFolderEntry.builder()
+                        .name(folder.getName())
+                        .path(folder.getPath().substring(scope.rootPath().length()))
+                        .updatedAt(folder.getUpdatedAt())
+                        .build())
+                .collect(Collectors.toList());
+
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        Page<File> files = recursive
+                ? fileRepository.findActiveInFolderTree(scope.ownerId(), fullPath, LikePatterns.startsWith(fullPath + "/"),
+                        PageRequest.of(Math.max(page, 0), pageSize, Sort.by("folder.path", "name")))
+                : fileRepository.findActiveInFolderPath(scope.ownerId(), fullPath,
+                        PageRequest.of(Math.max(page, 0), pageSize, Sort.by("name")));
+
+        return PublicFolderListing.builder()
+                .folderName(scope.folderName())
+                .path(relativePath)
+                .sharedByName(scope.sharedByName())
+                .expiresAt(scope.expiresAt())
+                .subfolders(subfolders)
+                .files(files.stream()
+                        .map(file -> PublicFolderEntry.builder()
+                                .id(file.getId())
+                                .name(file.getName())
+                                .path(file.getFolder().getPath().substring(scope.rootPath().length()))
+                                .size(file.getSize())
+                                .mimeType(file.getMimeType())
+                                .updatedAt(file.getUpdatedAt())
+                                .build())
+                        .collect(Collectors.toList()))
+                .page(files.getNumber())
+                .size(files.getSize())
+                .totalFiles(files.getTotalElements())
+                .hasNext(files.hasNext())
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public FileDownload downloadPublicFolderFile(String shareToken, Long fileId) {
+        ShareScope scope = resolveFolderScope(shareToken);
+
+        // Check permission
+        if (scope.permission() != SharePermission.VIEW &&
+            scope.permission() != SharePermission.EDIT) {
+            throw new RuntimeException("No download permission");
+        }
+
+        // Only files under the shared folder are reachable through the link
+        File file = fileRepository.findActiveInFolderTreeById(fileId, scope.ownerId(), scope.rootPath(),
+                        LikePatterns.startsWith(scope.rootPath() + "/"))
+                .orElseThrow(() -> new RuntimeException("File not found"));
+
+        log.info("Public folder file downloaded: shareToken={}, fileId={}", shareToken, fileId);
+
+        return FileDownload.builder()
+                .fileId(file.getId())
                 .fileName(file.getName())
                 .mimeType(file.getMimeType())
+                .size(file.getSize())
+                .storageKey(file.getStorageKey())
+                .checksum(file.getChecksum())
                 .build();
     }
 
@@ -210,6 +357,8 @@ public class ShareService {
         }
 
         shareRepository.delete(share);
+        shareScopeCache.invalidate(share.getShareToken());
+        changeNotifier.shareChanged(share, ChangeType.DELETED);
 
         log.info("Share revoked: id={}", shareId);
     }
@@ -226,12 +375,58 @@ public class ShareService {
 
         share.setExpiresAt(newExpiryDate);
         share = shareRepository.save(share);
+        shareScopeCache.invalidate(share.getShareToken());
+        changeNotifier.shareChanged(share, ChangeType.UPDATED);
 
         log.info("Share expiry updated: id={}, newExpiry={}", shareId, newExpiryDate);
 
         return mapToShareResponse(share);
     }
 
+    /**
+     * Scope of a public folder share, from the cache when possible
+     */
+    private ShareScope resolveFolderScope(String shareToken) {
+        ShareScope scope = shareScopeCache.get(shareToken, this::loadFolderScope);
+
+        // Expiry is checked on every access, cached or not
+        if (scope.isExpired()) {
+            throw new RuntimeException("Share link has expired");
+        }
+        return scope;
+    }
+
+    private ShareScope loadFolderScope(String shareToken) {
+        Share share = shareRepository.findByShareToken(shareToken)
+                .orElseThrow(() -> new RuntimeException("Share link not found or has been revoked"));
+
+        if (share.getFolder() == null) {
+            throw new RuntimeException("This share link is for a file, use /download");
+        }
+
+        Folder folder = share.getFolder();
+        User owner = share.getSharedBy();
+        return new ShareScope(share.getId(), owner.getId(), folder.getId(), folder.getPath(), folder.getName(),
+                owner.getFullName(), share.getPermission(), share.getExpiresAt());
+    }
+
+    // Relative path inside a shared folder: "" or "/a/b", never climbing out of it
+    private static String normalizeRelativePath(String path) {
+        if (path == null || path.isBlank() || path.equals("/")) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.equals("..")) {
+                throw new RuntimeException("Folder not found");
+            }
+            if (!segment.isEmpty() && !segment.equals(".")) {
+                normalized.append('/').append(segment);
+            }
+        }
+        return normalized.toString();
+    }
+
     private ShareResponse mapToShareResponse(Share share) {
         boolean isExpired = share.getExpiresAt() != null && 
                            share.getExpiresAt().isBefore(LocalDateTime.now());
@@ -258,7 +453,26 @@ public class ShareService {
                 .build();
     }
 
+    private ShareResponse mapToShareResponse(ShareRow row) {
+        return ShareResponse.builder()
+                .id(row.id())
+                .fileId(row.fileId())
+                .fileName(row.fileName())
+                .folderId(row.folderId())
+                .folderName(row.folderName())
+                .sharedByEmail(row.sharedByEmail())
+                .sharedWithEmail(row.sharedWithEmail())
+                .permission(row.permission())
+                .shareToken(row.shareToken())
+                .shareUrl(row.shareToken() != null ? baseUrl + "/api/share/" + row.shareToken() : null)
+                .expiresAt(row.expiresAt())
+                .createdAt(row.createdAt())
+                .isExpired(row.expiresAt() != null && row.expiresAt().isBefore(LocalDateTime.now()))
+                .build();
+    }
+
     private void logActivity(User user, ActivityType action, String entityType, Long entityId) {
+        long start = System.nanoTime();
         Activity activity = Activity.builder()
                 .user(user)
                 .action(action)
@@ -266,5 +480,6 @@ public class ShareService {
                 .entityId(entityId)
                 .build();
         activityRepository.save(activity);
+        metrics.recordActivityWrite(System.nanoTime() - start);
     }
 }
\ No newline at end of file
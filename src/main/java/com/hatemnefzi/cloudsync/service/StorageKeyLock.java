@@ -0,0 +1,28 @@
+package com.hatemnefzi.cloudsync.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Postgres advisory lock on a storage key, held until the current transaction ends.
+ *
+ * Registering a reference to an object and deleting the object both take it. Content-addressed
+ * stores skip writing bytes they already hold, so without it an upload could find the object
+ * present, the deletion job remove it, and the upload then commit a reference to nothing.
+ */
+@Component
+@RequiredArgsConstructor
+public class StorageKeyLock {
+
+    private static final String LOCK = "SELECT pg_advisory_xact_lock(hashtextextended(?, 0))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lock(String storageKey) {
+        jdbcTemplate.query(LOCK, rs -> { }, storageKey);
+    }
+}
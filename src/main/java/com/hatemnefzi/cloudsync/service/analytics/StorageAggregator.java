@@ -0,0 +1,245 @@
+package com.hatemnefzi.cloudsync.service.analytics;
+
+import com.hatemnefzi.cloudsync.repository.FolderRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps storage_aggregates and storage_growth in step with the file write paths.
+ *
+ * Changes are summed per transaction and written just before it commits: one upsert per
+ * touched row, in key order, so concurrent writers lock rows in the same order and hold them
+ * only for the commit. Totals over all users go to one of several stripes, picked per
+ * transaction, so they aren't a single hot row.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StorageAggregator {
+
+    static final long ALL_USERS = 0;
+    static final String SCOPE_USER = "USER";
+    static final String SCOPE_FOLDER = "FOLDER";
+    static final String SCOPE_MIME = "MIME";
+
+    // Column order of both tables after the key
+    static final List<String> COLUMNS = List.of("file_count", "file_bytes", "trash_count", "trash_bytes",
+            "version_count", "version_bytes", "blob_count", "blob_bytes");
+    private static final int FILES = 0;
+    private static final int TRASH = 2;
+    private static final int VERSIONS = 4;
+    private static final int BLOBS = 6;
+
+    private static final String UPSERT_AGGREGATE = upsert("storage_aggregates", "scope, owner_id, scope_key, stripe",
+            "?, ?, ?, ?", ", updated_at = now()");
+    private static final String UPSERT_GROWTH = upsert("storage_growth", "owner_id, day, stripe",
+            "?, CURRENT_DATE, ?", "");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FolderRepository folderRepository;
+
+    @Value("${app.analytics.stripes:16}")
+    private int stripes;
+
+    public void fileAdded(StorageFootprint file) {
+        add(file, FILES, 1);
+    }
+
+    public void fileRemoved(StorageFootprint file) {
+        add(file, FILES, -1);
+    }
+
+    /**
+     * A file changed in place: new content, or moved to another folder
+     */
+    public void fileReplaced(StorageFootprint before, StorageFootprint after) {
+        fileRemoved(before);
+        fileAdded(after);
+    }
+
+    public void fileTrashed(StorageFootprint file) {
+        add(file, FILES, -1);
+        add(file, TRASH, 1);
+    }
+
+    public void fileRestored(StorageFootprint file) {
+        add(file, TRASH, -1);
+        add(file, FILES, 1);
+    }
+
+    public void versionsAdded(Long ownerId, long count, long bytes) {
+        Pending pending = pending();
+        long[] delta = delta(VERSIONS, count, bytes);
+        pending.addOwner(ownerId, delta);
+        pending.addOwner(ALL_USERS, delta);
+    }
+
+    public void versionsRemoved(Long ownerId, long count, long bytes) {
+        versionsAdded(ownerId, -count, -bytes);
+    }
+
+    public void blobStored(long size) {
+        pending().addOwner(ALL_USERS, delta(BLOBS, 1, size));
+    }
+
+    public void blobDeleted(long size) {
+        pending().addOwner(ALL_USERS, delta(BLOBS, -1, -size));
+    }
+
+    /**
+     * Drop the subtree totals of a deleted folder; only empty folders can be deleted
+     */
+    public void folderDeleted(Long ownerId, Long folderId) {
+        jdbcTemplate.update("DELETE FROM storage_aggregates WHERE scope = ? AND owner_id = ? AND scope_key = ?",
+                SCOPE_FOLDER, ownerId, folderId.toString());
+    }
+
+    private void add(StorageFootprint file, int column, long sign) {
+        Pending pending = pending();
+        long[] delta = delta(column, sign, sign * file.size());
+        pending.addOwner(file.ownerId(), delta);
+        pending.addOwner(ALL_USERS, delta);
+        pending.add(SCOPE_MIME, file.ownerId(), file.mimeType(), delta);
+        pending.add(SCOPE_MIME, ALL_USERS, file.mimeType(), delta);
+        for (Long folderId : pending.ancestors(file.ownerId(), file.folderPath())) {
+            pending.add(SCOPE_FOLDER, file.ownerId(), folderId.toString(), delta);
+        }
+    }
+
+    private static long[] delta(int column, long count, long bytes) {
+        long[] delta = new long[COLUMNS.size()];
+        delta[column] = count;
+        delta[column + 1] = bytes;
+        return delta;
+    }
+
+    private Pending pending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Storage aggregates are updated inside the transaction that changes files");
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Pending created = new Pending(ThreadLocalRandom.current().nextInt(stripes));
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    write(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(StorageAggregator.this);
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+
+    private void write(Pending pending) {
+        List<Object[]> aggregates = new ArrayList<>();
+        pending.aggregates.forEach((key, delta) -> {
+            if (!isZero(delta)) {
+                aggregates.add(row(delta, key.scope(), key.ownerId(), key.scopeKey(), key.stripe()));
+            }
+        });
+        List<Object[]> growth = new ArrayList<>();
+        pending.growth.forEach((owner, delta) -> {
+            if (!isZero(delta)) {
+                growth.add(row(delta, owner, owner == ALL_USERS ? pending.stripe : 0));
+            }
+        });
+        if (!aggregates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_AGGREGATE, aggregates);
+        }
+        if (!growth.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_GROWTH, growth);
+        }
+        log.debug("Storage aggregates: {} rows, {} growth rows", aggregates.size(), growth.size());
+    }
+
+    private static boolean isZero(long[] delta) {
+        return Arrays.stream(delta).allMatch(v -> v == 0);
+    }
+
+    private static Object[] row(long[] delta, Object... key) {
+        Object[] row = Arrays.copyOf(key, key.length + delta.length);
+        for (int i = 0; i < delta.length; i++) {
+            row[key.length + i] = delta[i];
+        }
+        return row;
+    }
+
+    private static String upsert(String table, String keyColumns, String keyValues, String extraSet) {
+        String columns = String.join(", ", COLUMNS);
+        String values = String.join(", ", COLUMNS.stream().map(c -> "?").toList());
+        String sums = String.join(", ", COLUMNS.stream().map(c -> c + " = " + table + "." + c + " + EXCLUDED." + c).toList());
+        return "INSERT INTO " + table + " (" + keyColumns + ", " + columns + ") VALUES (" + keyValues + ", " + values + ") "
+                + "ON CONFLICT (" + keyColumns + ") DO UPDATE SET " + sums + extraSet;
+    }
+
+    private record Key(String scope, long ownerId, String scopeKey, int stripe) {
+        static final Comparator<Key> ORDER = Comparator.comparing(Key::scope)
+                .thenComparingLong(Key::ownerId)
+                .thenComparing(Key::scopeKey)
+                .thenComparingInt(Key::stripe);
+    }
+
+    // Changes of one transaction, and the folder ancestors it has already looked up
+    private final class Pending {
+        final int stripe;
+        final Map<Key, long[]> aggregates = new TreeMap<>(Key.ORDER);
+        final Map<Long, long[]> growth = new TreeMap<>();
+        final Map<String, List<Long>> ancestors = new HashMap<>();
+
+        Pending(int stripe) {
+            this.stripe = stripe;
+        }
+
+        void addOwner(long ownerId, long[] delta) {
+            add(SCOPE_USER, ownerId, "", delta);
+            sum(growth.computeIfAbsent(ownerId, o -> new long[COLUMNS.size()]), delta);
+        }
+
+        void add(String scope, long ownerId, String scopeKey, long[] delta) {
+            Key key = new Key(scope, ownerId, scopeKey, ownerId == ALL_USERS ? stripe : 0);
+            sum(aggregates.computeIfAbsent(key, k -> new long[COLUMNS.size()]), delta);
+        }
+
+        // The folder and every folder above it, found by the prefixes of its path
+        List<Long> ancestors(Long ownerId, String path) {
+            if (path == null) {
+                return List.of();
+            }
+            return ancestors.computeIfAbsent(ownerId + ":" + path, k -> {
+                List<String> prefixes = new ArrayList<>();
+                for (int i = path.indexOf('/', 1); i > 0; i = path.indexOf('/', i + 1)) {
+                    prefixes.add(path.substring(0, i));
+                }
+                prefixes.add(path);
+                return folderRepository.findIdsByOwnerIdAndPathIn(ownerId, prefixes);
+            });
+        }
+
+        private static void sum(long[] into, long[] delta) {
+            for (int i = 0; i < delta.length; i++) {
+                into[i] += delta[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.hatemnefzi.cloudsync.service.analytics;
+
+import com.hatemnefzi.cloudsync.dto.StorageGrowthPoint;
+import com.hatemnefzi.cloudsync.dto.StorageTypeUsage;
+import com.hatemnefzi.cloudsync.dto.StorageUsageResponse;
+import com.hatemnefzi.cloudsync.entity.Folder;
+import com.hatemnefzi.cloudsync.entity.User;
+import com.hatemnefzi.cloudsync.repository.FolderRepository;
+import com.hatemnefzi.cloudsync.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+import static com.hatemnefzi.cloudsync.service.analytics.StorageAggregator.ALL_USERS;
+import static com.hatemnefzi.cloudsync.service.analytics.StorageAggregator.COLUMNS;
+import static com.hatemnefzi.cloudsync.service.analytics.StorageAggregator.SCOPE_FOLDER;
+import static com.hatemnefzi.cloudsync.service.analytics.StorageAggregator.SCOPE_MIME;
+import static com.hatemnefzi.cloudsync.service.analytics.StorageAggregator.SCOPE_USER;
+
+/**
+ * Storage usage answered from the aggregates StorageAggregator maintains: a handful of rows
+ * per question, however many files there are. Totals over all users (dedup savings,
+ * version overhead) are published as gauges rather than through the API.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StorageAnalyticsService {
+
+    private static final String SUMS = COLUMNS.stream()
+            .map(c -> "COALESCE(sum(" + c + "), 0) AS " + c)
+            .collect(Collectors.joining(", "));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final FolderRepository folderRepository;
+    private final MeterRegistry registry;
+
+    @Value("${app.analytics.max-growth-days:366}")
+    private int maxGrowthDays;
+
+    @Value("${app.analytics.gauge-refresh:1m}")
+    private Duration gaugeRefresh;
+
+    private volatile StorageTotals global = StorageTotals.EMPTY;
+    private volatile long globalReadAt;
+
+    @PostConstruct
+    void registerGauges() {
+        globalGauge("cloudsync.storage.bytes", "files", "Bytes of active files, over all users", StorageTotals::fileBytes);
+        globalGauge("cloudsync.storage.bytes", "trash", "Bytes of deleted files still in trash", StorageTotals::trashBytes);
+        globalGauge("cloudsync.storage.bytes", "versions", "Bytes of old versions kept in history", StorageTotals::versionBytes);
+        globalGauge("cloudsync.storage.bytes", "stored", "Bytes of distinct stored objects", StorageTotals::blobBytes);
+        Gauge.builder("cloudsync.storage.dedup.saved", this, s -> s.global().dedupSavedBytes())
+                .description("Bytes referenced by files and versions but stored only once")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("cloudsync.storage.version.overhead", this, s -> s.global().versionOverhead())
+                .description("Bytes of old versions per byte of active files")
+                .register(registry);
+    }
+
+    @Transactional(readOnly = true)
+    public StorageUsageResponse getUserUsage(Long userId, int types) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        StorageTotals totals = totals(SCOPE_USER, userId, "");
+        return StorageUsageResponse.builder()
+                .fileCount(totals.fileCount())
+                .fileBytes(totals.fileBytes())
+                .trashCount(totals.trashCount())
+                .trashBytes(totals.trashBytes())
+                .versionCount(totals.versionCount())
+                .versionBytes(totals.versionBytes())
+                .versionOverhead(totals.versionOverhead())
+                .storageUsed(user.getStorageUsed())
+                .storageLimit(user.getStorageLimit())
+                .types(types > 0 ? getTypeUsage(userId, types) : null)
+                .build();
+    }
+
+    /**
+     * Totals of a folder and everything below it
+     */
+    @Transactional(readOnly = true)
+    public StorageUsageResponse getFolderUsage(Long folderId, Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        Folder folder = folderRepository.findByIdAndOwner(folderId, user)
+                .orElseThrow(() -> new RuntimeException("Folder not found"));
+
+        StorageTotals totals = totals(SCOPE_FOLDER, userId, folderId.toString());
+        return StorageUsageResponse.builder()
+                .folderId(folderId)
+                .path(folder.getPath())
+                .fileCount(totals.fileCount())
+                .fileBytes(totals.fileBytes())
+                .trashCount(totals.trashCount())
+                .trashBytes(totals.trashBytes())
+                .build();
+    }
+
+    /**
+     * Usage per MIME type, largest first
+     */
+    @Transactional(readOnly = true)
+    public List<StorageTypeUsage> getTypeUsage(Long userId, int limit) {
+        return jdbcTemplate.query("SELECT scope_key, " + SUMS + " FROM storage_aggregates"
+                        + " WHERE scope = ? AND owner_id = ? GROUP BY scope_key"
+                        + " HAVING sum(file_count) + sum(trash_count) > 0"
+                        + " ORDER BY sum(file_bytes) DESC, scope_key LIMIT ?",
+                (rs, i) -> {
+                    StorageTotals totals = mapTotals(rs);
+                    return StorageTypeUsage.builder()
+                            .mimeType(rs.getString("scope_key"))
+                            .fileCount(totals.fileCount())
+                            .fileBytes(totals.fileBytes())
+                            .trashCount(totals.trashCount())
+                            .trashBytes(totals.trashBytes())
+                            .build();
+                },
+                SCOPE_MIME, userId, Math.max(limit, 1));
+    }
+
+    /**
+     * Net change per day over the last days, oldest first; days without changes are left out
+     */
+    @Transactional(readOnly = true)
+    public List<StorageGrowthPoint> getGrowth(Long userId, int days) {
+        int window = Math.min(Math.max(days, 1), maxGrowthDays);
+        List<DailyTotals> daily = jdbcTemplate.query("SELECT day, " + SUMS + " FROM storage_growth"
+                        + " WHERE owner_id = ? AND day > CURRENT_DATE - ? GROUP BY day ORDER BY day DESC",
+                (rs, i) -> new DailyTotals(rs.getDate("day").toLocalDate(), mapTotals(rs)),
+                userId, window);
+
+        // Walk back from today's totals to get each day's closing totals
+        StorageTotals current = totals(SCOPE_USER, userId, "");
+        long fileBytes = current.fileBytes();
+        long totalBytes = current.referencedBytes();
+        List<StorageGrowthPoint> points = new ArrayList<>(daily.size());
+        for (DailyTotals day : daily) {
+            points.add(StorageGrowthPoint.builder()
+                    .day(day.day())
+                    .filesAdded(day.totals().fileCount())
+                    .fileBytesAdded(day.totals().fileBytes())
+                    .versionBytesAdded(day.totals().versionBytes())
+                    .fileBytes(fileBytes)
+                    .totalBytes(totalBytes)
+                    .build());
+            fileBytes -= day.totals().fileBytes();
+            totalBytes -= day.totals().referencedBytes();
+        }
+        Collections.reverse(points);
+        return points;
+    }
+
+    private StorageTotals totals(String scope, long ownerId, String scopeKey) {
+        return jdbcTemplate.queryForObject("SELECT " + SUMS + " FROM storage_aggregates"
+                        + " WHERE scope = ? AND owner_id = ? AND scope_key = ?",
+                (rs, i) -> mapTotals(rs), scope, ownerId, scopeKey);
+    }
+
+    // Read at most once per refresh interval, whatever the scrape rate
+    private StorageTotals global() {
+        long now = System.currentTimeMillis();
+        if (now - globalReadAt >= gaugeRefresh.toMillis()) {
+            globalReadAt = now;
+            try {
+                global = totals(SCOPE_USER, ALL_USERS, "");
+            } catch (RuntimeException e) {
+                log.warn("Could not read storage totals: {}", e.getMessage());
+            }
+        }
+        return global;
+    }
+
+    private void globalGauge(String name, String kind, String description, ToDoubleFunction<StorageTotals> value) {
+        Gauge.builder(name, this, s -> value.applyAsDouble(s.global()))
+                .description(description)
+                .tag("kind", kind)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private static StorageTotals mapTotals(ResultSet rs) throws SQLException {
+        return new StorageTotals(rs.getLong("file_count"), rs.getLong("file_bytes"),
+                rs.getLong("trash_count"), rs.getLong("trash_bytes"),
+                rs.getLong("version_count"), rs.getLong("version_bytes"),
+                rs.getLong("blob_count"), rs.getLong("blob_bytes"));
+    }
+
+    private record DailyTotals(LocalDate day, StorageTotals totals) {
+    }
+}
@@ -0,0 +1,38 @@
+package com.hatemnefzi.cloudsync.service.analytics;
+
+import com.hatemnefzi.cloudsync.entity.File;
+import com.hatemnefzi.cloudsync.entity.Folder;
+
+import java.util.Locale;
+
+/**
+ * What a file adds to the storage aggregates: its owner, folder, type and size. Taken
+ * before a file is changed in place, to subtract what it used to count for.
+ */
+public record StorageFootprint(Long ownerId, String folderPath, String mimeType, long size) {
+
+    private static final int MAX_MIME_LENGTH = 255;
+
+    public static StorageFootprint of(File file) {
+        return new StorageFootprint(file.getOwner().getId(),
+                file.getFolder() != null ? file.getFolder().getPath() : null,
+                mimeKey(file.getMimeType()), file.getSize());
+    }
+
+    public StorageFootprint inFolder(Folder folder) {
+        return new StorageFootprint(ownerId, folder != null ? folder.getPath() : null, mimeType, size);
+    }
+
+    // Matches the backfill in db/migration/V10: no parameters, lower case, "unknown" when missing
+    static String mimeKey(String mimeType) {
+        if (mimeType == null) {
+            return "unknown";
+        }
+        int semicolon = mimeType.indexOf(';');
+        String key = (semicolon >= 0 ? mimeType.substring(0, semicolon) : mimeType).trim().toLowerCase(Locale.ROOT);
+        if (key.length() > MAX_MIME_LENGTH) {
+            key = key.substring(0, MAX_MIME_LENGTH);
+        }
+        return key.isEmpty() ? "unknown" : key;
+    }
+}
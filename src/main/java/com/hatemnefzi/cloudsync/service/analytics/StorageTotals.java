@@ -0,0 +1,30 @@
+package com.hatemnefzi.cloudsync.service.analytics;
+
+/**
+ * One row of storage_aggregates or storage_growth, summed over its stripes
+ */
+public record StorageTotals(long fileCount, long fileBytes,
+                            long trashCount, long trashBytes,
+                            long versionCount, long versionBytes,
+                            long blobCount, long blobBytes) {
+
+    static final StorageTotals EMPTY = new StorageTotals(0, 0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Bytes referenced by files, trash and versions
+     */
+    public long referencedBytes() {
+        return fileBytes + trashBytes + versionBytes;
+    }
+
+    /**
+     * Bytes not stored twice thanks to deduplication; only meaningful for the all-users totals
+     */
+    public long dedupSavedBytes() {
+        return referencedBytes() - blobBytes;
+    }
+
+    public double versionOverhead() {
+        return fileBytes == 0 ? 0 : (double) versionBytes / fileBytes;
+    }
+}
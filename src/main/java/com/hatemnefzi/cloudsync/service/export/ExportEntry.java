@@ -0,0 +1,17 @@
+package com.hatemnefzi.cloudsync.service.export;
+
+import java.time.LocalDateTime;
+
+/**
+ * One entry of an archive: a directory (no storage key) or a stored file.
+ */
+public record ExportEntry(String path, String storageKey, long size, String mimeType, LocalDateTime modifiedAt) {
+
+    public static ExportEntry directory(String path, LocalDateTime modifiedAt) {
+        return new ExportEntry(path.endsWith("/") ? path : path + "/", null, 0, null, modifiedAt);
+    }
+
+    public boolean isDirectory() {
+        return storageKey == null;
+    }
+}
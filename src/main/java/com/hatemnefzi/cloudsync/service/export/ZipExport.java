@@ -0,0 +1,9 @@
+package com.hatemnefzi.cloudsync.service.export;
+
+import java.util.List;
+
+/**
+ * Archive resolved from the database, ready to be streamed outside of any transaction.
+ */
+public record ZipExport(String fileName, List<ExportEntry> entries) {
+}
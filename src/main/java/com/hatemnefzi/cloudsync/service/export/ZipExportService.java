@@ -0,0 +1,236 @@
+package com.hatemnefzi.cloudsync.service.export;
+
+import com.hatemnefzi.cloudsync.entity.Activity;
+import com.hatemnefzi.cloudsync.entity.ActivityType;
+import com.hatemnefzi.cloudsync.entity.File;
+import com.hatemnefzi.cloudsync.entity.Folder;
+import com.hatemnefzi.cloudsync.entity.User;
+import com.hatemnefzi.cloudsync.repository.ActivityRepository;
+import com.hatemnefzi.cloudsync.repository.FileRepository;
+import com.hatemnefzi.cloudsync.repository.FolderRepository;
+import com.hatemnefzi.cloudsync.repository.UserRepository;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import com.hatemnefzi.cloudsync.util.LikePatterns;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Builds ZIP archives of folders and file selections.
+ *
+ * Entries are resolved in a short read-only transaction; the archive itself is streamed
+ * afterwards from storage by {@link ZipStreamWriter}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ZipExportService {
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final UserRepository userRepository;
+    private final ActivityRepository activityRepository;
+    private final StorageService storageService;
+
+    @Value("${app.export.prefetch-threads:16}")
+    private int prefetchThreads;
+
+    @Value("${app.export.prefetch-window:4}")
+    private int prefetchWindow;
+
+    @Value("${app.export.chunk-size:262144}")
+    private int chunkSize;
+
+    @Value("${app.export.chunks-per-entry:8}")
+    private int chunksPerEntry;
+
+    @Value("${app.export.deflate-level:1}")
+    private int deflateLevel;
+
+    @Value("${app.export.prefetch-stall:5s}")
+    private Duration prefetchStall;
+
+    private ExecutorService prefetchExecutor;
+    private ZipStreamWriter writer;
+
+    @PostConstruct
+    void start() {
+        // Shared by all exports, so concurrent downloads can't open unbounded storage reads
+        AtomicInteger threadCount = new AtomicInteger();
+        prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "zip-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer = new ZipStreamWriter(storageService, prefetchExecutor,
+                Math.min(prefetchWindow, prefetchThreads), chunkSize, chunksPerEntry, deflateLevel, prefetchStall);
+    }
+
+    @PreDestroy
+    void stop() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    @Transactional
+    public ZipExport exportFolder(Long folderId, boolean recursive, Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        Folder folder = folderRepository.findByIdAndOwner(folderId, user)
+                .orElseThrow(() -> new RuntimeException("Folder not found"));
+
+        ZipExport export;
+        if (recursive) {
+            export = exportFolderTree(folder, user);
+        } else {
+            String root = safeName(folder.getName());
+            Set<String> used = new HashSet<>();
+            List<ExportEntry> entries = new ArrayList<>();
+            entries.add(ExportEntry.directory(root, folder.getUpdatedAt()));
+            for (File file : fileRepository.findByOwnerAndFolderAndDeletedAtIsNull(user, folder)) {
+                entries.add(fileEntry(unique(used, root + "/" + safeName(file.getName())), file));
+            }
+            export = new ZipExport(root + ".zip", entries);
+        }
+
+        logActivity(user, ActivityType.DOWNLOAD, "FOLDER", folderId);
+        log.info("Folder export: folderId={}, entries={}", folderId, export.entries().size());
+        return export;
+    }
+
+    @Transactional
+    public ZipExport exportFiles(List<Long> fileIds, Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new RuntimeException("No files selected");
+        }
+
+        // Keep the order the client asked for
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(fileIds));
+        Map<Long, File> files = fileRepository.findByIdInAndOwnerAndDeletedAtIsNull(ids, user).stream()
+                .collect(Collectors.toMap(File::getId, Function.identity()));
+
+        Set<String> used = new HashSet<>();
+        List<ExportEntry> entries = new ArrayList<>();
+        List<Long> exported = new ArrayList<>();
+        for (Long id : ids) {
+            File file = files.get(id);
+            if (file != null) {
+                entries.add(fileEntry(unique(used, safeName(file.getName())), file));
+                exported.add(id);
+            }
+        }
+        if (entries.isEmpty()) {
+            throw new RuntimeException("File not found");
+        }
+
+        activityRepository.insertForFiles(userId, ActivityType.DOWNLOAD.name(), "FILE", exported);
+        log.info("File selection export: userId={}, requested={}, entries={}", userId, ids.size(), entries.size());
+        return new ZipExport("cloudsync-files.zip", entries);
+    }
+
+    /**
+     * Every active file and subfolder under a folder, with paths relative to its parent
+     */
+    @Transactional(readOnly = true)
+    public ZipExport exportFolderTree(Folder folder, User owner) {
+        String root = safeName(folder.getName());
+        String rootPath = folder.getPath();
+        String descendants = LikePatterns.startsWith(rootPath + "/");
+
+        List<ExportEntry> entries = new ArrayList<>();
+        Set<String> used = new HashSet<>();
+
+        // Directory entries first, so empty folders survive the round trip
+        entries.add(ExportEntry.directory(root, folder.getUpdatedAt()));
+        for (Folder subfolder : folderRepository.findByOwnerAndPathLike(owner, descendants)) {
+            entries.add(ExportEntry.directory(archivePath(root, rootPath, subfolder.getPath()), subfolder.getUpdatedAt()));
+        }
+
+        for (File file : fileRepository.findActiveInFolderTree(owner, rootPath, descendants)) {
+            String dir = archivePath(root, rootPath, file.getFolder().getPath());
+            entries.add(fileEntry(unique(used, dir + "/" + safeName(file.getName())), file));
+        }
+
+        return new ZipExport(root + ".zip", entries);
+    }
+
+    public void write(ZipExport export, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        writer.write(export.entries(), out);
+        log.info("Streamed {} ({} entries) in {} ms", export.fileName(), export.entries().size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static ExportEntry fileEntry(String path, File file) {
+        return new ExportEntry(path, file.getStorageKey(), file.getSize(), file.getMimeType(),
+                file.getUpdatedAt() != null ? file.getUpdatedAt() : file.getCreatedAt());
+    }
+
+    /**
+     * Archive path of a folder: the export root name followed by its path below the root
+     */
+    static String archivePath(String root, String rootPath, String folderPath) {
+        StringBuilder path = new StringBuilder(root);
+        for (String segment : folderPath.substring(rootPath.length()).split("/")) {
+            if (!segment.isEmpty()) {
+                path.append('/').append(safeName(segment));
+            }
+        }
+        return path.toString();
+    }
+
+    // Names can't introduce extra levels or climb out of the extraction directory
+    static String safeName(String name) {
+        String safe = name.replace('/', '_').replace('\\', '_');
+        return safe.isBlank() || safe.equals(".") || safe.equals("..") ? "_" : safe;
+    }
+
+    // Same-named files in one folder are allowed here but not in a ZIP: number the duplicates
+    static String unique(Set<String> used, String path) {
+        if (used.add(path)) {
+            return path;
+        }
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        String base = dot > slash + 1 ? path.substring(0, dot) : path;
+        String extension = dot > slash + 1 ? path.substring(dot) : "";
+        for (int n = 1; ; n++) {
+            String candidate = base + " (" + n + ")" + extension;
+            if (used.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private void logActivity(User user, ActivityType action, String entityType, Long entityId) {
+        Activity activity = Activity.builder()
+                .user(user)
+                .action(action)
+                .entityType(entityType)
+                .entityId(entityId)
+                .build();
+        activityRepository.save(activity);
+    }
+}
@@ -0,0 +1,206 @@
+package com.hatemnefzi.cloudsync.service.export;
+
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import com.hatemnefzi.cloudsync.util.ContentTypes;
+import org.springframework.util.StreamUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a ZIP archive straight to an output stream while reading the next few entries from
+ * storage in parallel.
+ *
+ * Each in-flight entry is read into a small bounded queue of chunks, so memory stays at
+ * window x queue chunks x chunk size no matter how large the files are. Sizes and entry
+ * counts past the classic ZIP limits are written as ZIP64 by ZipOutputStream.
+ *
+ * Readers share a fixed pool, so one that stays blocked on a full queue for longer than the
+ * stall timeout (a slow client) gives its thread back. The writer then reads the rest of that
+ * entry itself, from where the reader stopped.
+ */
+public class ZipStreamWriter {
+
+    private static final byte[] EOF = new byte[0];
+    private static final long ZIP64_THRESHOLD = 0xFFFFFFFFL;
+
+    private final StorageService storageService;
+    private final ExecutorService executor;
+    private final int window;
+    private final int chunkSize;
+    private final int chunksPerEntry;
+    private final int deflateLevel;
+    private final long stallNanos;
+
+    public ZipStreamWriter(StorageService storageService, ExecutorService executor, int window,
+                           int chunkSize, int chunksPerEntry, int deflateLevel, Duration stall) {
+        this.storageService = storageService;
+        this.executor = executor;
+        this.window = window;
+        this.chunkSize = chunkSize;
+        this.chunksPerEntry = chunksPerEntry;
+        this.deflateLevel = deflateLevel;
+        this.stallNanos = stall.toNanos();
+    }
+
+    public void write(List<ExportEntry> entries, OutputStream out) throws IOException {
+        List<ExportEntry> files = entries.stream().filter(e -> !e.isDirectory()).toList();
+        Deque<Prefetch> inFlight = new ArrayDeque<>();
+        int submitted = 0;
+        Prefetch current = null;
+
+        // The servlet container owns the response stream: finish the archive but don't close it
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(StreamUtils.nonClosing(out), 64 * 1024));
+        try {
+            for (ExportEntry entry : entries) {
+                ZipEntry zipEntry = new ZipEntry(entry.path());
+                if (entry.modifiedAt() != null) {
+                    zipEntry.setTime(entry.modifiedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                }
+
+                if (entry.isDirectory()) {
+                    zip.putNextEntry(zipEntry);
+                    zip.closeEntry();
+                    continue;
+                }
+
+                // Keep the next few files reading while this one is written
+                while (inFlight.size() < window && submitted < files.size()) {
+                    Prefetch prefetch = new Prefetch(files.get(submitted++));
+                    executor.execute(prefetch);
+                    inFlight.add(prefetch);
+                }
+                current = inFlight.poll();
+
+                // Already-compressed formats are stored at level 0 rather than deflated again
+                zip.setLevel(ContentTypes.isPrecompressed(entry.mimeType()) ? Deflater.NO_COMPRESSION : deflateLevel);
+                if (entry.size() >= ZIP64_THRESHOLD) {
+                    zipEntry.setSize(entry.size()); // puts the ZIP64 extra field in the local header
+                }
+                zip.putNextEntry(zipEntry);
+                current.drainTo(zip);
+                zip.closeEntry();
+                current = null;
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            // Client went away or storage failed: stop the readers that are still running
+            if (current != null) {
+                current.cancel();
+            }
+            inFlight.forEach(Prefetch::cancel);
+        }
+    }
+
+    /**
+     * Reads one stored file into a bounded queue of chunks on an executor thread
+     */
+    private final class Prefetch implements Runnable {
+
+        private final ExportEntry entry;
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(chunksPerEntry);
+        private volatile boolean cancelled;
+        private volatile IOException failure;
+        // Offset the writer resumes from after the reader gave up its thread, or -1
+        private volatile long yieldedAt = -1;
+        private long queued;
+
+        Prefetch(ExportEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = storageService.getFileStream(entry.storageKey())) {
+                while (!cancelled) {
+                    byte[] chunk = in.readNBytes(chunkSize);
+                    if (chunk.length == 0) {
+                        break;
+                    }
+                    if (!put(chunk)) {
+                        yieldedAt = queued;
+                        return;
+                    }
+                    queued += chunk.length;
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new InterruptedIOException("Prefetch interrupted");
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            } finally {
+                try {
+                    // A failed read is retried by the writer if it has to resume anyway
+                    if (yieldedAt < 0 && !put(EOF)) {
+                        yieldedAt = queued;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        // False if the writer hasn't made room within the stall timeout
+        private boolean put(byte[] chunk) throws InterruptedException {
+            long deadline = System.nanoTime() + stallNanos;
+            while (!cancelled) {
+                if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void drainTo(OutputStream out) throws IOException {
+            try {
+                while (true) {
+                    byte[] chunk = chunks.poll(100, TimeUnit.MILLISECONDS);
+                    if (chunk == EOF) {
+                        break;
+                    }
+                    if (chunk != null) {
+                        out.write(chunk);
+                    } else if (yieldedAt >= 0 && chunks.isEmpty()) {
+                        // Nothing more will be queued: read the rest here
+                        try (InputStream in = storageService.getRangeStream(entry.storageKey(), yieldedAt, entry.size() - yieldedAt)) {
+                            in.transferTo(out);
+                        }
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted");
+            }
+            if (failure != null) {
+                throw new IOException("Failed to read " + entry.path() + " from storage", failure);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            chunks.clear();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.hatemnefzi.cloudsync.service.integrity;
+
+/**
+ * Published when a stored object is found not to match its checksum, before any repair is
+ * attempted. Listeners can alert on it or restore the object from elsewhere.
+ */
+public record ContentCorruptedEvent(String checksum, String storageKey, String source) {
+}
@@ -0,0 +1,143 @@
+package com.hatemnefzi.cloudsync.service.integrity;
+
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.repository.ContentBlobRepository;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks stored objects against the SHA-256 recorded at upload, on download (when enabled)
+ * and for the background scrubber, and handles mismatches: the blob is flagged, a
+ * ContentCorruptedEvent goes out, and the storage backend gets a chance to repair it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentIntegrityService {
+
+    public enum Result { OK, MISMATCH, UNREADABLE }
+
+    private final StorageService storageService;
+    private final ContentBlobRepository contentBlobRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CloudsyncMetrics metrics;
+
+    @Value("${app.integrity.verify-on-read:false}")
+    private boolean verifyOnRead;
+
+    private final Set<String> pendingRepairs = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor repairExecutor;
+
+    @PostConstruct
+    void start() {
+        // Mismatches found on download are handled off the response thread, one at a time
+        repairExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(100), runnable -> {
+            Thread thread = new Thread(runnable, "integrity-repair");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        repairExecutor.shutdownNow();
+    }
+
+    public boolean isVerifyOnRead() {
+        return verifyOnRead;
+    }
+
+    /**
+     * Wrap decoded download content so it is hashed as it streams out and checked at the
+     * end. The bytes have been sent by then, so a mismatch is logged, counted and queued
+     * for repair rather than failing the response.
+     */
+    public InputStream verifying(InputStream content, String storageKey, String checksum) {
+        return new VerifyingInputStream(content, checksum, matched -> {
+            metrics.recordIntegrityCheck("read", matched ? "ok" : "mismatch");
+            if (!matched) {
+                log.error("Served object {} does not match checksum {}", storageKey, checksum);
+                repairLater(storageKey, checksum);
+            }
+        });
+    }
+
+    /**
+     * Read an object back in full and compare it with its checksum
+     */
+    public Result verify(String storageKey, String checksum) {
+        boolean[] matched = new boolean[1];
+        try (InputStream in = new VerifyingInputStream(storageService.getFileStream(storageKey), checksum,
+                result -> matched[0] = result)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read back {}: {}", storageKey, e.getMessage());
+            return Result.UNREADABLE;
+        }
+        return matched[0] ? Result.OK : Result.MISMATCH;
+    }
+
+    /**
+     * Flag an object that failed verification, announce it and let the backend try to
+     * repair it. Returns OK if the object checks out after the repair.
+     */
+    public Result handleMismatch(String storageKey, String checksum, String source) {
+        contentBlobRepository.markCorrupted(storageKey, LocalDateTime.now());
+        eventPublisher.publishEvent(new ContentCorruptedEvent(checksum, storageKey, source));
+
+        boolean attempted = false;
+        try {
+            attempted = storageService.repair(storageKey);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Repair of {} failed: {}", storageKey, e.getMessage());
+        }
+        if (attempted && verify(storageKey, checksum) == Result.OK) {
+            contentBlobRepository.markVerified(storageKey, LocalDateTime.now());
+            metrics.recordIntegrityCheck(source, "repaired");
+            log.warn("🩹 Repaired {} after a checksum mismatch", storageKey);
+            return Result.OK;
+        }
+        log.error("Object {} does not match checksum {} and could not be repaired", storageKey, checksum);
+        return Result.MISMATCH;
+    }
+
+    public void markVerified(String storageKey) {
+        contentBlobRepository.markVerified(storageKey, LocalDateTime.now());
+    }
+
+    private void repairLater(String storageKey, String checksum) {
+        if (!pendingRepairs.add(storageKey)) {
+            return;
+        }
+        try {
+            repairExecutor.execute(() -> {
+                try {
+                    handleMismatch(storageKey, checksum, "read");
+                } finally {
+                    pendingRepairs.remove(storageKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The scrubber will get to it
+            pendingRepairs.remove(storageKey);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.hatemnefzi.cloudsync.service.integrity;
+
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Walks every content blob in the background, reading it back through the storage stack and
+ * comparing it with its checksum, at a capped read rate so it doesn't compete with users.
+ *
+ * Blobs are claimed in batches, least recently checked first, by stamping verified_at with
+ * FOR UPDATE SKIP LOCKED, so any number of instances can run it without reading the same
+ * object twice. A blob is checked again once reverify-after has passed. Files stored before
+ * content blobs were tracked have no row and aren't covered.
+ *
+ * Only a read that completes with the wrong hash marks a blob corrupted. One that can't be
+ * read at all (a backend outage, a timeout) is retried once, then left for unreadable-retry
+ * and checked again.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IntegrityScrubber {
+
+    private static final String CLAIM = """
+            UPDATE content_blobs SET verified_at = now()
+            WHERE id IN (SELECT id FROM content_blobs
+                         WHERE verified_at IS NULL OR verified_at < ?
+                         ORDER BY verified_at NULLS FIRST, id
+                         LIMIT ?
+                         FOR UPDATE SKIP LOCKED)
+            RETURNING storage_key, checksum, size, corrupted_at IS NOT NULL AS corrupted
+            """;
+
+    // Back-dates the claim so the blob comes up again after unreadable-retry
+    private static final String DEFER = "UPDATE content_blobs SET verified_at = ? WHERE storage_key = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ContentIntegrityService integrityService;
+    private final CloudsyncMetrics metrics;
+
+    @Value("${app.integrity.scrub.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.integrity.scrub.rate:20MB}")
+    private DataSize rate;
+
+    @Value("${app.integrity.scrub.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.integrity.scrub.reverify-after:30d}")
+    private Duration reverifyAfter;
+
+    @Value("${app.integrity.scrub.idle-interval:10m}")
+    private Duration idleInterval;
+
+    @Value("${app.integrity.scrub.unreadable-retry:1h}")
+    private Duration unreadableRetry;
+
+    private Thread thread;
+
+    private record Claimed(String storageKey, String checksum, long size, boolean corrupted) {
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        thread = new Thread(this::run, "integrity-scrub");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        log.info("🔍 Integrity scrubber started at {}/s, re-checking objects every {}", rate, reverifyAfter);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<Claimed> batch = claim();
+                if (batch.isEmpty()) {
+                    Thread.sleep(idleInterval.toMillis());
+                    continue;
+                }
+                for (Claimed blob : batch) {
+                    check(blob);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Integrity scrub failed, retrying in {}", idleInterval, e);
+                try {
+                    Thread.sleep(idleInterval.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private List<Claimed> claim() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(reverifyAfter));
+        return jdbcTemplate.query(CLAIM, (rs, row) -> new Claimed(
+                rs.getString("storage_key"), rs.getString("checksum"), rs.getLong("size"), rs.getBoolean("corrupted")),
+                cutoff, batchSize);
+    }
+
+    private void defer(String storageKey) {
+        LocalDateTime retryAt = LocalDateTime.now().plus(unreadableRetry).minus(reverifyAfter);
+        jdbcTemplate.update(DEFER, Timestamp.valueOf(retryAt), storageKey);
+    }
+
+    private void check(Claimed blob) throws InterruptedException {
+        long start = System.nanoTime();
+        ContentIntegrityService.Result result = integrityService.verify(blob.storageKey(), blob.checksum());
+        if (result == ContentIntegrityService.Result.UNREADABLE) {
+            Thread.sleep(1000);
+            result = integrityService.verify(blob.storageKey(), blob.checksum());
+        }
+        metrics.recordIntegrityCheck("scrub", result.name().toLowerCase());
+        metrics.recordScrubbedBytes(blob.size());
+
+        if (result == ContentIntegrityService.Result.UNREADABLE) {
+            // Says nothing about the content, so don't flag it; look again later
+            log.warn("Could not read {} to scrub it, retrying in {}", blob.storageKey(), unreadableRetry);
+            defer(blob.storageKey());
+        } else if (result == ContentIntegrityService.Result.MISMATCH) {
+            integrityService.handleMismatch(blob.storageKey(), blob.checksum(), "scrub");
+        } else if (blob.corrupted()) {
+            // Fixed since it was flagged, by a repair or a re-upload of the same content
+            integrityService.markVerified(blob.storageKey());
+        }
+
+        // Hold the average read rate to the configured bytes per second
+        long budgetNanos = (long) (blob.size() * 1e9 / Math.max(rate.toBytes(), 1));
+        long remainingNanos = budgetNanos - (System.nanoTime() - start);
+        if (remainingNanos > 0) {
+            Thread.sleep(remainingNanos / 1_000_000, (int) (remainingNanos % 1_000_000));
+        }
+    }
+}
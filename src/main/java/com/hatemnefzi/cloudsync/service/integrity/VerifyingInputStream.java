@@ -0,0 +1,81 @@
+package com.hatemnefzi.cloudsync.service.integrity;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Consumer;
+
+/**
+ * Hashes content as it is read and, once the end of the stream is reached, reports whether
+ * it matched the expected SHA-256. Streams closed before the end report nothing.
+ */
+public class VerifyingInputStream extends FilterInputStream {
+
+    private final MessageDigest digest;
+    private final String expected;
+    private final Consumer<Boolean> verdict;
+    private boolean done;
+
+    public VerifyingInputStream(InputStream in, String expected, Consumer<Boolean> verdict) {
+        super(in);
+        this.expected = expected;
+        this.verdict = verdict;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            finish();
+        } else {
+            digest.update((byte) b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n < 0) {
+            finish();
+        } else {
+            digest.update(b, off, n);
+        }
+        return n;
+    }
+
+    // Skipped bytes still have to be hashed, so read through them
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void finish() {
+        if (!done) {
+            done = true;
+            verdict.accept(HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(expected));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.hatemnefzi.cloudsync.service.jobs;
+
+/**
+ * Runs one type of background job. A job may run more than once (retries, or a worker that
+ * lost its lease), so handlers must be idempotent. Throwing schedules a retry.
+ */
+public interface JobHandler<T> {
+
+    String type();
+
+    /**
+     * The class the JSON payload is read into
+     */
+    Class<T> payloadType();
+
+    void handle(T payload) throws Exception;
+}
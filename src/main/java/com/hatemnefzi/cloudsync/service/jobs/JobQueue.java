@@ -0,0 +1,142 @@
+package com.hatemnefzi.cloudsync.service.jobs;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hatemnefzi.cloudsync.repository.JobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Postgres-backed job queue. Jobs are rows in the jobs table, written in the caller's
+ * transaction, so work queued by an upload exists exactly when the upload commits.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class JobQueue {
+
+    public static final int PRIORITY_HIGH = 10;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_LOW = -10;
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private static final String CLAIM = """
+            UPDATE jobs SET status = 'RUNNING', attempts = attempts + 1, locked_by = ?, locked_at = now(), updated_at = now()
+            WHERE id = (SELECT id FROM jobs
+                        WHERE status = 'PENDING' AND run_at <= now()
+                        ORDER BY priority DESC, run_at
+                        LIMIT 1
+                        FOR UPDATE SKIP LOCKED)
+            RETURNING id, type, payload, attempts, max_attempts
+            """;
+
+    private final JobRepository jobRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    // Wakes idle workers on this node as soon as new jobs commit
+    private final Object signal = new Object();
+
+    public record ClaimedJob(Long id, String type, String payload, int attempts, int maxAttempts) {
+    }
+
+    /**
+     * Queue a job in the current transaction; it becomes visible to workers when that commits
+     */
+    @Transactional
+    public void enqueue(String type, Object payload, String dedupKey, int priority) {
+        insert(type, payload, dedupKey, priority);
+    }
+
+    /**
+     * Queue a job in its own transaction, for callers in read-only transactions
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void enqueueNow(String type, Object payload, String dedupKey, int priority) {
+        insert(type, payload, dedupKey, priority);
+    }
+
+    private void insert(String type, Object payload, String dedupKey, int priority) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unserializable payload for job " + type, e);
+        }
+        if (jobRepository.insertIfAbsent(type, json, dedupKey, priority, maxAttempts) == 0) {
+            log.debug("Job already queued: type={}, key={}", type, dedupKey);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeWorkers();
+            }
+        });
+    }
+
+    /**
+     * Take the most urgent due job, if any, marking it as running on this worker
+     */
+    Optional<ClaimedJob> claim(String workerId) {
+        List<ClaimedJob> claimed = jdbcTemplate.query(CLAIM, (rs, row) -> new ClaimedJob(
+                rs.getLong("id"), rs.getString("type"), rs.getString("payload"),
+                rs.getInt("attempts"), rs.getInt("max_attempts")), workerId);
+        return claimed.stream().findFirst();
+    }
+
+    void complete(ClaimedJob job) {
+        jobRepository.complete(job.id());
+    }
+
+    void retry(ClaimedJob job, Duration delay, String error) {
+        try {
+            jobRepository.retryAfter(job.id(), delay.toMillis(), truncate(error));
+        } catch (DataIntegrityViolationException e) {
+            // The same work was queued again while this ran; that job does it
+            log.debug("Dropping retry of job {}, superseded by a pending one", job.id());
+            jobRepository.complete(job.id());
+        }
+    }
+
+    void fail(ClaimedJob job, String error) {
+        jobRepository.fail(job.id(), truncate(error));
+    }
+
+    int releaseExpired(Duration lease) {
+        jobRepository.deleteExpiredSuperseded(lease.toMillis());
+        return jobRepository.releaseExpired(lease.toMillis());
+    }
+
+    void awaitWork(Duration timeout) throws InterruptedException {
+        synchronized (signal) {
+            signal.wait(timeout.toMillis());
+        }
+    }
+
+    private void wakeWorkers() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
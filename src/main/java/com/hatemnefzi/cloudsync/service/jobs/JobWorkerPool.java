@@ -0,0 +1,169 @@
+package com.hatemnefzi.cloudsync.service.jobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Worker threads that claim jobs from the queue and run them through their handler.
+ *
+ * Failed attempts are retried with exponential backoff and jitter until max-attempts, then
+ * left as FAILED. A job whose worker disappeared mid-run is released once its lease expires.
+ * Idle workers poll, and are woken early when this node queues a job.
+ */
+@Component
+@Slf4j
+public class JobWorkerPool {
+
+    private final JobQueue jobQueue;
+    private final ObjectMapper objectMapper;
+    private final CloudsyncMetrics metrics;
+    private final Map<String, JobHandler<?>> handlers;
+
+    @Value("${app.jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.jobs.workers:4}")
+    private int workers;
+
+    @Value("${app.jobs.poll-interval:2s}")
+    private Duration pollInterval;
+
+    @Value("${app.jobs.lease:10m}")
+    private Duration lease;
+
+    @Value("${app.jobs.backoff:10s}")
+    private Duration backoff;
+
+    @Value("${app.jobs.max-backoff:1h}")
+    private Duration maxBackoff;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    public JobWorkerPool(JobQueue jobQueue, ObjectMapper objectMapper, CloudsyncMetrics metrics,
+                         List<JobHandler<?>> handlers) {
+        this.jobQueue = jobQueue;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.handlers = handlers.stream().collect(Collectors.toMap(JobHandler::type, Function.identity()));
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        String node = ManagementFactory.getRuntimeMXBean().getName();
+        for (int i = 1; i <= workers; i++) {
+            String workerId = node + "/" + i;
+            threads.add(startThread("jobs-" + i, () -> work(workerId)));
+        }
+        threads.add(startThread("jobs-reaper", this::releaseExpired));
+        log.info("⚙️ Job workers started: {} threads, handlers {}", workers, handlers.keySet());
+    }
+
+    @PreDestroy
+    void stop() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    private static Thread startThread(String name, Runnable loop) {
+        Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void work(String workerId) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Optional<JobQueue.ClaimedJob> job = jobQueue.claim(workerId);
+                if (job.isPresent()) {
+                    run(job.get());
+                } else {
+                    jobQueue.awaitWork(pollInterval);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // Database unavailable and the like: back off rather than spin
+                log.error("Job worker {} failed, pausing", workerId, e);
+                pause(pollInterval);
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void run(JobQueue.ClaimedJob job) {
+        JobHandler handler = handlers.get(job.type());
+        if (handler == null) {
+            log.error("No handler for job type {}: id={}", job.type(), job.id());
+            jobQueue.fail(job, "No handler for job type " + job.type());
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            handler.handle(objectMapper.readValue(job.payload(), handler.payloadType()));
+            jobQueue.complete(job);
+            metrics.recordJob(job.type(), "success", System.nanoTime() - start);
+        } catch (Exception e) {
+            String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            if (job.attempts() >= job.maxAttempts()) {
+                jobQueue.fail(job, error);
+                metrics.recordJob(job.type(), "failed", System.nanoTime() - start);
+                log.error("Job failed for good after {} attempts: id={}, type={}", job.attempts(), job.id(), job.type(), e);
+            } else {
+                Duration delay = retryDelay(job.attempts());
+                jobQueue.retry(job, delay, error);
+                metrics.recordJob(job.type(), "retry", System.nanoTime() - start);
+                log.warn("Job attempt {} of {} failed, retrying in {}: id={}, type={}: {}",
+                        job.attempts(), job.maxAttempts(), delay, job.id(), job.type(), error);
+            }
+        }
+    }
+
+    // backoff, 2x backoff, 4x backoff... capped, with up to 25% jitter so retries spread out
+    Duration retryDelay(int attempts) {
+        long millis = backoff.toMillis() << Math.min(attempts - 1, 20);
+        millis = Math.min(millis, maxBackoff.toMillis());
+        return Duration.ofMillis(millis - ThreadLocalRandom.current().nextLong(millis / 4 + 1));
+    }
+
+    private void releaseExpired() {
+        Duration interval = lease.dividedBy(4);
+        while (!Thread.currentThread().isInterrupted()) {
+            pause(interval);
+            try {
+                int released = jobQueue.releaseExpired(lease);
+                if (released > 0) {
+                    log.warn("Released {} jobs whose worker stopped responding", released);
+                }
+            } catch (RuntimeException e) {
+                log.error("Could not release expired jobs", e);
+            }
+        }
+    }
+
+    private static void pause(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.hatemnefzi.cloudsync.service.preview;
+
+/**
+ * Published when a file gets new content (upload or update). Previews are generated
+ * once the surrounding transaction has committed.
+ */
+public record ContentStoredEvent(String checksum, String storageKey, String mimeType, long size, Long userId) {
+}
@@ -0,0 +1,33 @@
+package com.hatemnefzi.cloudsync.service.preview;
+
+import com.hatemnefzi.cloudsync.service.jobs.JobHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Renders the previews of newly stored content. Content that can't be rendered is recorded
+ * as failed rather than retried.
+ */
+@Component
+@RequiredArgsConstructor
+public class PreviewJobHandler implements JobHandler<ContentStoredEvent> {
+
+    public static final String TYPE = "preview";
+
+    private final PreviewService previewService;
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public Class<ContentStoredEvent> payloadType() {
+        return ContentStoredEvent.class;
+    }
+
+    @Override
+    public void handle(ContentStoredEvent event) {
+        previewService.generate(event);
+    }
+}
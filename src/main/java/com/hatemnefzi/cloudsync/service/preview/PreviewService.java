@@ -0,0 +1,205 @@
+package com.hatemnefzi.cloudsync.service.preview;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hatemnefzi.cloudsync.entity.File;
+import com.hatemnefzi.cloudsync.entity.FileDerivative;
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.repository.FileDerivativeRepository;
+import com.hatemnefzi.cloudsync.repository.FileRepository;
+import com.hatemnefzi.cloudsync.service.ObjectDeletionJobHandler;
+import com.hatemnefzi.cloudsync.service.jobs.JobQueue;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Thumbnails of images and PDFs at a few fixed sizes.
+ *
+ * Generated by a background job once an upload commits, and stored once per content checksum,
+ * so every deduplicated copy of a file shares the same previews.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PreviewService {
+
+    private static final Set<String> IMAGE_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/bmp", "image/x-ms-bmp");
+    private static final String PDF_TYPE = "application/pdf";
+
+    private final FileRepository fileRepository;
+    private final FileDerivativeRepository derivativeRepository;
+    private final StorageService storageService;
+    private final JobQueue jobQueue;
+    private final CloudsyncMetrics metrics;
+
+    @Value("${app.previews.sizes:64,256,1024}")
+    private int[] sizes;
+
+    @Value("${app.previews.max-source-size:52428800}")
+    private long maxSourceSize;
+
+    @Value("${app.previews.max-source-pixels:100000000}")
+    private long maxSourcePixels;
+
+    @Value("${app.previews.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    @Value("${app.previews.failure-ttl:1h}")
+    private Duration failureTtl;
+
+    private Cache<String, Boolean> failed;
+
+    @PostConstruct
+    void start() {
+        Arrays.sort(sizes);
+
+        // Don't retry broken or unsupported content on every preview request
+        failed = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(failureTtl)
+                .build();
+    }
+
+    public static boolean isPreviewable(String mimeType) {
+        return mimeType != null && (IMAGE_TYPES.contains(mimeType) || mimeType.equals(PDF_TYPE));
+    }
+
+    /**
+     * Queue preview generation in the upload's transaction, so the job exists once the upload
+     * has committed. One job per checksum is queued at a time.
+     */
+    @EventListener
+    public void onContentStored(ContentStoredEvent event) {
+        if (wanted(event)) {
+            jobQueue.enqueue(PreviewJobHandler.TYPE, event, event.checksum(), JobQueue.PRIORITY_LOW);
+        }
+    }
+
+    private boolean wanted(ContentStoredEvent event) {
+        return isPreviewable(event.mimeType()) && event.size() <= maxSourceSize
+                && failed.getIfPresent(event.checksum()) == null;
+    }
+
+    /**
+     * The smallest preview covering the requested size, or empty while it is being generated
+     */
+    @Transactional(readOnly = true)
+    public Optional<FileDerivative> getPreview(Long fileId, int size, Long userId) {
+        File file = fileRepository.findByIdAndDeletedAtIsNull(fileId)
+                .orElseThrow(() -> new RuntimeException("File not found"));
+
+        // Check ownership
+        if (!file.getOwner().getId().equals(userId)) {
+            throw new RuntimeException("Unauthorized access to file");
+        }
+
+        if (!isPreviewable(file.getMimeType()) || file.getChecksum() == null || file.getSize() > maxSourceSize) {
+            throw new RuntimeException("No preview available for this file");
+        }
+
+        List<FileDerivative> derivatives = derivativeRepository.findByChecksumOrderByMaxEdgeAsc(file.getChecksum());
+        if (derivatives.isEmpty()) {
+            if (failed.getIfPresent(file.getChecksum()) != null) {
+                throw new RuntimeException("No preview available for this file");
+            }
+            // Uploaded before previews existed, or the job is still queued
+            jobQueue.enqueueNow(PreviewJobHandler.TYPE, new ContentStoredEvent(file.getChecksum(), file.getStorageKey(),
+                    file.getMimeType(), file.getSize(), userId), file.getChecksum(), JobQueue.PRIORITY_LOW);
+            return Optional.empty();
+        }
+
+        return Optional.of(derivatives.stream()
+                .filter(derivative -> derivative.getMaxEdge() >= size)
+                .findFirst()
+                .orElse(derivatives.get(derivatives.size() - 1)));
+    }
+
+    /**
+     * Delete the previews of content that is no longer stored
+     */
+    @Transactional
+    public void deleteDerivatives(String checksum) {
+        List<FileDerivative> derivatives = derivativeRepository.findByChecksumOrderByMaxEdgeAsc(checksum);
+        if (derivatives.isEmpty()) {
+            return;
+        }
+        derivativeRepository.deleteByChecksum(checksum);
+        for (FileDerivative derivative : derivatives) {
+            deleteObject(derivative.getStorageKey());
+        }
+        log.info("Deleted {} previews: checksum={}", derivatives.size(), checksum);
+    }
+
+    void generate(ContentStoredEvent event) {
+        String checksum = event.checksum();
+        if (failed.getIfPresent(checksum) != null || derivativeRepository.existsByChecksum(checksum)) {
+            return;
+        }
+
+        String source = PDF_TYPE.equals(event.mimeType()) ? "pdf" : "image";
+        long start = System.nanoTime();
+        try {
+            // Decode once at the largest size, then derive each smaller one from the previous
+            int largest = sizes[sizes.length - 1];
+            BufferedImage image;
+            try (InputStream in = storageService.getFileStream(event.storageKey())) {
+                image = source.equals("pdf")
+                        ? ThumbnailRenderer.renderPdfPage(in, largest)
+                        : ThumbnailRenderer.readImage(in, largest, maxSourcePixels);
+            }
+
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                image = ThumbnailRenderer.scale(image, sizes[i]);
+                store(event, sizes[i], image);
+            }
+
+            metrics.recordPreviewGeneration(source, "success", System.nanoTime() - start);
+            log.info("Generated previews: checksum={}, type={}, took={} ms", checksum, event.mimeType(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            failed.put(checksum, Boolean.TRUE);
+            metrics.recordPreviewGeneration(source, "failure", System.nanoTime() - start);
+            log.warn("Preview generation failed: checksum={}, type={}: {}", checksum, event.mimeType(), e.getMessage());
+        }
+    }
+
+    private void store(ContentStoredEvent event, int maxEdge, BufferedImage image) throws IOException {
+        String format = ThumbnailRenderer.formatFor(image);
+        byte[] bytes = ThumbnailRenderer.encode(image, format, jpegQuality);
+        String mimeType = "image/" + format;
+        String fileName = event.checksum() + "-" + maxEdge + (format.equals("png") ? ".png" : ".jpg");
+
+        String storageKey = storageService.store(new ByteArrayInputStream(bytes), bytes.length, mimeType,
+                event.userId(), fileName);
+
+        int inserted = derivativeRepository.insertIfAbsent(event.checksum(), maxEdge, storageKey, mimeType,
+                image.getWidth(), image.getHeight(), (long) bytes.length);
+        if (inserted == 0) {
+            // Another node rendered the same content first
+            deleteObject(storageKey);
+        }
+    }
+
+    // Content-addressed keys are shared by identical bytes: another node's identical render,
+    // or an uploaded copy of this preview. The deletion job checks before deleting.
+    private void deleteObject(String storageKey) {
+        ObjectDeletionJobHandler.enqueue(jobQueue, storageKey);
+    }
+}
@@ -0,0 +1,106 @@
+package com.hatemnefzi.cloudsync.service.push;
+
+import com.hatemnefzi.cloudsync.entity.ChangeType;
+import com.hatemnefzi.cloudsync.entity.Share;
+import com.hatemnefzi.cloudsync.repository.ShareRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns file, folder and share changes into push events for the owner and for the users
+ * the items are shared with.
+ *
+ * Called inside the mutating transaction: recipients are resolved there, events go out
+ * only once it has committed.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChangeNotifier {
+
+    private final ShareRepository shareRepository;
+    private final PushBroker pushBroker;
+
+    public void entityChanged(Long ownerId, long seq, String entityType, Long entityId, ChangeType changeType) {
+        List<Long> recipients = entityType.equals("FOLDER")
+                ? shareRepository.findRecipientIdsForFolder(entityId)
+                : shareRepository.findRecipientIdsForFile(entityId);
+
+        List<Delivery> deliveries = new ArrayList<>();
+        deliveries.add(ownChange(ownerId, seq));
+        PushMessage shared = new PushMessage("shared-change", entityType + ":" + entityId, Map.of(
+                "ownerId", ownerId, "entityType", entityType, "entityId", entityId, "changeType", changeType.name()));
+        for (Long recipient : recipients) {
+            if (!recipient.equals(ownerId)) {
+                deliveries.add(new Delivery(recipient, shared));
+            }
+        }
+        afterCommit(deliveries);
+    }
+
+    /**
+     * Bulk changes: the owner reads the journal, other users just re-list what the owner shares with them
+     */
+    public void filesChanged(Long ownerId, long lastSeq, Collection<Long> fileIds) {
+        List<Delivery> deliveries = new ArrayList<>();
+        deliveries.add(ownChange(ownerId, lastSeq));
+        PushMessage shared = new PushMessage("shared-resync", "shared-resync:" + ownerId, Map.of("ownerId", ownerId));
+        for (Long recipient : shareRepository.findPossibleRecipientIds(ownerId, fileIds)) {
+            if (!recipient.equals(ownerId)) {
+                deliveries.add(new Delivery(recipient, shared));
+            }
+        }
+        afterCommit(deliveries);
+    }
+
+    public void shareChanged(Share share, ChangeType changeType) {
+        PushMessage message = new PushMessage("share", "share:" + share.getId(), Map.of(
+                "shareId", share.getId(), "changeType", changeType.name()));
+        List<Delivery> deliveries = new ArrayList<>();
+        deliveries.add(new Delivery(share.getSharedBy().getId(), message));
+        if (share.getSharedWith() != null) {
+            deliveries.add(new Delivery(share.getSharedWith().getId(), message));
+        }
+        afterCommit(deliveries);
+    }
+
+    /**
+     * Many shares created at once between the same two users
+     */
+    public void sharesCreated(Long sharedById, Long sharedWithId, int count) {
+        PushMessage message = new PushMessage("shares", "shares", Map.of("count", count));
+        List<Delivery> deliveries = new ArrayList<>();
+        deliveries.add(new Delivery(sharedById, message));
+        if (sharedWithId != null) {
+            deliveries.add(new Delivery(sharedWithId, message));
+        }
+        afterCommit(deliveries);
+    }
+
+    // Own changes coalesce to the latest sequence number: the client reads /api/changes from its cursor
+    private static Delivery ownChange(Long ownerId, long seq) {
+        return new Delivery(ownerId, new PushMessage("change", "change", Map.of("seq", seq)));
+    }
+
+    private void afterCommit(List<Delivery> deliveries) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deliveries.forEach(delivery -> pushBroker.publish(delivery.userId(), delivery.message()));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deliveries.forEach(delivery -> pushBroker.publish(delivery.userId(), delivery.message()));
+            }
+        });
+    }
+
+    private record Delivery(Long userId, PushMessage message) {
+    }
+}
@@ -0,0 +1,126 @@
+package com.hatemnefzi.cloudsync.service.push;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes push events to whichever node holds the user's streams.
+ *
+ * Each user has a Redis channel; a node subscribes to it only while that user has a stream
+ * open there. Without Redis (app.push.redis.enabled=false) events are delivered locally only.
+ */
+@Component
+@Slf4j
+public class PushBroker implements MessageListener {
+
+    static final String CHANNEL_PREFIX = "cloudsync:push:";
+
+    private final SseConnectionRegistry registry;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.push.publish-queue:10000}")
+    private int publishQueue;
+
+    private ThreadPoolExecutor publisher;
+    private ExecutorService subscriber;
+
+    public PushBroker(SseConnectionRegistry registry, ObjectProvider<StringRedisTemplate> redisTemplate,
+                      ObjectProvider<RedisMessageListenerContainer> listenerContainer, ObjectMapper objectMapper) {
+        this.registry = registry;
+        this.listenerContainer = listenerContainer.getIfAvailable();
+        this.redisTemplate = this.listenerContainer != null ? redisTemplate.getIfAvailable() : null;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    void start() {
+        // Publishing happens after commit: keep Redis round trips off the request thread
+        publisher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(publishQueue),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "push-publish");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Subscribe calls can wait on Redis; one thread keeps them off the request path and in order
+        subscriber = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "push-subscribe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        registry.setPresenceListener(this::presenceChanged);
+        log.info("Push fan-out: {}", listenerContainer != null ? "redis" : "local only");
+    }
+
+    @PreDestroy
+    void stop() {
+        publisher.shutdown();
+        subscriber.shutdownNow();
+    }
+
+    public void publish(Long userId, PushMessage message) {
+        if (listenerContainer == null) {
+            registry.deliver(userId, message);
+            return;
+        }
+        try {
+            publisher.execute(() -> {
+                try {
+                    redisTemplate.convertAndSend(CHANNEL_PREFIX + userId, objectMapper.writeValueAsString(message));
+                } catch (Exception e) {
+                    log.warn("Failed to publish push event: userId={}, event={}: {}", userId, message.event(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Push publish queue full, dropping event: userId={}, event={}", userId, message.event());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        try {
+            Long userId = Long.valueOf(channel.substring(CHANNEL_PREFIX.length()));
+            registry.deliver(userId, objectMapper.readValue(message.getBody(), PushMessage.class));
+        } catch (Exception e) {
+            log.warn("Ignoring malformed push event on {}: {}", channel, e.getMessage());
+        }
+    }
+
+    private void presenceChanged(Long userId, boolean online) {
+        if (listenerContainer == null) {
+            return;
+        }
+        ChannelTopic topic = new ChannelTopic(CHANNEL_PREFIX + userId);
+        subscriber.execute(() -> {
+            try {
+                if (online) {
+                    listenerContainer.addMessageListener(this, topic);
+                } else {
+                    listenerContainer.removeMessageListener(this, topic);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to {} push channel for userId={}: {}", online ? "subscribe" : "unsubscribe", userId, e.getMessage());
+            }
+        });
+    }
+}
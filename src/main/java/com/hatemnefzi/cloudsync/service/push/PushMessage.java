@@ -0,0 +1,23 @@
+package com.hatemnefzi.cloudsync.service.push;
+
+import java.util.Map;
+
+/**
+ * One server-sent event for a user.
+ *
+ * Messages with the same key replace each other while they wait to be sent, so a burst of
+ * changes to one item reaches a connection as a single event.
+ */
+public record PushMessage(String event, String key, Map<String, Object> data) {
+
+    static final String HEARTBEAT = "heartbeat";
+
+    static PushMessage heartbeat() {
+        return new PushMessage(HEARTBEAT, HEARTBEAT, Map.of());
+    }
+
+    // Too many events were pending: the client should re-read /api/changes and its shares
+    static PushMessage resync() {
+        return new PushMessage("resync", "resync", Map.of());
+    }
+}
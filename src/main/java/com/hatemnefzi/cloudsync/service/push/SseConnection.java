@@ -0,0 +1,133 @@
+package com.hatemnefzi.cloudsync.service.push;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One open event stream and the events waiting to be written to it.
+ *
+ * At most one flush per connection is queued or running at a time: a slow client holds
+ * back only its own events, which coalesce by key until the pending set overflows and is
+ * replaced by a single resync event.
+ */
+final class SseConnection {
+
+    private final Long userId;
+    private final SseEmitter emitter;
+    // Ends the underlying async response without going through the emitter
+    private final Runnable abort;
+
+    // Guarded by this; allocated on first event so idle connections stay small
+    private Map<String, PushMessage> pending;
+    private boolean resync;
+    private boolean flushing;
+    private volatile boolean closed;
+    // System.nanoTime() when the write in progress started, or 0 between writes
+    private volatile long writeStartedAt;
+
+    SseConnection(Long userId, SseEmitter emitter, Runnable abort) {
+        this.userId = userId;
+        this.emitter = emitter;
+        this.abort = abort;
+    }
+
+    Long userId() {
+        return userId;
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    void abort() {
+        abort.run();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void beginWrite() {
+        writeStartedAt = System.nanoTime();
+    }
+
+    void endWrite() {
+        writeStartedAt = 0;
+    }
+
+    /**
+     * True when a write has been blocked on the client for longer than the timeout
+     */
+    boolean isStalled(long timeoutNanos) {
+        long started = writeStartedAt;
+        return started != 0 && System.nanoTime() - started > timeoutNanos;
+    }
+
+    /**
+     * Mark the connection closed; false if it already was
+     */
+    synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        pending = null;
+        return true;
+    }
+
+    /**
+     * Queue an event; true when the caller must schedule a flush
+     */
+    synchronized boolean offer(PushMessage message, int maxPending) {
+        if (closed) {
+            return false;
+        }
+        if (!resync) {
+            if (pending == null) {
+                pending = new LinkedHashMap<>();
+            }
+            pending.remove(message.key());
+            pending.put(message.key(), message);
+            if (pending.size() > maxPending) {
+                pending = null;
+                resync = true;
+            }
+        }
+        if (flushing) {
+            return false;
+        }
+        flushing = true;
+        return true;
+    }
+
+    /**
+     * Take the pending events; the connection stays marked as flushing until {@link #flushed()}
+     */
+    synchronized List<PushMessage> drain() {
+        if (resync) {
+            resync = false;
+            return List.of(PushMessage.resync());
+        }
+        if (pending == null) {
+            return List.of();
+        }
+        List<PushMessage> messages = new ArrayList<>(pending.values());
+        pending = null;
+        return messages;
+    }
+
+    /**
+     * True when events arrived during the flush and another one is needed
+     */
+    synchronized boolean flushed() {
+        if (!closed && (resync || pending != null)) {
+            return true;
+        }
+        flushing = false;
+        return false;
+    }
+}
@@ -0,0 +1,256 @@
+package com.hatemnefzi.cloudsync.service.push;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Event streams open on this node, by user.
+ *
+ * An idle stream costs a parked async request and one small object: no thread is held
+ * between events. Writes go through a small shared pool, one flush per connection at a
+ * time, after a short coalescing window. Timing (coalescing, heartbeats, the stall
+ * watchdog) runs on its own thread, so it keeps going when every send thread is blocked.
+ *
+ * A write to a client that stops reading blocks its send thread until the container's write
+ * timeout (server.tomcat.connection-timeout). Streams with a write stuck past send-timeout
+ * are dropped and their async response completed, which ends the blocked write and frees
+ * the thread for everyone else's events.
+ */
+@Component
+@Slf4j
+public class SseConnectionRegistry {
+
+    private final Map<Long, Set<SseConnection>> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    @Value("${app.push.max-connections:100000}")
+    private int maxConnections;
+
+    @Value("${app.push.max-connections-per-user:10}")
+    private int maxConnectionsPerUser;
+
+    @Value("${app.push.timeout:30m}")
+    private Duration timeout;
+
+    @Value("${app.push.coalesce-window:200ms}")
+    private Duration coalesceWindow;
+
+    @Value("${app.push.max-pending:100}")
+    private int maxPending;
+
+    @Value("${app.push.send-threads:8}")
+    private int sendThreads;
+
+    @Value("${app.push.heartbeat-interval:30s}")
+    private Duration heartbeatInterval;
+
+    @Value("${app.push.send-timeout:5s}")
+    private Duration sendTimeout;
+
+    private ExecutorService sender;
+    private ScheduledExecutorService timer;
+
+    public SseConnectionRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("cloudsync.push.connections", connectionCount, AtomicInteger::get)
+                .description("Event streams open on this node")
+                .register(meterRegistry);
+    }
+
+    // Told when a user gets their first stream on this node (true) or loses their last (false)
+    private volatile BiConsumer<Long, Boolean> presenceListener = (userId, online) -> { };
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(sendThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sse-send-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sse-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Keeps proxies from closing idle streams and finds clients that went away
+        timer.scheduleAtFixedRate(this::sendHeartbeats, heartbeatInterval.toMillis(),
+                heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+        long sweep = Math.max(sendTimeout.toMillis() / 2, 1);
+        timer.scheduleAtFixedRate(this::dropStalled, sweep, sweep, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        timer.shutdownNow();
+        sender.shutdownNow();
+        connections.values().forEach(set -> set.forEach(connection -> connection.emitter().complete()));
+    }
+
+    void setPresenceListener(BiConsumer<Long, Boolean> presenceListener) {
+        this.presenceListener = presenceListener;
+    }
+
+    public SseEmitter open(Long userId, HttpServletRequest request) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        register(userId, emitter, () -> completeAsync(request));
+        return emitter;
+    }
+
+    void register(Long userId, SseEmitter emitter, Runnable abort) {
+        if (connectionCount.incrementAndGet() > maxConnections) {
+            connectionCount.decrementAndGet();
+            throw new RuntimeException("Too many open event streams");
+        }
+
+        SseConnection connection = new SseConnection(userId, emitter, abort);
+        boolean[] accepted = {true};
+        connections.compute(userId, (id, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+                presenceListener.accept(id, true);
+            }
+            if (set.size() >= maxConnectionsPerUser) {
+                accepted[0] = false;
+            } else {
+                set.add(connection);
+            }
+            return set;
+        });
+        if (!accepted[0]) {
+            connectionCount.decrementAndGet();
+            throw new RuntimeException("Too many open event streams for this account");
+        }
+
+        emitter.onCompletion(() -> remove(connection));
+        emitter.onTimeout(() -> remove(connection));
+        emitter.onError(error -> remove(connection));
+
+        // First bytes confirm the stream to the client and to any proxy in between
+        connection.offer(new PushMessage("ready", "ready", Map.of()), maxPending);
+        sender.execute(() -> flush(connection));
+
+        log.debug("Event stream opened: userId={}, open={}", userId, connectionCount.get());
+    }
+
+    /**
+     * Hand an event to every stream the user has open on this node
+     */
+    public void deliver(Long userId, PushMessage message) {
+        Set<SseConnection> userConnections = connections.get(userId);
+        if (userConnections == null) {
+            return;
+        }
+        for (SseConnection connection : userConnections) {
+            if (connection.offer(message, maxPending)) {
+                timer.schedule(() -> sender.execute(() -> flush(connection)), coalesceWindow.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public int openConnections() {
+        return connectionCount.get();
+    }
+
+    private void sendHeartbeats() {
+        for (Set<SseConnection> userConnections : connections.values()) {
+            for (SseConnection connection : userConnections) {
+                if (connection.offer(PushMessage.heartbeat(), maxPending)) {
+                    sender.execute(() -> flush(connection));
+                }
+            }
+        }
+    }
+
+    // The emitter is locked by the blocked write, so the response is ended underneath it
+    private void dropStalled() {
+        long timeoutNanos = sendTimeout.toNanos();
+        for (Set<SseConnection> userConnections : connections.values()) {
+            for (SseConnection connection : userConnections) {
+                if (connection.isStalled(timeoutNanos) && remove(connection)) {
+                    log.debug("Event stream stalled, aborting: userId={}", connection.userId());
+                    try {
+                        connection.abort();
+                    } catch (RuntimeException e) {
+                        log.debug("Could not abort event stream: userId={}: {}", connection.userId(), e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void completeAsync(HttpServletRequest request) {
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().complete();
+        }
+    }
+
+    private void flush(SseConnection connection) {
+        do {
+            List<PushMessage> messages = connection.drain();
+            try {
+                for (PushMessage message : messages) {
+                    connection.beginWrite();
+                    try {
+                        if (PushMessage.HEARTBEAT.equals(message.event())) {
+                            connection.emitter().send(SseEmitter.event().comment(PushMessage.HEARTBEAT));
+                        } else {
+                            connection.emitter().send(SseEmitter.event()
+                                    .name(message.event())
+                                    .data(message.data(), MediaType.APPLICATION_JSON));
+                        }
+                    } finally {
+                        connection.endWrite();
+                    }
+                    if (connection.isClosed()) {
+                        // Dropped as stalled while this write was blocked
+                        connection.emitter().complete();
+                        return;
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client disconnected or the stream already completed
+                log.debug("Event stream closed: userId={}: {}", connection.userId(), e.getMessage());
+                remove(connection);
+                connection.emitter().completeWithError(e);
+                return;
+            }
+        } while (connection.flushed());
+    }
+
+    private boolean remove(SseConnection connection) {
+        if (!connection.close()) {
+            return false;
+        }
+        connectionCount.decrementAndGet();
+        connections.computeIfPresent(connection.userId(), (id, set) -> {
+            set.remove(connection);
+            if (set.isEmpty()) {
+                presenceListener.accept(id, false);
+                return null;
+            }
+            return set;
+        });
+        return true;
+    }
+}
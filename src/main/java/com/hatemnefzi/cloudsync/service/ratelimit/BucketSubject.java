@@ -0,0 +1,13 @@
+package com.hatemnefzi.cloudsync.service.ratelimit;
+
+/**
+ * Who a request is charged to: a user, a public share token or a client address.
+ */
+public record BucketSubject(Scope scope, String id) {
+
+    public enum Scope { USER, SHARE, IP }
+
+    String key(String kind) {
+        return kind + ":" + scope.name().toLowerCase() + ":" + id;
+    }
+}
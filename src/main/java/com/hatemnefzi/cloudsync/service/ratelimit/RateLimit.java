@@ -0,0 +1,17 @@
+package com.hatemnefzi.cloudsync.service.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * A token bucket: refills at tokensPerSecond up to burst tokens.
+ */
+public record RateLimit(double tokensPerSecond, long burst) {
+
+    /**
+     * Tokens a node takes from the shared bucket at a time: what the rate refills in the
+     * lease window, at least one, at most the burst.
+     */
+    long leaseSize(Duration window) {
+        return Math.max(1, Math.min(burst, (long) (tokensPerSecond * window.toMillis() / 1000)));
+    }
+}
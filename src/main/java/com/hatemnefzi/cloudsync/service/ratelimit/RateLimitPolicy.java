@@ -0,0 +1,174 @@
+package com.hatemnefzi.cloudsync.service.ratelimit;
+
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.service.ratelimit.BucketSubject.Scope;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request-rate and bandwidth limits per user, public share token and client address.
+ *
+ * A rate of 0 switches a limit off for that scope.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitPolicy {
+
+    private static final String PUBLIC_SHARE_PREFIX = "/api/share/";
+
+    private final TokenBucketLimiter limiter;
+    private final CloudsyncMetrics metrics;
+
+    @Value("${app.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.rate-limit.requests.user.rate:20}")
+    private double userRequestRate;
+    @Value("${app.rate-limit.requests.user.burst:100}")
+    private long userRequestBurst;
+    @Value("${app.rate-limit.requests.share.rate:50}")
+    private double shareRequestRate;
+    @Value("${app.rate-limit.requests.share.burst:200}")
+    private long shareRequestBurst;
+    @Value("${app.rate-limit.requests.ip.rate:50}")
+    private double ipRequestRate;
+    @Value("${app.rate-limit.requests.ip.burst:200}")
+    private long ipRequestBurst;
+
+    @Value("${app.rate-limit.bandwidth.user.rate:50MB}")
+    private DataSize userBandwidthRate;
+    @Value("${app.rate-limit.bandwidth.user.burst:100MB}")
+    private DataSize userBandwidthBurst;
+    @Value("${app.rate-limit.bandwidth.share.rate:20MB}")
+    private DataSize shareBandwidthRate;
+    @Value("${app.rate-limit.bandwidth.share.burst:50MB}")
+    private DataSize shareBandwidthBurst;
+    @Value("${app.rate-limit.bandwidth.ip.rate:50MB}")
+    private DataSize ipBandwidthRate;
+    @Value("${app.rate-limit.bandwidth.ip.burst:100MB}")
+    private DataSize ipBandwidthBurst;
+
+    private final Map<Scope, RateLimit> requestLimits = new EnumMap<>(Scope.class);
+    private final Map<Scope, RateLimit> bandwidthLimits = new EnumMap<>(Scope.class);
+
+    @PostConstruct
+    void init() {
+        putIfEnabled(requestLimits, Scope.USER, userRequestRate, userRequestBurst);
+        putIfEnabled(requestLimits, Scope.SHARE, shareRequestRate, shareRequestBurst);
+        putIfEnabled(requestLimits, Scope.IP, ipRequestRate, ipRequestBurst);
+        putIfEnabled(bandwidthLimits, Scope.USER, userBandwidthRate.toBytes(), userBandwidthBurst.toBytes());
+        putIfEnabled(bandwidthLimits, Scope.SHARE, shareBandwidthRate.toBytes(), shareBandwidthBurst.toBytes());
+        putIfEnabled(bandwidthLimits, Scope.IP, ipBandwidthRate.toBytes(), ipBandwidthBurst.toBytes());
+    }
+
+    private static void putIfEnabled(Map<Scope, RateLimit> limits, Scope scope, double rate, long burst) {
+        if (rate > 0) {
+            limits.put(scope, new RateLimit(rate, Math.max(1, burst)));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Everyone a request counts against: the signed-in user, the share token in a public
+     * share URL, and the client address
+     */
+    public List<BucketSubject> subjectsOf(HttpServletRequest request) {
+        List<BucketSubject> subjects = new ArrayList<>(3);
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Long userId) {
+            subjects.add(new BucketSubject(Scope.USER, userId.toString()));
+        }
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith(PUBLIC_SHARE_PREFIX)) {
+            int end = path.indexOf('/', PUBLIC_SHARE_PREFIX.length());
+            String token = end < 0 ? path.substring(PUBLIC_SHARE_PREFIX.length())
+                    : path.substring(PUBLIC_SHARE_PREFIX.length(), end);
+            if (!token.isEmpty()) {
+                subjects.add(new BucketSubject(Scope.SHARE, token));
+            }
+        }
+
+        // The client behind a trusted proxy (server.forward-headers-strategy), not the proxy
+        subjects.add(new BucketSubject(Scope.IP, request.getRemoteAddr()));
+        return subjects;
+    }
+
+    /**
+     * Take one request token from each subject's bucket. A refused request costs nothing:
+     * tokens already taken from the other buckets are given back.
+     *
+     * @return the first subject that is over its limit with the wait in ms, or null if admitted
+     */
+    public Rejection admitRequest(List<BucketSubject> subjects) {
+        List<BucketSubject> charged = new ArrayList<>(subjects.size());
+        for (BucketSubject subject : subjects) {
+            RateLimit limit = requestLimits.get(subject.scope());
+            if (limit == null) {
+                continue;
+            }
+            long wait = limiter.tryTake(subject.key("req"), limit, 1);
+            if (wait > 0) {
+                charged.forEach(s -> limiter.refundTake(s.key("req"), requestLimits.get(s.scope()), 1));
+                return new Rejection(subject, wait);
+            }
+            charged.add(subject);
+        }
+        return null;
+    }
+
+    /**
+     * Admit an upload by its declared length. The whole body is charged up front, so a large
+     * upload pushes the subject into debt and its next transfers wait until it's repaid.
+     * A refused upload is charged to no one.
+     */
+    public Rejection admitUpload(List<BucketSubject> subjects, long contentLength) {
+        List<BucketSubject> charged = new ArrayList<>(subjects.size());
+        for (BucketSubject subject : subjects) {
+            RateLimit limit = bandwidthLimits.get(subject.scope());
+            if (limit == null) {
+                continue;
+            }
+            long wait = limiter.tryDebit(subject.key("bw"), limit, contentLength);
+            if (wait > 0) {
+                charged.forEach(s -> limiter.refundDebit(s.key("bw"), bandwidthLimits.get(s.scope()), contentLength));
+                return new Rejection(subject, wait);
+            }
+            charged.add(subject);
+        }
+        return null;
+    }
+
+    /**
+     * Wrap a response stream so what it sends is paced by the subjects' bandwidth buckets
+     */
+    public OutputStream throttle(OutputStream out, List<BucketSubject> subjects) {
+        List<ThrottledOutputStream.Bucket> buckets = new ArrayList<>(subjects.size());
+        for (BucketSubject subject : subjects) {
+            RateLimit limit = bandwidthLimits.get(subject.scope());
+            if (limit != null) {
+                buckets.add(new ThrottledOutputStream.Bucket(subject.key("bw"), limit));
+            }
+        }
+        return enabled && !buckets.isEmpty() ? new ThrottledOutputStream(out, limiter, buckets, metrics) : out;
+    }
+
+    public record Rejection(BucketSubject subject, long waitMillis) {
+    }
+}
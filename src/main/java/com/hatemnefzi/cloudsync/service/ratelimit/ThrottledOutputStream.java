@@ -0,0 +1,75 @@
+package com.hatemnefzi.cloudsync.service.ratelimit;
+
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces writes by bandwidth buckets: each chunk waits until every bucket has the bytes for it.
+ *
+ * Chunks are kept to the smallest lease, so a fast sender can't grab a second's worth of a
+ * shared bucket in one write and starve the others.
+ */
+class ThrottledOutputStream extends FilterOutputStream {
+
+    record Bucket(String key, RateLimit limit) {
+    }
+
+    // Below this the chunks went through on leased tokens
+    private static final long MIN_RECORDED_WAIT = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final TokenBucketLimiter limiter;
+    private final List<Bucket> buckets;
+    private final CloudsyncMetrics metrics;
+    private final int chunkSize;
+    private long waitedNanos;
+
+    ThrottledOutputStream(OutputStream out, TokenBucketLimiter limiter, List<Bucket> buckets, CloudsyncMetrics metrics) {
+        super(out);
+        this.limiter = limiter;
+        this.buckets = buckets;
+        this.metrics = metrics;
+        long smallest = buckets.stream().mapToLong(bucket -> limiter.leaseSize(bucket.limit())).min().orElse(65536);
+        this.chunkSize = (int) Math.max(1024, Math.min(65536, smallest));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, chunkSize);
+            acquire(chunk);
+            out.write(b, off, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (waitedNanos > MIN_RECORDED_WAIT) {
+                metrics.recordThrottleWait(waitedNanos);
+            }
+        }
+    }
+
+    private void acquire(int bytes) throws IOException {
+        long start = System.nanoTime();
+        for (Bucket bucket : buckets) {
+            limiter.take(bucket.key(), bucket.limit(), bytes);
+        }
+        waitedNanos += System.nanoTime() - start;
+    }
+}
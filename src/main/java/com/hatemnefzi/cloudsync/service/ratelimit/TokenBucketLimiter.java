@@ -0,0 +1,249 @@
+package com.hatemnefzi.cloudsync.service.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Cluster-wide token buckets kept in Redis.
+ *
+ * A node doesn't go to Redis for every request or chunk: it leases a slice of the bucket
+ * (what the rate refills in app.rate-limit.lease) and spends it locally, so across N nodes a
+ * subject can overshoot its burst by at most N leases. If Redis can't be reached, each node
+ * falls back to its own buckets at the full rate for a while.
+ */
+@Component
+@Slf4j
+public class TokenBucketLimiter {
+
+    private static final String KEY_PREFIX = "cloudsync:rate:";
+
+    // KEYS[1] bucket; ARGV rate (tokens/s), burst, requested, minimum, debit (1 = take all, going into debt)
+    // Returns {granted, wait ms}. Time comes from Redis, so node clocks don't matter.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE = new DefaultRedisScript<>("""
+            local rate = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local requested = tonumber(ARGV[3])
+            local minimum = tonumber(ARGV[4])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or burst
+            local ts = tonumber(state[2]) or now
+            tokens = math.min(burst, tokens + math.max(0, now - ts) * rate / 1000)
+            local granted = 0
+            local wait = 0
+            if ARGV[5] == '1' then
+              if tokens >= 0 then
+                granted = requested
+                tokens = tokens - requested
+              else
+                wait = math.ceil(-tokens * 1000 / rate)
+              end
+            elseif tokens >= minimum then
+              granted = math.min(requested, math.floor(tokens))
+              tokens = tokens - granted
+            else
+              wait = math.ceil((minimum - tokens) * 1000 / rate)
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil((burst - tokens) * 1000 / rate) + 1000)
+            return {granted, wait}
+            """, List.class);
+
+    // KEYS[1] bucket; ARGV rate, burst, tokens to give back (never past the burst)
+    private static final RedisScript<Long> REFUND = new DefaultRedisScript<>("""
+            local rate = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            if not state[1] then
+              return 0
+            end
+            local ts = tonumber(state[2]) or now
+            local tokens = math.min(burst, tonumber(state[1]) + math.max(0, now - ts) * rate / 1000)
+            tokens = math.min(burst, tokens + tonumber(ARGV[3]))
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil((burst - tokens) * 1000 / rate) + 1000)
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${app.rate-limit.lease:100ms}")
+    private Duration leaseWindow;
+
+    @Value("${app.rate-limit.redis-retry:5s}")
+    private Duration redisRetry;
+
+    private final Cache<String, LocalBucket> buckets = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+
+    private volatile long redisDownUntil;
+
+    public TokenBucketLimiter(ObjectProvider<StringRedisTemplate> redisTemplate) {
+        this.redisTemplate = redisTemplate.getIfAvailable();
+    }
+
+    /**
+     * Take tokens if the bucket has them
+     *
+     * @return 0 when taken, otherwise how many milliseconds until they could be
+     */
+    public long tryTake(String key, RateLimit limit, long tokens) {
+        long wanted = Math.min(tokens, limit.burst());
+        LocalBucket bucket = buckets.get(key, k -> new LocalBucket());
+        synchronized (bucket) {
+            if (bucket.leased >= wanted) {
+                bucket.leased -= wanted;
+                return 0;
+            }
+            long now = System.currentTimeMillis();
+            if (now < bucket.retryAt) {
+                return bucket.retryAt - now;
+            }
+
+            long needed = wanted - bucket.leased;
+            long[] result = redisTake(key, limit, Math.max(needed, limit.leaseSize(leaseWindow)), needed, false);
+            if (result == null) {
+                return bucket.takeLocally(limit, wanted, false);
+            }
+            bucket.leased += result[0];
+            if (bucket.leased >= wanted) {
+                bucket.leased -= wanted;
+                return 0;
+            }
+            bucket.retryAt = now + result[1];
+            return result[1];
+        }
+    }
+
+    /**
+     * Admit a transfer of known size as long as the bucket isn't already in debt, charging
+     * all of it at once. Later takes wait until the debt is paid back at the bucket's rate.
+     *
+     * @return 0 when admitted, otherwise how many milliseconds until the debt is cleared
+     */
+    public long tryDebit(String key, RateLimit limit, long tokens) {
+        long[] result = redisTake(key, limit, tokens, 0, true);
+        if (result != null) {
+            return result[1];
+        }
+        LocalBucket bucket = buckets.get(key, k -> new LocalBucket());
+        synchronized (bucket) {
+            return bucket.takeLocally(limit, tokens, true);
+        }
+    }
+
+    /**
+     * Give back tokens from a tryTake that admitted a request another bucket then refused
+     */
+    public void refundTake(String key, RateLimit limit, long tokens) {
+        LocalBucket bucket = buckets.get(key, k -> new LocalBucket());
+        synchronized (bucket) {
+            // Spent before asking Redis or the local bucket again, whichever it came from
+            bucket.leased += Math.min(tokens, limit.burst());
+        }
+    }
+
+    /**
+     * Give back a tryDebit charge for a transfer another bucket then refused
+     */
+    public void refundDebit(String key, RateLimit limit, long tokens) {
+        if (redisTemplate != null && System.currentTimeMillis() >= redisDownUntil) {
+            try {
+                redisTemplate.execute(REFUND, List.of(KEY_PREFIX + key),
+                        Double.toString(limit.tokensPerSecond()), Long.toString(limit.burst()), Long.toString(tokens));
+                return;
+            } catch (RuntimeException e) {
+                redisDownUntil = System.currentTimeMillis() + redisRetry.toMillis();
+                log.warn("Rate limiting on local buckets for {}, Redis unavailable: {}", redisRetry, e.getMessage());
+            }
+        }
+        LocalBucket bucket = buckets.get(key, k -> new LocalBucket());
+        synchronized (bucket) {
+            bucket.refundLocally(limit, tokens);
+        }
+    }
+
+    /**
+     * Take tokens, waiting for them as long as needed
+     */
+    public void take(String key, RateLimit limit, long tokens) throws InterruptedIOException {
+        long wait;
+        while ((wait = tryTake(key, limit, tokens)) > 0) {
+            try {
+                Thread.sleep(Math.min(wait, 1000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+
+    long leaseSize(RateLimit limit) {
+        return limit.leaseSize(leaseWindow);
+    }
+
+    private long[] redisTake(String key, RateLimit limit, long requested, long minimum, boolean debit) {
+        if (redisTemplate == null || System.currentTimeMillis() < redisDownUntil) {
+            return null;
+        }
+        try {
+            List<?> result = redisTemplate.execute(TAKE, List.of(KEY_PREFIX + key),
+                    Double.toString(limit.tokensPerSecond()), Long.toString(limit.burst()),
+                    Long.toString(requested), Long.toString(minimum), debit ? "1" : "0");
+            return new long[]{((Number) result.get(0)).longValue(), ((Number) result.get(1)).longValue()};
+        } catch (RuntimeException e) {
+            redisDownUntil = System.currentTimeMillis() + redisRetry.toMillis();
+            log.warn("Rate limiting on local buckets for {}, Redis unavailable: {}", redisRetry, e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class LocalBucket {
+        // Tokens leased from Redis and not spent yet
+        private long leased;
+        // Redis said the bucket is empty until then
+        private long retryAt;
+
+        // Node-local bucket, only used while Redis is unavailable
+        private double tokens = Double.NaN;
+        private long refilledAt;
+
+        private long takeLocally(RateLimit limit, long requested, boolean debit) {
+            long now = System.currentTimeMillis();
+            tokens = Double.isNaN(tokens)
+                    ? limit.burst()
+                    : Math.min(limit.burst(), tokens + (now - refilledAt) * limit.tokensPerSecond() / 1000);
+            refilledAt = now;
+
+            if (debit ? tokens >= 0 : tokens >= requested) {
+                tokens -= requested;
+                return 0;
+            }
+            double missing = debit ? -tokens : requested - tokens;
+            return (long) Math.ceil(missing * 1000 / limit.tokensPerSecond());
+        }
+
+        private void refundLocally(RateLimit limit, long refunded) {
+            if (!Double.isNaN(tokens)) {
+                tokens = Math.min(limit.burst(), tokens + refunded);
+            }
+        }
+    }
+}
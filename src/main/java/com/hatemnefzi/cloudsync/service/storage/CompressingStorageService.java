@@ -0,0 +1,237 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import com.hatemnefzi.cloudsync.util.ContentTypes;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Compresses objects on the way into the wrapped backend and decompresses them on the way out.
+ *
+ * Compressed objects start with a small header (magic, codec id, original length) so reads
+ * can tell them apart from objects stored uncompressed, including ones written before this
+ * layer existed. Incompressible content is passed through untouched, unless it happens to
+ * start with the magic: then it gets a header too, with codec NONE.
+ */
+@Slf4j
+public class CompressingStorageService implements StorageService {
+
+    static final byte[] MAGIC = {(byte) 0x89, 'C', 'S', 'Z', '\r', '\n'};
+    static final int HEADER_LENGTH = MAGIC.length + 1 + Long.BYTES;
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final double MAX_ENTROPY_BITS = 7.5; // per byte; random data is ~8
+    private static final double MAX_SAMPLE_RATIO = 0.9; // must save at least 10% on the sample
+
+    private final StorageService delegate;
+    private final long minSize;
+    private final int zstdLevel;
+    private final boolean zstdAvailable;
+
+    public CompressingStorageService(StorageService delegate, long minSize, int zstdLevel) {
+        this.delegate = delegate;
+        this.minSize = minSize;
+        this.zstdLevel = zstdLevel;
+        this.zstdAvailable = CompressionCodec.isZstdAvailable();
+        if (!zstdAvailable) {
+            log.warn("zstd native library not available, falling back to LZ4 for all content");
+        }
+    }
+
+    @Override
+    public String store(InputStream inputStream, long size, String contentType, Long userId, String filename) throws IOException {
+        if (size < minSize || ContentTypes.isPrecompressed(contentType)) {
+            byte[] head = inputStream.readNBytes(MAGIC.length);
+            InputStream content = new SequenceInputStream(new ByteArrayInputStream(head), inputStream);
+            return storeUncompressed(content, head, size, contentType, userId, filename);
+        }
+
+        byte[] sample = inputStream.readNBytes((int) Math.min(SAMPLE_SIZE, size));
+        InputStream content = new SequenceInputStream(new ByteArrayInputStream(sample), inputStream);
+
+        CompressionCodec codec = chooseCodec(contentType, sample);
+        if (codec == CompressionCodec.NONE) {
+            return storeUncompressed(content, sample, size, contentType, userId, filename);
+        }
+
+        // Spool to disk first: backends need the final length up front
+        Path spool = Files.createTempFile("cloudsync-", "." + codec.getEncoding());
+        try {
+            try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(spool))) {
+                writeHeader(raw, codec, size);
+                OutputStream out = codec.wrap(raw, zstdLevel);
+                content.transferTo(out);
+                out.close();
+            }
+
+            long storedSize = Files.size(spool);
+            log.debug("Compressed {}: codec={}, {} -> {} bytes", filename, codec, size, storedSize);
+
+            try (InputStream in = Files.newInputStream(spool)) {
+                // The stored bytes are no longer of the declared type
+                return delegate.store(in, storedSize, "application/octet-stream", userId, filename);
+            }
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    // Content that starts like a header is escaped with a NONE header, or reads would decode it
+    private String storeUncompressed(InputStream content, byte[] head, long size, String contentType,
+                                     Long userId, String filename) throws IOException {
+        if (head.length < MAGIC.length || !Arrays.equals(head, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return delegate.store(content, size, contentType, userId, filename);
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_LENGTH);
+        writeHeader(header, CompressionCodec.NONE, size);
+        InputStream escaped = new SequenceInputStream(new ByteArrayInputStream(header.toByteArray()), content);
+        return delegate.store(escaped, size + HEADER_LENGTH, contentType, userId, filename);
+    }
+
+    @Override
+    public byte[] getFile(String storageKey) throws IOException {
+        try (InputStream inputStream = getFileStream(storageKey)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    @Override
+    public InputStream getFileStream(String storageKey) throws IOException {
+        return openStored(storageKey).decoded();
+    }
+
+    @Override
+    public StoredObject openStored(String storageKey) throws IOException {
+        InputStream raw = new BufferedInputStream(delegate.getFileStream(storageKey), 64 * 1024);
+        raw.mark(HEADER_LENGTH);
+        Header header = readHeader(raw);
+        if (header == null) {
+            raw.reset();
+            return new StoredObject(CompressionCodec.NONE, raw);
+        }
+        return new StoredObject(header.codec(), raw);
+    }
+
+    @Override
+    public byte[] getRange(String storageKey, long offset, int length) throws IOException {
+        // Objects stored uncompressed can be read in place; compressed ones are decoded up to the range
+        Header header = readHeader(new ByteArrayInputStream(delegate.getRange(storageKey, 0, HEADER_LENGTH)));
+        if (header == null) {
+            return delegate.getRange(storageKey, offset, length);
+        }
+        if (header.codec() == CompressionCodec.NONE) {
+            return delegate.getRange(storageKey, HEADER_LENGTH + offset, length);
+        }
+        return StorageService.super.getRange(storageKey, offset, length);
+    }
+
+    @Override
+    public InputStream getRangeStream(String storageKey, long offset, long length) throws IOException {
+        Header header = readHeader(new ByteArrayInputStream(delegate.getRange(storageKey, 0, HEADER_LENGTH)));
+        if (header == null) {
+            return delegate.getRangeStream(storageKey, offset, length);
+        }
+        if (header.codec() == CompressionCodec.NONE) {
+            return delegate.getRangeStream(storageKey, HEADER_LENGTH + offset, length);
+        }
+        return StorageService.super.getRangeStream(storageKey, offset, length);
+    }
+
+    @Override
+    public void delete(String storageKey) throws IOException {
+        delegate.delete(storageKey);
+    }
+
+    @Override
+    public boolean exists(String storageKey) {
+        return delegate.exists(storageKey);
+    }
+
+    @Override
+    public long getFileSize(String storageKey) throws IOException {
+        try (InputStream raw = delegate.getFileStream(storageKey)) {
+            Header header = readHeader(raw);
+            if (header != null) {
+                return header.originalSize();
+            }
+        }
+        return delegate.getFileSize(storageKey);
+    }
+
+    @Override
+    public boolean repair(String storageKey) throws IOException {
+        return delegate.repair(storageKey);
+    }
+
+    CompressionCodec chooseCodec(String contentType, byte[] sample) {
+        if (entropy(sample) > MAX_ENTROPY_BITS) {
+            return CompressionCodec.NONE;
+        }
+
+        // zstd where the ratio pays off, LZ4 where CPU matters more
+        CompressionCodec codec = ContentTypes.isTextual(contentType) && zstdAvailable ? CompressionCodec.ZSTD : CompressionCodec.LZ4;
+        if (codec.compressedLength(sample, zstdLevel) > sample.length * MAX_SAMPLE_RATIO) {
+            return CompressionCodec.NONE;
+        }
+        return codec;
+    }
+
+    /**
+     * Shannon entropy of the byte histogram, in bits per byte
+     */
+    static double entropy(byte[] sample) {
+        if (sample.length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (byte b : sample) {
+            counts[b & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / sample.length;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+        return entropy;
+    }
+
+    private static void writeHeader(OutputStream out, CompressionCodec codec, long originalSize) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeByte(codec.getId());
+        data.writeLong(originalSize);
+        data.flush();
+    }
+
+    /**
+     * Read the object header, or return null if the object was stored uncompressed
+     */
+    static Header readHeader(InputStream in) throws IOException {
+        byte[] bytes = in.readNBytes(HEADER_LENGTH);
+        if (bytes.length < HEADER_LENGTH || !Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return null;
+        }
+        CompressionCodec codec = CompressionCodec.fromId(bytes[MAGIC.length]);
+        if (codec == null) {
+            return null;
+        }
+        long originalSize = new DataInputStream(new ByteArrayInputStream(bytes, MAGIC.length + 1, Long.BYTES)).readLong();
+        return new Header(codec, originalSize);
+    }
+
+    record Header(CompressionCodec codec, long originalSize) {}
+}
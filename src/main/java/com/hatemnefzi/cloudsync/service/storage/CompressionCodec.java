@@ -0,0 +1,93 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import com.github.luben.zstd.ZstdOutputStreamNoFinalizer;
+import lombok.Getter;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Codecs a stored object can be compressed with. The id is written in the object header.
+ */
+@Getter
+public enum CompressionCodec {
+    NONE((byte) 0, "identity"),
+    ZSTD((byte) 1, "zstd"),
+    LZ4((byte) 2, "lz4");
+
+    private final byte id;
+    private final String encoding; // HTTP content-coding name
+
+    CompressionCodec(byte id, String encoding) {
+        this.id = id;
+        this.encoding = encoding;
+    }
+
+    public static CompressionCodec fromId(byte id) {
+        for (CompressionCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wrap a stream so that everything written to it is compressed
+     */
+    public OutputStream wrap(OutputStream out, int level) throws IOException {
+        return switch (this) {
+            case NONE -> out;
+            case ZSTD -> new ZstdOutputStreamNoFinalizer(out, level);
+            case LZ4 -> new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB);
+        };
+    }
+
+    /**
+     * Wrap a compressed stream so that reads return the original bytes
+     */
+    public InputStream unwrap(InputStream in) throws IOException {
+        return switch (this) {
+            case NONE -> in;
+            case ZSTD -> new ZstdInputStreamNoFinalizer(in);
+            case LZ4 -> new LZ4FrameInputStream(in);
+        };
+    }
+
+    /**
+     * Compressed length of an in-memory sample, used to predict the ratio of a whole object
+     */
+    public int compressedLength(byte[] sample, int level) {
+        return switch (this) {
+            case NONE -> sample.length;
+            case ZSTD -> Zstd.compress(sample, level).length;
+            case LZ4 -> LZ4Factory.fastestInstance().fastCompressor().compress(sample).length;
+        };
+    }
+
+    /**
+     * zstd relies on a bundled native library that may not load on every platform
+     */
+    public static boolean isZstdAvailable() {
+        return ZstdSupport.AVAILABLE;
+    }
+
+    private static final class ZstdSupport {
+        static final boolean AVAILABLE = probe();
+
+        private static boolean probe() {
+            try {
+                Zstd.compress(new byte[1]);
+                return true;
+            } catch (LinkageError e) {
+                return false;
+            }
+        }
+    }
+}
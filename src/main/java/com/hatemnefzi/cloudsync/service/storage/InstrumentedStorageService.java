@@ -0,0 +1,115 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every call to the wrapped backend, tagged with the backend name and outcome.
+ * For streams only opening is timed (time to first byte).
+ */
+public class InstrumentedStorageService implements StorageService {
+
+    private final StorageService delegate;
+    private final String backend;
+    private final MeterRegistry registry;
+    private final DistributionSummary storedBytes;
+
+    public InstrumentedStorageService(StorageService delegate, String backend, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.backend = backend;
+        this.registry = registry;
+        this.storedBytes = DistributionSummary.builder("cloudsync.storage.stored.bytes")
+                .description("Size of objects written to the storage backend")
+                .baseUnit("bytes")
+                .tag("backend", backend)
+                .register(registry);
+    }
+
+    @FunctionalInterface
+    private interface StorageCall<T> {
+        T call() throws IOException;
+    }
+
+    private <T> T timed(String operation, StorageCall<T> call) throws IOException {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            Timer.builder("cloudsync.storage.operation")
+                    .description("Latency of storage backend operations")
+                    .tag("backend", backend)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public String store(InputStream inputStream, long size, String contentType, Long userId, String filename) throws IOException {
+        String key = timed("store", () -> delegate.store(inputStream, size, contentType, userId, filename));
+        storedBytes.record(size);
+        return key;
+    }
+
+    @Override
+    public byte[] getFile(String storageKey) throws IOException {
+        return timed("get", () -> delegate.getFile(storageKey));
+    }
+
+    @Override
+    public InputStream getFileStream(String storageKey) throws IOException {
+        return timed("open", () -> delegate.getFileStream(storageKey));
+    }
+
+    @Override
+    public byte[] getRange(String storageKey, long offset, int length) throws IOException {
+        return timed("range", () -> delegate.getRange(storageKey, offset, length));
+    }
+
+    @Override
+    public InputStream getRangeStream(String storageKey, long offset, long length) throws IOException {
+        return timed("range", () -> delegate.getRangeStream(storageKey, offset, length));
+    }
+
+    @Override
+    public StoredObject openStored(String storageKey) throws IOException {
+        return timed("open", () -> delegate.openStored(storageKey));
+    }
+
+    @Override
+    public void delete(String storageKey) throws IOException {
+        timed("delete", () -> {
+            delegate.delete(storageKey);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean exists(String storageKey) {
+        try {
+            return timed("exists", () -> delegate.exists(storageKey));
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // exists() does not throw IOException
+        }
+    }
+
+    @Override
+    public long getFileSize(String storageKey) throws IOException {
+        return timed("size", () -> delegate.getFileSize(storageKey));
+    }
+
+    @Override
+    public boolean repair(String storageKey) throws IOException {
+        return timed("repair", () -> delegate.repair(storageKey));
+    }
+}
@@ -0,0 +1,164 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Moves local objects from the old {userId}/{uuid}_{filename} layout to content-addressed keys.
+ *
+ * Enabled with storage.local.migrate-layout=true; runs once on startup while the application
+ * serves traffic. Each object is hard-linked under its new key, every row pointing at the old
+ * key is rewritten in one transaction per batch, and only then is the old name removed, so an
+ * interrupted run can simply be started again. Objects whose content is already stored under
+ * the new key are left where they are: sharing them would let one owner's delete remove the
+ * other's object.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.local.migrate-layout", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class LocalLayoutMigration implements ApplicationRunner {
+
+    private static final List<String> TABLES = List.of("content_blobs", "files", "file_versions", "file_derivatives");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.type}")
+    private String storageType;
+
+    @Value("${storage.local.upload-dir}")
+    private String uploadDir;
+
+    @Value("${storage.local.migrate-batch-size:500}")
+    private int batchSize;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!"local".equalsIgnoreCase(storageType)) {
+            log.warn("storage.local.migrate-layout is set but storage.type is {}, nothing to migrate", storageType);
+            return;
+        }
+
+        Path root = Paths.get(uploadDir);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        log.info("📦 Migrating local objects in {} to content-addressed keys", root);
+
+        long migrated = 0;
+        long skipped = 0;
+        List<Path> batch = new ArrayList<>(batchSize);
+        try (DirectoryStream<Path> owners = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path owner : owners) {
+                if (owner.getFileName().toString().equals(LocalStorageService.TEMP_DIR)) {
+                    continue;
+                }
+                // Legacy objects sit directly in the user's directory; shard directories only hold directories
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(owner, Files::isRegularFile)) {
+                    for (Path file : files) {
+                        batch.add(file);
+                        if (batch.size() == batchSize) {
+                            long moved = migrate(root, batch);
+                            migrated += moved;
+                            skipped += batch.size() - moved;
+                            batch.clear();
+                            log.info("Migrated {} objects so far ({} left in place)", migrated, skipped);
+                        }
+                    }
+                }
+            }
+        }
+        long moved = migrate(root, batch);
+        migrated += moved;
+        skipped += batch.size() - moved;
+
+        log.info("✅ Local layout migration done: {} objects moved, {} duplicates left under their old keys",
+                migrated, skipped);
+    }
+
+    private long migrate(Path root, List<Path> batch) throws IOException {
+        Map<String, String> renames = new LinkedHashMap<>();
+        Set<Path> directories = new HashSet<>();
+        for (Path file : batch) {
+            String newKey = LocalStorageService.contentKey(sha256(file));
+            Path target = root.resolve(newKey);
+            Files.createDirectories(target.getParent());
+            try {
+                Files.createLink(target, file);
+            } catch (FileAlreadyExistsException e) {
+                if (!Files.isSameFile(target, file)) {
+                    continue; // same content already stored for someone else
+                }
+                // linked by an earlier run that stopped before updating the rows
+            } catch (UnsupportedOperationException e) {
+                Path temp = root.resolve(LocalStorageService.TEMP_DIR).resolve(UUID.randomUUID() + ".part");
+                Files.createDirectories(temp.getParent());
+                Files.copy(file, temp);
+                LocalStorageService.force(temp);
+                LocalStorageService.moveIntoPlace(temp, target);
+            }
+            renames.put(root.relativize(file).toString().replace('\\', '/'), newKey);
+            directories.add(target.getParent());
+        }
+        for (Path directory : directories) {
+            LocalStorageService.force(directory);
+        }
+        if (renames.isEmpty()) {
+            return 0;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            String values = String.join(",", Collections.nCopies(renames.size(), "(?, ?)"));
+            Object[] args = renames.entrySet().stream()
+                    .flatMap(rename -> Stream.of(rename.getKey(), rename.getValue()))
+                    .toArray();
+            for (String table : TABLES) {
+                // One hash join per table and batch rather than one scan per key
+                jdbcTemplate.update("UPDATE " + table + " t SET storage_key = m.new_key FROM (VALUES " + values
+                        + ") AS m(old_key, new_key) WHERE t.storage_key = m.old_key", args);
+            }
+        });
+
+        for (String oldKey : renames.keySet()) {
+            Files.deleteIfExists(root.resolve(oldKey));
+        }
+        return renames.size();
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest = LocalStorageService.sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
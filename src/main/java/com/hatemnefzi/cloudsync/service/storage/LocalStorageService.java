@@ -1,71 +1,291 @@
 package com.hatemnefzi.cloudsync.service.storage;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * Stores objects on local disk under a content-addressed, sharded layout: ab/cd/&lt;sha256&gt;,
+ * where the hash is of the bytes as stored. Two levels of 256 directories keep each directory
+ * small however many objects there are.
+ *
+ * Objects are written to a temp file in the same filesystem and renamed into place, so a
+ * crash never leaves a partial object under its key. How far to go for durability is set by
+ * the fsync mode. Keys in the old {userId}/{uuid}_{filename} layout are still readable; see
+ * LocalLayoutMigration to move them.
+ */
 @Slf4j
 public class LocalStorageService implements StorageService {
 
-    @Value("${storage.local.upload-dir}")
-    private String uploadDir;
+    public enum FsyncMode {
+        /** Rename only: survives a process crash, not necessarily a power loss */
+        NONE,
+        /** fsync each object and its directory before returning */
+        ALWAYS,
+        /** Like ALWAYS, but concurrent writers share fsync rounds (group commit) */
+        BATCH
+    }
+
+    static final String TEMP_DIR = ".tmp";
+
+    private final Path root;
+    private final FsyncMode fsyncMode;
+    private final BlockingQueue<PendingSync> syncQueue = new LinkedBlockingQueue<>();
+
+    public LocalStorageService(String uploadDir) {
+        this(uploadDir, FsyncMode.NONE, Duration.ZERO);
+    }
+
+    public LocalStorageService(String uploadDir, FsyncMode fsyncMode, Duration batchWindow) {
+        this.root = Paths.get(uploadDir);
+        this.fsyncMode = fsyncMode;
+        clearTemp();
+        if (fsyncMode == FsyncMode.BATCH) {
+            Thread flusher = new Thread(() -> flushLoop(batchWindow), "storage-fsync");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * The key for a SHA-256 hash, as lowercase hex
+     */
+    public static String contentKey(String sha256) {
+        return sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256;
+    }
 
     @Override
-    public String store(MultipartFile file, Long userId, String filename) throws IOException {
-        Path userDir = Paths.get(uploadDir, userId.toString());
-        Files.createDirectories(userDir);
+    public String store(InputStream inputStream, long size, String contentType, Long userId, String filename) throws IOException {
+        Path temp = newTempFile();
+        try {
+            MessageDigest digest = sha256();
+            try (DigestInputStream in = new DigestInputStream(inputStream, digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String key = contentKey(HexFormat.of().formatHex(digest.digest()));
+            Path target = root.resolve(key);
 
-        String uniqueFilename = UUID.randomUUID().toString() + "_" + filename;
-        Path filePath = userDir.resolve(uniqueFilename);
+            // Same bytes already stored; a different size means a torn write from before a crash
+            if (Files.exists(target) && Files.size(target) == Files.size(temp)) {
+                log.debug("Object already stored: {}", key);
+                return key;
+            }
 
-        try (InputStream inputStream = file.getInputStream()) {
-            Files.copy(inputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
-            log.info("Stored file locally: {}", filePath);
-            return userId + "/" + uniqueFilename; // Return relative path
+            sync(temp);
+            Files.createDirectories(target.getParent());
+            moveIntoPlace(temp, target);
+            sync(target.getParent());
+            log.info("Stored file locally: {}", key);
+            return key;
         } catch (IOException e) {
             log.error("Failed to store file locally: {}", e.getMessage());
             throw new IOException("Failed to store file locally", e);
+        } finally {
+            Files.deleteIfExists(temp);
         }
     }
 
     @Override
     public byte[] getFile(String storageKey) throws IOException {
-        Path filePath = Paths.get(uploadDir, storageKey);
-        return Files.readAllBytes(filePath);
+        return Files.readAllBytes(resolve(storageKey));
     }
 
     @Override
     public InputStream getFileStream(String storageKey) throws IOException {
-        Path filePath = Paths.get(uploadDir, storageKey);
-        return Files.newInputStream(filePath);
+        return Files.newInputStream(resolve(storageKey));
+    }
+
+    @Override
+    public byte[] getRange(String storageKey, long offset, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(storageKey), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - offset)));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+    @Override
+    public InputStream getRangeStream(String storageKey, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(storageKey), StandardOpenOption.READ);
+        channel.position(offset);
+        return Channels.newInputStream(channel);
     }
 
     @Override
     public void delete(String storageKey) throws IOException {
-        Path filePath = Paths.get(uploadDir, storageKey);
+        Path filePath = resolve(storageKey);
         Files.deleteIfExists(filePath);
         log.info("Deleted file locally: {}", filePath);
     }
 
     @Override
     public boolean exists(String storageKey) {
-        Path filePath = Paths.get(uploadDir, storageKey);
-        return Files.exists(filePath);
+        return Files.exists(resolve(storageKey));
     }
 
     @Override
     public long getFileSize(String storageKey) throws IOException {
-        Path filePath = Paths.get(uploadDir, storageKey);
-        return Files.size(filePath);
+        return Files.size(resolve(storageKey));
+    }
+
+    Path resolve(String storageKey) {
+        return root.resolve(storageKey);
+    }
+
+    Path newTempFile() throws IOException {
+        Path tempDir = root.resolve(TEMP_DIR);
+        Files.createDirectories(tempDir);
+        return tempDir.resolve(UUID.randomUUID() + ".part");
+    }
+
+    static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Rename over an existing file isn't atomic on every platform; fall back to plain move
+            try {
+                Files.move(source, target);
+            } catch (FileAlreadyExistsException exists) {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Flush a file or directory to disk according to the fsync mode
+     */
+    void sync(Path path) throws IOException {
+        switch (fsyncMode) {
+            case NONE -> { }
+            case ALWAYS -> force(path);
+            case BATCH -> {
+                PendingSync pending = new PendingSync(path, new CompletableFuture<>());
+                syncQueue.add(pending);
+                try {
+                    pending.done().get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for fsync");
+                }
+            }
+        }
+    }
+
+    /**
+     * fsync a file, or a directory so renames into it survive a power loss
+     */
+    public static void force(Path path) throws IOException {
+        // Directories can be opened for reading and forced on Linux; elsewhere skip them
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!Files.isDirectory(path)) {
+                throw e;
+            }
+        }
+    }
+
+    // Each round fsyncs everything queued while the previous round ran, each path once
+    private void flushLoop(Duration batchWindow) {
+        List<PendingSync> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(syncQueue.take());
+                if (!batchWindow.isZero()) {
+                    Thread.sleep(batchWindow.toMillis());
+                }
+                syncQueue.drainTo(batch);
+
+                Map<Path, IOException> results = new LinkedHashMap<>();
+                for (PendingSync pending : batch) {
+                    if (!results.containsKey(pending.path())) {
+                        try {
+                            force(pending.path());
+                            results.put(pending.path(), null);
+                        } catch (IOException e) {
+                            results.put(pending.path(), e);
+                        }
+                    }
+                }
+                for (PendingSync pending : batch) {
+                    IOException error = results.get(pending.path());
+                    if (error == null) {
+                        pending.done().complete(null);
+                    } else {
+                        pending.done().completeExceptionally(error);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("fsync round failed", e);
+                batch.forEach(pending -> pending.done().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Left over from writes interrupted by a crash
+    private void clearTemp() {
+        Path tempDir = root.resolve(TEMP_DIR);
+        if (!Files.isDirectory(tempDir)) {
+            return;
+        }
+        try (var files = Files.list(tempDir)) {
+            files.forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete temp file {}: {}", file, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Could not clear {}: {}", tempDir, e.getMessage());
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record PendingSync(Path path, CompletableFuture<Void> done) {
     }
-}
\ No newline at end of file
+}
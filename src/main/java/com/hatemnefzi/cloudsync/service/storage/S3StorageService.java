@@ -6,7 +6,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,16 +25,16 @@ public class S3StorageService implements StorageService {
     }
 
     @Override
-    public String store(MultipartFile file, Long userId, String filename) throws IOException {
+    public String store(InputStream inputStream, long size, String contentType, Long userId, String filename) throws IOException {
         String key = generateKey(userId, filename);
         log.info("🚀 S3 UPLOAD START - Bucket: {}, Key: {}, Size: {}, User: {}", 
-                 bucketName, key, file.getSize(), userId);
+                 bucketName, key, size, userId);
         
         ObjectMetadata metadata = new ObjectMetadata();
-        metadata.setContentLength(file.getSize());
-        metadata.setContentType(file.getContentType());
+        metadata.setContentLength(size);
+        metadata.setContentType(contentType);
         
-        try (InputStream inputStream = file.getInputStream()) {
+        try {
             PutObjectRequest request = new PutObjectRequest(bucketName, key, inputStream, metadata);
             s3Client.putObject(request);
             log.info("Stored file in S3: bucket={}, key={}", bucketName, key);
@@ -70,6 +69,38 @@ public class S3StorageService implements StorageService {
         }
     }
 
+    @Override
+    public byte[] getRange(String storageKey, long offset, int length) throws IOException {
+        if (length == 0) {
+            return new byte[0];
+        }
+        try {
+            GetObjectRequest request = new GetObjectRequest(bucketName, storageKey)
+                    .withRange(offset, offset + length - 1);
+            try (InputStream inputStream = s3Client.getObject(request).getObjectContent()) {
+                return inputStream.readAllBytes();
+            }
+        } catch (Exception e) {
+            log.error("Failed to get range from S3: {}", e.getMessage());
+            throw new IOException("Failed to get range from S3", e);
+        }
+    }
+
+    @Override
+    public InputStream getRangeStream(String storageKey, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        try {
+            GetObjectRequest request = new GetObjectRequest(bucketName, storageKey)
+                    .withRange(offset, offset + length - 1);
+            return s3Client.getObject(request).getObjectContent();
+        } catch (Exception e) {
+            log.error("Failed to get range stream from S3: {}", e.getMessage());
+            throw new IOException("Failed to get range stream from S3", e);
+        }
+    }
+
     @Override
     public void delete(String storageKey) throws IOException {
         try {
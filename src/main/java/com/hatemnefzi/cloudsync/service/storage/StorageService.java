@@ -10,7 +10,16 @@ public interface StorageService {
     /**
      * Store a file and return the storage key
      */
-    String store(MultipartFile file, Long userId, String filename) throws IOException;
+    default String store(MultipartFile file, Long userId, String filename) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return store(inputStream, file.getSize(), file.getContentType(), userId, filename);
+        }
+    }
+
+    /**
+     * Store content of a known length and return the storage key
+     */
+    String store(InputStream inputStream, long size, String contentType, Long userId, String filename) throws IOException;
     
     /**
      * Get file as byte array
@@ -22,6 +31,38 @@ public interface StorageService {
      */
     InputStream getFileStream(String storageKey) throws IOException;
     
+    /**
+     * Read up to length bytes of the file from offset; fewer at the end of the file
+     */
+    default byte[] getRange(String storageKey, long offset, int length) throws IOException {
+        try (InputStream inputStream = getFileStream(storageKey)) {
+            inputStream.skipNBytes(offset);
+            return inputStream.readNBytes(length);
+        }
+    }
+
+    /**
+     * Open the file positioned at offset. Backends that can fetch just the range do; the
+     * stream may still run past offset + length, so callers stop reading there.
+     */
+    default InputStream getRangeStream(String storageKey, long offset, long length) throws IOException {
+        InputStream inputStream = getFileStream(storageKey);
+        try {
+            inputStream.skipNBytes(offset);
+            return inputStream;
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get file as stored, without decompressing it
+     */
+    default StoredObject openStored(String storageKey) throws IOException {
+        return new StoredObject(CompressionCodec.NONE, getFileStream(storageKey));
+    }
+
     /**
      * Delete a file
      */
@@ -36,4 +77,12 @@ public interface StorageService {
      * Get file size
      */
     long getFileSize(String storageKey) throws IOException;
+
+    /**
+     * Try to restore an object that failed verification, from whatever redundancy the
+     * backend keeps. Returns true if something was done and the object is worth re-checking.
+     */
+    default boolean repair(String storageKey) throws IOException {
+        return false;
+    }
 }
\ No newline at end of file
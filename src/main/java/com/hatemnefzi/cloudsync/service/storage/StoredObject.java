@@ -0,0 +1,17 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An object opened as it sits in storage: the raw stream and the codec it was written with.
+ */
+public record StoredObject(CompressionCodec codec, InputStream content) {
+
+    /**
+     * The original bytes, decompressing if needed
+     */
+    public InputStream decoded() throws IOException {
+        return codec.unwrap(content);
+    }
+}
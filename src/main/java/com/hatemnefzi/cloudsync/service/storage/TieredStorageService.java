@@ -0,0 +1,460 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * A size-capped local disk cache in front of a remote backend.
+ *
+ * Storage keys are never rewritten, so cached copies can't go stale and nodes don't need to
+ * invalidate each other. Eviction is Caffeine's W-TinyLFU; on top of that an object is only
+ * copied to disk on its second miss, so objects read once don't push out the hot set. Uploads
+ * are written through: stored remotely first, then kept on disk for the reads that follow.
+ *
+ * A miss that gets cached starts a background download into the cache file and reads that
+ * file as it grows, so the first bytes don't wait for the whole object. Concurrent misses
+ * for the same object share the download. Readers that get ahead of a failed or oversized
+ * download carry on from the backend at the offset they reached.
+ *
+ * The cache directory is emptied on startup.
+ */
+@Slf4j
+public class TieredStorageService implements StorageService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final StorageService delegate;
+    private final Path cacheDir;
+    private final long maxObjectSize;
+    private final boolean cacheUploads;
+
+    private final Cache<String, CachedObject> cache;
+    // Keys missed once (TRUE) or too large to cache (FALSE)
+    private final Cache<String, Boolean> seen;
+    private final Map<String, Fill> fills = new ConcurrentHashMap<>();
+    private final ExecutorService downloader;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter evictions;
+
+    public TieredStorageService(StorageService delegate, Path cacheDir, long maxSize, long maxObjectSize,
+                                boolean cacheUploads, MeterRegistry registry) throws IOException {
+        this.delegate = delegate;
+        this.cacheDir = cacheDir;
+        this.maxObjectSize = maxObjectSize;
+        this.cacheUploads = cacheUploads;
+        clear(cacheDir);
+
+        // One thread per download under way; they finish even if every reader has gone
+        AtomicInteger threadCount = new AtomicInteger();
+        this.downloader = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "storage-cache-fill-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.hits = requests(registry, "hit");
+        this.misses = requests(registry, "miss");
+        this.coalesced = requests(registry, "coalesced");
+        this.evictions = Counter.builder("cloudsync.storage.cache.evictions")
+                .description("Objects evicted from the local storage cache")
+                .register(registry);
+
+        // Weights are in KiB so multi-GB caches fit in an int weight
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, maxSize / 1024))
+                .weigher((String key, CachedObject object) -> (int) Math.min(Integer.MAX_VALUE, object.size() / 1024 + 1))
+                .removalListener((String key, CachedObject object, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                    if (object != null) {
+                        deleteQuietly(object.path());
+                    }
+                })
+                .build();
+        this.seen = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofHours(1))
+                .build();
+
+        Gauge.builder("cloudsync.storage.cache.hit.ratio", this, TieredStorageService::hitRatio)
+                .description("Share of reads served from the local storage cache")
+                .register(registry);
+        Gauge.builder("cloudsync.storage.cache.size", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0) * 1024.0).orElse(0.0))
+                .description("Bytes held in the local storage cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private static Counter requests(MeterRegistry registry, String result) {
+        return Counter.builder("cloudsync.storage.cache.requests")
+                .description("Reads through the local storage cache")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    @Override
+    public String store(InputStream inputStream, long size, String contentType, Long userId, String filename) throws IOException {
+        if (!cacheUploads || size > maxObjectSize) {
+            return delegate.store(inputStream, size, contentType, userId, filename);
+        }
+
+        Path spool = newCacheFile();
+        try {
+            Files.copy(inputStream, spool, StandardCopyOption.REPLACE_EXISTING);
+            String key;
+            try (InputStream in = Files.newInputStream(spool)) {
+                key = delegate.store(in, size, contentType, userId, filename);
+            }
+            cache.put(key, new CachedObject(spool, Files.size(spool)));
+            return key;
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(spool);
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] getFile(String storageKey) throws IOException {
+        try (InputStream inputStream = getFileStream(storageKey)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    @Override
+    public InputStream getFileStream(String storageKey) throws IOException {
+        CachedObject cached = cache.getIfPresent(storageKey);
+        if (cached != null) {
+            InputStream in = open(storageKey, cached);
+            if (in != null) {
+                hits.increment();
+                return in;
+            }
+        }
+
+        misses.increment();
+        if (!admit(storageKey)) {
+            return delegate.getFileStream(storageKey);
+        }
+        return new FillInputStream(storageKey, fill(storageKey));
+    }
+
+    @Override
+    public byte[] getRange(String storageKey, long offset, int length) throws IOException {
+        CachedObject cached = cache.getIfPresent(storageKey);
+        InputStream in = cached == null ? null : open(storageKey, cached);
+        if (in == null) {
+            return delegate.getRange(storageKey, offset, length);
+        }
+        try (in) {
+            in.skipNBytes(offset);
+            return in.readNBytes(length);
+        }
+    }
+
+    @Override
+    public InputStream getRangeStream(String storageKey, long offset, long length) throws IOException {
+        CachedObject cached = cache.getIfPresent(storageKey);
+        InputStream in = cached == null ? null : open(storageKey, cached);
+        if (in == null) {
+            return delegate.getRangeStream(storageKey, offset, length);
+        }
+        try {
+            in.skipNBytes(offset);
+            return in;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String storageKey) throws IOException {
+        cache.invalidate(storageKey);
+        seen.invalidate(storageKey);
+        delegate.delete(storageKey);
+    }
+
+    @Override
+    public boolean exists(String storageKey) {
+        return cache.getIfPresent(storageKey) != null || delegate.exists(storageKey);
+    }
+
+    @Override
+    public long getFileSize(String storageKey) throws IOException {
+        CachedObject cached = cache.getIfPresent(storageKey);
+        return cached != null ? cached.size() : delegate.getFileSize(storageKey);
+    }
+
+    @Override
+    public boolean repair(String storageKey) throws IOException {
+        // A bad cached copy is fixed by dropping it; otherwise the damage is in the backend
+        boolean wasCached = cache.getIfPresent(storageKey) != null;
+        cache.invalidate(storageKey);
+        return delegate.repair(storageKey) || wasCached;
+    }
+
+    // Cache an object on its second miss, unless it's known to be too large
+    private boolean admit(String storageKey) {
+        if (fills.containsKey(storageKey)) {
+            return true;
+        }
+        Boolean previous = seen.asMap().putIfAbsent(storageKey, Boolean.TRUE);
+        return Boolean.TRUE.equals(previous);
+    }
+
+    /**
+     * The download under way for an object, starting one if there is none
+     */
+    private Fill fill(String storageKey) throws IOException {
+        Fill running = fills.get(storageKey);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+
+        // The file exists before anyone can see the fill, so readers can always open it
+        Fill mine = new Fill(Files.createFile(newCacheFile()));
+        running = fills.putIfAbsent(storageKey, mine);
+        if (running != null) {
+            deleteQuietly(mine.path);
+            coalesced.increment();
+            return running;
+        }
+        try {
+            downloader.execute(() -> download(storageKey, mine));
+        } catch (RejectedExecutionException e) {
+            fills.remove(storageKey, mine);
+            deleteQuietly(mine.path);
+            mine.finish(new IOException("Cache fill rejected", e));
+        }
+        return mine;
+    }
+
+    private void download(String storageKey, Fill fill) {
+        IOException failure = null;
+        try (InputStream in = delegate.getFileStream(storageKey);
+             OutputStream out = Files.newOutputStream(fill.path)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (written + read > maxObjectSize) {
+                    throw new ObjectTooLargeException();
+                }
+                out.write(buffer, 0, read);
+                written += read;
+                fill.progress(written);
+            }
+            cache.put(storageKey, new CachedObject(fill.path, written));
+        } catch (ObjectTooLargeException e) {
+            seen.put(storageKey, Boolean.FALSE);
+            failure = e;
+        } catch (IOException e) {
+            log.debug("Cache fill failed for {}: {}", storageKey, e.getMessage());
+            failure = e;
+        } catch (RuntimeException e) {
+            log.debug("Cache fill failed for {}: {}", storageKey, e.getMessage());
+            failure = new IOException(e);
+        } finally {
+            if (failure != null) {
+                deleteQuietly(fill.path);
+            }
+            fills.remove(storageKey, fill);
+            fill.finish(failure);
+        }
+    }
+
+    // Null if the file was evicted between the lookup and here
+    private InputStream open(String storageKey, CachedObject object) throws IOException {
+        try {
+            return Files.newInputStream(object.path());
+        } catch (NoSuchFileException e) {
+            cache.asMap().remove(storageKey, object);
+            return null;
+        }
+    }
+
+    private Path newCacheFile() {
+        return cacheDir.resolve(UUID.randomUUID() + ".obj");
+    }
+
+    private static void clear(Path cacheDir) throws IOException {
+        Files.createDirectories(cacheDir);
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            files.sorted(Comparator.reverseOrder())
+                    .filter(path -> !path.equals(cacheDir))
+                    .forEach(TieredStorageService::deleteQuietly);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached object {}: {}", path, e.getMessage());
+        }
+    }
+
+    private record CachedObject(Path path, long size) {
+    }
+
+    private static final class ObjectTooLargeException extends IOException {
+        ObjectTooLargeException() {
+            super("Object exceeds the cacheable size");
+        }
+    }
+
+    /**
+     * A download into the cache: how much of the file is written, and how it ended
+     */
+    private static final class Fill {
+        private final Path path;
+        private long written;
+        private boolean done;
+        private IOException failure;
+
+        Fill(Path path) {
+            this.path = path;
+        }
+
+        synchronized void progress(long written) {
+            this.written = written;
+            notifyAll();
+        }
+
+        synchronized void finish(IOException failure) {
+            this.failure = failure;
+            this.done = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait until there is data past position or the download is over, and return how much is written
+         */
+        synchronized long awaitPast(long position) throws InterruptedIOException {
+            while (written <= position && !done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the cache fill");
+                }
+            }
+            return written;
+        }
+
+        synchronized boolean failed() {
+            return failure != null;
+        }
+    }
+
+    /**
+     * Reads an object from its cache file while the download writes it. Once the reader
+     * catches up with a download that failed, or finds the file evicted, it carries on from
+     * the backend at its current offset.
+     */
+    private final class FillInputStream extends InputStream {
+        private final Fill fill;
+        private final String storageKey;
+        private FileChannel channel;
+        private InputStream fallback;
+        private long position;
+
+        FillInputStream(String storageKey, Fill fill) {
+            this.storageKey = storageKey;
+            this.fill = fill;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (fallback == null) {
+                long available = fill.awaitPast(position);
+                if (position < available && openChannel()) {
+                    int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available - position)), position);
+                    if (read > 0) {
+                        position += read;
+                        return read;
+                    }
+                }
+                if (!fill.failed() && position >= available) {
+                    return -1;
+                }
+                fallback = position == 0
+                        ? delegate.getFileStream(storageKey)
+                        : delegate.getRangeStream(storageKey, position, Long.MAX_VALUE - position);
+            }
+            return fallback.read(b, off, len);
+        }
+
+        // False if the file is gone: the download failed or the cached copy was evicted
+        private boolean openChannel() throws IOException {
+            if (channel == null) {
+                try {
+                    channel = FileChannel.open(fill.path, StandardOpenOption.READ);
+                } catch (NoSuchFileException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+            if (fallback != null) {
+                fallback.close();
+            }
+        }
+    }
+}
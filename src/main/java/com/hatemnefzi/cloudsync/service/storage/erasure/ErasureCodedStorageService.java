@@ -0,0 +1,781 @@
+package com.hatemnefzi.cloudsync.service.storage.erasure;
+
+import com.hatemnefzi.cloudsync.service.storage.LocalStorageService;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Stripes objects over several directories (one per disk) with Reed-Solomon coding: each
+ * object becomes k data shards and m parity shards, one per directory, and any k of them
+ * are enough to read it back.
+ *
+ * A shard file is a small header followed by one block per stripe, each block a chunk of
+ * the shard and its CRC32C. Reads fetch the data shards' blocks of a stripe in parallel and
+ * only touch parity when a block is missing or fails its CRC. Keys are content-addressed
+ * like LocalStorageService's (ab/cd/&lt;sha256&gt;), which lets the scrubber check the whole
+ * object against its key and rewrite any shard that is lost or damaged.
+ *
+ * Writes need k+1 shards (all of them when there is no parity), so a freshly stored object
+ * can still lose a disk before the scrubber restores the missing shards.
+ */
+@Slf4j
+public class ErasureCodedStorageService implements StorageService {
+
+    private static final int MAGIC = 0x43534543; // "CSEC"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 24;
+    private static final int CRC_LENGTH = Integer.BYTES;
+    private static final String TEMP_DIR = ".tmp";
+    private static final Pattern CONTENT_KEY = Pattern.compile("[0-9a-f]{2}/[0-9a-f]{2}/([0-9a-f]{64})");
+
+    public enum ScrubOutcome { OK, REPAIRED, CORRUPT, UNRECOVERABLE, MISSING }
+
+    public record ScrubResult(ScrubOutcome outcome, long bytes) {
+    }
+
+    private record ShardHeader(int index, int dataShards, int parityShards, int chunkSize, long length) {
+    }
+
+    // Shards of one object found on disk, by shard index
+    private record Located(String key, ShardHeader header, FileChannel[] channels, int[] dirOf) implements AutoCloseable {
+
+        long stripes() {
+            long stripeSize = (long) header.dataShards() * header.chunkSize();
+            return (header.length() + stripeSize - 1) / stripeSize;
+        }
+
+        @Override
+        public void close() {
+            for (FileChannel channel : channels) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private final List<Path> dirs;
+    private final ReedSolomon codec;
+    private final int chunkSize;
+    private final ExecutorService io;
+    private final AtomicInteger nextDir = new AtomicInteger();
+    // Striped by key: placing an object's shards, or repairing one, must not interleave with another
+    private final Object[] keyLocks = new Object[64];
+    private volatile Thread scrubber;
+
+    private final Counter reconstructedStripes;
+    private final Counter degradedWrites;
+    private final MeterRegistry registry;
+
+    public ErasureCodedStorageService(List<Path> dirs, int dataShards, int parityShards, int chunkSize,
+                                      MeterRegistry registry) throws IOException {
+        if (dirs.size() < dataShards + parityShards) {
+            throw new IllegalArgumentException("Erasure coding " + dataShards + "+" + parityShards + " needs at least "
+                    + (dataShards + parityShards) + " directories, got " + dirs.size());
+        }
+        this.dirs = List.copyOf(dirs);
+        this.codec = new ReedSolomon(dataShards, parityShards);
+        this.chunkSize = chunkSize;
+        this.registry = registry;
+        Arrays.setAll(keyLocks, i -> new Object());
+
+        for (Path dir : this.dirs) {
+            clearTemp(dir);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.io = Executors.newFixedThreadPool(this.dirs.size() * 2, runnable -> {
+            Thread thread = new Thread(runnable, "storage-ec-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.reconstructedStripes = Counter.builder("cloudsync.storage.erasure.reconstructed")
+                .description("Stripes read back with missing or damaged shards rebuilt from parity")
+                .register(registry);
+        this.degradedWrites = Counter.builder("cloudsync.storage.erasure.degraded.writes")
+                .description("Objects stored with fewer than all their shards")
+                .register(registry);
+    }
+
+    @Override
+    public String store(InputStream inputStream, long size, String contentType, Long userId, String filename) throws IOException {
+        int total = codec.totalShards();
+        int first = Math.floorMod(nextDir.getAndIncrement(), dirs.size());
+        Path[] temps = new Path[total];
+        FileChannel[] channels = new FileChannel[total];
+        boolean[] failed = new boolean[total];
+
+        try {
+            for (int i = 0; i < total; i++) {
+                Path tempDir = dirs.get((first + i) % dirs.size()).resolve(TEMP_DIR);
+                try {
+                    Files.createDirectories(tempDir);
+                    temps[i] = tempDir.resolve(UUID.randomUUID() + ".shard");
+                    channels[i] = FileChannel.open(temps[i], StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    channels[i].position(HEADER_LENGTH);
+                } catch (IOException e) {
+                    fail(failed, channels, i, tempDir, e);
+                }
+            }
+            checkWritable(failed);
+
+            MessageDigest digest = sha256();
+            byte[][] shards = new byte[total][chunkSize];
+            long length = 0;
+            InputStream in = new DigestInputStream(inputStream, digest);
+            int stripeSize = codec.dataShards() * chunkSize;
+            int stripeBytes;
+            do {
+                stripeBytes = 0;
+                for (int i = 0; i < codec.dataShards(); i++) {
+                    int read = in.readNBytes(shards[i], 0, chunkSize);
+                    Arrays.fill(shards[i], read, chunkSize, (byte) 0);
+                    stripeBytes += read;
+                }
+                if (stripeBytes > 0) {
+                    length += stripeBytes;
+                    codec.encodeParity(shards, chunkSize);
+                    parallel(total, i -> {
+                        if (!failed[i]) {
+                            try {
+                                writeBlock(channels[i], shards[i]);
+                            } catch (IOException e) {
+                                fail(failed, channels, i, temps[i], e);
+                            }
+                        }
+                    });
+                    checkWritable(failed);
+                }
+            } while (stripeBytes == stripeSize);
+
+            long objectLength = length;
+            parallel(total, i -> {
+                if (!failed[i]) {
+                    try {
+                        writeHeader(channels[i], new ShardHeader(i, codec.dataShards(), codec.parityShards(), chunkSize, objectLength));
+                        channels[i].force(true);
+                        channels[i].close();
+                    } catch (IOException e) {
+                        fail(failed, channels, i, temps[i], e);
+                    }
+                }
+            });
+            checkWritable(failed);
+
+            String key = LocalStorageService.contentKey(HexFormat.of().formatHex(digest.digest()));
+            int written = 0;
+            // A concurrent upload of the same content may have placed its shards with another
+            // rotation; moving ours over them would leave directories holding the same index
+            synchronized (lockFor(key)) {
+                if (exists(key)) {
+                    log.debug("Object already stored: {}", key);
+                    return key;
+                }
+                for (int i = 0; i < total; i++) {
+                    if (!failed[i]) {
+                        Path target = dirs.get((first + i) % dirs.size()).resolve(key);
+                        Files.createDirectories(target.getParent());
+                        Files.move(temps[i], target, StandardCopyOption.ATOMIC_MOVE);
+                        LocalStorageService.force(target.getParent());
+                        written++;
+                    }
+                }
+            }
+            if (written < total) {
+                degradedWrites.increment();
+                log.warn("Stored {} with {} of {} shards; the scrubber will restore the rest", key, written, total);
+            } else {
+                log.info("Stored file erasure-coded: {}", key);
+            }
+            return key;
+        } finally {
+            for (int i = 0; i < total; i++) {
+                closeQuietly(channels[i]);
+                if (temps[i] != null) {
+                    Files.deleteIfExists(temps[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public byte[] getFile(String storageKey) throws IOException {
+        try (InputStream in = getFileStream(storageKey)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Override
+    public InputStream getFileStream(String storageKey) throws IOException {
+        return new StripedInputStream(locate(storageKey));
+    }
+
+    @Override
+    public void delete(String storageKey) throws IOException {
+        for (Path dir : dirs) {
+            Files.deleteIfExists(dir.resolve(storageKey));
+        }
+        log.info("Deleted erasure-coded file: {}", storageKey);
+    }
+
+    @Override
+    public boolean exists(String storageKey) {
+        return dirs.stream().anyMatch(dir -> Files.exists(dir.resolve(storageKey)));
+    }
+
+    @Override
+    public long getFileSize(String storageKey) throws IOException {
+        try (Located located = locate(storageKey)) {
+            return located.header().length();
+        }
+    }
+
+    @Override
+    public boolean repair(String storageKey) throws IOException {
+        return scrub(storageKey).outcome() == ScrubOutcome.REPAIRED;
+    }
+
+    /**
+     * Check every block of an object and its content hash, rewriting shards that are missing
+     * or damaged as long as enough of them are intact
+     */
+    public ScrubResult scrub(String storageKey) throws IOException {
+        int total = codec.totalShards();
+        boolean[] bad = new boolean[total];
+        long length;
+        try (Located located = locate(storageKey)) {
+            length = located.header().length();
+            for (int i = 0; i < total; i++) {
+                bad[i] = located.channels()[i] == null;
+            }
+
+            MessageDigest digest = sha256();
+            byte[][] shards = new byte[total][located.header().chunkSize()];
+            try {
+                for (long stripe = 0; stripe < located.stripes(); stripe++) {
+                    boolean[] present = readStripe(located, stripe, shards, true);
+                    for (int i = 0; i < total; i++) {
+                        bad[i] |= !present[i];
+                    }
+                    digestStripe(digest, located, stripe, shards);
+                }
+            } catch (UnrecoverableException e) {
+                log.error("Scrub: {}", e.getMessage());
+                return new ScrubResult(ScrubOutcome.UNRECOVERABLE, length);
+            }
+
+            var matcher = CONTENT_KEY.matcher(storageKey);
+            if (matcher.matches() && !matcher.group(1).equals(HexFormat.of().formatHex(digest.digest()))) {
+                log.error("Scrub: {} does not match its content hash", storageKey);
+                return new ScrubResult(ScrubOutcome.CORRUPT, length);
+            }
+
+            boolean repaired = false;
+            for (int i = 0; i < total; i++) {
+                if (bad[i]) {
+                    repair(located, i);
+                    repaired = true;
+                }
+            }
+            return new ScrubResult(repaired ? ScrubOutcome.REPAIRED : ScrubOutcome.OK, length);
+        } catch (NoSuchFileException e) {
+            return new ScrubResult(ScrubOutcome.MISSING, 0);
+        }
+    }
+
+    /**
+     * Scrub every stored object every interval, reading at most bytesPerSecond
+     */
+    public void startScrubber(Duration interval, long bytesPerSecond) {
+        Thread scrubber = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(interval.toMillis());
+                    scrubAll(bytesPerSecond);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    log.error("Scrub pass failed", e);
+                }
+            }
+        }, "storage-scrub");
+        scrubber.setDaemon(true);
+        scrubber.start();
+        this.scrubber = scrubber;
+        log.info("Scrubbing erasure-coded objects every {} at up to {} bytes/s", interval, bytesPerSecond);
+    }
+
+    /**
+     * Stop the scrubber and the shard I/O threads
+     */
+    public void close() {
+        Thread running = scrubber;
+        if (running != null) {
+            running.interrupt();
+        }
+        io.shutdownNow();
+    }
+
+    void scrubAll(long bytesPerSecond) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long bytes = 0;
+        int[] outcomes = new int[ScrubOutcome.values().length];
+        for (int d = 0; d < dirs.size(); d++) {
+            Path dir = dirs.get(d);
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            List<String> keys;
+            try (Stream<Path> files = Files.walk(dir)) {
+                keys = files.filter(Files::isRegularFile)
+                        .map(path -> dir.relativize(path).toString().replace('\\', '/'))
+                        .filter(key -> !key.startsWith(TEMP_DIR + "/"))
+                        .toList();
+            }
+            for (String key : keys) {
+                if (seenInEarlierDir(key, d)) {
+                    continue;
+                }
+                ScrubResult result = scrub(key);
+                outcomes[result.outcome().ordinal()]++;
+                Counter.builder("cloudsync.storage.erasure.scrubbed")
+                        .description("Objects checked by the scrubber, by outcome")
+                        .tag("result", result.outcome().name().toLowerCase())
+                        .register(registry)
+                        .increment();
+
+                bytes += result.bytes();
+                long due = bytesPerSecond > 0 ? bytes * 1_000_000_000L / bytesPerSecond : 0;
+                long ahead = due - (System.nanoTime() - start);
+                if (ahead > 0) {
+                    Thread.sleep(ahead / 1_000_000, (int) (ahead % 1_000_000));
+                }
+            }
+        }
+        log.info("Scrub pass done: {} ok, {} repaired, {} corrupt, {} unrecoverable",
+                outcomes[ScrubOutcome.OK.ordinal()], outcomes[ScrubOutcome.REPAIRED.ordinal()],
+                outcomes[ScrubOutcome.CORRUPT.ordinal()], outcomes[ScrubOutcome.UNRECOVERABLE.ordinal()]);
+    }
+
+    // Each object is scrubbed once per pass: from the first directory that holds one of its shards
+    private boolean seenInEarlierDir(String key, int dir) {
+        for (int d = 0; d < dir; d++) {
+            if (Files.exists(dirs.get(d).resolve(key))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Located locate(String storageKey) throws IOException {
+        int total = codec.totalShards();
+        FileChannel[] channels = new FileChannel[total];
+        int[] dirOf = new int[total];
+        Arrays.fill(dirOf, -1);
+        ShardHeader header = null;
+
+        for (int d = 0; d < dirs.size(); d++) {
+            Path path = dirs.get(d).resolve(storageKey);
+            if (!Files.exists(path)) {
+                continue;
+            }
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                ShardHeader shard = readHeader(channel);
+                if (shard == null || shard.index() >= total || channels[shard.index()] != null
+                        || (header != null && (shard.length() != header.length() || shard.chunkSize() != header.chunkSize()))) {
+                    log.warn("Ignoring bad shard header: {}", path);
+                    closeQuietly(channel);
+                    continue;
+                }
+                header = header == null ? shard : header;
+                channels[shard.index()] = channel;
+                dirOf[shard.index()] = d;
+            } catch (IOException e) {
+                log.warn("Shard unreadable: {}: {}", path, e.getMessage());
+                closeQuietly(channel);
+            }
+        }
+
+        if (header == null) {
+            throw new NoSuchFileException(storageKey);
+        }
+        if (header.dataShards() != codec.dataShards() || header.parityShards() != codec.parityShards()) {
+            for (FileChannel channel : channels) {
+                closeQuietly(channel);
+            }
+            throw new IOException("Object " + storageKey + " was stored as " + header.dataShards() + "+"
+                    + header.parityShards() + ", configured " + codec.dataShards() + "+" + codec.parityShards());
+        }
+        return new Located(storageKey, header, channels, dirOf);
+    }
+
+    /**
+     * Read one stripe's blocks into shards, rebuilding any that are missing or fail their CRC
+     *
+     * @param all read every shard, not just enough to decode
+     * @return which shards were read intact
+     */
+    private boolean[] readStripe(Located located, long stripe, byte[][] shards, boolean all) throws IOException {
+        int total = codec.totalShards();
+        int k = codec.dataShards();
+        boolean[] present = new boolean[total];
+        boolean[] attempted = new boolean[total];
+
+        int first = all ? total : k;
+        parallel(first, i -> {
+            attempted[i] = true;
+            present[i] = readBlock(located.channels()[i], located.header().chunkSize(), stripe, shards[i]);
+        });
+        int intact = count(present);
+        if (intact < k) {
+            parallel(total, i -> {
+                if (!attempted[i]) {
+                    present[i] = readBlock(located.channels()[i], located.header().chunkSize(), stripe, shards[i]);
+                }
+            });
+            intact = count(present);
+        }
+        if (intact < k) {
+            throw new UnrecoverableException("Object " + located.key() + " stripe " + stripe + ": only " + intact
+                    + " of " + total + " shards intact, " + k + " needed");
+        }
+
+        if (intact < total && (all || !allDataPresent(present))) {
+            codec.reconstruct(shards, present, located.header().chunkSize());
+            if (!allDataPresent(present)) {
+                reconstructedStripes.increment();
+            }
+        }
+        return present;
+    }
+
+    private void repair(Located located, int index) throws IOException {
+        // Damaged blocks are rewritten in place, lost shards go to a directory holding none of this object
+        int d = located.dirOf()[index] >= 0 ? located.dirOf()[index] : unusedDir(located);
+        Path dir = dirs.get(d);
+        Path target = dir.resolve(located.key());
+        Path temp = dir.resolve(TEMP_DIR).resolve(UUID.randomUUID() + ".shard");
+        Files.createDirectories(temp.getParent());
+
+        byte[][] shards = new byte[codec.totalShards()][located.header().chunkSize()];
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            writeHeader(out, new ShardHeader(index, codec.dataShards(), codec.parityShards(),
+                    located.header().chunkSize(), located.header().length()));
+            out.position(HEADER_LENGTH);
+            for (long stripe = 0; stripe < located.stripes(); stripe++) {
+                boolean[] present = readStripe(located, stripe, shards, false);
+                if (!present[index]) {
+                    codec.reconstruct(shards, present, located.header().chunkSize());
+                }
+                writeBlock(out, shards[index]);
+            }
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        synchronized (lockFor(located.key())) {
+            if (!exists(located.key())) {
+                Files.deleteIfExists(temp); // deleted while we were rebuilding it
+                return;
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            LocalStorageService.force(target.getParent());
+        }
+        located.dirOf()[index] = d;
+        log.warn("Repaired shard {} of {} in {}", index, located.key(), dir);
+    }
+
+    private Object lockFor(String key) {
+        return keyLocks[Math.floorMod(key.hashCode(), keyLocks.length)];
+    }
+
+    private int unusedDir(Located located) {
+        boolean[] used = new boolean[dirs.size()];
+        for (int i = 0; i < codec.totalShards(); i++) {
+            if (located.dirOf()[i] >= 0) {
+                used[located.dirOf()[i]] = true;
+            }
+        }
+        for (int d = 0; d < dirs.size(); d++) {
+            if (!used[d]) {
+                return d;
+            }
+        }
+        throw new IllegalStateException("No directory left for a shard of " + located.key());
+    }
+
+    private void digestStripe(MessageDigest digest, Located located, long stripe, byte[][] shards) {
+        long stripeSize = (long) codec.dataShards() * located.header().chunkSize();
+        long remaining = Math.min(stripeSize, located.header().length() - stripe * stripeSize);
+        for (int i = 0; i < codec.dataShards() && remaining > 0; i++) {
+            int n = (int) Math.min(located.header().chunkSize(), remaining);
+            digest.update(shards[i], 0, n);
+            remaining -= n;
+        }
+    }
+
+    private static void writeBlock(FileChannel channel, byte[] chunk) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(chunk);
+        ByteBuffer block = ByteBuffer.allocate(chunk.length + CRC_LENGTH);
+        block.put(chunk).putInt((int) crc.getValue()).flip();
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+    }
+
+    // False if the block can't be read or fails its CRC
+    private static boolean readBlock(FileChannel channel, int chunkSize, long stripe, byte[] into) {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            long position = HEADER_LENGTH + stripe * (chunkSize + CRC_LENGTH);
+            ByteBuffer chunk = ByteBuffer.wrap(into, 0, chunkSize);
+            ByteBuffer crcBuffer = ByteBuffer.allocate(CRC_LENGTH);
+            if (!readFully(channel, chunk, position) || !readFully(channel, crcBuffer, position + chunkSize)) {
+                return false;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(into, 0, chunkSize);
+            return (int) crc.getValue() == crcBuffer.getInt(0);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    private static void writeHeader(FileChannel channel, ShardHeader header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        buffer.putInt(MAGIC)
+                .put((byte) VERSION)
+                .put((byte) header.dataShards())
+                .put((byte) header.parityShards())
+                .put((byte) header.index())
+                .putInt(header.chunkSize())
+                .putLong(header.length());
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, HEADER_LENGTH - CRC_LENGTH);
+        buffer.putInt((int) crc.getValue()).flip();
+        long position = 0;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ShardHeader readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        if (!readFully(channel, buffer, 0)) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, HEADER_LENGTH - CRC_LENGTH);
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            return null;
+        }
+        int dataShards = buffer.get() & 0xFF;
+        int parityShards = buffer.get() & 0xFF;
+        int index = buffer.get() & 0xFF;
+        int chunkSize = buffer.getInt();
+        long length = buffer.getLong();
+        if (buffer.getInt() != (int) crc.getValue()) {
+            return null;
+        }
+        return new ShardHeader(index, dataShards, parityShards, chunkSize, length);
+    }
+
+    private static void fail(boolean[] failed, FileChannel[] channels, int index, Path dir, IOException e) {
+        synchronized (failed) {
+            failed[index] = true;
+        }
+        closeQuietly(channels[index]);
+        log.warn("Shard write failed in {}: {}", dir, e.getMessage());
+    }
+
+    private void checkWritable(boolean[] failed) throws IOException {
+        int ok;
+        synchronized (failed) {
+            ok = failed.length - count(failed);
+        }
+        int needed = Math.min(codec.dataShards() + 1, codec.totalShards());
+        if (ok < needed) {
+            throw new IOException("Only " + ok + " shards writable, " + needed + " needed");
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardTask {
+        void run(int index) throws IOException;
+    }
+
+    // Run a task for shards 0..count-1 on the I/O pool, one disk each
+    private void parallel(int count, ShardTask task) throws IOException {
+        List<Future<?>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(io.submit(() -> {
+                task.run(index);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during shard I/O");
+            }
+        }
+    }
+
+    private static int count(boolean[] flags) {
+        int count = 0;
+        for (boolean flag : flags) {
+            if (flag) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean allDataPresent(boolean[] present) {
+        for (int i = 0; i < codec.dataShards(); i++) {
+            if (!present[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void clearTemp(Path dir) throws IOException {
+        Path tempDir = dir.resolve(TEMP_DIR);
+        Files.createDirectories(tempDir);
+        try (Stream<Path> files = Files.list(tempDir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // nothing left to flush
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class UnrecoverableException extends IOException {
+        UnrecoverableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Streams an object stripe by stripe
+     */
+    private final class StripedInputStream extends InputStream {
+        private final Located located;
+        private final byte[][] shards;
+        private final long stripeSize;
+        private long stripe = -1;
+        private int stripeLength;
+        private int stripePosition;
+
+        StripedInputStream(Located located) {
+            this.located = located;
+            this.shards = new byte[codec.totalShards()][located.header().chunkSize()];
+            this.stripeSize = (long) codec.dataShards() * located.header().chunkSize();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (stripePosition >= stripeLength) {
+                if (stripe + 1 >= located.stripes()) {
+                    return -1;
+                }
+                stripe++;
+                readStripe(located, stripe, shards, false);
+                stripeLength = (int) Math.min(stripeSize, located.header().length() - stripe * stripeSize);
+                stripePosition = 0;
+            }
+            int chunk = located.header().chunkSize();
+            int within = stripePosition % chunk;
+            int n = Math.min(len, Math.min(chunk - within, stripeLength - stripePosition));
+            System.arraycopy(shards[stripePosition / chunk], within, b, off, n);
+            stripePosition += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            located.close();
+        }
+    }
+}
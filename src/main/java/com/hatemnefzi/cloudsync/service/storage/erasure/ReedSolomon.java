@@ -0,0 +1,207 @@
+package com.hatemnefzi.cloudsync.service.storage.erasure;
+
+/**
+ * Systematic Reed-Solomon code over GF(2^8): k data shards plus m parity shards, any k of
+ * which rebuild the rest.
+ *
+ * The coding matrix is a (k+m) x k Vandermonde matrix normalised so its top k rows are the
+ * identity, which keeps every k-row subset invertible and leaves the data shards as-is.
+ */
+final class ReedSolomon {
+
+    // x^8 + x^4 + x^3 + x^2 + 1, generator 2
+    private static final int POLYNOMIAL = 0x11D;
+    private static final int[] LOG = new int[256];
+    private static final byte[] EXP = new byte[512];
+    private static final byte[][] MUL = new byte[256][256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = (byte) x;
+            EXP[i + 255] = (byte) x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= 256) {
+                x ^= POLYNOMIAL;
+            }
+        }
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b++) {
+                MUL[a][b] = EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    private final byte[][] matrix;
+
+    ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards < 1 || parityShards < 1 || dataShards + parityShards > 256) {
+            throw new IllegalArgumentException("Unsupported shard counts: " + dataShards + "+" + parityShards);
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+
+        int total = dataShards + parityShards;
+        byte[][] vandermonde = new byte[total][dataShards];
+        for (int r = 0; r < total; r++) {
+            for (int c = 0; c < dataShards; c++) {
+                vandermonde[r][c] = power(r, c);
+            }
+        }
+        byte[][] top = new byte[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        this.matrix = multiply(vandermonde, invert(top));
+    }
+
+    int dataShards() {
+        return dataShards;
+    }
+
+    int parityShards() {
+        return parityShards;
+    }
+
+    int totalShards() {
+        return dataShards + parityShards;
+    }
+
+    /**
+     * Compute the parity shards from the data shards, over shards[i][0..length)
+     */
+    void encodeParity(byte[][] shards, int length) {
+        for (int p = 0; p < parityShards; p++) {
+            codeRow(matrix[dataShards + p], shards, dataShards, shards[dataShards + p], length);
+        }
+    }
+
+    /**
+     * Rebuild the shards not marked present from any k that are
+     *
+     * @throws IllegalArgumentException if fewer than k shards are present
+     */
+    void reconstruct(byte[][] shards, boolean[] present, int length) {
+        int[] rows = new int[dataShards];
+        int found = 0;
+        for (int i = 0; i < totalShards() && found < dataShards; i++) {
+            if (present[i]) {
+                rows[found++] = i;
+            }
+        }
+        if (found < dataShards) {
+            throw new IllegalArgumentException("Need " + dataShards + " shards, have " + found);
+        }
+
+        boolean dataMissing = false;
+        for (int i = 0; i < dataShards; i++) {
+            dataMissing |= !present[i];
+        }
+        if (dataMissing) {
+            byte[][] sub = new byte[dataShards][];
+            byte[][] inputs = new byte[dataShards][];
+            for (int i = 0; i < dataShards; i++) {
+                sub[i] = matrix[rows[i]];
+                inputs[i] = shards[rows[i]];
+            }
+            byte[][] decode = invert(sub);
+            for (int i = 0; i < dataShards; i++) {
+                if (!present[i]) {
+                    codeRow(decode[i], inputs, dataShards, shards[i], length);
+                }
+            }
+        }
+
+        for (int p = 0; p < parityShards; p++) {
+            if (!present[dataShards + p]) {
+                codeRow(matrix[dataShards + p], shards, dataShards, shards[dataShards + p], length);
+            }
+        }
+    }
+
+    // out = sum of coefficients[j] * inputs[j], byte by byte
+    private static void codeRow(byte[] coefficients, byte[][] inputs, int count, byte[] out, int length) {
+        byte[] table = MUL[coefficients[0] & 0xFF];
+        byte[] input = inputs[0];
+        for (int b = 0; b < length; b++) {
+            out[b] = table[input[b] & 0xFF];
+        }
+        for (int j = 1; j < count; j++) {
+            table = MUL[coefficients[j] & 0xFF];
+            input = inputs[j];
+            for (int b = 0; b < length; b++) {
+                out[b] ^= table[input[b] & 0xFF];
+            }
+        }
+    }
+
+    private static byte power(int base, int exponent) {
+        if (exponent == 0) {
+            return 1;
+        }
+        if (base == 0) {
+            return 0;
+        }
+        return EXP[(LOG[base] * exponent) % 255];
+    }
+
+    private static byte[][] multiply(byte[][] a, byte[][] b) {
+        int rows = a.length;
+        int inner = b.length;
+        int columns = b[0].length;
+        byte[][] result = new byte[rows][columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int value = 0;
+                for (int i = 0; i < inner; i++) {
+                    value ^= MUL[a[r][i] & 0xFF][b[i][c] & 0xFF];
+                }
+                result[r][c] = (byte) value;
+            }
+        }
+        return result;
+    }
+
+    // Gauss-Jordan elimination on [m | I]
+    private static byte[][] invert(byte[][] m) {
+        int n = m.length;
+        byte[][] work = new byte[n][2 * n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(m[r], 0, work[r], 0, n);
+            work[r][n + r] = 1;
+        }
+
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            while (pivot < n && work[pivot][col] == 0) {
+                pivot++;
+            }
+            if (pivot == n) {
+                throw new IllegalArgumentException("Matrix is singular");
+            }
+            byte[] swap = work[col];
+            work[col] = work[pivot];
+            work[pivot] = swap;
+
+            byte[] scale = MUL[EXP[255 - LOG[work[col][col] & 0xFF]] & 0xFF];
+            for (int c = 0; c < 2 * n; c++) {
+                work[col][c] = scale[work[col][c] & 0xFF];
+            }
+            for (int r = 0; r < n; r++) {
+                if (r != col && work[r][col] != 0) {
+                    byte[] factor = MUL[work[r][col] & 0xFF];
+                    for (int c = 0; c < 2 * n; c++) {
+                        work[r][c] ^= factor[work[col][c] & 0xFF];
+                    }
+                }
+            }
+        }
+
+        byte[][] inverse = new byte[n][n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(work[r], n, inverse[r], 0, n);
+        }
+        return inverse;
+    }
+}
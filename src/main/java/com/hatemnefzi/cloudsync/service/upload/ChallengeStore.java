@@ -0,0 +1,74 @@
+package com.hatemnefzi.cloudsync.service.upload;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Outstanding possession challenges, in Redis so the answer can reach any instance, or in
+ * memory when Redis isn't configured or reachable. Each challenge can be taken once.
+ */
+@Component
+@Slf4j
+public class ChallengeStore {
+
+    static final String KEY_PREFIX = "cloudsync:pop:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, PossessionChallenge> local;
+    private final Duration ttl;
+
+    public ChallengeStore(ObjectProvider<StringRedisTemplate> redisTemplate, ObjectMapper objectMapper,
+                          @Value("${app.uploads.preflight.challenge-ttl:5m}") Duration ttl) {
+        this.redisTemplate = redisTemplate.getIfAvailable();
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Duration ttl() {
+        return ttl;
+    }
+
+    public void put(PossessionChallenge challenge) {
+        if (redisTemplate != null) {
+            try {
+                redisTemplate.opsForValue().set(KEY_PREFIX + challenge.id(), objectMapper.writeValueAsString(challenge), ttl);
+                return;
+            } catch (JsonProcessingException | RuntimeException e) {
+                log.warn("Keeping challenge {} in memory, Redis unavailable: {}", challenge.id(), e.getMessage());
+            }
+        }
+        local.put(challenge.id(), challenge);
+    }
+
+    /**
+     * Remove and return a challenge; a second take of the same id finds nothing
+     */
+    public Optional<PossessionChallenge> take(String id) {
+        PossessionChallenge challenge = local.asMap().remove(id);
+        if (challenge != null || redisTemplate == null) {
+            return Optional.ofNullable(challenge);
+        }
+        try {
+            String json = redisTemplate.opsForValue().getAndDelete(KEY_PREFIX + id);
+            return json == null ? Optional.empty() : Optional.of(objectMapper.readValue(json, PossessionChallenge.class));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Could not read challenge {} from Redis: {}", id, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
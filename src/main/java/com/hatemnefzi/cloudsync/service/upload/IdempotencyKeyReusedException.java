@@ -0,0 +1,11 @@
+package com.hatemnefzi.cloudsync.service.upload;
+
+/**
+ * An idempotency key sent again with a different request than the one it was first used for
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String key) {
+        super("Idempotency key already used for a different request: " + key);
+    }
+}
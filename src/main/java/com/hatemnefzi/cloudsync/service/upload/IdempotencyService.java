@@ -0,0 +1,128 @@
+package com.hatemnefzi.cloudsync.service.upload;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Makes retried requests safe: the first request with a key claims it and stores its
+ * response in the same transaction as its own writes, and later ones with that key get the
+ * stored response back. A retry arriving while the first is still running waits on the
+ * row lock, then replays. If the first fails, nothing is stored and the retry runs.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+
+    private static final String CLAIM = """
+            INSERT INTO idempotency_keys (user_id, idempotency_key, fingerprint, created_at, expires_at)
+            VALUES (?, ?, ?, now(), now() + ? * INTERVAL '1 millisecond')
+            ON CONFLICT (user_id, idempotency_key) DO UPDATE
+                SET fingerprint = EXCLUDED.fingerprint, response = NULL,
+                    created_at = EXCLUDED.created_at, expires_at = EXCLUDED.expires_at
+                WHERE idempotency_keys.expires_at < now()
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.uploads.idempotency.ttl:24h}")
+    private Duration ttl;
+
+    private Thread sweeper;
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T run() throws IOException;
+    }
+
+    public record Outcome<T>(T value, boolean replayed) {
+    }
+
+    private record Stored(String fingerprint, String response) {
+    }
+
+    @PostConstruct
+    void start() {
+        sweeper = new Thread(this::sweep, "idempotency-sweep");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.interrupt();
+    }
+
+    /**
+     * Run a call once per key. Without a key the call just runs.
+     *
+     * @param fingerprint what identifies the request, so a key reused for another one is refused
+     * @throws IdempotencyKeyReusedException if the key was used with a different fingerprint
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public <T> Outcome<T> execute(Long userId, String key, String fingerprint, Class<T> type, Call<T> call) throws IOException {
+        if (key == null || key.isBlank()) {
+            return new Outcome<>(call.run(), false);
+        }
+
+        if (jdbcTemplate.update(CLAIM, userId, key, fingerprint, ttl.toMillis()) == 0) {
+            return replay(userId, key, fingerprint, type);
+        }
+
+        T value = call.run();
+        jdbcTemplate.update("UPDATE idempotency_keys SET response = ? WHERE user_id = ? AND idempotency_key = ?",
+                objectMapper.writeValueAsString(value), userId, key);
+        return new Outcome<>(value, false);
+    }
+
+    private <T> Outcome<T> replay(Long userId, String key, String fingerprint, Class<T> type) throws IOException {
+        List<Stored> rows = jdbcTemplate.query(
+                "SELECT fingerprint, response FROM idempotency_keys WHERE user_id = ? AND idempotency_key = ?",
+                (rs, i) -> new Stored(rs.getString("fingerprint"), rs.getString("response")), userId, key);
+        if (rows.isEmpty()) {
+            throw new IllegalStateException("Idempotency key vanished: " + key);
+        }
+        Stored stored = rows.get(0);
+        if (!stored.fingerprint().equals(fingerprint)) {
+            throw new IdempotencyKeyReusedException(key);
+        }
+        if (stored.response() == null) {
+            throw new IllegalStateException("Idempotency key has no stored response: " + key);
+        }
+        log.debug("Replaying response for idempotency key {} of user {}", key, userId);
+        try {
+            return new Outcome<>(objectMapper.readValue(stored.response(), type), true);
+        } catch (JsonProcessingException e) {
+            throw new IOException("Unreadable stored response for idempotency key " + key, e);
+        }
+    }
+
+    private void sweep() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(Duration.ofHours(1).toMillis());
+                int deleted = jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at < now()");
+                if (deleted > 0) {
+                    log.info("Removed {} expired idempotency keys", deleted);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("Idempotency key sweep failed: {}", e.getMessage());
+            }
+        }
+    }
+}
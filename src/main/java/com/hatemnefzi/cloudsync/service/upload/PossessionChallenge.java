@@ -0,0 +1,22 @@
+package com.hatemnefzi.cloudsync.service.upload;
+
+import com.hatemnefzi.cloudsync.dto.UploadPreflightResponse.ByteRange;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * An outstanding proof-of-possession challenge, with what is needed to create the file
+ * once it is answered
+ */
+public record PossessionChallenge(String id,
+                                  Long userId,
+                                  String checksum,
+                                  long size,
+                                  String nonce,
+                                  List<ByteRange> ranges,
+                                  String fileName,
+                                  String mimeType,
+                                  Long folderId,
+                                  Instant expiresAt) {
+}
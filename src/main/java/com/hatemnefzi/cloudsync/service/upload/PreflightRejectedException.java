@@ -0,0 +1,11 @@
+package com.hatemnefzi.cloudsync.service.upload;
+
+/**
+ * A possession challenge that can't be answered (anymore); the client uploads the bytes instead
+ */
+public class PreflightRejectedException extends RuntimeException {
+
+    public PreflightRejectedException(String message) {
+        super(message);
+    }
+}
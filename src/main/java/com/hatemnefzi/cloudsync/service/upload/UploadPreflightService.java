@@ -0,0 +1,178 @@
+package com.hatemnefzi.cloudsync.service.upload;
+
+import com.hatemnefzi.cloudsync.dto.FileUploadResponse;
+import com.hatemnefzi.cloudsync.dto.UploadPreflightRequest;
+import com.hatemnefzi.cloudsync.dto.UploadPreflightResponse;
+import com.hatemnefzi.cloudsync.dto.UploadPreflightResponse.ByteRange;
+import com.hatemnefzi.cloudsync.entity.ContentBlob;
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.repository.ContentBlobRepository;
+import com.hatemnefzi.cloudsync.repository.FileRepository;
+import com.hatemnefzi.cloudsync.service.FileService;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Uploads that skip sending the bytes. The client announces the SHA-256 and size of a file;
+ * if that content is already stored, it gets a challenge instead of an upload: a random
+ * nonce and a few random byte ranges. Hashing the nonce and those ranges proves it has the
+ * content rather than just its hash, and the file is then created from the stored object.
+ *
+ * Challenges are single use and short-lived, so a wrong answer means uploading normally.
+ * By default only content the user already has a file of is offered: answering for any
+ * stored content would tell them whether someone else holds a given file.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadPreflightService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final FileRepository fileRepository;
+    private final StorageService storageService;
+    private final ChallengeStore challengeStore;
+    private final FileService fileService;
+    private final CloudsyncMetrics metrics;
+
+    @Value("${app.uploads.preflight.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.uploads.preflight.cross-user:false}")
+    private boolean crossUser;
+
+    @Value("${app.uploads.preflight.ranges:4}")
+    private int rangeCount;
+
+    @Value("${app.uploads.preflight.range-size:16KB}")
+    private DataSize rangeSize;
+
+    /**
+     * Look up content by hash and size, and challenge the client if it is stored
+     */
+    @Transactional(readOnly = true)
+    public UploadPreflightResponse preflight(Long userId, UploadPreflightRequest request) {
+        String checksum = request.getChecksum().toLowerCase(Locale.ROOT);
+        Optional<ContentBlob> blob = enabled ? contentBlobRepository.findByChecksum(checksum) : Optional.empty();
+        // Otherwise anyone could learn whether some other user stores a given file
+        boolean visible = crossUser || fileRepository.existsByOwnerIdAndChecksum(userId, checksum);
+        if (blob.isEmpty() || !blob.get().getSize().equals(request.getSize()) || !visible) {
+            metrics.recordPreflight("absent");
+            return UploadPreflightResponse.builder().exists(false).build();
+        }
+
+        byte[] nonce = new byte[16];
+        RANDOM.nextBytes(nonce);
+        Instant expiresAt = Instant.now().plus(challengeStore.ttl());
+        PossessionChallenge challenge = new PossessionChallenge(UUID.randomUUID().toString(), userId, checksum,
+                request.getSize(), HexFormat.of().formatHex(nonce), pickRanges(request.getSize()),
+                request.getFileName(), request.getMimeType(), request.getFolderId(), expiresAt);
+        challengeStore.put(challenge);
+        metrics.recordPreflight("challenged");
+
+        return UploadPreflightResponse.builder()
+                .exists(true)
+                .challengeId(challenge.id())
+                .nonce(challenge.nonce())
+                .ranges(challenge.ranges())
+                .expiresAt(LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault()))
+                .build();
+    }
+
+    /**
+     * Check the answer to a challenge and create the file from the stored content
+     *
+     * @throws PreflightRejectedException if the challenge is unknown, expired or answered wrongly
+     */
+    public FileUploadResponse commit(Long userId, String challengeId, String proof) throws IOException {
+        // Taken before checking: one answer per challenge
+        PossessionChallenge challenge = challengeStore.take(challengeId)
+                .filter(c -> c.userId().equals(userId))
+                .orElseThrow(() -> new PreflightRejectedException("Challenge not found"));
+        if (Instant.now().isAfter(challenge.expiresAt())) {
+            metrics.recordPreflight("rejected");
+            throw new PreflightRejectedException("Challenge expired");
+        }
+
+        String storageKey = contentBlobRepository.findStorageKeyByChecksum(challenge.checksum())
+                .orElseThrow(() -> new PreflightRejectedException("Content no longer stored"));
+        if (!MessageDigest.isEqual(expectedProof(challenge, storageKey), parseProof(proof))) {
+            metrics.recordPreflight("rejected");
+            log.warn("Failed proof of possession: user={}, checksum={}", userId, challenge.checksum());
+            throw new PreflightRejectedException("Proof of possession failed");
+        }
+        metrics.recordPreflight("verified");
+
+        return fileService.createFromStoredContent(userId, challenge.folderId(), challenge.fileName(),
+                challenge.mimeType(), challenge.size(), challenge.checksum());
+    }
+
+    // Whole file when it is small, otherwise distinct random ranges in ascending order
+    private List<ByteRange> pickRanges(long size) {
+        int length = (int) rangeSize.toBytes();
+        if (size <= (long) rangeCount * length) {
+            return List.of(new ByteRange(0, (int) size));
+        }
+        long slots = size / length;
+        List<Long> picked = new ArrayList<>();
+        while (picked.size() < rangeCount) {
+            long slot = RANDOM.nextLong(slots);
+            if (!picked.contains(slot)) {
+                picked.add(slot);
+            }
+        }
+        picked.sort(null);
+        List<ByteRange> ranges = new ArrayList<>();
+        for (long slot : picked) {
+            // The last slot also takes the tail, so every byte can be asked for
+            long offset = slot == slots - 1 ? size - length : slot * length;
+            ranges.add(new ByteRange(offset, length));
+        }
+        return ranges;
+    }
+
+    private byte[] expectedProof(PossessionChallenge challenge, String storageKey) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(HexFormat.of().parseHex(challenge.nonce()));
+        for (ByteRange range : challenge.ranges()) {
+            digest.update(storageService.getRange(storageKey, range.offset(), range.length()));
+        }
+        return digest.digest();
+    }
+
+    private static byte[] parseProof(String proof) {
+        try {
+            return HexFormat.of().parseHex(proof.trim());
+        } catch (IllegalArgumentException e) {
+            return new byte[0];
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
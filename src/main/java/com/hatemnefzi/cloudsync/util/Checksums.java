@@ -0,0 +1,65 @@
+package com.hatemnefzi.cloudsync.util;
+
+import net.jpountz.xxhash.StreamingXXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content checksums used for deduplication and integrity checks. SHA-256 identifies content;
+ * xxHash64 is a much cheaper fingerprint for ruling out duplicates before paying for it.
+ */
+public final class Checksums {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // Part of the stored fast hashes: changing it invalidates content_blobs.fast_hash
+    private static final long XXH64_SEED = 0;
+
+    private Checksums() {
+    }
+
+    /**
+     * Hex-encoded SHA-256 of everything remaining in the stream
+     */
+    public static String sha256(InputStream inputStream) throws IOException {
+        return sha256(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public static String sha256(InputStream inputStream, int bufferSize) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[bufferSize];
+            int bytesRead;
+
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+
+            byte[] hashBytes = digest.digest();
+            return HexFormat.of().formatHex(hashBytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    /**
+     * xxHash64 of everything remaining in the stream. Not collision resistant: equal values
+     * only mean the content may be equal.
+     */
+    public static long xxh64(InputStream inputStream, int bufferSize) throws IOException {
+        try (StreamingXXHash64 hash = XXHashFactory.fastestInstance().newStreamingHash64(XXH64_SEED)) {
+            byte[] buffer = new byte[bufferSize];
+            int bytesRead;
+
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                hash.update(buffer, 0, bytesRead);
+            }
+            return hash.getValue();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.hatemnefzi.cloudsync.util;
+
+import java.util.Set;
+
+/**
+ * MIME type classification shared by storage compression and HTTP content negotiation.
+ */
+public final class ContentTypes {
+
+    private static final Set<String> PRECOMPRESSED_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/avif", "image/heic",
+            "application/zip", "application/gzip", "application/x-gzip", "application/zstd",
+            "application/x-7z-compressed", "application/x-rar-compressed", "application/vnd.rar",
+            "application/x-bzip2", "application/x-xz", "application/java-archive", "application/epub+zip");
+
+    private ContentTypes() {
+    }
+
+    /**
+     * Formats that are already compressed and would not shrink any further
+     */
+    public static boolean isPrecompressed(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = baseType(contentType);
+        return PRECOMPRESSED_TYPES.contains(type)
+                || type.startsWith("video/")
+                || (type.startsWith("audio/") && !type.endsWith("wav"));
+    }
+
+    /**
+     * Text and structured text formats that compress well
+     */
+    public static boolean isTextual(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = baseType(contentType);
+        return type.startsWith("text/")
+                || type.endsWith("+json") || type.endsWith("+xml")
+                || type.equals("application/json") || type.equals("application/xml")
+                || type.equals("application/javascript") || type.equals("application/x-ndjson")
+                || type.equals("application/sql") || type.equals("application/x-yaml");
+    }
+
+    private static String baseType(String contentType) {
+        int separator = contentType.indexOf(';');
+        String type = separator >= 0 ? contentType.substring(0, separator) : contentType;
+        return type.trim().toLowerCase();
+    }
+}
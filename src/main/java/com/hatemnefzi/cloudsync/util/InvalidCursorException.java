@@ -0,0 +1,11 @@
+package com.hatemnefzi.cloudsync.util;
+
+/**
+ * A paging cursor the client sent that doesn't decode; a bad request, not a missing resource
+ */
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException() {
+        super("Invalid cursor");
+    }
+}
@@ -0,0 +1,21 @@
+package com.hatemnefzi.cloudsync.util;
+
+/**
+ * Builds LIKE patterns from user-controlled strings. Queries must declare ESCAPE '\'.
+ */
+public final class LikePatterns {
+
+    private LikePatterns() {
+    }
+
+    public static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Pattern matching every string that starts with the given prefix
+     */
+    public static String startsWith(String prefix) {
+        return escape(prefix) + "%";
+    }
+}
@@ -0,0 +1,85 @@
+-- Storage totals maintained as files change, so usage questions don't scan files.
+-- scope USER: per owner; FOLDER: per folder subtree (scope_key = folder id); MIME: per
+-- normalised MIME type. owner_id 0 holds the totals over all users, spread over stripes so
+-- concurrent writers don't queue on one row; readers sum the stripes. Counts and bytes are
+-- split into active files, trash, old versions and (owner 0 only) stored objects.
+
+CREATE TABLE IF NOT EXISTS storage_aggregates (
+    scope         VARCHAR(16)  NOT NULL,
+    owner_id      BIGINT       NOT NULL,
+    scope_key     VARCHAR(255) NOT NULL,
+    stripe        SMALLINT     NOT NULL DEFAULT 0,
+    file_count    BIGINT       NOT NULL DEFAULT 0,
+    file_bytes    BIGINT       NOT NULL DEFAULT 0,
+    trash_count   BIGINT       NOT NULL DEFAULT 0,
+    trash_bytes   BIGINT       NOT NULL DEFAULT 0,
+    version_count BIGINT       NOT NULL DEFAULT 0,
+    version_bytes BIGINT       NOT NULL DEFAULT 0,
+    blob_count    BIGINT       NOT NULL DEFAULT 0,
+    blob_bytes    BIGINT       NOT NULL DEFAULT 0,
+    updated_at    TIMESTAMP    NOT NULL DEFAULT now(),
+    PRIMARY KEY (scope, owner_id, scope_key, stripe)
+);
+
+-- The same changes summed per owner and day, for growth over time
+CREATE TABLE IF NOT EXISTS storage_growth (
+    owner_id      BIGINT   NOT NULL,
+    day           DATE     NOT NULL,
+    stripe        SMALLINT NOT NULL DEFAULT 0,
+    file_count    BIGINT   NOT NULL DEFAULT 0,
+    file_bytes    BIGINT   NOT NULL DEFAULT 0,
+    trash_count   BIGINT   NOT NULL DEFAULT 0,
+    trash_bytes   BIGINT   NOT NULL DEFAULT 0,
+    version_count BIGINT   NOT NULL DEFAULT 0,
+    version_bytes BIGINT   NOT NULL DEFAULT 0,
+    blob_count    BIGINT   NOT NULL DEFAULT 0,
+    blob_bytes    BIGINT   NOT NULL DEFAULT 0,
+    PRIMARY KEY (owner_id, day, stripe)
+);
+
+-- Backfill from what is stored now. MIME keys are normalised as in StorageFootprint.
+
+CREATE TEMPORARY TABLE file_footprints ON COMMIT DROP AS
+SELECT f.owner_id,
+       f.folder_id,
+       COALESCE(NULLIF(left(lower(trim(split_part(f.mime_type, ';', 1))), 255), ''), 'unknown') AS mime,
+       CASE WHEN f.deleted_at IS NULL THEN 1 ELSE 0 END AS active,
+       CASE WHEN f.deleted_at IS NULL THEN 0 ELSE 1 END AS trashed,
+       f.size
+FROM files f;
+
+INSERT INTO storage_aggregates (scope, owner_id, scope_key, file_count, file_bytes, trash_count, trash_bytes)
+SELECT 'USER', owner_id, '', sum(active), sum(active * size), sum(trashed), sum(trashed * size)
+FROM file_footprints GROUP BY owner_id;
+
+INSERT INTO storage_aggregates (scope, owner_id, scope_key, file_count, file_bytes, trash_count, trash_bytes)
+SELECT 'MIME', owner_id, mime, sum(active), sum(active * size), sum(trashed), sum(trashed * size)
+FROM file_footprints GROUP BY owner_id, mime;
+
+INSERT INTO storage_aggregates (scope, owner_id, scope_key, file_count, file_bytes, trash_count, trash_bytes)
+SELECT 'MIME', 0, mime, sum(active), sum(active * size), sum(trashed), sum(trashed * size)
+FROM file_footprints GROUP BY mime;
+
+-- A file counts towards its folder and every folder above it
+INSERT INTO storage_aggregates (scope, owner_id, scope_key, file_count, file_bytes, trash_count, trash_bytes)
+SELECT 'FOLDER', a.owner_id, a.id::text, sum(fp.active), sum(fp.active * fp.size), sum(fp.trashed), sum(fp.trashed * fp.size)
+FROM file_footprints fp
+JOIN folders d ON d.id = fp.folder_id
+JOIN folders a ON a.owner_id = d.owner_id AND (a.path = d.path OR starts_with(d.path, a.path || '/'))
+GROUP BY a.owner_id, a.id;
+
+INSERT INTO storage_aggregates (scope, owner_id, scope_key, version_count, version_bytes)
+SELECT 'USER', f.owner_id, '', count(*), sum(v.size)
+FROM file_versions v JOIN files f ON f.id = v.file_id
+GROUP BY f.owner_id
+ON CONFLICT (scope, owner_id, scope_key, stripe) DO UPDATE
+    SET version_count = EXCLUDED.version_count, version_bytes = EXCLUDED.version_bytes;
+
+INSERT INTO storage_aggregates (scope, owner_id, scope_key, file_count, file_bytes, trash_count, trash_bytes,
+                                version_count, version_bytes, blob_count, blob_bytes)
+SELECT 'USER', 0, '',
+       COALESCE(sum(file_count), 0), COALESCE(sum(file_bytes), 0),
+       COALESCE(sum(trash_count), 0), COALESCE(sum(trash_bytes), 0),
+       COALESCE(sum(version_count), 0), COALESCE(sum(version_bytes), 0),
+       (SELECT count(*) FROM content_blobs), (SELECT COALESCE(sum(size), 0) FROM content_blobs)
+FROM storage_aggregates WHERE scope = 'USER' AND owner_id <> 0;
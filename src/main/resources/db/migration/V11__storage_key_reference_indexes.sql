@@ -0,0 +1,7 @@
+-- Objects stored before content_blobs existed are shared by every file and version with
+-- the same checksum and aren't registered. Before deleting one, the deletion job checks no
+-- file or version still references its key.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_files_storage_key ON files (storage_key);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_file_versions_storage_key ON file_versions (storage_key);
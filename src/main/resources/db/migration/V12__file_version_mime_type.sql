@@ -0,0 +1,4 @@
+-- Content type of each kept version, so restoring one brings its type back with it.
+-- Versions kept before this have none and leave the file's current type in place.
+
+ALTER TABLE file_versions ADD COLUMN IF NOT EXISTS mime_type VARCHAR(255);
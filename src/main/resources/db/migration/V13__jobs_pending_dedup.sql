@@ -0,0 +1,8 @@
+-- Only a job still waiting to run makes a new one with the same dedup key redundant. A
+-- running job may already have decided based on state that has since changed (a deletion
+-- job keeping an object whose last reference is then dropped), so the new one must queue.
+
+DROP INDEX IF EXISTS uk_jobs_active_dedup;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_jobs_pending_dedup ON jobs (type, dedup_key)
+    WHERE dedup_key IS NOT NULL AND status = 'PENDING';
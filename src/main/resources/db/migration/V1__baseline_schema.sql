@@ -0,0 +1,107 @@
+-- Schema as previously created by Hibernate (ddl-auto: update).
+-- IF NOT EXISTS lets existing databases adopt Flyway with this script as a no-op.
+
+CREATE TABLE IF NOT EXISTS users (
+    id              bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email           varchar(255) NOT NULL UNIQUE,
+    password_hash   varchar(255) NOT NULL,
+    full_name       varchar(255) NOT NULL,
+    storage_used    bigint       NOT NULL,
+    storage_limit   bigint       NOT NULL,
+    created_at      timestamp(6) NOT NULL,
+    last_login_at   timestamp(6)
+);
+
+-- Change journal sequence, added after the first deployments
+ALTER TABLE users ADD COLUMN IF NOT EXISTS change_seq bigint NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS folders (
+    id          bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name        varchar(255) NOT NULL,
+    parent_id   bigint REFERENCES folders (id),
+    owner_id    bigint       NOT NULL REFERENCES users (id),
+    path        varchar(255) NOT NULL,
+    created_at  timestamp(6) NOT NULL,
+    updated_at  timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS files (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name         varchar(255) NOT NULL,
+    folder_id    bigint REFERENCES folders (id),
+    owner_id     bigint       NOT NULL REFERENCES users (id),
+    size         bigint       NOT NULL,
+    mime_type    varchar(255),
+    storage_key  varchar(255) NOT NULL,
+    checksum     varchar(255),
+    version      integer      NOT NULL,
+    created_at   timestamp(6) NOT NULL,
+    updated_at   timestamp(6) NOT NULL,
+    deleted_at   timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS file_versions (
+    id              bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_id         bigint       NOT NULL REFERENCES files (id),
+    version_number  integer      NOT NULL,
+    storage_key     varchar(255) NOT NULL,
+    size            bigint       NOT NULL,
+    created_at      timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS shares (
+    id              bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_id         bigint REFERENCES files (id),
+    folder_id       bigint REFERENCES folders (id),
+    shared_by_id    bigint       NOT NULL REFERENCES users (id),
+    shared_with_id  bigint REFERENCES users (id),
+    permission      varchar(255) NOT NULL,
+    share_token     varchar(255) UNIQUE,
+    expires_at      timestamp(6),
+    created_at      timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS activities (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id      bigint       NOT NULL REFERENCES users (id),
+    action       varchar(255) NOT NULL,
+    entity_type  varchar(255),
+    entity_id    bigint,
+    details      varchar(255),
+    created_at   timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS content_blobs (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    checksum     varchar(255) NOT NULL CONSTRAINT uk_content_blobs_checksum UNIQUE,
+    storage_key  varchar(255) NOT NULL,
+    size         bigint       NOT NULL,
+    ref_count    bigint       NOT NULL,
+    created_at   timestamp(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_content_blobs_storage_key ON content_blobs (storage_key);
+
+CREATE TABLE IF NOT EXISTS file_derivatives (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    checksum     varchar(255) NOT NULL,
+    max_edge     integer      NOT NULL,
+    storage_key  varchar(255) NOT NULL,
+    mime_type    varchar(255) NOT NULL,
+    width        integer      NOT NULL,
+    height       integer      NOT NULL,
+    size         bigint       NOT NULL,
+    created_at   timestamp(6) NOT NULL,
+    CONSTRAINT uk_file_derivatives_checksum_edge UNIQUE (checksum, max_edge)
+);
+
+CREATE TABLE IF NOT EXISTS change_journal (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id      bigint       NOT NULL,
+    seq          bigint       NOT NULL,
+    entity_type  varchar(255) NOT NULL,
+    entity_id    bigint       NOT NULL,
+    change_type  varchar(255) NOT NULL,
+    created_at   timestamp(6) NOT NULL,
+    CONSTRAINT uk_change_journal_user_seq UNIQUE (user_id, seq)
+);
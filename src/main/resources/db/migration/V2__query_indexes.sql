@@ -0,0 +1,71 @@
+-- Indexes for the repository queries, built without blocking writes on live tables.
+-- Most are partial on deleted_at IS NULL: trashed files are never listed or searched.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- files --------------------------------------------------------------------
+
+-- Folder listings and per-folder counts: findByOwnerAndFolderAndDeletedAtIsNull,
+-- countActiveFilesByFolder, findActiveInFolderPath/Tree
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_files_owner_folder_active
+    ON files (owner_id, folder_id) WHERE deleted_at IS NULL;
+
+-- All files and recent files: findByOwnerAndDeletedAtIsNull[OrderByCreatedAtDesc]
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_files_owner_created_active
+    ON files (owner_id, created_at DESC) WHERE deleted_at IS NULL;
+
+-- Bulk selection by folder, trashed files included: findIdsByOwnerAndFolderId; also the folder FK
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_files_folder
+    ON files (folder_id);
+
+-- Deduplication lookups: findByChecksum
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_files_checksum
+    ON files (checksum);
+
+-- Name search: findByNameContainingIgnoreCase... compiles to upper(name) LIKE '%q%'
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_files_name_trgm
+    ON files USING gin (upper(name) gin_trgm_ops) WHERE deleted_at IS NULL;
+
+-- folders ------------------------------------------------------------------
+
+-- findByOwner, findByOwnerAndParent, findByOwnerAndParentIsNull
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_folders_owner_parent
+    ON folders (owner_id, parent_id);
+
+-- Public share browsing: findByParentIdOrderByNameAsc
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_folders_parent_name
+    ON folders (parent_id, name);
+
+-- Materialized path equality and prefix LIKE: findFirstByOwnerIdAndPath, findByOwnerAndPathLike,
+-- replacePathPrefix, the folder tree joins of files
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_folders_owner_path
+    ON folders (owner_id, path varchar_pattern_ops);
+
+-- shares -------------------------------------------------------------------
+
+-- findBySharedByOrderByCreatedAtDesc
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_shares_shared_by_created
+    ON shares (shared_by_id, created_at DESC);
+
+-- findBySharedWithOrderByCreatedAtDesc; public links have no recipient
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_shares_shared_with_created
+    ON shares (shared_with_id, created_at DESC) WHERE shared_with_id IS NOT NULL;
+
+-- Push recipients of a file, and the file/folder FKs
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_shares_file
+    ON shares (file_id) WHERE file_id IS NOT NULL;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_shares_folder
+    ON shares (folder_id) WHERE folder_id IS NOT NULL;
+
+-- file_versions ------------------------------------------------------------
+
+-- findByFileOrderByVersionNumberDesc
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_file_versions_file_version
+    ON file_versions (file_id, version_number DESC);
+
+-- activities ---------------------------------------------------------------
+
+-- findByUserOrderByCreatedAtDesc
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_activities_user_created
+    ON activities (user_id, created_at DESC);
@@ -0,0 +1,36 @@
+-- Sequence ids for the entities Hibernate inserts, so inserts can be batched: an identity
+-- key only exists once its row is written, which forces one round trip per insert.
+-- Hibernate reserves blocks of 50 ids per call (allocationSize = 50, pooled optimizer),
+-- so each sequence steps by 50 and is set past the highest id already handed out.
+-- The column default keeps plain SQL inserts working; each such row takes one whole block.
+
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS users_seq INCREMENT BY 50 OWNED BY users.id;
+SELECT setval('users_seq', COALESCE(MAX(id), 0) + 50) FROM users;
+ALTER TABLE users ALTER COLUMN id SET DEFAULT nextval('users_seq');
+
+ALTER TABLE folders ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS folders_seq INCREMENT BY 50 OWNED BY folders.id;
+SELECT setval('folders_seq', COALESCE(MAX(id), 0) + 50) FROM folders;
+ALTER TABLE folders ALTER COLUMN id SET DEFAULT nextval('folders_seq');
+
+ALTER TABLE files ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS files_seq INCREMENT BY 50 OWNED BY files.id;
+SELECT setval('files_seq', COALESCE(MAX(id), 0) + 50) FROM files;
+ALTER TABLE files ALTER COLUMN id SET DEFAULT nextval('files_seq');
+
+ALTER TABLE file_versions ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS file_versions_seq INCREMENT BY 50 OWNED BY file_versions.id;
+SELECT setval('file_versions_seq', COALESCE(MAX(id), 0) + 50) FROM file_versions;
+ALTER TABLE file_versions ALTER COLUMN id SET DEFAULT nextval('file_versions_seq');
+
+ALTER TABLE shares ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS shares_seq INCREMENT BY 50 OWNED BY shares.id;
+SELECT setval('shares_seq', COALESCE(MAX(id), 0) + 50) FROM shares;
+ALTER TABLE shares ALTER COLUMN id SET DEFAULT nextval('shares_seq');
+
+-- Bulk activity rows are still written with INSERT ... SELECT and take the default
+ALTER TABLE activities ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS activities_seq INCREMENT BY 50 OWNED BY activities.id;
+SELECT setval('activities_seq', COALESCE(MAX(id), 0) + 50) FROM activities;
+ALTER TABLE activities ALTER COLUMN id SET DEFAULT nextval('activities_seq');
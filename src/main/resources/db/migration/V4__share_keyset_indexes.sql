@@ -0,0 +1,11 @@
+-- Share listings page on (created_at, id): with id in the index a page is a single
+-- index range scan, ties on created_at included. Replaces the V2 listing indexes.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_shares_shared_by_keyset
+    ON shares (shared_by_id, created_at DESC, id DESC);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_shares_shared_with_keyset
+    ON shares (shared_with_id, created_at DESC, id DESC) WHERE shared_with_id IS NOT NULL;
+
+DROP INDEX CONCURRENTLY IF EXISTS idx_shares_shared_by_created;
+DROP INDEX CONCURRENTLY IF EXISTS idx_shares_shared_with_created;
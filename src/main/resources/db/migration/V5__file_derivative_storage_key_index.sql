@@ -0,0 +1,5 @@
+-- Content-addressed local keys can be shared by a content blob and a preview with the
+-- same bytes: before deleting an object, each side checks the other still isn't using it.
+-- content_blobs.storage_key is indexed since V1.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_file_derivatives_storage_key ON file_derivatives (storage_key);
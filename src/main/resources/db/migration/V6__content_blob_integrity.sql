@@ -0,0 +1,9 @@
+-- Integrity scrubbing: when each object was last read back and checked against its
+-- checksum, and when it was last found not to match. Both nullable, so adding them
+-- doesn't rewrite the table. Scrubbers claim the least recently checked blobs first.
+
+ALTER TABLE content_blobs ADD COLUMN IF NOT EXISTS verified_at TIMESTAMP;
+ALTER TABLE content_blobs ADD COLUMN IF NOT EXISTS corrupted_at TIMESTAMP;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_content_blobs_verified_at
+    ON content_blobs (verified_at NULLS FIRST, id);
@@ -0,0 +1,8 @@
+-- xxHash64 of each blob's content, so uploads can rule out duplicates without computing
+-- SHA-256 first. Blobs stored before this have none and always count as candidates; the
+-- value is filled in the next time their content is uploaded again.
+
+ALTER TABLE content_blobs ADD COLUMN IF NOT EXISTS fast_hash BIGINT;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_content_blobs_size_fast_hash
+    ON content_blobs (size, fast_hash);
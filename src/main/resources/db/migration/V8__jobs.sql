@@ -0,0 +1,28 @@
+-- Durable background jobs. Workers claim due jobs, highest priority first, with
+-- FOR UPDATE SKIP LOCKED, so they never wait on or claim the same row. Finished jobs are
+-- deleted; jobs out of attempts stay behind as FAILED. While a job with a dedup key is
+-- pending or running, enqueueing the same key again is a no-op.
+
+CREATE TABLE IF NOT EXISTS jobs (
+    id           BIGSERIAL PRIMARY KEY,
+    type         VARCHAR(64)  NOT NULL,
+    payload      TEXT         NOT NULL,
+    dedup_key    VARCHAR(255),
+    priority     INTEGER      NOT NULL DEFAULT 0,
+    status       VARCHAR(16)  NOT NULL,
+    attempts     INTEGER      NOT NULL DEFAULT 0,
+    max_attempts INTEGER      NOT NULL,
+    run_at       TIMESTAMP    NOT NULL,
+    locked_by    VARCHAR(255),
+    locked_at    TIMESTAMP,
+    last_error   TEXT,
+    created_at   TIMESTAMP    NOT NULL DEFAULT now(),
+    updated_at   TIMESTAMP    NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_jobs_due ON jobs (priority DESC, run_at) WHERE status = 'PENDING';
+
+CREATE INDEX IF NOT EXISTS idx_jobs_running ON jobs (locked_at) WHERE status = 'RUNNING';
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_jobs_active_dedup ON jobs (type, dedup_key)
+    WHERE dedup_key IS NOT NULL AND status IN ('PENDING', 'RUNNING');
@@ -0,0 +1,16 @@
+-- Responses to requests sent with an Idempotency-Key header, per user. A retry with the
+-- same key gets the stored response instead of running again; a concurrent one waits on
+-- the primary key until the first commits. Rows past expires_at can be claimed again and
+-- are swept periodically.
+
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    user_id         BIGINT       NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    idempotency_key VARCHAR(255) NOT NULL,
+    fingerprint     VARCHAR(1024) NOT NULL,
+    response        TEXT,
+    created_at      TIMESTAMP    NOT NULL DEFAULT now(),
+    expires_at      TIMESTAMP    NOT NULL,
+    PRIMARY KEY (user_id, idempotency_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_expires_at ON idempotency_keys (expires_at);
@@ -0,0 +1,150 @@
+package com.hatemnefzi.cloudsync.controller;
+
+import com.hatemnefzi.cloudsync.dto.FileDownload;
+import com.hatemnefzi.cloudsync.service.integrity.ContentIntegrityService;
+import com.hatemnefzi.cloudsync.service.storage.CompressingStorageService;
+import com.hatemnefzi.cloudsync.service.storage.LocalStorageService;
+import com.hatemnefzi.cloudsync.service.storage.StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Accept-Encoding negotiation and single byte ranges, over a compressing local store.
+ */
+class DownloadResponderTest {
+
+    @TempDir
+    Path root;
+
+    private StorageService storage;
+    private DownloadResponder responder;
+
+    @BeforeEach
+    void setUp() {
+        storage = new CompressingStorageService(new LocalStorageService(root.toString()), 1024, 3);
+        responder = new DownloadResponder(storage, null, null, new ContentIntegrityService(storage, null, null, null));
+    }
+
+    @Test
+    void acceptsNamedCodings() {
+        assertTrue(DownloadResponder.accepts("gzip, deflate, br", "gzip"));
+        assertTrue(DownloadResponder.accepts("GZIP", "gzip"));
+        assertTrue(DownloadResponder.accepts("zstd;q=0.5", "zstd"));
+        assertFalse(DownloadResponder.accepts("gzip", "zstd"));
+        assertFalse(DownloadResponder.accepts(null, "gzip"));
+        assertFalse(DownloadResponder.accepts("", "gzip"));
+    }
+
+    @Test
+    void acceptsHonoursRefusalsAndWildcards() {
+        assertFalse(DownloadResponder.accepts("gzip;q=0", "gzip"));
+        assertFalse(DownloadResponder.accepts("gzip; q=0.000", "gzip"));
+        assertFalse(DownloadResponder.accepts("gzip;q=oops", "gzip"));
+        assertTrue(DownloadResponder.accepts("*", "zstd"));
+        assertFalse(DownloadResponder.accepts("*;q=0", "zstd"));
+        assertFalse(DownloadResponder.accepts("zstd;q=0, *", "zstd"));
+        assertTrue(DownloadResponder.accepts("gzip;q=0, *", "zstd"));
+    }
+
+    @Test
+    void servesRangesOfUncompressedObjects() throws IOException {
+        byte[] data = random(8192);
+        FileDownload download = stored(data, "application/octet-stream");
+
+        assertRange(download, "bytes=0-9", data, 0, 9);
+        assertRange(download, "bytes=8000-", data, 8000, 8191);
+        assertRange(download, "bytes=-100", data, 8092, 8191);
+        assertRange(download, "bytes=8191-8191", data, 8191, 8191);
+        assertRange(download, "bytes=4000-100000", data, 4000, 8191);
+    }
+
+    @Test
+    void servesRangesOfCompressedObjects() throws IOException {
+        byte[] data = "line of compressible text\n".repeat(400).getBytes(StandardCharsets.UTF_8);
+        FileDownload download = stored(data, "text/plain");
+
+        assertRange(download, "bytes=0-99", data, 0, 99);
+        assertRange(download, "bytes=5000-5099", data, 5000, 5099);
+        assertRange(download, "bytes=-26", data, data.length - 26, data.length - 1);
+    }
+
+    @Test
+    void rejectsRangesPastTheEnd() throws IOException {
+        FileDownload download = stored(random(2048), "application/octet-stream");
+
+        ResponseEntity<StreamingResponseBody> response = respond(download, "bytes=2048-");
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */2048", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void sendsEverythingForMultipleOrMalformedRanges() throws IOException {
+        byte[] data = random(2048);
+        FileDownload download = stored(data, "application/octet-stream");
+
+        for (String range : new String[] {"bytes=0-9,20-29", "pages=1-2", "bytes=x-y"}) {
+            ResponseEntity<StreamingResponseBody> response = respond(download, range);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertArrayEquals(data, body(response));
+        }
+    }
+
+    private void assertRange(FileDownload download, String range, byte[] data, int start, int end) throws IOException {
+        ResponseEntity<StreamingResponseBody> response = respond(download, range);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes " + start + "-" + end + "/" + data.length, response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(end - start + 1, response.getHeaders().getContentLength());
+        assertArrayEquals(Arrays.copyOfRange(data, start, end + 1), body(response));
+    }
+
+    private ResponseEntity<StreamingResponseBody> respond(FileDownload download, String range) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.RANGE, range);
+        return responder.respond(download, MediaType.APPLICATION_OCTET_STREAM, "attachment", request);
+    }
+
+    private FileDownload stored(byte[] data, String mimeType) throws IOException {
+        String key = storage.store(new ByteArrayInputStream(data), data.length, mimeType, 1L, "test");
+        return FileDownload.builder()
+                .fileId(1L)
+                .fileName("test")
+                .mimeType(mimeType)
+                .size((long) data.length)
+                .storageKey(key)
+                .build();
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(11).nextBytes(data);
+        return data;
+    }
+}
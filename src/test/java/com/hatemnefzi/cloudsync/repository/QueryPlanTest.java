@@ -0,0 +1,154 @@
+package com.hatemnefzi.cloudsync.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the hot repository queries against a migrated, seeded schema and checks that
+ * none of them falls back to a sequential scan of a large table.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class QueryPlanTest {
+
+    private static final Set<String> LARGE_TABLES = Set.of("files", "folders", "shares", "file_versions", "activities");
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void migrateAndSeed() throws SQLException {
+        Flyway.configure()
+                .dataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword())
+                .load()
+                .migrate();
+
+        connection = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        try (Statement statement = connection.createStatement()) {
+            // 100 users, 20k folders, 200k files (5% in the trash) and their shares, versions and activity
+            statement.execute("""
+                    INSERT INTO users (email, password_hash, full_name, storage_used, storage_limit, created_at)
+                    SELECT 'user' || i || '@example.com', 'x', 'User ' || i, 0, 10737418240, now()
+                    FROM generate_series(1, 100) i""");
+            statement.execute("""
+                    INSERT INTO folders (name, parent_id, owner_id, path, created_at, updated_at)
+                    SELECT 'folder' || i, CASE WHEN i > 100 THEN i - 100 END, (i - 1) % 100 + 1,
+                           '/folder' || (i - 1) % 100 + 1 || '/' || i, now(), now()
+                    FROM generate_series(1, 20000) i""");
+            statement.execute("""
+                    INSERT INTO files (name, folder_id, owner_id, size, mime_type, storage_key, checksum, version,
+                                       created_at, updated_at, deleted_at)
+                    SELECT 'report-' || i || '.pdf', (i - 1) % 20000 + 1, (i - 1) % 100 + 1, 1024, 'application/pdf',
+                           'key-' || i, md5(i::text), 1, now() - i * interval '1 second', now(),
+                           CASE WHEN i % 20 = 0 THEN now() END
+                    FROM generate_series(1, 200000) i""");
+            statement.execute("""
+                    INSERT INTO file_versions (file_id, version_number, storage_key, size, created_at)
+                    SELECT (i - 1) % 200000 + 1, i / 200000 + 1, 'version-' || i, 1024, now()
+                    FROM generate_series(1, 400000) i""");
+            statement.execute("""
+                    INSERT INTO shares (file_id, folder_id, shared_by_id, shared_with_id, permission, share_token, created_at)
+                    SELECT CASE WHEN i % 2 = 0 THEN i END, CASE WHEN i % 2 = 1 THEN i END,
+                           (i - 1) % 100 + 1, CASE WHEN i % 3 <> 0 THEN i % 100 + 1 END, 'READ',
+                           CASE WHEN i % 3 = 0 THEN md5('share' || i) END, now() - i * interval '1 second'
+                    FROM generate_series(1, 20000) i""");
+            statement.execute("""
+                    INSERT INTO activities (user_id, action, entity_type, entity_id, created_at)
+                    SELECT (i - 1) % 100 + 1, 'UPLOAD', 'FILE', i, now() - i * interval '1 second'
+                    FROM generate_series(1, 400000) i""");
+            statement.execute("ANALYZE");
+        }
+    }
+
+    @AfterAll
+    static void close() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    // SQL equivalents of the repository queries on request paths
+    static Stream<String> hotQueries() {
+        return Stream.of(
+                // FileRepository.findByOwnerAndFolderAndDeletedAtIsNull
+                "SELECT * FROM files WHERE owner_id = 7 AND folder_id = 107 AND deleted_at IS NULL",
+                // FileRepository.findByOwnerAndDeletedAtIsNullOrderByCreatedAtDesc (first page)
+                "SELECT * FROM files WHERE owner_id = 7 AND deleted_at IS NULL ORDER BY created_at DESC LIMIT 50",
+                // FileRepository.findByNameContainingIgnoreCaseAndOwnerAndDeletedAtIsNull
+                "SELECT * FROM files WHERE upper(name) LIKE upper('%report-1234%') AND owner_id = 7 AND deleted_at IS NULL",
+                // FileRepository.findByChecksum
+                "SELECT * FROM files WHERE checksum = md5('42')",
+                // FileRepository.findActiveInFolderPath
+                "SELECT f.* FROM files f JOIN folders d ON d.id = f.folder_id " +
+                        "WHERE f.owner_id = 7 AND f.deleted_at IS NULL AND d.path = '/folder7/107'",
+                // FolderRepository.findByOwnerAndParent
+                "SELECT * FROM folders WHERE owner_id = 7 AND parent_id = 107",
+                // FolderRepository.findByOwnerAndParentIsNull
+                "SELECT * FROM folders WHERE owner_id = 7 AND parent_id IS NULL",
+                // FolderRepository.findByParentIdOrderByNameAsc (public folder shares)
+                "SELECT * FROM folders WHERE parent_id = 107 ORDER BY name",
+                // FolderRepository.findFirstByOwnerIdAndPath
+                "SELECT * FROM folders WHERE owner_id = 7 AND path = '/folder7/107' LIMIT 1",
+                // FolderRepository.findByOwnerAndPathLike
+                "SELECT * FROM folders WHERE owner_id = 7 AND path LIKE '/folder7/107/%' ESCAPE '\\'",
+                // ShareRepository.findRowsSharedBy / findRowsSharedByAfter (first and next page)
+                "SELECT * FROM shares WHERE shared_by_id = 7 ORDER BY created_at DESC, id DESC LIMIT 101",
+                "SELECT * FROM shares WHERE shared_by_id = 7 AND (created_at < now() - interval '1 hour' " +
+                        "OR (created_at = now() - interval '1 hour' AND id < 5000)) ORDER BY created_at DESC, id DESC LIMIT 101",
+                // ShareRepository.findRowsSharedWith
+                "SELECT * FROM shares WHERE shared_with_id = 7 ORDER BY created_at DESC, id DESC LIMIT 101",
+                // Share lookups by target (ShareRepository.findRecipientIdsForFile and ...ForFolder)
+                "SELECT * FROM shares WHERE file_id = 1000",
+                "SELECT * FROM shares WHERE folder_id = 1001",
+                // FileVersionRepository.findByFileOrderByVersionNumberDesc
+                "SELECT * FROM file_versions WHERE file_id = 1000 ORDER BY version_number DESC",
+                // ActivityRepository.findByUserOrderByCreatedAtDesc (first page)
+                "SELECT * FROM activities WHERE user_id = 7 ORDER BY created_at DESC LIMIT 50");
+    }
+
+    @ParameterizedTest
+    @MethodSource("hotQueries")
+    void hotQueryAvoidsSequentialScans(String sql) throws Exception {
+        JsonNode plan;
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("EXPLAIN (FORMAT JSON) " + sql)) {
+            result.next();
+            plan = new ObjectMapper().readTree(result.getString(1)).get(0).get("Plan");
+        }
+
+        List<String> scanned = new ArrayList<>();
+        collectSeqScans(plan, scanned);
+        assertTrue(scanned.isEmpty(), "Sequential scan of " + scanned + " in plan:\n" + plan.toPrettyString());
+    }
+
+    private static void collectSeqScans(JsonNode node, List<String> scanned) {
+        if ("Seq Scan".equals(node.path("Node Type").asText())
+                && LARGE_TABLES.contains(node.path("Relation Name").asText())) {
+            scanned.add(node.path("Relation Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectSeqScans(child, scanned);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.hatemnefzi.cloudsync.service;
+
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.service.analytics.StorageAggregator;
+import com.hatemnefzi.cloudsync.service.jobs.JobQueue;
+import com.hatemnefzi.cloudsync.service.preview.PreviewService;
+import com.hatemnefzi.cloudsync.service.storage.LocalStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Concurrent uploads of the same content, and an upload racing the deletion of the object
+ * it reuses, against a migrated Postgres and a local store. Each call commits on its own.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ContentBlobService.class, HashingEngine.class, StorageKeyLock.class, ObjectDeletionJobHandler.class,
+        JobQueue.class, StorageAggregator.class, PreviewService.class, CloudsyncMetrics.class,
+        JacksonAutoConfiguration.class, ContentBlobServiceTest.Storage.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ContentBlobServiceTest {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @TestConfiguration
+    static class Storage {
+        @Bean
+        PausingStorage storageService() throws IOException {
+            return new PausingStorage(Files.createTempDirectory("content-blobs"));
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    // Can hold an upload between storing its bytes and registering them
+    static class PausingStorage extends LocalStorageService {
+        final Path root;
+        volatile CountDownLatch stored;
+        volatile CountDownLatch resume;
+
+        PausingStorage(Path root) {
+            super(root.toString());
+            this.root = root;
+        }
+
+        @Override
+        public String store(InputStream inputStream, long size, String contentType, Long userId, String filename) throws IOException {
+            String key = super.store(inputStream, size, contentType, userId, filename);
+            CountDownLatch pause = resume;
+            if (pause != null) {
+                resume = null;
+                stored.countDown();
+                try {
+                    pause.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return key;
+        }
+    }
+
+    @Autowired
+    private ContentBlobService contentBlobService;
+
+    @Autowired
+    private ObjectDeletionJobHandler deletionHandler;
+
+    @Autowired
+    private PausingStorage storage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void clear() {
+        jdbcTemplate.update("DELETE FROM jobs");
+        jdbcTemplate.update("DELETE FROM content_blobs");
+    }
+
+    @Test
+    void concurrentUploadsOfTheSameContentShareOneBlob() throws Exception {
+        byte[] data = random(50_000);
+        ExecutorService uploads = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<ContentBlobService.AcquiredBlob>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(uploads.submit(() -> {
+                    start.await();
+                    return contentBlobService.acquire(file(data), 42L, 1L);
+                }));
+            }
+            start.countDown();
+
+            String key = results.get(0).get(30, TimeUnit.SECONDS).storageKey();
+            for (Future<ContentBlobService.AcquiredBlob> result : results) {
+                assertEquals(key, result.get(30, TimeUnit.SECONDS).storageKey());
+            }
+
+            assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM content_blobs", Integer.class));
+            assertEquals(8, jdbcTemplate.queryForObject("SELECT ref_count FROM content_blobs WHERE storage_key = ?",
+                    Integer.class, key));
+            runDeletionJobs();
+            assertEquals(1, storedObjects());
+            assertArrayEquals(data, storage.getFile(key));
+        } finally {
+            uploads.shutdownNow();
+        }
+    }
+
+    @Test
+    void anUploadReusingAnObjectBeingDeletedStoresItAgain() throws Exception {
+        byte[] data = random(20_000);
+        String key = contentBlobService.acquire(file(data), 42L, 1L).storageKey();
+        contentBlobService.release(key);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM content_blobs", Integer.class));
+
+        // The upload finds the object still there and skips writing it...
+        storage.stored = new CountDownLatch(1);
+        storage.resume = new CountDownLatch(1);
+        CountDownLatch resume = storage.resume;
+        ExecutorService upload = Executors.newSingleThreadExecutor();
+        try {
+            Future<ContentBlobService.AcquiredBlob> acquired = upload.submit(() -> contentBlobService.acquire(file(data), 42L, 1L));
+            assertTrue(storage.stored.await(10, TimeUnit.SECONDS));
+
+            // ...then the queued deletion removes it before the upload registers
+            runDeletionJobs();
+            assertTrue(Files.notExists(storage.root.resolve(key)));
+            resume.countDown();
+
+            assertEquals(key, acquired.get(30, TimeUnit.SECONDS).storageKey());
+        } finally {
+            upload.shutdownNow();
+        }
+
+        assertArrayEquals(data, storage.getFile(key));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT ref_count FROM content_blobs WHERE storage_key = ?",
+                Integer.class, key));
+    }
+
+    @Test
+    void deletionKeepsAnObjectRegisteredAgain() throws Exception {
+        byte[] data = random(10_000);
+        String key = contentBlobService.acquire(file(data), 42L, 1L).storageKey();
+        contentBlobService.release(key);
+        contentBlobService.acquire(file(data), 42L, 1L);
+
+        runDeletionJobs();
+
+        assertArrayEquals(data, storage.getFile(key));
+    }
+
+    private void runDeletionJobs() throws IOException {
+        List<String> keys = jdbcTemplate.queryForList(
+                "SELECT payload::json->>'storageKey' FROM jobs WHERE type = ? AND status = 'PENDING'",
+                String.class, ObjectDeletionJobHandler.TYPE);
+        for (String key : keys) {
+            deletionHandler.handle(new ObjectDeletionJobHandler.Payload(key));
+        }
+        jdbcTemplate.update("DELETE FROM jobs WHERE type = ?", ObjectDeletionJobHandler.TYPE);
+    }
+
+    private long storedObjects() throws IOException {
+        try (var files = Files.walk(storage.root)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> !path.startsWith(storage.root.resolve(".tmp")))
+                    .count();
+        }
+    }
+
+    private static MockMultipartFile file(byte[] data) {
+        return new MockMultipartFile("file", "data.bin", "application/octet-stream", data);
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
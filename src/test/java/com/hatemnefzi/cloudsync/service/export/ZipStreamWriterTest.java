@@ -0,0 +1,129 @@
+package com.hatemnefzi.cloudsync.service.export;
+
+import com.hatemnefzi.cloudsync.service.storage.LocalStorageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Archives of small chunked files, written by a fast and by a stalling client.
+ */
+class ZipStreamWriterTest {
+
+    @TempDir
+    Path root;
+
+    private LocalStorageService storage;
+    private ExecutorService executor;
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+    private final List<ExportEntry> entries = new ArrayList<>();
+    private final AtomicInteger resumed = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new LocalStorageService(root.toString()) {
+            @Override
+            public InputStream getRangeStream(String storageKey, long offset, long length) throws IOException {
+                resumed.incrementAndGet();
+                return super.getRangeStream(storageKey, offset, length);
+            }
+        };
+        executor = Executors.newFixedThreadPool(2);
+        Random random = new Random(3);
+        entries.add(ExportEntry.directory("export", LocalDateTime.now()));
+        for (int i = 0; i < 4; i++) {
+            byte[] data = new byte[200_000 + i];
+            random.nextBytes(data);
+            String key = storage.store(new ByteArrayInputStream(data), data.length, "application/octet-stream", 1L, "f" + i);
+            String path = "export/f" + i;
+            contents.put(path, data);
+            entries.add(new ExportEntry(path, key, data.length, "application/octet-stream", LocalDateTime.now()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void writesEveryEntry() throws IOException {
+        ZipStreamWriter writer = new ZipStreamWriter(storage, executor, 2, 1024, 2, 1, Duration.ofSeconds(5));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        writer.write(entries, out);
+
+        assertArchive(out.toByteArray());
+        assertEquals(0, resumed.get());
+    }
+
+    @Test
+    void resumesEntriesWhoseReaderGaveUpOnASlowClient() throws IOException {
+        ZipStreamWriter writer = new ZipStreamWriter(storage, executor, 2, 1024, 2, 1, Duration.ofMillis(20));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        writer.write(entries, new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                pause();
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                pause();
+                out.write(b);
+            }
+        });
+
+        assertArchive(out.toByteArray());
+        assertTrue(resumed.get() > 0);
+    }
+
+    private void assertArchive(byte[] archive) throws IOException {
+        Map<String, byte[]> read = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    read.put(entry.getName(), zip.readAllBytes());
+                }
+            }
+        }
+        assertEquals(contents.keySet(), read.keySet());
+        contents.forEach((path, data) -> assertArrayEquals(data, read.get(path), path));
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.hatemnefzi.cloudsync.service.jobs;
+
+import com.hatemnefzi.cloudsync.service.ObjectDeletionJobHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Claiming, retrying and failing jobs against a migrated Postgres, including two workers
+ * claiming at once. Jobs are committed by each call, not rolled back per test.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest(properties = "app.jobs.max-attempts=2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({JobQueue.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JobQueueTest {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JobQueue jobQueue;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void clear() {
+        jdbcTemplate.update("DELETE FROM jobs");
+    }
+
+    @Test
+    void claimsTheMostUrgentJobFirst() {
+        jobQueue.enqueue("test", Map.of("n", 1), null, JobQueue.PRIORITY_LOW);
+        jobQueue.enqueue("test", Map.of("n", 2), null, JobQueue.PRIORITY_HIGH);
+        jobQueue.enqueue("test", Map.of("n", 3), null, JobQueue.PRIORITY_NORMAL);
+
+        assertEquals("{\"n\":2}", jobQueue.claim("w1").orElseThrow().payload());
+        assertEquals("{\"n\":3}", jobQueue.claim("w1").orElseThrow().payload());
+        JobQueue.ClaimedJob last = jobQueue.claim("w1").orElseThrow();
+        assertEquals("{\"n\":1}", last.payload());
+        assertEquals(1, last.attempts());
+        assertEquals(2, last.maxAttempts());
+        assertTrue(jobQueue.claim("w1").isEmpty());
+    }
+
+    @Test
+    void queuesADedupKeyOnceWhileItIsPending() {
+        jobQueue.enqueue("test", Map.of(), "key", JobQueue.PRIORITY_NORMAL);
+        jobQueue.enqueue("test", Map.of(), "key", JobQueue.PRIORITY_NORMAL);
+        assertEquals(1, count("PENDING"));
+
+        JobQueue.ClaimedJob job = jobQueue.claim("w1").orElseThrow();
+        jobQueue.complete(job);
+        jobQueue.enqueue("test", Map.of(), "key", JobQueue.PRIORITY_NORMAL);
+        assertEquals(1, count("PENDING"));
+    }
+
+    @Test
+    void queuesADedupKeyAgainWhileAJobForItIsRunning() {
+        jobQueue.enqueue(ObjectDeletionJobHandler.TYPE, Map.of("storageKey", "k"), "k", JobQueue.PRIORITY_HIGH);
+        JobQueue.ClaimedJob running = jobQueue.claim("w1").orElseThrow();
+
+        // The running job may already have decided to keep the object
+        jobQueue.enqueue(ObjectDeletionJobHandler.TYPE, Map.of("storageKey", "k"), "k", JobQueue.PRIORITY_HIGH);
+
+        assertEquals(1, count("RUNNING"));
+        assertEquals(1, count("PENDING"));
+        jobQueue.complete(running);
+        assertNotEquals(running.id(), jobQueue.claim("w1").orElseThrow().id());
+    }
+
+    @Test
+    void dropsARetryOrExpiredJobThatAPendingOneSupersedes() {
+        jobQueue.enqueue("test", Map.of(), "a", JobQueue.PRIORITY_NORMAL);
+        jobQueue.enqueue("test", Map.of(), "b", JobQueue.PRIORITY_NORMAL);
+        JobQueue.ClaimedJob failing = jobQueue.claim("w1").orElseThrow();
+        JobQueue.ClaimedJob stuck = jobQueue.claim("w2").orElseThrow();
+        jobQueue.enqueue("test", Map.of(), "a", JobQueue.PRIORITY_NORMAL);
+        jobQueue.enqueue("test", Map.of(), "b", JobQueue.PRIORITY_NORMAL);
+
+        jobQueue.retry(failing, Duration.ZERO, "boom");
+        assertEquals(0, jobQueue.releaseExpired(Duration.ZERO));
+
+        assertEquals(2, count("PENDING"));
+        assertEquals(0, count("RUNNING"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM jobs WHERE id IN (?, ?)", Integer.class,
+                failing.id(), stuck.id()));
+    }
+
+    @Test
+    void retriesAfterTheDelayAndCountsAttempts() {
+        jobQueue.enqueue("test", Map.of(), null, JobQueue.PRIORITY_NORMAL);
+        JobQueue.ClaimedJob job = jobQueue.claim("w1").orElseThrow();
+
+        jobQueue.retry(job, Duration.ofHours(1), "boom");
+        assertTrue(jobQueue.claim("w1").isEmpty());
+
+        jobQueue.retry(job, Duration.ZERO, "boom");
+        JobQueue.ClaimedJob again = jobQueue.claim("w2").orElseThrow();
+        assertEquals(job.id(), again.id());
+        assertEquals(2, again.attempts());
+    }
+
+    @Test
+    void keepsFailedJobsOutOfTheQueue() {
+        jobQueue.enqueue("test", Map.of(), "key", JobQueue.PRIORITY_NORMAL);
+        JobQueue.ClaimedJob job = jobQueue.claim("w1").orElseThrow();
+
+        jobQueue.fail(job, "x".repeat(5000));
+
+        assertTrue(jobQueue.claim("w1").isEmpty());
+        assertEquals(1, count("FAILED"));
+        assertEquals(2000, jdbcTemplate.queryForObject("SELECT length(last_error) FROM jobs", Integer.class));
+        // A failed job no longer holds its dedup key
+        jobQueue.enqueue("test", Map.of(), "key", JobQueue.PRIORITY_NORMAL);
+        assertEquals(1, count("PENDING"));
+    }
+
+    @Test
+    void releasesJobsWhoseLeaseExpiredUntilTheyRunOutOfAttempts() {
+        jobQueue.enqueue("test", Map.of(), null, JobQueue.PRIORITY_NORMAL);
+        jobQueue.claim("w1").orElseThrow();
+
+        assertEquals(0, jobQueue.releaseExpired(Duration.ofHours(1)));
+        assertEquals(1, jobQueue.releaseExpired(Duration.ZERO));
+        assertEquals(2, jobQueue.claim("w2").orElseThrow().attempts());
+
+        assertEquals(1, jobQueue.releaseExpired(Duration.ZERO));
+        assertEquals(1, count("FAILED"));
+        assertTrue(jobQueue.claim("w3").isEmpty());
+    }
+
+    @Test
+    void skipsJobsAnotherWorkerHasLocked() throws Exception {
+        jobQueue.enqueue("test", Map.of("n", 1), null, JobQueue.PRIORITY_HIGH);
+        jobQueue.enqueue("test", Map.of("n", 2), null, JobQueue.PRIORITY_NORMAL);
+
+        // Another worker is mid-claim on the most urgent job and hasn't committed
+        try (Connection other = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword())) {
+            other.setAutoCommit(false);
+            long locked;
+            try (Statement statement = other.createStatement();
+                 ResultSet rs = statement.executeQuery(
+                         "SELECT id FROM jobs ORDER BY priority DESC LIMIT 1 FOR UPDATE")) {
+                rs.next();
+                locked = rs.getLong(1);
+            }
+
+            Optional<JobQueue.ClaimedJob> claimed = CompletableFuture.supplyAsync(() -> jobQueue.claim("w2"))
+                    .get(10, TimeUnit.SECONDS);
+            assertNotEquals(locked, claimed.orElseThrow().id());
+            assertEquals("{\"n\":2}", claimed.get().payload());
+            assertTrue(jobQueue.claim("w2").isEmpty());
+
+            other.rollback();
+        }
+
+        assertEquals("{\"n\":1}", jobQueue.claim("w1").orElseThrow().payload());
+    }
+
+    private int count(String status) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM jobs WHERE status = ?", Integer.class, status);
+    }
+}
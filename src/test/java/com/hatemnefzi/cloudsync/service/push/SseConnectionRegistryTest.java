@@ -0,0 +1,84 @@
+package com.hatemnefzi.cloudsync.service.push;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A client that never reads, on a registry with a single send thread: its stream is
+ * aborted and other users keep getting their events.
+ */
+class SseConnectionRegistryTest {
+
+    private SseConnectionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SseConnectionRegistry(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(registry, "maxConnections", 100);
+        ReflectionTestUtils.setField(registry, "maxConnectionsPerUser", 10);
+        ReflectionTestUtils.setField(registry, "timeout", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(registry, "coalesceWindow", Duration.ofMillis(10));
+        ReflectionTestUtils.setField(registry, "maxPending", 100);
+        ReflectionTestUtils.setField(registry, "sendThreads", 1);
+        ReflectionTestUtils.setField(registry, "heartbeatInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(registry, "sendTimeout", Duration.ofMillis(200));
+        registry.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.stop();
+    }
+
+    @Test
+    void abortsAStreamWhoseClientStopsReading() throws Exception {
+        // Like a container write: blocked on the socket until the response is ended under it
+        CountDownLatch aborted = new CountDownLatch(1);
+        SseEmitter stuck = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                try {
+                    aborted.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Connection reset");
+            }
+        };
+        registry.register(1L, stuck, aborted::countDown);
+
+        Semaphore received = new Semaphore(0);
+        SseEmitter reading = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                received.release();
+            }
+        };
+        registry.register(2L, reading, () -> { });
+
+        assertTrue(aborted.await(5, TimeUnit.SECONDS));
+        assertTrue(received.tryAcquire(5, TimeUnit.SECONDS), "ready event");
+        assertEquals(1, registry.openConnections());
+
+        registry.deliver(2L, new PushMessage("change", "file:7", Map.of("id", 7)));
+        assertTrue(received.tryAcquire(5, TimeUnit.SECONDS), "change event");
+
+        // Nothing more is queued for the aborted stream
+        registry.deliver(1L, new PushMessage("change", "file:8", Map.of("id", 8)));
+        assertEquals(1, registry.openConnections());
+    }
+}
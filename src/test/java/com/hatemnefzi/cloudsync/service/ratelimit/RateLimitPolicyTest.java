@@ -0,0 +1,82 @@
+package com.hatemnefzi.cloudsync.service.ratelimit;
+
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.service.ratelimit.BucketSubject.Scope;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Several buckets per request on local buckets: a refusal by one charges none of the others.
+ */
+class RateLimitPolicyTest {
+
+    private static final BucketSubject USER = new BucketSubject(Scope.USER, "1");
+    private static final BucketSubject IP = new BucketSubject(Scope.IP, "203.0.113.7");
+
+    private RateLimitPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(new StaticListableBeanFactory().getBeanProvider(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(limiter, "leaseWindow", Duration.ofMillis(100));
+        ReflectionTestUtils.setField(limiter, "redisRetry", Duration.ofSeconds(5));
+
+        policy = new RateLimitPolicy(limiter, new CloudsyncMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(policy, "enabled", true);
+        // Slow refill, so nothing comes back on its own while a test runs
+        for (String scope : new String[] {"user", "share", "ip"}) {
+            ReflectionTestUtils.setField(policy, scope + "RequestRate", 0.01);
+            ReflectionTestUtils.setField(policy, scope + "RequestBurst", 3L);
+            ReflectionTestUtils.setField(policy, scope + "BandwidthRate", DataSize.ofBytes(1));
+            ReflectionTestUtils.setField(policy, scope + "BandwidthBurst", DataSize.ofMegabytes(1));
+        }
+        policy.init();
+    }
+
+    @Test
+    void aRefusedUploadLeavesTheUserBucketAlone() {
+        // The address is in debt from someone else's upload
+        assertNull(policy.admitUpload(List.of(IP), DataSize.ofMegabytes(2).toBytes()));
+
+        for (int i = 0; i < 5; i++) {
+            assertRejectedBy(IP, policy.admitUpload(List.of(USER, IP), DataSize.ofMegabytes(2).toBytes()));
+        }
+
+        // Still a full bucket: a charge of 2MB would have left the user in debt
+        assertNull(policy.admitUpload(List.of(USER), DataSize.ofMegabytes(2).toBytes()));
+        assertNotNull(policy.admitUpload(List.of(USER), 1));
+    }
+
+    @Test
+    void aRefusedRequestLeavesTheUserBucketAlone() {
+        for (int i = 0; i < 3; i++) {
+            assertNull(policy.admitRequest(List.of(IP)));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertRejectedBy(IP, policy.admitRequest(List.of(USER, IP)));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(policy.admitRequest(List.of(USER)));
+        }
+        assertNotNull(policy.admitRequest(List.of(USER)));
+    }
+
+    private static void assertRejectedBy(BucketSubject subject, RateLimitPolicy.Rejection rejection) {
+        assertNotNull(rejection);
+        assertEquals(subject, rejection.subject());
+    }
+}
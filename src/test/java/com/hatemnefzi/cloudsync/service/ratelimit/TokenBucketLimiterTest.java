@@ -0,0 +1,92 @@
+package com.hatemnefzi.cloudsync.service.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Node-local buckets, as used without Redis: burst, refill and debt.
+ */
+class TokenBucketLimiterTest {
+
+    // 10 tokens a second, so one token refills every 100 ms
+    private static final RateLimit LIMIT = new RateLimit(10, 5);
+
+    private TokenBucketLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new TokenBucketLimiter(new StaticListableBeanFactory().getBeanProvider(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(limiter, "leaseWindow", Duration.ofMillis(100));
+        ReflectionTestUtils.setField(limiter, "redisRetry", Duration.ofSeconds(5));
+    }
+
+    @Test
+    void allowsTheBurstThenAsksToWait() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryTake("user:1", LIMIT, 1));
+        }
+
+        long wait = limiter.tryTake("user:1", LIMIT, 1);
+        assertTrue(wait > 0 && wait <= 100, "wait " + wait);
+    }
+
+    @Test
+    void refillsAtTheRate() throws InterruptedException {
+        assertEquals(0, limiter.tryTake("user:1", LIMIT, 5));
+        long wait = limiter.tryTake("user:1", LIMIT, 2);
+        assertTrue(wait > 0 && wait <= 200, "wait " + wait);
+
+        Thread.sleep(wait + 20);
+
+        assertEquals(0, limiter.tryTake("user:1", LIMIT, 2));
+        assertTrue(limiter.tryTake("user:1", LIMIT, 1) > 0);
+    }
+
+    @Test
+    void neverRefillsPastTheBurst() throws InterruptedException {
+        assertEquals(0, limiter.tryTake("user:1", LIMIT, 1));
+        Thread.sleep(300);
+
+        assertEquals(0, limiter.tryTake("user:1", LIMIT, 5));
+        assertTrue(limiter.tryTake("user:1", LIMIT, 1) > 0);
+    }
+
+    @Test
+    void capsRequestsLargerThanTheBurst() {
+        assertEquals(0, limiter.tryTake("user:1", LIMIT, 50));
+        assertTrue(limiter.tryTake("user:1", LIMIT, 1) > 0);
+    }
+
+    @Test
+    void keepsSubjectsApart() {
+        assertEquals(0, limiter.tryTake("user:1", LIMIT, 5));
+        assertTrue(limiter.tryTake("user:1", LIMIT, 1) > 0);
+
+        assertEquals(0, limiter.tryTake("user:2", LIMIT, 5));
+    }
+
+    @Test
+    void debitAdmitsAWholeTransferThenWaitsOffTheDebt() {
+        assertEquals(0, limiter.tryDebit("ip:1", LIMIT, 25));
+
+        // 5 tokens in the bucket, 25 taken: 20 owed at 10 a second
+        long wait = limiter.tryDebit("ip:1", LIMIT, 1);
+        assertTrue(wait > 0 && wait <= 2000, "wait " + wait);
+        assertTrue(limiter.tryTake("ip:1", LIMIT, 1) > 0);
+    }
+
+    @Test
+    void leasesWhatTheRateRefillsInTheWindow() {
+        assertEquals(100, new RateLimit(1000, 500).leaseSize(Duration.ofMillis(100)));
+        assertEquals(50, new RateLimit(1000, 50).leaseSize(Duration.ofMillis(100)));
+        assertEquals(1, new RateLimit(1, 5).leaseSize(Duration.ofMillis(100)));
+    }
+}
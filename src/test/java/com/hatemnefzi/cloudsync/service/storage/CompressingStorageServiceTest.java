@@ -0,0 +1,111 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Round trips through a local store, with a small threshold so short test payloads get compressed.
+ */
+class CompressingStorageServiceTest {
+
+    private static final long MIN_SIZE = 1024;
+
+    @TempDir
+    Path root;
+
+    private LocalStorageService local;
+    private CompressingStorageService storage;
+
+    @BeforeEach
+    void setUp() {
+        local = new LocalStorageService(root.toString());
+        storage = new CompressingStorageService(local, MIN_SIZE, 3);
+    }
+
+    @Test
+    void compressibleContentRoundTrips() throws IOException {
+        byte[] data = "the quick brown fox jumps over the lazy dog\n".repeat(500).getBytes(StandardCharsets.UTF_8);
+        String key = store(data, "text/plain");
+
+        assertNotEquals(CompressionCodec.NONE, storage.openStored(key).codec());
+        assertArrayEquals(data, storage.getFile(key));
+        assertEquals(data.length, storage.getFileSize(key));
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 300), storage.getRange(key, 100, 200));
+    }
+
+    @Test
+    void incompressibleContentStartingWithMagicRoundTrips() throws IOException {
+        byte[] data = collidingRandom(8192);
+        String key = store(data, "application/octet-stream");
+
+        assertEquals(CompressionCodec.NONE, storage.openStored(key).codec());
+        assertArrayEquals(data, storage.getFile(key));
+        assertEquals(data.length, storage.getFileSize(key));
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 64), storage.getRange(key, 0, 64));
+        assertArrayEquals(Arrays.copyOfRange(data, 5000, 8192), storage.getRange(key, 5000, 4096));
+    }
+
+    @Test
+    void smallContentStartingWithMagicRoundTrips() throws IOException {
+        byte[] data = collidingRandom(100);
+        String key = store(data, "application/octet-stream");
+
+        assertArrayEquals(data, storage.getFile(key));
+        assertEquals(data.length, storage.getFileSize(key));
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 20), storage.getRange(key, 10, 10));
+    }
+
+    @Test
+    void precompressedContentStartingWithMagicRoundTrips() throws IOException {
+        byte[] data = collidingRandom(4096);
+        String key = store(data, "image/jpeg");
+
+        assertArrayEquals(data, storage.getFile(key));
+        assertEquals(data.length, storage.getFileSize(key));
+    }
+
+    @Test
+    void contentShorterThanMagicRoundTrips() throws IOException {
+        byte[] data = Arrays.copyOf(CompressingStorageService.MAGIC, 3);
+        String key = store(data, "application/octet-stream");
+
+        assertArrayEquals(data, storage.getFile(key));
+        assertEquals(data.length, storage.getFileSize(key));
+    }
+
+    @Test
+    void plainContentIsStoredUntouched() throws IOException {
+        byte[] data = new byte[4096];
+        new Random(7).nextBytes(data);
+        data[0] = 0;
+        String key = store(data, "application/octet-stream");
+
+        assertArrayEquals(data, local.getFile(key));
+        assertArrayEquals(data, storage.getFile(key));
+    }
+
+    private String store(byte[] data, String contentType) throws IOException {
+        return storage.store(new ByteArrayInputStream(data), data.length, contentType, 1L, "test");
+    }
+
+    // Random bytes that begin with a well-formed header: magic, a known codec id and a length
+    private static byte[] collidingRandom(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        System.arraycopy(CompressingStorageService.MAGIC, 0, data, 0, CompressingStorageService.MAGIC.length);
+        data[CompressingStorageService.MAGIC.length] = (byte) CompressionCodec.LZ4.getId();
+        return data;
+    }
+}
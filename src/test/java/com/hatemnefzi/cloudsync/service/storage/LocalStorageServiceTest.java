@@ -0,0 +1,177 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import com.hatemnefzi.cloudsync.service.storage.LocalStorageService.FsyncMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Content-addressed layout: keys, reuse of identical content, torn writes and deletes.
+ */
+class LocalStorageServiceTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void keysObjectsByTheHashOfTheirContent() throws Exception {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        byte[] data = random(5000);
+
+        String key = store(storage, data);
+
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        assertEquals(hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash, key);
+        assertEquals(LocalStorageService.contentKey(hash), key);
+        assertArrayEquals(data, Files.readAllBytes(root.resolve(key)));
+        assertArrayEquals(data, storage.getFile(key));
+        assertEquals(data.length, storage.getFileSize(key));
+    }
+
+    @Test
+    void reusesTheObjectForIdenticalContent() throws IOException {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        byte[] data = random(5000);
+
+        String first = store(storage, data);
+        long modified = Files.getLastModifiedTime(root.resolve(first)).toMillis();
+        String second = store(storage, data);
+
+        assertEquals(first, second);
+        assertEquals(modified, Files.getLastModifiedTime(root.resolve(second)).toMillis());
+        assertEquals(0, tempFiles());
+    }
+
+    @Test
+    void keepsDifferentContentApart() throws IOException {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        byte[] a = random(100);
+        byte[] b = Arrays.copyOf(a, a.length);
+        b[50] ^= 1;
+
+        String keyA = store(storage, a);
+        String keyB = store(storage, b);
+
+        assertNotEquals(keyA, keyB);
+        assertArrayEquals(a, storage.getFile(keyA));
+        assertArrayEquals(b, storage.getFile(keyB));
+    }
+
+    @Test
+    void replacesATornObject() throws IOException {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        byte[] data = random(5000);
+        String key = store(storage, data);
+
+        // What a crash mid-copy under the old write path could leave behind
+        Files.write(root.resolve(key), Arrays.copyOf(data, 1000));
+
+        assertEquals(key, store(storage, data));
+        assertArrayEquals(data, storage.getFile(key));
+    }
+
+    @Test
+    void deletesObjects() throws IOException {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        String key = store(storage, random(100));
+        assertTrue(storage.exists(key));
+
+        storage.delete(key);
+
+        assertFalse(storage.exists(key));
+        storage.delete(key);
+    }
+
+    @Test
+    void storesAgainAfterADelete() throws IOException {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        byte[] data = random(100);
+        String key = store(storage, data);
+        storage.delete(key);
+
+        assertEquals(key, store(storage, data));
+        assertArrayEquals(data, storage.getFile(key));
+    }
+
+    @Test
+    void readsRanges() throws IOException {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        byte[] data = random(5000);
+        String key = store(storage, data);
+
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 200), storage.getRange(key, 100, 100));
+        assertArrayEquals(Arrays.copyOfRange(data, 4900, 5000), storage.getRange(key, 4900, 1000));
+        assertEquals(0, storage.getRange(key, 6000, 10).length);
+        try (InputStream in = storage.getRangeStream(key, 1234, 100)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 1234, 1334), in.readNBytes(100));
+        }
+    }
+
+    @Test
+    void readsKeysFromTheOldLayout() throws IOException {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        byte[] data = random(100);
+        Files.createDirectories(root.resolve("7"));
+        Files.write(root.resolve("7/0f8fad5b-d9cb-469f-a165-70867728950e_notes.txt"), data);
+
+        assertArrayEquals(data, storage.getFile("7/0f8fad5b-d9cb-469f-a165-70867728950e_notes.txt"));
+    }
+
+    @Test
+    void storesWithEveryFsyncMode() throws IOException {
+        for (FsyncMode mode : FsyncMode.values()) {
+            LocalStorageService storage = new LocalStorageService(root.resolve(mode.name()).toString(), mode, Duration.ZERO);
+            byte[] data = random(1000 + mode.ordinal());
+
+            assertArrayEquals(data, storage.getFile(store(storage, data)));
+        }
+    }
+
+    @Test
+    void clearsLeftoverTempFilesOnStartup() throws IOException {
+        Path temp = root.resolve(LocalStorageService.TEMP_DIR);
+        Files.createDirectories(temp);
+        Files.write(temp.resolve("crashed.part"), random(100));
+
+        new LocalStorageService(root.toString());
+
+        assertEquals(0, tempFiles());
+    }
+
+    private long tempFiles() throws IOException {
+        Path temp = root.resolve(LocalStorageService.TEMP_DIR);
+        if (!Files.isDirectory(temp)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(temp)) {
+            return files.count();
+        }
+    }
+
+    private static String store(LocalStorageService storage, byte[] data) throws IOException {
+        return storage.store(new ByteArrayInputStream(data), data.length, "application/octet-stream", 1L, "test");
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
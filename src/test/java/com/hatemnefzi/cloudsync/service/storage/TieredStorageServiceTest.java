@@ -0,0 +1,149 @@
+package com.hatemnefzi.cloudsync.service.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A local store standing in for S3, with a cache that takes objects up to 64KB.
+ */
+class TieredStorageServiceTest {
+
+    private static final long MAX_OBJECT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path root;
+
+    private final AtomicInteger backendReads = new AtomicInteger();
+    // Backend streams fail after this many bytes while positive
+    private volatile int failAfter;
+
+    private LocalStorageService backend;
+    private TieredStorageService storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        backend = new LocalStorageService(root.resolve("backend").toString()) {
+            @Override
+            public InputStream getFileStream(String storageKey) throws IOException {
+                backendReads.incrementAndGet();
+                return failing(super.getFileStream(storageKey));
+            }
+        };
+        storage = new TieredStorageService(backend, root.resolve("cache"), 1024 * 1024, MAX_OBJECT_SIZE,
+                false, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void cachesOnTheSecondMissAndServesHitsFromDisk() throws IOException {
+        byte[] data = random(40_000);
+        String key = backend.store(new ByteArrayInputStream(data), data.length, "application/octet-stream", 1L, "a");
+
+        assertArrayEquals(data, storage.getFile(key));
+        assertArrayEquals(data, storage.getFile(key));
+        int reads = backendReads.get();
+
+        assertArrayEquals(data, storage.getFile(key));
+        assertArrayEquals(data, storage.getFile(key));
+        assertEquals(reads, backendReads.get());
+    }
+
+    @Test
+    void streamsObjectsTooLargeToCache() throws IOException {
+        byte[] data = random((int) MAX_OBJECT_SIZE * 3);
+        String key = backend.store(new ByteArrayInputStream(data), data.length, "application/octet-stream", 1L, "a");
+
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(data, storage.getFile(key));
+        }
+    }
+
+    @Test
+    void carriesOnFromTheBackendWhenTheFillFails() throws IOException {
+        byte[] data = random(60_000);
+        String key = backend.store(new ByteArrayInputStream(data), data.length, "application/octet-stream", 1L, "a");
+        assertArrayEquals(data, storage.getFile(key));
+
+        failAfter = 20_000;
+        try (InputStream in = storage.getFileStream(key)) {
+            byte[] head = in.readNBytes(10_000);
+            failAfter = 0;
+            byte[] rest = in.readAllBytes();
+            byte[] all = new byte[head.length + rest.length];
+            System.arraycopy(head, 0, all, 0, head.length);
+            System.arraycopy(rest, 0, all, head.length, rest.length);
+            assertArrayEquals(data, all);
+        }
+    }
+
+    @Test
+    void concurrentMissesShareTheDownload() throws Exception {
+        byte[] data = random(60_000);
+        String key = backend.store(new ByteArrayInputStream(data), data.length, "application/octet-stream", 1L, "a");
+        assertArrayEquals(data, storage.getFile(key));
+
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(readers.submit(() -> storage.getFile(key)));
+            }
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(data, result.get());
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+        assertArrayEquals(data, storage.getFile(key));
+    }
+
+    // Checks failAfter on each read, so clearing it also heals streams already open
+    private InputStream failing(InputStream in) {
+        return new FilterInputStream(in) {
+            private int read;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int after = failAfter;
+                if (after <= 0) {
+                    return super.read(b, off, len);
+                }
+                if (read >= after) {
+                    throw new IOException("Backend went away");
+                }
+                int n = super.read(b, off, Math.min(len, after - read));
+                read += Math.max(n, 0);
+                return n;
+            }
+        };
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
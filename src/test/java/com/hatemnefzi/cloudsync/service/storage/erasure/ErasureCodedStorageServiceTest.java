@@ -0,0 +1,229 @@
+package com.hatemnefzi.cloudsync.service.storage.erasure;
+
+import com.hatemnefzi.cloudsync.service.storage.erasure.ErasureCodedStorageService.ScrubOutcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Six directories standing in for six disks, coded 4+2 with small chunks so objects span
+ * several stripes.
+ */
+class ErasureCodedStorageServiceTest {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    @TempDir
+    Path root;
+
+    private List<Path> disks;
+    private ErasureCodedStorageService storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        disks = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            disks.add(root.resolve("disk" + i));
+        }
+        storage = new ErasureCodedStorageService(disks, 4, 2, CHUNK_SIZE, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void roundTripsObjectsOfAnySize() throws IOException {
+        for (int size : new int[]{0, 1, CHUNK_SIZE, 4 * CHUNK_SIZE, 4 * CHUNK_SIZE + 1, 50_000}) {
+            byte[] content = random(size);
+            String key = store(content);
+            assertArrayEquals(content, storage.getFile(key), "size " + size);
+            assertEquals(size, storage.getFileSize(key));
+        }
+    }
+
+    @Test
+    void readsThroughTwoLostDisks() throws IOException {
+        byte[] content = random(50_000);
+        String key = store(content);
+
+        deleteShard(0, key);
+        deleteShard(3, key);
+
+        assertArrayEquals(content, storage.getFile(key));
+    }
+
+    @Test
+    void failsWhenMoreDisksAreLostThanThereIsParity() throws IOException {
+        String key = store(random(50_000));
+
+        deleteShard(0, key);
+        deleteShard(1, key);
+        deleteShard(2, key);
+
+        assertThrows(IOException.class, () -> storage.getFile(key));
+    }
+
+    @Test
+    void skipsBlocksThatFailTheirChecksum() throws IOException {
+        byte[] content = random(50_000);
+        String key = store(content);
+
+        corrupt(disks.get(1).resolve(key), 2_000);
+        corrupt(disks.get(4).resolve(key), 30_000);
+
+        assertArrayEquals(content, storage.getFile(key));
+    }
+
+    @Test
+    void scrubRewritesLostAndDamagedShards() throws IOException {
+        byte[] content = random(50_000);
+        String key = store(content);
+        Path damaged = disks.get(2).resolve(key);
+        corrupt(damaged, 5_000);
+        deleteShard(5, key);
+
+        assertEquals(ScrubOutcome.REPAIRED, storage.scrub(key).outcome());
+        assertEquals(ScrubOutcome.OK, storage.scrub(key).outcome());
+
+        // With the repaired shards back, any two others can go
+        deleteShard(0, key);
+        deleteShard(1, key);
+        assertArrayEquals(content, storage.getFile(key));
+    }
+
+    @Test
+    void scrubReportsObjectsThatCannotBeRebuilt() throws IOException {
+        String key = store(random(50_000));
+        deleteShard(0, key);
+        deleteShard(1, key);
+        deleteShard(2, key);
+
+        assertEquals(ScrubOutcome.UNRECOVERABLE, storage.scrub(key).outcome());
+    }
+
+    @Test
+    void storesWithOneDiskUnwritable() throws IOException {
+        breakDisk(3);
+        byte[] content = random(50_000);
+
+        String key = store(content);
+
+        assertArrayEquals(content, storage.getFile(key));
+        assertEquals(5, disks.stream().filter(disk -> Files.exists(disk.resolve(key))).count());
+    }
+
+    @Test
+    void refusesWritesThatCouldNotSurviveAnotherLostDisk() throws IOException {
+        breakDisk(3);
+        breakDisk(4);
+
+        assertThrows(IOException.class, () -> store(random(50_000)));
+    }
+
+    @Test
+    void deleteRemovesEveryShard() throws IOException {
+        String key = store(random(10_000));
+
+        storage.delete(key);
+
+        for (Path disk : disks) {
+            assertTrue(Files.notExists(disk.resolve(key)));
+        }
+    }
+
+    @Test
+    void concurrentStoresOfTheSameContentKeepOneShardPerIndex() throws Exception {
+        ExecutorService uploads = Executors.newFixedThreadPool(6);
+        try {
+            for (int round = 0; round < 20; round++) {
+                byte[] content = random(5_000 + round);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<String>> keys = new ArrayList<>();
+                for (int i = 0; i < 6; i++) {
+                    keys.add(uploads.submit(() -> {
+                        start.await();
+                        return store(content);
+                    }));
+                }
+                start.countDown();
+                String key = keys.get(0).get();
+                for (Future<String> other : keys) {
+                    assertEquals(key, other.get());
+                }
+
+                // Readable with any two disks gone only if no index is held twice
+                for (int a = 0; a < disks.size(); a++) {
+                    for (int b = a + 1; b < disks.size(); b++) {
+                        hideShard(a, key);
+                        hideShard(b, key);
+                        try {
+                            assertArrayEquals(content, storage.getFile(key), "without disks " + a + " and " + b);
+                        } finally {
+                            unhideShard(a, key);
+                            unhideShard(b, key);
+                        }
+                    }
+                }
+            }
+        } finally {
+            uploads.shutdownNow();
+        }
+    }
+
+    private void hideShard(int disk, String key) throws IOException {
+        Path shard = disks.get(disk).resolve(key);
+        Files.move(shard, shard.resolveSibling(shard.getFileName() + ".hidden"));
+    }
+
+    private void unhideShard(int disk, String key) throws IOException {
+        Path shard = disks.get(disk).resolve(key);
+        Files.move(shard.resolveSibling(shard.getFileName() + ".hidden"), shard);
+    }
+
+    private String store(byte[] content) throws IOException {
+        return storage.store(new ByteArrayInputStream(content), content.length, "application/octet-stream", 1L, "test.bin");
+    }
+
+    // Shards are written to the disk's temp directory first: a file in its place fails every write
+    private void breakDisk(int disk) throws IOException {
+        Path temp = disks.get(disk).resolve(".tmp");
+        Files.createDirectories(disks.get(disk));
+        Files.deleteIfExists(temp);
+        Files.createFile(temp);
+    }
+
+    private void deleteShard(int disk, String key) throws IOException {
+        Files.delete(disks.get(disk).resolve(key));
+    }
+
+    private static void corrupt(Path shard, long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(shard.toFile(), "rw")) {
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xFF);
+        }
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,177 @@
+package com.hatemnefzi.cloudsync.service.upload;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replays, key reuse, failures and a concurrent retry against a migrated Postgres.
+ * Each call commits on its own, as it does behind the upload endpoints.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({IdempotencyService.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyServiceTest {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private IdempotencyService idempotency;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicInteger runs = new AtomicInteger();
+    private long alice;
+    private long bob;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM idempotency_keys");
+        alice = user("alice@example.com");
+        bob = user("bob@example.com");
+    }
+
+    @Test
+    void runsOnceAndReplaysTheResponse() throws IOException {
+        IdempotencyService.Outcome<String> first = idempotency.execute(alice, "k1", "POST /files", String.class, this::call);
+        IdempotencyService.Outcome<String> retry = idempotency.execute(alice, "k1", "POST /files", String.class, this::call);
+
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertEquals("response 1", retry.value());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void runsEveryTimeWithoutAKey() throws IOException {
+        idempotency.execute(alice, null, "POST /files", String.class, this::call);
+        idempotency.execute(alice, " ", "POST /files", String.class, this::call);
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void keepsKeysPerUser() throws IOException {
+        idempotency.execute(alice, "k1", "POST /files", String.class, this::call);
+
+        IdempotencyService.Outcome<String> other = idempotency.execute(bob, "k1", "POST /files", String.class, this::call);
+
+        assertFalse(other.replayed());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void refusesAKeyReusedForAnotherRequest() throws IOException {
+        idempotency.execute(alice, "k1", "POST /files", String.class, this::call);
+
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> idempotency.execute(alice, "k1", "POST /files/7", String.class, this::call));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void storesNothingWhenTheCallFails() throws IOException {
+        assertThrows(IOException.class, () -> idempotency.execute(alice, "k1", "POST /files", String.class, () -> {
+            throw new IOException("disk full");
+        }));
+
+        IdempotencyService.Outcome<String> retry = idempotency.execute(alice, "k1", "POST /files", String.class, this::call);
+        assertFalse(retry.replayed());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void claimsAnExpiredKeyAgain() throws IOException {
+        idempotency.execute(alice, "k1", "POST /files", String.class, this::call);
+        jdbcTemplate.update("UPDATE idempotency_keys SET expires_at = now() - INTERVAL '1 minute'");
+
+        IdempotencyService.Outcome<String> again = idempotency.execute(alice, "k1", "POST /files/7", String.class, this::call);
+
+        assertFalse(again.replayed());
+        assertEquals("response 2", again.value());
+    }
+
+    @Test
+    void aConcurrentRetryWaitsForTheFirstThenReplays() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<IdempotencyService.Outcome<String>> first = CompletableFuture.supplyAsync(() -> execute(() -> {
+            running.countDown();
+            await(finish);
+            return call();
+        }));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<IdempotencyService.Outcome<String>> retry = CompletableFuture.supplyAsync(() -> execute(this::call));
+        Thread.sleep(200);
+        assertFalse(retry.isDone());
+
+        finish.countDown();
+        assertFalse(first.get(10, TimeUnit.SECONDS).replayed());
+        IdempotencyService.Outcome<String> replayed = retry.get(10, TimeUnit.SECONDS);
+        assertTrue(replayed.replayed());
+        assertEquals("response 1", replayed.value());
+        assertEquals(1, runs.get());
+    }
+
+    private IdempotencyService.Outcome<String> execute(IdempotencyService.Call<String> call) {
+        try {
+            return idempotency.execute(alice, "k1", "POST /files", String.class, call);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String call() {
+        return "response " + runs.incrementAndGet();
+    }
+
+    private long user(String email) {
+        jdbcTemplate.update("DELETE FROM users WHERE email = ?", email);
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO users (email, password_hash, full_name, storage_used, storage_limit, created_at)
+                VALUES (?, 'x', ?, 0, 10737418240, now()) RETURNING id""", Long.class, email, email);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.hatemnefzi.cloudsync.service.upload;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hatemnefzi.cloudsync.dto.FileUploadResponse;
+import com.hatemnefzi.cloudsync.dto.UploadPreflightRequest;
+import com.hatemnefzi.cloudsync.dto.UploadPreflightResponse;
+import com.hatemnefzi.cloudsync.dto.UploadPreflightResponse.ByteRange;
+import com.hatemnefzi.cloudsync.entity.ContentBlob;
+import com.hatemnefzi.cloudsync.metrics.CloudsyncMetrics;
+import com.hatemnefzi.cloudsync.repository.ContentBlobRepository;
+import com.hatemnefzi.cloudsync.repository.FileRepository;
+import com.hatemnefzi.cloudsync.service.FileService;
+import com.hatemnefzi.cloudsync.service.storage.LocalStorageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Challenges over content in a local store: who gets one, and which answers create the file.
+ */
+class UploadPreflightServiceTest {
+
+    private static final long OWNER = 1L;
+    private static final long STRANGER = 2L;
+
+    @TempDir
+    Path root;
+
+    private final ContentBlobRepository contentBlobRepository = mock(ContentBlobRepository.class);
+    private final FileRepository fileRepository = mock(FileRepository.class);
+    private final FileService fileService = mock(FileService.class);
+
+    private UploadPreflightService preflight;
+    private byte[] data;
+    private String checksum;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        LocalStorageService storage = new LocalStorageService(root.toString());
+        ChallengeStore challenges = new ChallengeStore(new StaticListableBeanFactory().getBeanProvider(StringRedisTemplate.class),
+                new ObjectMapper(), Duration.ofMinutes(5));
+        preflight = new UploadPreflightService(contentBlobRepository, fileRepository, storage, challenges, fileService,
+                new CloudsyncMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(preflight, "enabled", true);
+        ReflectionTestUtils.setField(preflight, "rangeCount", 4);
+        ReflectionTestUtils.setField(preflight, "rangeSize", DataSize.ofKilobytes(1));
+
+        data = new byte[100_000];
+        new Random(5).nextBytes(data);
+        checksum = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        String key = storage.store(new ByteArrayInputStream(data), data.length, "application/octet-stream", OWNER, "a");
+        ContentBlob blob = ContentBlob.builder().checksum(checksum).storageKey(key).size((long) data.length).build();
+        when(contentBlobRepository.findByChecksum(checksum)).thenReturn(Optional.of(blob));
+        when(contentBlobRepository.findStorageKeyByChecksum(checksum)).thenReturn(Optional.of(key));
+        when(fileRepository.existsByOwnerIdAndChecksum(OWNER, checksum)).thenReturn(true);
+    }
+
+    @Test
+    void createsTheFileWhenTheProofMatches() throws Exception {
+        FileUploadResponse created = FileUploadResponse.builder().build();
+        when(fileService.createFromStoredContent(eq(OWNER), any(), eq("copy.bin"), any(), eq((long) data.length), eq(checksum)))
+                .thenReturn(created);
+
+        UploadPreflightResponse challenge = preflight.preflight(OWNER, request(data.length));
+
+        assertTrue(challenge.isExists());
+        assertEquals(4, challenge.getRanges().size());
+        assertSame(created, preflight.commit(OWNER, challenge.getChallengeId(), prove(challenge, data)));
+    }
+
+    @Test
+    void doesNotRevealOtherUsersContentByDefault() {
+        assertFalse(preflight.preflight(STRANGER, request(data.length)).isExists());
+
+        ReflectionTestUtils.setField(preflight, "crossUser", true);
+        assertTrue(preflight.preflight(STRANGER, request(data.length)).isExists());
+    }
+
+    @Test
+    void treatsAnotherSizeAsAbsent() {
+        assertFalse(preflight.preflight(OWNER, request(data.length + 1)).isExists());
+    }
+
+    @Test
+    void rejectsAWrongProofAndBurnsTheChallenge() throws Exception {
+        UploadPreflightResponse challenge = preflight.preflight(OWNER, request(data.length));
+        byte[] other = data.clone();
+        ByteRange first = challenge.getRanges().get(0);
+        other[(int) first.offset()] ^= 1;
+
+        PreflightRejectedException wrong = assertThrows(PreflightRejectedException.class,
+                () -> preflight.commit(OWNER, challenge.getChallengeId(), prove(challenge, other)));
+        assertEquals("Proof of possession failed", wrong.getMessage());
+        PreflightRejectedException again = assertThrows(PreflightRejectedException.class,
+                () -> preflight.commit(OWNER, challenge.getChallengeId(), prove(challenge, data)));
+        assertEquals("Challenge not found", again.getMessage());
+        verify(fileService, never()).createFromStoredContent(anyLong(), any(), anyString(), any(), anyLong(), anyString());
+    }
+
+    @Test
+    void onlyAcceptsAnswersFromTheChallengedUser() throws Exception {
+        UploadPreflightResponse challenge = preflight.preflight(OWNER, request(data.length));
+
+        assertThrows(PreflightRejectedException.class,
+                () -> preflight.commit(STRANGER, challenge.getChallengeId(), prove(challenge, data)));
+    }
+
+    @Test
+    void asksForTheWholeOfSmallFiles() throws Exception {
+        ReflectionTestUtils.setField(preflight, "rangeSize", DataSize.ofKilobytes(64));
+
+        UploadPreflightResponse challenge = preflight.preflight(OWNER, request(data.length));
+
+        assertEquals(1, challenge.getRanges().size());
+        assertEquals(new ByteRange(0, data.length), challenge.getRanges().get(0));
+    }
+
+    private UploadPreflightRequest request(long size) {
+        UploadPreflightRequest request = new UploadPreflightRequest();
+        request.setChecksum(checksum.toUpperCase());
+        request.setSize(size);
+        request.setFileName("copy.bin");
+        return request;
+    }
+
+    // What a client holding the bytes sends back
+    private static String prove(UploadPreflightResponse challenge, byte[] content) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(HexFormat.of().parseHex(challenge.getNonce()));
+        for (ByteRange range : challenge.getRanges()) {
+            digest.update(content, (int) range.offset(), range.length());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}